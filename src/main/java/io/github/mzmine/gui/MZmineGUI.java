@@ -103,11 +103,9 @@ public final class MZmineGUI extends Application {
 
     stage.show();
 
-    // Check for new version of MZmine
+    // Check for new version of MZmine, once the start-up has finished
     NewVersionCheck NVC = new NewVersionCheck(CheckType.DESKTOP);
-    Thread nvcThread = new Thread(NVC);
-    nvcThread.setPriority(Thread.MIN_PRIORITY);
-    nvcThread.start();
+    MZmineCore.submitNetworkRequest(NVC, true);
   }
 
   public static void requestQuit() {
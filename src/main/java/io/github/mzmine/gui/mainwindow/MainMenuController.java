@@ -19,6 +19,7 @@
 package io.github.mzmine.gui.mainwindow;
 
 import java.awt.Desktop;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -31,6 +32,10 @@ import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.main.NewVersionCheck;
 import io.github.mzmine.main.NewVersionCheck.CheckType;
+import io.github.mzmine.modules.projectio.ProjectLoadModule;
+import io.github.mzmine.modules.projectio.ProjectSaveModule;
+import io.github.mzmine.modules.projectio.ProjectSaveParameters;
+import io.github.mzmine.parameters.ParameterSet;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.MenuItem;
@@ -44,6 +49,27 @@ public class MainMenuController {
 
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+  public void openProject(ActionEvent event) {
+    MZmineGUI.setupAndRunModule(ProjectLoadModule.class);
+  }
+
+  public void saveProject(ActionEvent event) {
+    // Save to the current project file, if there is one
+    File projectFile = MZmineCore.getCurrentProject().getProjectFile();
+    if (projectFile == null) {
+      saveProjectAs(event);
+      return;
+    }
+    ParameterSet parameters =
+        MZmineCore.getConfiguration().getModuleParameters(ProjectSaveModule.class).clone();
+    parameters.getParameter(ProjectSaveParameters.projectFile).setValue(projectFile);
+    MZmineCore.runMZmineModule(ProjectSaveModule.class, parameters);
+  }
+
+  public void saveProjectAs(ActionEvent event) {
+    MZmineGUI.setupAndRunModule(ProjectSaveModule.class);
+  }
+
   public void closeProject(ActionEvent event) {
     MZmineGUI.closeProject();
   }
@@ -92,9 +118,7 @@ public class MainMenuController {
     // Check for new version of MZmine
     logger.info("Checking for new MZmine version");
     NewVersionCheck NVC = new NewVersionCheck(CheckType.MENU);
-    Thread nvcThread = new Thread(NVC);
-    nvcThread.setPriority(Thread.MIN_PRIORITY);
-    nvcThread.start();
+    MZmineCore.submitNetworkRequest(NVC, false);
   }
 
   public void setPreferences(ActionEvent event) {
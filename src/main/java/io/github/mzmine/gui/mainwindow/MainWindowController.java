@@ -18,7 +18,7 @@
 
 package io.github.mzmine.gui.mainwindow;
 
-import java.util.Collection;
+import java.util.List;
 
 import org.controlsfx.control.StatusBar;
 import org.controlsfx.control.TaskProgressView;
@@ -40,7 +40,9 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParamet
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
-import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.project.auditlog.IncrementalReprocessor;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -49,6 +51,8 @@ import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SelectionMode;
@@ -82,6 +86,18 @@ public class MainWindowController {
   @FXML
   private TaskProgressView<Task<?>> tasksView;
 
+  @FXML
+  private Label queuedTasksLabel;
+
+  @FXML
+  private Button cancelQueuedButton;
+
+  @FXML
+  private Tab performanceTab;
+
+  @FXML
+  private TaskMetricsTable metricsTable;
+
   @FXML
   private StatusBar statusBar;
 
@@ -91,6 +107,8 @@ public class MainWindowController {
   @FXML
   private Label memoryBarLabel;
 
+  private TaskProgressAggregator taskProgressAggregator;
+
   @FXML
   public void initialize() {
 
@@ -127,7 +145,7 @@ public class MainWindowController {
      * FontAwesome.Glyph.COG).size(24.0) .color(Color.BLUE); });
      */
 
-    // Setup the Timeline to update the memory indicator periodically
+    // Setup the Timeline to update the memory indicator and the task metrics periodically
     final Timeline memoryUpdater = new Timeline();
     int UPDATE_FREQUENCY = 500; // ms
     memoryUpdater.setCycleCount(Animation.INDEFINITE);
@@ -139,24 +157,16 @@ public class MainWindowController {
 
       memoryBar.setProgress(memory);
       memoryBarLabel.setText(freeMemMB + "/" + totalMemMB + " MB free");
+
+      // Update the task metrics, if the performance tab is shown
+      if (performanceTab.isSelected())
+        metricsTable.refreshRecords();
     }));
     memoryUpdater.play();
 
-    // Setup the Timeline to update the MZmine tasks periodically
-    final Timeline msdkTaskUpdater = new Timeline();
-    UPDATE_FREQUENCY = 50; // ms
-    msdkTaskUpdater.setCycleCount(Animation.INDEFINITE);
-    msdkTaskUpdater.getKeyFrames().add(new KeyFrame(Duration.millis(UPDATE_FREQUENCY), e -> {
-
-      Collection<Task<?>> tasks = tasksView.getTasks();
-      for (Task<?> task : tasks) {
-        if (task instanceof MZmineTask) {
-          MZmineTask mzmineTask = (MZmineTask) task;
-          mzmineTask.refreshStatus();
-        }
-      }
-    }));
-    msdkTaskUpdater.play();
+    // The task progress is pushed from the task executor and updated in batches
+    taskProgressAggregator =
+        new TaskProgressAggregator(tasksView, queuedTasksLabel, cancelQueuedButton);
   }
 
   @FXML
@@ -181,6 +191,10 @@ public class MainWindowController {
     return tasksView;
   }
 
+  public TaskProgressAggregator getTaskProgressAggregator() {
+    return taskProgressAggregator;
+  }
+
   public StatusBar getStatusBar() {
     return statusBar;
   }
@@ -263,6 +277,43 @@ public class MainWindowController {
     }
   }
 
+  public void reprocessRawData(ActionEvent event) {
+    List<RawDataFile> selectedFiles = MZmineGUI.getSelectedRawDataFiles();
+    if (selectedFiles.size() != 1) {
+      MZmineGUI.displayMessage("Please select one raw data file to reprocess");
+      return;
+    }
+    reprocess(selectedFiles.get(0));
+  }
+
+  public void reprocessFeatureTable(ActionEvent event) {
+    List<FeatureTable> selectedTables = MZmineGUI.getSelectedFeatureTables();
+    if (selectedTables.size() != 1) {
+      MZmineGUI.displayMessage("Please select one feature table to reprocess");
+      return;
+    }
+    reprocess(selectedTables.get(0));
+  }
+
+  /**
+   * Shows the parameters of the processing step which created the given result and re-runs the
+   * step and its downstream steps with the new parameters
+   */
+  private void reprocess(Object result) {
+    final MZmineProject project = MZmineCore.getCurrentProject();
+    final AuditLogEntry step = IncrementalReprocessor.findProducingStep(project, result);
+    if (step == null) {
+      MZmineGUI.displayMessage(
+          "The processing step which created " + result + " was not found in the audit log");
+      return;
+    }
+    final ParameterSet parameters = step.getParameterSet().clone();
+    ButtonType buttonType = parameters.showSetupDialog("Reprocess " + step.getModule().getName());
+    if (buttonType != ButtonType.OK)
+      return;
+    IncrementalReprocessor.reprocess(project, step, parameters);
+  }
+
   public void updateTabName(Tab tab) {
     /*
      * String title = ""; if (tab.equals(rawDataFilesTab)) { title = "Raw Data"; int rawDataFiles =
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.mainwindow;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.project.auditlog.AuditLogTaskRecord;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.DataSizeUtils;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.concurrent.Worker.State;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+/**
+ * Sortable table showing the runtime metrics of all tasks recorded in the audit log of the current
+ * project. Helps to identify the bottleneck modules of a processing pipeline.
+ */
+public class TaskMetricsTable extends TableView<AuditLogTaskRecord> {
+
+  private final NumberFormat secondsFormat = NumberFormat.getNumberInstance();
+  private final NumberFormat rateFormat = NumberFormat.getNumberInstance();
+
+  public TaskMetricsTable() {
+
+    secondsFormat.setMinimumFractionDigits(1);
+    secondsFormat.setMaximumFractionDigits(1);
+    rateFormat.setMaximumFractionDigits(1);
+
+    setPlaceholder(new Label("No tasks have been run yet"));
+    setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+
+    TableColumn<AuditLogTaskRecord, String> moduleColumn = new TableColumn<>("Module");
+    moduleColumn.setCellValueFactory(
+        cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getModuleName()));
+
+    TableColumn<AuditLogTaskRecord, String> taskColumn = new TableColumn<>("Task");
+    taskColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(
+        cell.getValue().getTaskTitle() + ": " + cell.getValue().getTaskMessage()));
+
+    TableColumn<AuditLogTaskRecord, State> statusColumn = new TableColumn<>("Status");
+    statusColumn
+        .setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getTaskStatus()));
+
+    getColumns().add(moduleColumn);
+    getColumns().add(taskColumn);
+    getColumns().add(statusColumn);
+    getColumns().add(createSecondsColumn("Wall time (s)", TaskMetrics::getWallTime));
+    getColumns().add(createSecondsColumn("Task thread CPU (s)", TaskMetrics::getCpuTime));
+    getColumns().add(createBytesColumn("Task thread allocated", TaskMetrics::getAllocatedBytes));
+    getColumns().add(createBytesColumn("Peak heap", TaskMetrics::getPeakHeapBytes));
+    getColumns().add(createBytesColumn("Data read", TaskMetrics::getBytesRead));
+    getColumns().add(createBytesColumn("Data written", TaskMetrics::getBytesWritten));
+    getColumns().add(createNumberColumn("Items", TaskMetrics::getProcessedItems, rateFormat));
+    getColumns().add(createNumberColumn("Items/s", TaskMetrics::getItemsPerSecond, rateFormat));
+  }
+
+  /**
+   * Reloads the task records from the audit log of the current project, keeping the current sort
+   * order.
+   */
+  public void refreshRecords() {
+    final List<AuditLogTaskRecord> records = new ArrayList<>();
+    for (AuditLogEntry entry : MZmineCore.getCurrentProject().getAuditLog()) {
+      records.addAll(entry.getTaskRecords());
+    }
+    if (records.size() != getItems().size()) {
+      getItems().setAll(records);
+      sort();
+    } else {
+      refresh();
+    }
+  }
+
+  private TableColumn<AuditLogTaskRecord, Number> createSecondsColumn(String title,
+      Function<TaskMetrics, Long> millisGetter) {
+    TableColumn<AuditLogTaskRecord, Number> column = new TableColumn<>(title);
+    column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(
+        millisGetter.apply(cell.getValue().getTaskMetrics()) / 1000.0));
+    column.setCellFactory(col -> new FormattedCell(value -> secondsFormat.format(value)));
+    return column;
+  }
+
+  private TableColumn<AuditLogTaskRecord, Number> createBytesColumn(String title,
+      Function<TaskMetrics, Long> bytesGetter) {
+    TableColumn<AuditLogTaskRecord, Number> column = new TableColumn<>(title);
+    column.setCellValueFactory(
+        cell -> new ReadOnlyObjectWrapper<>(bytesGetter.apply(cell.getValue().getTaskMetrics())));
+    column.setCellFactory(
+        col -> new FormattedCell(value -> DataSizeUtils.formatBytes(value.longValue())));
+    return column;
+  }
+
+  private TableColumn<AuditLogTaskRecord, Number> createNumberColumn(String title,
+      Function<TaskMetrics, Number> getter, NumberFormat format) {
+    TableColumn<AuditLogTaskRecord, Number> column = new TableColumn<>(title);
+    column.setCellValueFactory(
+        cell -> new ReadOnlyObjectWrapper<>(getter.apply(cell.getValue().getTaskMetrics())));
+    column.setCellFactory(col -> new FormattedCell(value -> format.format(value)));
+    return column;
+  }
+
+  /**
+   * Table cell which formats numeric values, while the underlying values stay numeric for sorting
+   */
+  private static class FormattedCell extends TableCell<AuditLogTaskRecord, Number> {
+
+    private final Function<Number, String> formatter;
+
+    FormattedCell(Function<Number, String> formatter) {
+      this.formatter = formatter;
+    }
+
+    @Override
+    protected void updateItem(Number item, boolean empty) {
+      super.updateItem(item, empty);
+      if (empty || item == null)
+        setText(null);
+      else
+        setText(formatter.apply(item));
+    }
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.mainwindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import org.controlsfx.control.TaskProgressView;
+
+import io.github.mzmine.taskcontrol.MZmineTask;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+
+/**
+ * Collects the task lifecycle events (queued, started, finished) pushed by the task executor and
+ * forwards them to the GUI in coalesced batches, at most once per {@link #UPDATE_PERIOD}. Only the
+ * running tasks are shown in the task view, so its rows are limited by the number of task threads.
+ * The queued tasks are summarized per group (typically the module which created them).
+ * 
+ * The MSDK methods do not report their progress actively, so the progress of the running tasks is
+ * sampled on a background thread, not on the JavaFX application thread.
+ */
+public class TaskProgressAggregator {
+
+  private static final int UPDATE_PERIOD = 200; // ms
+
+  private final TaskProgressView<Task<?>> tasksView;
+  private final Label queuedTasksLabel;
+  private final Button cancelQueuedButton;
+
+  private final Map<Task<?>, String> queuedTasks = new ConcurrentHashMap<>();
+  private final Set<Task<?>> runningTasks = ConcurrentHashMap.newKeySet();
+  private final Queue<Task<?>> startedTasks = new ConcurrentLinkedQueue<>();
+  private final Queue<Task<?>> finishedTasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicBoolean changed = new AtomicBoolean();
+
+  private final ScheduledThreadPoolExecutor updater = new ScheduledThreadPoolExecutor(1, r -> {
+    Thread t = new Thread(r, "Task progress updater");
+    t.setDaemon(true);
+    t.setPriority(Thread.MIN_PRIORITY);
+    return t;
+  });
+
+  TaskProgressAggregator(@Nonnull TaskProgressView<Task<?>> tasksView,
+      @Nonnull Label queuedTasksLabel, @Nonnull Button cancelQueuedButton) {
+    this.tasksView = tasksView;
+    this.queuedTasksLabel = queuedTasksLabel;
+    this.cancelQueuedButton = cancelQueuedButton;
+    cancelQueuedButton.setOnAction(e -> cancelQueuedTasks());
+    updateQueuedSummary();
+    updater.scheduleWithFixedDelay(this::update, UPDATE_PERIOD, UPDATE_PERIOD,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Called when a task is submitted to the task executor
+   */
+  public void taskQueued(@Nonnull Task<?> task, @Nonnull String group) {
+    queuedTasks.put(task, group);
+    changed.set(true);
+  }
+
+  /**
+   * Called on the executing thread, right before the task starts
+   */
+  public void taskStarted(@Nonnull Task<?> task) {
+    queuedTasks.remove(task);
+    runningTasks.add(task);
+    startedTasks.add(task);
+    changed.set(true);
+  }
+
+  /**
+   * Called on the executing thread, right after the task finished
+   */
+  public void taskFinished(@Nonnull Task<?> task) {
+    runningTasks.remove(task);
+    finishedTasks.add(task);
+    changed.set(true);
+  }
+
+  /**
+   * Cancels all tasks which have not started yet
+   */
+  public void cancelQueuedTasks() {
+    for (Task<?> task : new ArrayList<>(queuedTasks.keySet())) {
+      task.cancel();
+      queuedTasks.remove(task);
+    }
+    changed.set(true);
+  }
+
+  private void update() {
+
+    // Sample the progress of the running tasks. The Task.updateXXX() methods may be called from
+    // any thread and coalesce the updates of the JavaFX properties themselves.
+    for (Task<?> task : runningTasks) {
+      if (task instanceof MZmineTask)
+        ((MZmineTask) task).refreshStatus();
+    }
+
+    // Forward the lifecycle events to the GUI in a single batch
+    if (changed.getAndSet(false))
+      Platform.runLater(this::applyChanges);
+  }
+
+  private void applyChanges() {
+    final List<Task<?>> started = new ArrayList<>();
+    for (Task<?> task; (task = startedTasks.poll()) != null;) {
+      if (!task.isDone())
+        started.add(task);
+    }
+    final List<Task<?>> finished = new ArrayList<>();
+    for (Task<?> task; (task = finishedTasks.poll()) != null;)
+      finished.add(task);
+    started.removeAll(finished);
+
+    if (!finished.isEmpty())
+      tasksView.getTasks().removeAll(finished);
+    if (!started.isEmpty())
+      tasksView.getTasks().addAll(started);
+
+    updateQueuedSummary();
+  }
+
+  private void updateQueuedSummary() {
+    final Map<String, Integer> groups = new TreeMap<>();
+    for (String group : queuedTasks.values())
+      groups.merge(group, 1, Integer::sum);
+
+    if (groups.isEmpty()) {
+      queuedTasksLabel.setText("No queued tasks");
+      cancelQueuedButton.setDisable(true);
+      return;
+    }
+
+    int total = 0;
+    final StringBuilder summary = new StringBuilder();
+    for (Map.Entry<String, Integer> group : groups.entrySet()) {
+      total += group.getValue();
+      summary.append(summary.length() == 0 ? "" : ", ");
+      summary.append(group.getKey()).append(" (").append(group.getValue()).append(")");
+    }
+    queuedTasksLabel.setText("Queued tasks: " + total + " - " + summary);
+    cancelQueuedButton.setDisable(false);
+  }
+
+}
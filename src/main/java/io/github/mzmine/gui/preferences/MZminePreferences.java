@@ -18,6 +18,7 @@
 
 package io.github.mzmine.gui.preferences;
 
+import java.io.File;
 import java.text.DecimalFormat;
 
 import javax.annotation.Nullable;
@@ -27,10 +28,14 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.main.metrics.MZmineMetrics;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.taskcontrol.MemoryAdmissionController;
+import io.github.mzmine.taskcontrol.ResultCache;
 import javafx.scene.control.ButtonType;
 
 public class MZminePreferences extends ParameterSet {
@@ -50,6 +55,16 @@ public class MZminePreferences extends ParameterSet {
 
   public static final NumOfThreadsParameter numOfThreads = new NumOfThreadsParameter();
 
+  public static final PercentParameter memoryBudget = new PercentParameter("Memory budget",
+      "Fraction of the maximum Java heap size which may be used by running tasks. A task is only started when its estimated memory requirement fits into the budget.",
+      "Parallel tasks", (value, messages) -> {
+        if ((value == null) || (value <= 0) || (value > 1)) {
+          messages.add("Memory budget must be between 0 and 100 %");
+          return false;
+        }
+        return true;
+      }, MemoryAdmissionController.DEFAULT_BUDGET_FRACTION);
+
   public static final OptionalModuleParameter proxySettings = new OptionalModuleParameter(
       "Use proxy", "Use proxy for internet connection?", "Proxy", new ProxySettings());
 
@@ -73,12 +88,22 @@ public class MZminePreferences extends ParameterSet {
   public static final BooleanParameter sendStatistics = new BooleanParameter("Send statistics",
       "Allow MZmine to send anonymous statistics on the usage of its modules?", "Statistics", true);
 
+  public static final OptionalModuleParameter resultCache = new OptionalModuleParameter(
+      "Use result cache",
+      "Store the results of raw data centroiding and chromatogram building on disk and reuse them when a module is run again with the same parameters on the same data? For chromatogram building, the detected chromatograms are cached and the feature table is rebuilt from them.",
+      "Result cache", new ResultCacheSettings());
+
+  public static final OptionalModuleParameter metricsExport =
+      new OptionalModuleParameter("Export Prometheus metrics",
+          "Periodically write the task, project and memory metrics into a text file in the Prometheus format?",
+          "Metrics", new MetricsExportSettings());
+
   // public static final WindowSettingsParameter windowSetttings = new
   // WindowSettingsParameter();
 
   public MZminePreferences() {
-    super(mzFormat, rtFormat, intensityFormat, numOfThreads, proxySettings, rExecPath,
-        sendStatistics);
+    super(mzFormat, rtFormat, intensityFormat, numOfThreads, memoryBudget, proxySettings,
+        rExecPath, sendStatistics, resultCache, metricsExport);
   }
 
   @Override
@@ -127,7 +152,39 @@ public class MZminePreferences extends ParameterSet {
         logger.debug("Setting the thread pool size to " + threadPoolSize);
         MZmineCore.getTaskExecutor().setCorePoolSize(threadPoolSize);
       }
+      MZmineCore.getComputePool().setParallelism(threadPoolSize);
+      MZmineCore.getAdmissionController().update();
+    }
+
+    Double memoryBudgetValue = getParameter(memoryBudget).getValue();
+    if (memoryBudgetValue != null) {
+      long budget = (long) (Runtime.getRuntime().maxMemory() * memoryBudgetValue);
+      MZmineCore.getAdmissionController().setBudget(budget);
+    }
+
+    // Update the result cache
+    Boolean resultCacheEnabled = getParameter(resultCache).getValue();
+    if ((resultCacheEnabled != null) && (resultCacheEnabled)) {
+      ParameterSet cacheParams = getParameter(resultCache).getEmbeddedParameters();
+      File cacheDirectory = cacheParams.getParameter(ResultCacheSettings.cacheDirectory).getValue();
+      Double maxSizeGB = cacheParams.getParameter(ResultCacheSettings.maxSize).getValue();
+      long maxSize = (long) ((maxSizeGB != null ? maxSizeGB : 0) * 1024 * 1024 * 1024);
+      ResultCache.configure(cacheDirectory, maxSize);
+    } else {
+      ResultCache.configure(null, 0);
+    }
+
+    // Update the Prometheus metrics export
+    Boolean metricsExportEnabled = getParameter(metricsExport).getValue();
+    File metricsFile = null;
+    Integer metricsInterval = null;
+    if ((metricsExportEnabled != null) && (metricsExportEnabled)) {
+      ParameterSet metricsParams = getParameter(metricsExport).getEmbeddedParameters();
+      metricsFile = metricsParams.getParameter(MetricsExportSettings.metricsFile).getValue();
+      metricsInterval = metricsParams.getParameter(MetricsExportSettings.exportInterval).getValue();
     }
+    MZmineMetrics.setPrometheusExport(metricsFile,
+        metricsInterval != null ? metricsInterval : 0);
 
   }
 
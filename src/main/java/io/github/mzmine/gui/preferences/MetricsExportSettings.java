@@ -0,0 +1,48 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.preferences;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+
+/**
+ * Prometheus metrics export settings
+ */
+public class MetricsExportSettings extends ParameterSet {
+
+  public static final FileNameParameter metricsFile = new FileNameParameter("Metrics file",
+      "Text file which is periodically overwritten with the current metrics. For the node exporter textfile collector, the file name must end with .prom",
+      "Metrics", FileNameParameter.Type.SAVE);
+
+  public static final IntegerParameter exportInterval = new IntegerParameter(
+      "Export interval (s)", "How often the metrics file is written, in seconds", "Metrics",
+      (value, messages) -> {
+        if ((value == null) || (value < 1)) {
+          messages.add("Export interval must be at least 1 second");
+          return false;
+        }
+        return true;
+      }, 15);
+
+  public MetricsExportSettings() {
+    super(metricsFile, exportInterval);
+  }
+
+}
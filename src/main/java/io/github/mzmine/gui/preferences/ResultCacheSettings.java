@@ -0,0 +1,49 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.gui.preferences;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+
+/**
+ * Result cache settings
+ */
+public class ResultCacheSettings extends ParameterSet {
+
+  public static final FileNameParameter cacheDirectory = new FileNameParameter("Cache directory",
+      "Directory where the results are stored", "Result cache",
+      ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.DIRECTORY);
+
+  public static final DoubleParameter maxSize = new DoubleParameter("Maximum size (GB)",
+      "When the cache grows over this size, the least recently used results are removed",
+      "Result cache", null, (value, messages) -> {
+        if ((value == null) || (value <= 0)) {
+          messages.add("Maximum size must be positive");
+          return false;
+        }
+        return true;
+      }, 10.0);
+
+  public ResultCacheSettings() {
+    super(cacheDirectory, maxSize);
+  }
+
+}
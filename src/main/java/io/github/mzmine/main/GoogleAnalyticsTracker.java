@@ -26,6 +26,7 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.Random;
 
+import io.github.mzmine.util.InetUtils;
 import javafx.stage.Screen;
 
 public class GoogleAnalyticsTracker implements Runnable {
@@ -135,6 +136,8 @@ public class GoogleAnalyticsTracker implements Runnable {
         UC.setInstanceFollowRedirects(true);
         UC.setRequestMethod("GET");
         UC.setRequestProperty("User-agent", userAgent);
+        UC.setConnectTimeout(InetUtils.TIMEOUT);
+        UC.setReadTimeout(InetUtils.TIMEOUT);
         UC.connect();
 
         int responseCode = UC.getResponseCode();
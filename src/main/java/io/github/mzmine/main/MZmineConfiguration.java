@@ -22,8 +22,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -32,15 +35,12 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import io.github.mzmine.gui.preferences.MZminePreferences;
@@ -59,8 +59,15 @@ public final class MZmineConfiguration {
   private final Map<Class<? extends MZmineModule>, ParameterSet> moduleParameters;
   private final MZminePreferences preferences;
 
+  /**
+   * Parameters loaded from the configuration file for modules which have not been instantiated
+   * yet, by module class name. They are applied when the module is instantiated and saved
+   * unchanged otherwise.
+   */
+  private final Map<String, Element> storedModuleParameters = new HashMap<>();
+
   public MZmineConfiguration() {
-    moduleParameters = new Hashtable<Class<? extends MZmineModule>, ParameterSet>();
+    moduleParameters = new ConcurrentHashMap<Class<? extends MZmineModule>, ParameterSet>();
     preferences = new MZminePreferences();
   }
 
@@ -70,6 +77,11 @@ public final class MZmineConfiguration {
 
   public ParameterSet getModuleParameters(Class<? extends MZmineModule> moduleClass) {
     ParameterSet parameters = moduleParameters.get(moduleClass);
+    if (parameters == null) {
+      // Modules are instantiated on first use
+      MZmineModuleStarter.getModuleInstance(moduleClass);
+      parameters = moduleParameters.get(moduleClass);
+    }
     if (parameters == null) {
       throw new IllegalArgumentException(
           "Module " + moduleClass + " does not have any parameter set instance");
@@ -91,6 +103,27 @@ public final class MZmineConfiguration {
 
   }
 
+  /**
+   * Sets the parameters of a newly instantiated module, loading the values stored in the
+   * configuration file (if any)
+   */
+  synchronized void initModuleParameters(Class<? extends MZmineModule> moduleClass,
+      ParameterSet parameters) {
+    Element storedParameters = storedModuleParameters.remove(moduleClass.getName());
+    if (storedParameters != null)
+      parameters.loadValuesFromXML(storedParameters);
+    moduleParameters.put(moduleClass, parameters);
+  }
+
+  private ParameterSet findModuleParameters(String moduleClassName) {
+    for (Map.Entry<Class<? extends MZmineModule>, ParameterSet> entry : moduleParameters
+        .entrySet()) {
+      if (entry.getKey().getName().equals(moduleClassName))
+        return entry.getValue();
+    }
+    return null;
+  }
+
   public DecimalFormat getIntensityFormat() {
     return preferences.getParameter(MZminePreferences.intensityFormat).getValue();
   }
@@ -115,33 +148,31 @@ public final class MZmineConfiguration {
       DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
       Document configuration = dBuilder.parse(file);
 
-      XPathFactory factory = XPathFactory.newInstance();
-      XPath xpath = factory.newXPath();
-
       logger.info("Loading desktop configuration");
 
-      XPathExpression expr = xpath.compile("//configuration/preferences");
-      NodeList nodes = (NodeList) expr.evaluate(configuration, XPathConstants.NODESET);
-      if (nodes.getLength() == 1) {
-        Element preferencesElement = (Element) nodes.item(0);
+      Element configRoot = configuration.getDocumentElement();
+      Element preferencesElement = getChildElement(configRoot, "preferences");
+      if (preferencesElement != null)
         preferences.loadValuesFromXML(preferencesElement);
-      }
 
       logger.info("Loading modules configuration");
 
-      for (MZmineModule module : MZmineModuleStarter.getAllModules()) {
-
-        String className = module.getClass().getName();
-        expr =
-            xpath.compile("//configuration/modules/module[@class='" + className + "']/parameters");
-        nodes = (NodeList) expr.evaluate(configuration, XPathConstants.NODESET);
-        if (nodes.getLength() != 1)
+      // The parameters of modules which are not instantiated yet are kept until their first use
+      NodeList moduleNodes = configRoot.getElementsByTagName("module");
+      for (int i = 0; i < moduleNodes.getLength(); i++) {
+        Element moduleElement = (Element) moduleNodes.item(i);
+        Element paramElement = getChildElement(moduleElement, "parameters");
+        if (paramElement == null)
           continue;
 
-        Element moduleElement = (Element) nodes.item(0);
-
-        ParameterSet moduleParameters = getModuleParameters(module.getClass());
-        moduleParameters.loadValuesFromXML(moduleElement);
+        String className = moduleElement.getAttribute("class");
+        synchronized (this) {
+          ParameterSet moduleParameters = findModuleParameters(className);
+          if (moduleParameters != null)
+            moduleParameters.loadValuesFromXML(paramElement);
+          else
+            storedModuleParameters.put(className, paramElement);
+        }
       }
 
       logger.info("Loaded configuration from file " + file);
@@ -150,6 +181,14 @@ public final class MZmineConfiguration {
     }
   }
 
+  private static Element getChildElement(Element parent, String tagName) {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if ((child instanceof Element) && ((Element) child).getTagName().equals(tagName))
+        return (Element) child;
+    }
+    return null;
+  }
+
   public void saveConfiguration(File file) throws IOException {
     try {
       DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
@@ -183,6 +222,18 @@ public final class MZmineConfiguration {
 
       }
 
+      // Keep the stored parameters of the modules which were not used
+      final List<Map.Entry<String, Element>> unusedModules;
+      synchronized (this) {
+        unusedModules = new ArrayList<>(storedModuleParameters.entrySet());
+      }
+      for (Map.Entry<String, Element> entry : unusedModules) {
+        Element moduleElement = configuration.createElement("module");
+        moduleElement.setAttribute("class", entry.getKey());
+        modulesElement.appendChild(moduleElement);
+        moduleElement.appendChild(configuration.importNode(entry.getValue(), true));
+      }
+
       TransformerFactory transfac = TransformerFactory.newInstance();
       Transformer transformer = transfac.newTransformer();
       transformer.setOutputProperty(OutputKeys.METHOD, "xml");
@@ -24,16 +24,31 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.gui.mainwindow.MainWindowController;
+import io.github.mzmine.gui.mainwindow.TaskProgressAggregator;
+import io.github.mzmine.main.metrics.MZmineMetrics;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.LazyRawDataFile;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.taskcontrol.ComputePool;
+import io.github.mzmine.taskcontrol.InteractiveExecutor;
+import io.github.mzmine.taskcontrol.MemoryAdmissionController;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 
 /**
@@ -43,11 +58,54 @@ public final class MZmineCore {
 
   private static final @Nonnull MZmineConfiguration configuration = new MZmineConfiguration();
 
+  /**
+   * Task executor, sized by the number of available processors until the preferences are loaded
+   */
   private static final @Nonnull ScheduledThreadPoolExecutor taskExecutor =
-      new ScheduledThreadPoolExecutor(2);
+      new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+
+  private static final @Nonnull MemoryAdmissionController admissionController =
+      new MemoryAdmissionController(taskExecutor);
+
+  /**
+   * Pool for the parallel parts of the algorithms, resized by
+   * {@link io.github.mzmine.gui.preferences.MZminePreferences}
+   */
+  private static final @Nonnull ComputePool computePool =
+      new ComputePool(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Executor for loading plot data, keeps only the latest request of each plot
+   */
+  private static final @Nonnull InteractiveExecutor interactiveExecutor =
+      new InteractiveExecutor(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Delay of the network requests made at start-up (usage statistics, version check)
+   */
+  private static final int DEFERRED_NETWORK_REQUEST_DELAY = 10; // s
+
+  /**
+   * Single low-priority daemon thread for network requests, so that unreachable hosts neither delay
+   * the start-up nor keep the JVM running
+   */
+  private static final @Nonnull ScheduledThreadPoolExecutor networkExecutor =
+      new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "MZmine network requests");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+      });
 
   private static @Nonnull MZmineProject currentProject = new MZmineProject();
 
+  static {
+    // Expose the metrics via JMX and, if requested by system properties, as a Prometheus file.
+    // This does not depend on the GUI, so the metrics are also available in headless runs.
+    MZmineMetrics.registerMBeans(taskExecutor, admissionController);
+    MZmineMetrics.setPrometheusExport(null, 0);
+  }
+
   public static @Nonnull MZmineConfiguration getConfiguration() {
     return configuration;
   }
@@ -81,20 +139,63 @@ public final class MZmineCore {
   }
 
   public static void submitTasks(@Nonnull Collection<Task<?>> tasks) {
+    submitTasks(tasks, null);
+  }
+
+  /**
+   * Submits the tasks to the task executor. Each task is started once its estimated memory
+   * footprint fits into the memory budget, see {@link MemoryAdmissionController}. The task group
+   * (e.g. the module name) is used to summarize the queued tasks in the GUI. If null, the tasks are
+   * grouped by their class.
+   */
+  public static void submitTasks(@Nonnull Collection<Task<?>> tasks, @Nullable String group) {
+
+    MainWindowController mwc = MZmineGUI.getMainWindowController();
+    final TaskProgressAggregator progress = mwc != null ? mwc.getTaskProgressAggregator() : null;
 
     for (Task<?> task : tasks) {
-      MainWindowController mwc = MZmineGUI.getMainWindowController();
-      if (mwc != null) {
-        mwc.getTaskTable().getTasks().add(task);
-      }
-      taskExecutor.execute(task);
+      if (progress != null)
+        progress.taskQueued(task, group != null ? group : task.getClass().getSimpleName());
+      final TaskMetrics metrics = TaskMetrics.of(task);
+      admissionController.submit(task, () -> {
+        if (progress != null)
+          progress.taskStarted(task);
+        try {
+          metrics.measure(task);
+        } finally {
+          if (progress != null)
+            progress.taskFinished(task);
+        }
+      });
     }
   }
 
+  /**
+   * Runs a network request in the background
+   * 
+   * @param deferred If true, the request is delayed so that it does not compete with the start-up
+   */
+  public static void submitNetworkRequest(@Nonnull Runnable request, boolean deferred) {
+    networkExecutor.schedule(request, deferred ? DEFERRED_NETWORK_REQUEST_DELAY : 0,
+        TimeUnit.SECONDS);
+  }
+
   public static @Nonnull ScheduledThreadPoolExecutor getTaskExecutor() {
     return taskExecutor;
   }
 
+  public static @Nonnull ComputePool getComputePool() {
+    return computePool;
+  }
+
+  public static @Nonnull InteractiveExecutor getInteractiveExecutor() {
+    return interactiveExecutor;
+  }
+
+  public static @Nonnull MemoryAdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
   public static <ModuleType extends MZmineModule> ModuleType getModuleInstance(
       Class<ModuleType> moduleClass) {
     return MZmineModuleStarter.getModuleInstance(moduleClass);
@@ -102,20 +203,48 @@ public final class MZmineCore {
 
   public static void runMZmineModule(@Nonnull Class<? extends MZmineRunnableModule> moduleClass,
       @Nonnull ParameterSet parameters) {
+    runMZmineModule(moduleClass, parameters, null);
+  }
+
+  /**
+   * Runs the module like {@link #runMZmineModule(Class, ParameterSet)} and passes its tasks to the
+   * given callback before they are submitted, e.g. to follow their progress. The module may start
+   * later if its input files are still being loaded.
+   */
+  public static void runMZmineModule(@Nonnull Class<? extends MZmineRunnableModule> moduleClass,
+      @Nonnull ParameterSet parameters, @Nullable Consumer<List<Task<?>>> tasksCallback) {
+
+    // Raw data files of a loaded project may still be in the project archive, load them in the
+    // background instead of blocking the GUI, and run the module once they are loaded
+    if (Platform.isFxApplicationThread()) {
+      final List<RawDataFile> inputFiles = new ArrayList<>();
+      for (Parameter<?> parameter : parameters) {
+        if (!(parameter instanceof RawDataFilesParameter))
+          continue;
+        final RawDataFilesSelection selection = ((RawDataFilesParameter) parameter).getValue();
+        if (selection != null)
+          inputFiles.addAll(selection.getMatchingRawDataFiles());
+      }
+      if (!LazyRawDataFile.areLoaded(inputFiles)) {
+        LazyRawDataFile.runWhenLoaded(inputFiles,
+            () -> runMZmineModule(moduleClass, parameters, tasksCallback));
+        return;
+      }
+    }
 
     MZmineRunnableModule module = (MZmineRunnableModule) getModuleInstance(moduleClass);
 
     // Usage Tracker
     GoogleAnalyticsTracker GAT =
         new GoogleAnalyticsTracker(module.getName(), "/JAVA/" + module.getName());
-    Thread gatThread = new Thread(GAT);
-    gatThread.setPriority(Thread.MIN_PRIORITY);
-    gatThread.start();
+    submitNetworkRequest(GAT, false);
 
     // Run the module
     final List<Task<?>> newTasks = new ArrayList<>();
     module.runModule(currentProject, parameters, newTasks);
-    submitTasks(newTasks);
+    if (tasksCallback != null)
+      tasksCallback.accept(newTasks);
+    submitTasks(newTasks, module.getName());
 
     // Log module run in audit log
     AuditLogEntry auditLogEntry = new AuditLogEntry(module, parameters, newTasks);
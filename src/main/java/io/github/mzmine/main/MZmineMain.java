@@ -70,22 +70,24 @@ public final class MZmineMain {
     Runtime.getRuntime().addShutdownHook(shutDownThread);
 
     /*
-     * Load modules on a new thread after the GUI has started
+     * Register the modules and load the configuration on a new thread, in parallel with the start
+     * of the GUI. The modules themselves are instantiated on first use.
      */
     MZmineModuleStarter moduleStarter = new MZmineModuleStarter();
-    Thread moduleStarterThread = new Thread(moduleStarter);
+    Thread moduleStarterThread = new Thread(() -> {
+      moduleStarter.run();
+
+      /*
+       * Usage Tracker, created once the configuration (with the statistics preference) is loaded
+       * and delayed so that it does not compete with the start of the GUI
+       */
+      GoogleAnalyticsTracker GAT =
+          new GoogleAnalyticsTracker("MZmine Loaded (GUI mode)", "/JAVA/Main/GUI");
+      MZmineCore.submitNetworkRequest(GAT, true);
+    });
     moduleStarterThread.setPriority(Thread.MIN_PRIORITY);
     moduleStarterThread.start();
 
-    /*
-     * Usage Tracker
-     */
-    GoogleAnalyticsTracker GAT =
-        new GoogleAnalyticsTracker("MZmine Loaded (GUI mode)", "/JAVA/Main/GUI");
-    Thread gatThread = new Thread(GAT);
-    gatThread.setPriority(Thread.MIN_PRIORITY);
-    gatThread.start();
-
     /*
      * Start the JavaFX GUI
      */
@@ -19,20 +19,22 @@
 package io.github.mzmine.main;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.Collections;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import com.google.common.collect.ImmutableList;
 
@@ -40,49 +42,25 @@ import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.parameters.ParameterSet;
 
 /**
- * MZmine modules support class
+ * MZmine modules support class. The modules listed in conf/Modules.xml are registered at start-up,
+ * but each module and its parameter set is only instantiated on first use, e.g. when its menu item
+ * is activated or when it is run from a batch.
  */
 public final class MZmineModuleStarter implements Runnable {
 
   private static final File MODULES_FILE = new File("conf/Modules.xml");
 
-  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private static final Logger logger = LoggerFactory.getLogger(MZmineModuleStarter.class);
 
-  private static Map<Class<? extends MZmineModule>, MZmineModule> initializedModules =
-      Collections.synchronizedMap(new Hashtable<>());
+  private static Set<String> registeredModules;
+
+  private static final Map<Class<? extends MZmineModule>, MZmineModule> initializedModules =
+      new HashMap<>();
 
   @Override
   public void run() {
 
-    logger.info("Loading modules");
-
-    try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      Document modulesDocument = null;
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      modulesDocument = dBuilder.parse(MODULES_FILE);
-      Element rootElement = modulesDocument.getDocumentElement();
-      NodeList moduleNodes = rootElement.getChildNodes();
-      for (int i = 0; i < moduleNodes.getLength(); i++) {
-        Node moduleNode = moduleNodes.item(i);
-        if (moduleNode.getNodeName() != "module")
-          continue;
-        String moduleClassName = moduleNode.getTextContent();
-        try {
-
-          // Start up the module
-          startModule(moduleClassName);
-
-        } catch (Exception e) {
-          logger.warn("Failed to initialize module class " + moduleClassName + ": " + e);
-          e.printStackTrace();
-        }
-      }
-
-    } catch (Exception e) {
-      logger.error("Could not load modules from " + MODULES_FILE);
-      System.exit(1);
-    }
+    getRegisteredModules();
 
     try {
       logger.info("Loading configuration");
@@ -93,36 +71,89 @@ public final class MZmineModuleStarter implements Runnable {
 
   }
 
-  private void startModule(final String moduleClassName)
-      throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+  /**
+   * @return Class names of the modules listed in the modules file, which is read on first access
+   */
+  static synchronized Set<String> getRegisteredModules() {
+    if (registeredModules != null)
+      return registeredModules;
 
-    logger.info("Starting module class " + moduleClassName);
+    logger.info("Loading modules");
+    final Set<String> moduleClassNames = new LinkedHashSet<>();
+    try (InputStream in = new FileInputStream(MODULES_FILE)) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      while (reader.hasNext()) {
+        if ((reader.next() == XMLStreamConstants.START_ELEMENT)
+            && reader.getLocalName().equals("module"))
+          moduleClassNames.add(reader.getElementText().trim());
+      }
+      reader.close();
+    } catch (Exception e) {
+      logger.error("Could not load modules from " + MODULES_FILE);
+      System.exit(1);
+    }
+    registeredModules = Collections.unmodifiableSet(moduleClassNames);
+    return registeredModules;
+  }
+
+  private static MZmineModule startModule(Class<? extends MZmineModule> moduleClass)
+      throws InstantiationException, IllegalAccessException {
+
+    logger.info("Starting module class " + moduleClass.getName());
 
     // Create an instance of the module
-    @SuppressWarnings("unchecked")
-    Class<? extends MZmineModule> moduleClass =
-        (Class<? extends MZmineModule>) Class.forName(moduleClassName);
     MZmineModule newModule = moduleClass.newInstance();
     initializedModules.put(moduleClass, newModule);
 
-    // Create a parameter set
+    // Create a parameter set, with the values stored in the configuration
     Class<? extends ParameterSet> parameterSetClass = newModule.getParameterSetClass();
     ParameterSet newParameterSet = parameterSetClass.newInstance();
-    MZmineCore.getConfiguration().setModuleParameters(moduleClass, newParameterSet);
+    MZmineCore.getConfiguration().initModuleParameters(moduleClass, newParameterSet);
+    return newModule;
   }
 
-  static List<MZmineModule> getAllModules() {
+  /**
+   * @return The modules which have been instantiated so far
+   */
+  static synchronized List<MZmineModule> getAllModules() {
     List<MZmineModule> list = ImmutableList.copyOf(initializedModules.values());
     return list;
   }
 
   /**
-   * Returns the instance of a module of given class
+   * Returns the instance of a module of given class, instantiating the module and its parameter
+   * set on first access. Returns null if the module is not registered or cannot be instantiated.
    */
   @SuppressWarnings("unchecked")
-  static <ModuleType extends MZmineModule> ModuleType getModuleInstance(
+  static synchronized @Nullable <ModuleType extends MZmineModule> ModuleType getModuleInstance(
       Class<ModuleType> moduleClass) {
-    return (ModuleType) initializedModules.get(moduleClass);
+    MZmineModule module = initializedModules.get(moduleClass);
+    if ((module == null) && getRegisteredModules().contains(moduleClass.getName())) {
+      try {
+        module = startModule(moduleClass);
+      } catch (Exception e) {
+        initializedModules.remove(moduleClass);
+        logger.warn("Failed to initialize module class " + moduleClass.getName() + ": " + e);
+        e.printStackTrace();
+      }
+    }
+    return (ModuleType) module;
+  }
+
+  /**
+   * Instantiates all registered modules and their parameter sets
+   */
+  static void startAllModules() {
+    for (String moduleClassName : getRegisteredModules()) {
+      try {
+        @SuppressWarnings("unchecked")
+        Class<? extends MZmineModule> moduleClass =
+            (Class<? extends MZmineModule>) Class.forName(moduleClassName);
+        getModuleInstance(moduleClass);
+      } catch (ClassNotFoundException e) {
+        logger.warn("Failed to initialize module class " + moduleClassName + ": " + e);
+      }
+    }
   }
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.main.metrics;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.LazyRawDataFile;
+import io.github.mzmine.util.DataSizeUtils;
+
+/**
+ * Usage of the temporary directory and estimated size of the data of the current project
+ */
+class DataStoreMonitor implements DataStoreMXBean {
+
+  /**
+   * Temporary data files created by MZmine and MSDK
+   */
+  private static final String TMP_FILE_PATTERN = "(mzmine|msdk).*\\.(scans|tmp)";
+
+  private final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+
+  // The estimated sizes are cached, so the metrics export does not walk all scans and rows on each
+  // update. Raw data files do not change once they are added to the project, feature tables are
+  // estimated again when their number of rows or columns changes.
+  private final Map<RawDataFile, Long> rawDataFileSizes =
+      Collections.synchronizedMap(new WeakHashMap<>());
+  private final Map<FeatureTable, CachedSize> featureTableSizes =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static class CachedSize {
+    private final int rows, columns;
+    private final long bytes;
+
+    private CachedSize(int rows, int columns, long bytes) {
+      this.rows = rows;
+      this.columns = columns;
+      this.bytes = bytes;
+    }
+  }
+
+  @Override
+  public String getTemporaryDirectory() {
+    return tmpDir.getAbsolutePath();
+  }
+
+  @Override
+  public int getTemporaryFileCount() {
+    return listTemporaryFiles().length;
+  }
+
+  @Override
+  public long getTemporaryFileBytes() {
+    long bytes = 0;
+    for (File tmpFile : listTemporaryFiles())
+      bytes += tmpFile.length();
+    return bytes;
+  }
+
+  @Override
+  public long getTemporaryDirectoryUsableBytes() {
+    return tmpDir.getUsableSpace();
+  }
+
+  @Override
+  public long getRawDataBytes() {
+    long bytes = 0;
+    for (RawDataFile rawDataFile : MZmineCore.getCurrentProject().getRawDataFiles()) {
+      // Files which have not been loaded from a project archive yet are estimated by the size of
+      // their archive entry, which is cheap and changes once they are loaded
+      if (!LazyRawDataFile.isLoaded(rawDataFile)) {
+        bytes += DataSizeUtils.estimateRawDataFileSize(rawDataFile);
+        continue;
+      }
+      bytes += rawDataFileSizes.computeIfAbsent(rawDataFile,
+          DataSizeUtils::estimateRawDataFileSize);
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getFeatureTableBytes() {
+    long bytes = 0;
+    for (FeatureTable featureTable : MZmineCore.getCurrentProject().getFeatureTables())
+      bytes += getFeatureTableSize(featureTable);
+    return bytes;
+  }
+
+  private long getFeatureTableSize(FeatureTable featureTable) {
+    final int rows = featureTable.getRows().size();
+    final int columns = featureTable.getColumns().size();
+    final CachedSize cached = featureTableSizes.get(featureTable);
+    if ((cached != null) && (cached.rows == rows) && (cached.columns == columns))
+      return cached.bytes;
+    try {
+      final long bytes = DataSizeUtils.estimateFeatureTableSize(featureTable);
+      featureTableSizes.put(featureTable, new CachedSize(rows, columns, bytes));
+      return bytes;
+    } catch (ConcurrentModificationException e) {
+      // The table is being modified by a running task, keep the last estimate until it is done
+      return cached != null ? cached.bytes : 0;
+    }
+  }
+
+  private File[] listTemporaryFiles() {
+    File tmpFiles[] = tmpDir.listFiles((dir, name) -> name.matches(TMP_FILE_PATTERN));
+    if (tmpFiles == null)
+      return new File[0];
+    return tmpFiles;
+  }
+
+}
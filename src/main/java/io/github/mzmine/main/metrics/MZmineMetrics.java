@@ -0,0 +1,249 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.main.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mzmine.taskcontrol.MemoryAdmissionController;
+
+/**
+ * Registers the MZmine MBeans in the platform MBean server and optionally writes the same metrics
+ * periodically into a text file in the Prometheus exposition format, which can be picked up by the
+ * textfile collector of the node exporter. Neither requires the GUI, so the metrics are also
+ * available in headless runs.
+ */
+public final class MZmineMetrics {
+
+  private static final Logger logger = LoggerFactory.getLogger(MZmineMetrics.class);
+
+  private static final String OBJECT_NAME_PREFIX = "io.github.mzmine:type=";
+
+  /**
+   * System properties which enable the Prometheus export without changing the preferences, e.g.
+   * for headless runs
+   */
+  public static final String EXPORT_FILE_PROPERTY = "mzmine.metrics.file";
+  public static final String EXPORT_INTERVAL_PROPERTY = "mzmine.metrics.interval";
+
+  private static final int DEFAULT_EXPORT_INTERVAL = 15; // s
+
+  private static TaskExecutorMonitor taskExecutorMonitor;
+  private static final ProjectMonitor projectMonitor = new ProjectMonitor();
+  private static final DataStoreMonitor dataStoreMonitor = new DataStoreMonitor();
+
+  private static final ScheduledThreadPoolExecutor exportExecutor =
+      new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Prometheus metrics export");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+      });
+
+  private static @Nullable ScheduledFuture<?> exportFuture;
+  private static @Nullable File exportFile;
+  private static int exportInterval;
+
+  /**
+   * Registers the task executor, project and data store MBeans. The garbage collector and memory
+   * MBeans are provided by the JVM itself.
+   */
+  public static synchronized void registerMBeans(@Nonnull ThreadPoolExecutor taskExecutor,
+      @Nonnull MemoryAdmissionController admissionController) {
+    if (taskExecutorMonitor != null)
+      return;
+    taskExecutorMonitor = new TaskExecutorMonitor(taskExecutor, admissionController);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(taskExecutorMonitor,
+          new ObjectName(OBJECT_NAME_PREFIX + "TaskExecutor"));
+      server.registerMBean(projectMonitor, new ObjectName(OBJECT_NAME_PREFIX + "Project"));
+      server.registerMBean(dataStoreMonitor, new ObjectName(OBJECT_NAME_PREFIX + "DataStore"));
+    } catch (JMException e) {
+      logger.warn("Could not register the MZmine MBeans", e);
+    }
+  }
+
+  /**
+   * Starts writing the metrics into the given file every intervalSeconds, replacing a previously
+   * started export. If file is null, the file and interval given by the {@link #EXPORT_FILE_PROPERTY}
+   * and {@link #EXPORT_INTERVAL_PROPERTY} system properties are used, and if these are not set
+   * either, the export is stopped.
+   */
+  public static synchronized void setPrometheusExport(@Nullable File file, int intervalSeconds) {
+    if (file == null) {
+      String fileProperty = System.getProperty(EXPORT_FILE_PROPERTY);
+      if (fileProperty != null && !fileProperty.trim().isEmpty()) {
+        file = new File(fileProperty.trim());
+        intervalSeconds = Integer.getInteger(EXPORT_INTERVAL_PROPERTY, DEFAULT_EXPORT_INTERVAL);
+      }
+    }
+    if (intervalSeconds < 1)
+      intervalSeconds = 1;
+    if ((file == null ? exportFile == null : file.equals(exportFile))
+        && (intervalSeconds == exportInterval))
+      return;
+
+    if (exportFuture != null) {
+      exportFuture.cancel(false);
+      exportFuture = null;
+    }
+    exportFile = file;
+    exportInterval = intervalSeconds;
+    if (file == null)
+      return;
+
+    logger.info("Writing Prometheus metrics to " + file + " every " + intervalSeconds + " s");
+    final File targetFile = file;
+    exportFuture = exportExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        writePrometheusFile(targetFile);
+      } catch (Throwable e) {
+        logger.warn("Could not write Prometheus metrics to " + targetFile, e);
+      }
+    }, 0, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Writes the metrics into a temporary file which is then moved over the target file, so the
+   * scraper never reads a partially written file
+   */
+  public static void writePrometheusFile(@Nonnull File file) throws IOException {
+    Path target = file.toPath().toAbsolutePath();
+    Path tmpFile = target.resolveSibling(target.getFileName() + ".tmp");
+    Files.write(tmpFile, getPrometheusMetrics().getBytes(StandardCharsets.UTF_8));
+    try {
+      Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * @return All metrics in the Prometheus text exposition format
+   */
+  public static @Nonnull String getPrometheusMetrics() {
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter out = new PrintWriter(stringWriter);
+
+    TaskExecutorMonitor executor = taskExecutorMonitor;
+    if (executor != null) {
+      gauge(out, "mzmine_tasks_queued", "Number of tasks waiting in the queue",
+          executor.getQueuedTaskCount());
+      gauge(out, "mzmine_tasks_active", "Number of running tasks", executor.getActiveTaskCount());
+      counter(out, "mzmine_tasks_completed_total", "Number of finished tasks",
+          executor.getCompletedTaskCount());
+      gauge(out, "mzmine_task_threads", "Number of task executor threads",
+          executor.getPoolSize());
+      gauge(out, "mzmine_tasks_awaiting_admission",
+          "Number of tasks waiting for admission by the memory budget",
+          executor.getTasksAwaitingAdmission());
+      gauge(out, "mzmine_tasks_reserved_memory_bytes",
+          "Memory reserved by the admitted tasks", executor.getReservedMemoryBytes());
+      gauge(out, "mzmine_tasks_memory_budget_bytes", "Memory budget of the running tasks",
+          executor.getMemoryBudgetBytes());
+    }
+
+    gauge(out, "mzmine_project_raw_data_files", "Number of raw data files in the project",
+        projectMonitor.getRawDataFileCount());
+    gauge(out, "mzmine_project_feature_tables", "Number of feature tables in the project",
+        projectMonitor.getFeatureTableCount());
+    gauge(out, "mzmine_project_samples", "Number of samples in the project",
+        projectMonitor.getSampleCount());
+    gauge(out, "mzmine_project_scans", "Number of scans in all raw data files",
+        projectMonitor.getScanCount());
+    gauge(out, "mzmine_project_feature_table_rows", "Number of rows in all feature tables",
+        projectMonitor.getFeatureTableRowCount());
+    gauge(out, "mzmine_project_audit_log_entries", "Number of processing steps in the audit log",
+        projectMonitor.getAuditLogEntryCount());
+
+    gauge(out, "mzmine_datastore_tmp_files", "Number of temporary data files",
+        dataStoreMonitor.getTemporaryFileCount());
+    gauge(out, "mzmine_datastore_tmp_bytes", "Size of the temporary data files",
+        dataStoreMonitor.getTemporaryFileBytes());
+    gauge(out, "mzmine_datastore_tmp_usable_bytes", "Usable space in the temporary directory",
+        dataStoreMonitor.getTemporaryDirectoryUsableBytes());
+    gauge(out, "mzmine_datastore_raw_data_bytes", "Estimated size of the raw data",
+        dataStoreMonitor.getRawDataBytes());
+    gauge(out, "mzmine_datastore_feature_table_bytes", "Estimated size of the feature tables",
+        dataStoreMonitor.getFeatureTableBytes());
+
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    gauge(out, "mzmine_jvm_heap_used_bytes", "Used JVM heap", heap.getUsed());
+    gauge(out, "mzmine_jvm_heap_committed_bytes", "Committed JVM heap", heap.getCommitted());
+    gauge(out, "mzmine_jvm_heap_max_bytes", "Maximum JVM heap", heap.getMax());
+
+    out.println("# HELP mzmine_jvm_gc_collections_total Number of garbage collections");
+    out.println("# TYPE mzmine_jvm_gc_collections_total counter");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      out.println("mzmine_jvm_gc_collections_total{gc=\"" + escapeLabel(gc.getName()) + "\"} "
+          + Math.max(0, gc.getCollectionCount()));
+    out.println("# HELP mzmine_jvm_gc_seconds_total Time spent in garbage collection");
+    out.println("# TYPE mzmine_jvm_gc_seconds_total counter");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      out.println("mzmine_jvm_gc_seconds_total{gc=\"" + escapeLabel(gc.getName()) + "\"} "
+          + String.format(Locale.US, "%.3f", Math.max(0, gc.getCollectionTime()) / 1000.0));
+
+    out.flush();
+    return stringWriter.toString();
+  }
+
+  private static void gauge(PrintWriter out, String name, String help, long value) {
+    metric(out, name, help, "gauge", value);
+  }
+
+  private static void counter(PrintWriter out, String name, String help, long value) {
+    metric(out, name, help, "counter", value);
+  }
+
+  private static void metric(PrintWriter out, String name, String help, String type, long value) {
+    out.println("# HELP " + name + " " + help);
+    out.println("# TYPE " + name + " " + type);
+    out.println(name + " " + value);
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
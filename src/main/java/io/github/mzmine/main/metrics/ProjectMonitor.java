@@ -0,0 +1,71 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.main.metrics;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.LazyRawDataFile;
+
+/**
+ * Reads the project contents from {@link MZmineCore#getCurrentProject()} on each call, so the
+ * values remain valid when the current project is replaced.
+ */
+class ProjectMonitor implements ProjectMXBean {
+
+  @Override
+  public int getRawDataFileCount() {
+    return MZmineCore.getCurrentProject().getRawDataFiles().size();
+  }
+
+  @Override
+  public int getFeatureTableCount() {
+    return MZmineCore.getCurrentProject().getFeatureTables().size();
+  }
+
+  @Override
+  public int getSampleCount() {
+    return MZmineCore.getCurrentProject().getSamples().size();
+  }
+
+  @Override
+  public long getScanCount() {
+    long scans = 0;
+    for (RawDataFile rawDataFile : MZmineCore.getCurrentProject().getRawDataFiles()) {
+      // Raw data files which have not been loaded from the project archive are not counted
+      if (LazyRawDataFile.isLoaded(rawDataFile))
+        scans += rawDataFile.getScans().size();
+    }
+    return scans;
+  }
+
+  @Override
+  public long getFeatureTableRowCount() {
+    long rows = 0;
+    for (FeatureTable featureTable : MZmineCore.getCurrentProject().getFeatureTables())
+      rows += featureTable.getRows().size();
+    return rows;
+  }
+
+  @Override
+  public int getAuditLogEntryCount() {
+    return MZmineCore.getCurrentProject().getAuditLog().size();
+  }
+
+}
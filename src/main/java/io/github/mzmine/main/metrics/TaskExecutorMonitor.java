@@ -0,0 +1,78 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.main.metrics;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.taskcontrol.MemoryAdmissionController;
+
+class TaskExecutorMonitor implements TaskExecutorMXBean {
+
+  private final @Nonnull ThreadPoolExecutor executor;
+  private final @Nonnull MemoryAdmissionController admissionController;
+
+  TaskExecutorMonitor(@Nonnull ThreadPoolExecutor executor,
+      @Nonnull MemoryAdmissionController admissionController) {
+    this.executor = executor;
+    this.admissionController = admissionController;
+  }
+
+  @Override
+  public int getQueuedTaskCount() {
+    return executor.getQueue().size();
+  }
+
+  @Override
+  public int getActiveTaskCount() {
+    return executor.getActiveCount();
+  }
+
+  @Override
+  public long getCompletedTaskCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  @Override
+  public int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  @Override
+  public int getCorePoolSize() {
+    return executor.getCorePoolSize();
+  }
+
+  @Override
+  public int getTasksAwaitingAdmission() {
+    return admissionController.getPendingTaskCount();
+  }
+
+  @Override
+  public long getReservedMemoryBytes() {
+    return admissionController.getReservedBytes();
+  }
+
+  @Override
+  public long getMemoryBudgetBytes() {
+    return admissionController.getBudget();
+  }
+
+}
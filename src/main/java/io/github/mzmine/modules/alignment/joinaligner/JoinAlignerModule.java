@@ -36,6 +36,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -124,6 +125,8 @@ public class JoinAlignerModule implements MZmineProcessingModule {
       }
     });
 
+    TaskMetrics.of(newTask).recordInput(featureTables.getMatchingFeatureTables());
+
     // Add the task to the queue
     tasks.add(newTask);
   }
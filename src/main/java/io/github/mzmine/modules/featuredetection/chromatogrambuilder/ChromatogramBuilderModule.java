@@ -19,6 +19,7 @@
 package io.github.mzmine.modules.featuredetection.chromatogrambuilder;
 
 import java.util.Collection;
+import java.util.Collections;
 
 import javax.annotation.Nonnull;
 
@@ -34,6 +35,8 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.ResultCacheKey;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -98,6 +101,16 @@ public class ChromatogramBuilderModule implements MZmineProcessingModule {
         project.addFeatureTable(featureTable);
       });
 
+      TaskMetrics.of(newTask).recordInput(rawDataFile);
+
+      // Reuse the result of an identical earlier run, if available in the result cache. Only the
+      // chromatograms are cached, so the key ignores the name suffix and the other selected files.
+      final ParameterSet keyParameters = parameters.clone();
+      keyParameters.getParameter(ChromatogramBuilderParameters.rawDataFiles)
+          .setValue(new RawDataFilesSelection(Collections.singletonList(rawDataFile)));
+      keyParameters.getParameter(ChromatogramBuilderParameters.nameSuffix).setValue("");
+      newTask.setResultCacheKey(new ResultCacheKey(getClass(), keyParameters, rawDataFile));
+
       // Add the task to the queue
       tasks.add(newTask);
 
@@ -37,12 +37,16 @@ import io.github.msdk.featdet.chromatogrambuilder.ChromatogramBuilderMethod;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.taskcontrol.CacheableTask;
 import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.ResultCache;
+import io.github.mzmine.taskcontrol.ResultCacheKey;
 import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
-public class ChromatogramBuilderTask extends Task<Object> implements MZmineTask {
+public class ChromatogramBuilderTask extends Task<Object>
+    implements MZmineTask, CacheableTask {
 
   private Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -51,6 +55,7 @@ public class ChromatogramBuilderTask extends Task<Object> implements MZmineTask
   private final @Nullable String nameSuffix;
   private String title, message;
   private FeatureTable featureTable;
+  private @Nullable ResultCacheKey resultCacheKey;
 
   private MSDKMethod<List<Chromatogram>> chromatogramBuilderMethod;
   private MSDKMethod<FeatureTable> chromatogramToFeatureTableMethod;
@@ -104,11 +109,31 @@ public class ChromatogramBuilderTask extends Task<Object> implements MZmineTask
     updateMessage(message);
   }
 
+  @Override
+  public void setResultCacheKey(@Nullable ResultCacheKey key) {
+    this.resultCacheKey = key;
+  }
+
   @Override
   protected Object call() throws Exception {
+
+    // Release the key (which references the input data) once the task has run
+    final ResultCacheKey cacheKey = resultCacheKey;
+    resultCacheKey = null;
+
     try {
-      List<Chromatogram> detectedChromatograms =
-          (List<Chromatogram>) chromatogramBuilderMethod.execute();
+      // The chromatograms are cached rather than the feature table, so that the table is always
+      // built the same way and keeps its chromatograms and the link to the raw data file
+      List<Chromatogram> detectedChromatograms = null;
+      if ((cacheKey != null) && ResultCache.isEnabled()) {
+        Object cachedResult = ResultCache.get(cacheKey);
+        if (cachedResult instanceof List)
+          detectedChromatograms = (List<Chromatogram>) cachedResult;
+      }
+
+      final boolean fromCache = detectedChromatograms != null;
+      if (!fromCache)
+        detectedChromatograms = (List<Chromatogram>) chromatogramBuilderMethod.execute();
 
       // Create a new feature table
       featureTable =
@@ -116,6 +141,7 @@ public class ChromatogramBuilderTask extends Task<Object> implements MZmineTask
 
       // Create a new sample
       Sample sample = MSDKObjectBuilder.getSample(rawDataFile.getName());
+      sample.setRawDataFile(rawDataFile);
 
       // Add the chromatograms to the feature table
       this.chromatogramToFeatureTableMethod =
@@ -124,6 +150,8 @@ public class ChromatogramBuilderTask extends Task<Object> implements MZmineTask
       // Run method
       try {
         chromatogramToFeatureTableMethod.execute();
+        if ((cacheKey != null) && (!fromCache) && (!isCancelled()))
+          ResultCache.put(cacheKey, detectedChromatograms);
       } catch (Throwable e) {
         final String msg = "Error executing task " + title + ": " + e.getMessage();
         logger.error(msg, e);
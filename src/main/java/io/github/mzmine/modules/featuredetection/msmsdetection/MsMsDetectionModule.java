@@ -36,6 +36,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -112,6 +113,8 @@ public class MsMsDetectionModule implements MZmineProcessingModule {
         project.addFeatureTable(featureTable);
       });
 
+      TaskMetrics.of(newTask).recordInput(rawDataFile);
+
       // Add the task to the queue
       tasks.add(newTask);
 
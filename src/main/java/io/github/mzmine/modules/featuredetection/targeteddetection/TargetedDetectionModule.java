@@ -46,6 +46,7 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -173,6 +174,8 @@ public class TargetedDetectionModule implements MZmineProcessingModule {
         project.addFeatureTable(featureTable);
       });
 
+      TaskMetrics.of(newTask).recordInput(rawDataFile);
+
       // Add the task to the queue
       tasks.add(newTask);
 
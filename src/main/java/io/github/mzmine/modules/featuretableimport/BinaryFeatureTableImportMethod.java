@@ -0,0 +1,253 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.modules.io.binaryexport.FeatureTableBinaryFormat;
+
+/**
+ * Reads a feature table written in the {@link FeatureTableBinaryFormat}, one row group at a time
+ */
+public class BinaryFeatureTableImportMethod implements MSDKMethod<FeatureTable> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull File file;
+  private final @Nonnull DataPointStore dataStore;
+
+  private volatile long readBytes, totalBytes;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  public BinaryFeatureTableImportMethod(@Nonnull File file, @Nonnull DataPointStore dataStore) {
+    this.file = file;
+    this.dataStore = dataStore;
+  }
+
+  @Override
+  public FeatureTable execute() throws MSDKException {
+    logger.info("Started binary import of " + file);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      totalBytes = channel.size();
+
+      // Header
+      FeatureTableBinaryFormat.readMagic(channel);
+      final String tableName = FeatureTableBinaryFormat.readString(channel);
+      final FeatureTable featureTable = MSDKObjectBuilder.getFeatureTable(tableName, dataStore);
+      final int sampleCount = FeatureTableBinaryFormat.read(channel, 4).getInt();
+      final List<Sample> samples = new ArrayList<>();
+      for (int i = 0; i < sampleCount; i++)
+        samples.add(MSDKObjectBuilder.getSample(FeatureTableBinaryFormat.readString(channel)));
+      final int columnCount = FeatureTableBinaryFormat.read(channel, 4).getInt();
+      final List<FeatureTableColumn<Object>> columns = new ArrayList<>();
+      final byte types[] = new byte[columnCount];
+      int idColumn = -1;
+      for (int i = 0; i < columnCount; i++) {
+        final String name = FeatureTableBinaryFormat.readString(channel);
+        final ByteBuffer columnInfo = FeatureTableBinaryFormat.read(channel, 5);
+        final int sampleIndex = columnInfo.getInt();
+        types[i] = columnInfo.get();
+        final Sample sample = sampleIndex >= 0 ? samples.get(sampleIndex) : null;
+        final FeatureTableColumn<Object> column = createColumn(name, types[i], sample);
+        featureTable.addColumn(column);
+        columns.add(column);
+        if (name.equals(ColumnName.ID.getName()) && (sample == null))
+          idColumn = i;
+      }
+
+      // Row groups
+      int rowCount = 0;
+      while (true) {
+        if (canceled)
+          return null;
+        final int groupSize = FeatureTableBinaryFormat.read(channel, 4).getInt();
+        if (groupSize == 0)
+          break;
+
+        final Object values[][] = new Object[columnCount][];
+        for (int i = 0; i < columnCount; i++)
+          values[i] = readColumn(channel, groupSize, types[i], columns.get(i).getName());
+
+        for (int r = 0; r < groupSize; r++) {
+          final Object id = idColumn >= 0 ? values[idColumn][r] : null;
+          final FeatureTableRow row = MSDKObjectBuilder.getFeatureTableRow(featureTable,
+              id instanceof Integer ? (Integer) id : rowCount + r + 1);
+          for (int i = 0; i < columnCount; i++) {
+            if (values[i][r] != null)
+              row.setData(columns.get(i), values[i][r]);
+          }
+          featureTable.addRow(row);
+        }
+        rowCount += groupSize;
+        readBytes = channel.position();
+      }
+
+      logger.info("Finished binary import of " + file + ", " + rowCount + " rows");
+      result = featureTable;
+      return result;
+
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static FeatureTableColumn<Object> createColumn(String name, byte type,
+      @Nullable Sample sample) {
+    for (ColumnName columnName : ColumnName.values()) {
+      if (columnName.getName().equals(name))
+        return (FeatureTableColumn<Object>) MSDKObjectBuilder.getFeatureTableColumn(columnName,
+            sample);
+    }
+    final Class<?> dataTypeClass;
+    switch (type) {
+      case FeatureTableBinaryFormat.TYPE_INT32:
+        dataTypeClass = Integer.class;
+        break;
+      case FeatureTableBinaryFormat.TYPE_FLOAT32:
+        dataTypeClass = Float.class;
+        break;
+      case FeatureTableBinaryFormat.TYPE_FLOAT64:
+        dataTypeClass = Double.class;
+        break;
+      default:
+        dataTypeClass = String.class;
+        break;
+    }
+    return (FeatureTableColumn<Object>) MSDKObjectBuilder.getFeatureTableColumn(name,
+        dataTypeClass, sample);
+  }
+
+  private static Object[] readColumn(FileChannel channel, int rowCount, byte type,
+      String columnName) throws IOException {
+    final byte nullBitmap[] = FeatureTableBinaryFormat.read(channel, (rowCount + 7) / 8).array();
+    final Object values[] = new Object[rowCount];
+
+    if (type == FeatureTableBinaryFormat.TYPE_STRING) {
+      final ByteBuffer offsets = FeatureTableBinaryFormat.read(channel, (rowCount + 1) * 4);
+      final int starts[] = new int[rowCount + 1];
+      for (int i = 0; i <= rowCount; i++)
+        starts[i] = offsets.getInt();
+      final byte bytes[] = FeatureTableBinaryFormat.read(channel, starts[rowCount]).array();
+      for (int i = 0; i < rowCount; i++) {
+        if (isPresent(nullBitmap, i)) {
+          values[i] = toValue(new String(bytes, starts[i], starts[i + 1] - starts[i],
+              StandardCharsets.UTF_8), columnName);
+        }
+      }
+      return values;
+    }
+
+    final int valueSize = type == FeatureTableBinaryFormat.TYPE_FLOAT64 ? 8 : 4;
+    final ByteBuffer data = FeatureTableBinaryFormat.read(channel, rowCount * valueSize);
+    for (int i = 0; i < rowCount; i++) {
+      final Object value;
+      switch (type) {
+        case FeatureTableBinaryFormat.TYPE_INT32:
+          value = data.getInt();
+          break;
+        case FeatureTableBinaryFormat.TYPE_FLOAT32:
+          value = data.getFloat();
+          break;
+        default:
+          value = data.getDouble();
+          break;
+      }
+      if (isPresent(nullBitmap, i))
+        values[i] = toValue(value, columnName);
+    }
+    return values;
+  }
+
+  private static boolean isPresent(byte nullBitmap[], int index) {
+    return (nullBitmap[index / 8] & (1 << (index % 8))) != 0;
+  }
+
+  /**
+   * Converts the stored values of the RT and ion annotation columns back to their data types
+   */
+  private static Object toValue(Object value, String columnName) {
+    if (columnName.equals(ColumnName.RT.getName()) && (value instanceof Float))
+      return MSDKObjectBuilder.getChromatographyInfo1D(SeparationType.UNKNOWN, (Float) value);
+    if (columnName.equals(ColumnName.IONANNOTATION.getName()) && (value instanceof String)) {
+      final List<IonAnnotation> annotations = new ArrayList<>();
+      for (String line : ((String) value).split("\n")) {
+        if (line.isEmpty())
+          continue;
+        final int tab = line.indexOf('\t');
+        final IonAnnotation annotation = MSDKObjectBuilder.getIonAnnotation();
+        final String id = tab >= 0 ? line.substring(0, tab) : line;
+        final String description = tab >= 0 ? line.substring(tab + 1) : "";
+        if (!id.isEmpty())
+          annotation.setAnnotationId(id);
+        if (!description.isEmpty())
+          annotation.setDescription(description);
+        annotations.add(annotation);
+      }
+      return annotations;
+    }
+    return value;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalBytes == 0)
+      return null;
+    return (float) readBytes / totalBytes;
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Splits the lines of a delimited text buffer (e.g. a memory-mapped part of a CSV file) into
+ * fields without creating intermediate strings. Fields may be enclosed in double quotes, quotes
+ * within quoted fields are escaped by doubling them. Numbers are parsed directly from the bytes.
+ */
+class DelimitedLineReader {
+
+  private static final double POWERS_OF_TEN[] = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+      1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private final @Nonnull ByteBuffer buffer;
+  private final byte separator;
+  private final int limit;
+  private int position;
+
+  private int fieldCount;
+  private int fieldStarts[] = new int[64];
+  private int fieldEnds[] = new int[64];
+  private boolean fieldQuoted[] = new boolean[64];
+
+  DelimitedLineReader(@Nonnull ByteBuffer buffer, byte separator) {
+    this.buffer = buffer;
+    this.separator = separator;
+    this.position = buffer.position();
+    this.limit = buffer.limit();
+  }
+
+  /**
+   * @return Position of the next unread line in the buffer
+   */
+  int getPosition() {
+    return position;
+  }
+
+  /**
+   * Reads the fields of the next line
+   * 
+   * @return False if the end of the buffer was reached
+   */
+  boolean nextLine() {
+    if (position >= limit)
+      return false;
+    fieldCount = 0;
+    while (true) {
+      if (fieldCount == fieldStarts.length) {
+        fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+        fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        fieldQuoted = Arrays.copyOf(fieldQuoted, fieldCount * 2);
+      }
+      final boolean quoted = (position < limit) && (buffer.get(position) == '"');
+      int end;
+      if (quoted) {
+        fieldStarts[fieldCount] = ++position;
+        while (position < limit) {
+          if (buffer.get(position) == '"') {
+            if ((position + 1 < limit) && (buffer.get(position + 1) == '"')) {
+              position += 2;
+              continue;
+            }
+            break;
+          }
+          position++;
+        }
+        end = position;
+        // Skip the closing quote and anything up to the next separator
+        while ((position < limit) && (buffer.get(position) != separator)
+            && (buffer.get(position) != '\n'))
+          position++;
+      } else {
+        fieldStarts[fieldCount] = position;
+        while ((position < limit) && (buffer.get(position) != separator)
+            && (buffer.get(position) != '\n'))
+          position++;
+        end = position;
+        if ((end > fieldStarts[fieldCount]) && (buffer.get(end - 1) == '\r'))
+          end--;
+      }
+      fieldEnds[fieldCount] = end;
+      fieldQuoted[fieldCount] = quoted;
+      fieldCount++;
+
+      if ((position >= limit) || (buffer.get(position) == '\n')) {
+        position++;
+        return true;
+      }
+      position++; // separator
+    }
+  }
+
+  int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * @return True if the field is empty or missing in the current line
+   */
+  boolean isEmpty(int field) {
+    return (field >= fieldCount) || (fieldStarts[field] == fieldEnds[field]);
+  }
+
+  /**
+   * @return True if the field equals the given ASCII text
+   */
+  boolean equals(int field, @Nonnull String text) {
+    if (field >= fieldCount)
+      return false;
+    final int start = fieldStarts[field];
+    if (fieldEnds[field] - start != text.length())
+      return false;
+    for (int i = 0; i < text.length(); i++) {
+      if (buffer.get(start + i) != text.charAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return Text of the field, or null if the field is empty
+   */
+  @Nullable
+  String getString(int field) {
+    if (isEmpty(field))
+      return null;
+    final int start = fieldStarts[field];
+    final byte bytes[] = new byte[fieldEnds[field] - start];
+    for (int i = 0; i < bytes.length; i++)
+      bytes[i] = buffer.get(start + i);
+    final String text = new String(bytes, StandardCharsets.UTF_8);
+    return fieldQuoted[field] ? text.replace("\"\"", "\"") : text;
+  }
+
+  /**
+   * Parses the field as a decimal number
+   * 
+   * @return The number, or NaN if the field is empty or not a number
+   */
+  double getDouble(int field) {
+    if (isEmpty(field))
+      return Double.NaN;
+    return parseDouble(fieldStarts[field], fieldEnds[field]);
+  }
+
+  /**
+   * Parses the field as a decimal number, up to the end of the field or the given terminator
+   * character
+   * 
+   * @return The number, or NaN if the field is empty or not a number
+   */
+  double getDouble(int field, char terminator) {
+    if (isEmpty(field))
+      return Double.NaN;
+    int end = fieldEnds[field];
+    for (int i = fieldStarts[field]; i < end; i++) {
+      if (buffer.get(i) == terminator) {
+        end = i;
+        break;
+      }
+    }
+    return parseDouble(fieldStarts[field], end);
+  }
+
+  /**
+   * Parses digits, fraction and exponent into a long mantissa and a decimal exponent. Numbers with
+   * at most 15 significant digits and a small exponent are converted exactly by a single
+   * multiplication or division, the others fall back to {@link Double#parseDouble(String)}.
+   */
+  private double parseDouble(int start, int end) {
+    int i = start;
+    while ((i < end) && (buffer.get(i) == ' '))
+      i++;
+    while ((end > i) && (buffer.get(end - 1) == ' '))
+      end--;
+    if (i == end)
+      return Double.NaN;
+
+    boolean negative = false;
+    if ((buffer.get(i) == '-') || (buffer.get(i) == '+')) {
+      negative = buffer.get(i) == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int digits = 0, exponent = 0;
+    boolean anyDigit = false, dot = false;
+    for (; i < end; i++) {
+      final byte b = buffer.get(i);
+      if ((b >= '0') && (b <= '9')) {
+        anyDigit = true;
+        if ((mantissa == 0) && (b == '0')) {
+          if (dot)
+            exponent--;
+          continue;
+        }
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+          if (dot)
+            exponent--;
+        } else if (!dot) {
+          exponent++;
+        }
+      } else if ((b == '.') && !dot) {
+        dot = true;
+      } else {
+        break;
+      }
+    }
+    if (!anyDigit)
+      return parseFallback(start, end);
+
+    if ((i < end) && ((buffer.get(i) == 'e') || (buffer.get(i) == 'E'))) {
+      i++;
+      boolean negativeExponent = false;
+      if ((i < end) && ((buffer.get(i) == '-') || (buffer.get(i) == '+'))) {
+        negativeExponent = buffer.get(i) == '-';
+        i++;
+      }
+      int value = 0;
+      boolean exponentDigit = false;
+      for (; (i < end) && (buffer.get(i) >= '0') && (buffer.get(i) <= '9'); i++) {
+        if (value < 10000)
+          value = value * 10 + (buffer.get(i) - '0');
+        exponentDigit = true;
+      }
+      if (!exponentDigit)
+        return Double.NaN;
+      exponent += negativeExponent ? -value : value;
+    }
+    if (i != end)
+      return parseFallback(start, end);
+
+    if ((digits > 15) || (Math.abs(exponent) >= POWERS_OF_TEN.length))
+      return parseFallback(start, end);
+    double value = mantissa;
+    value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses special values (NaN, Infinity) and numbers beyond the fast path
+   */
+  private double parseFallback(int start, int end) {
+    final byte bytes[] = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++)
+      bytes[i] = buffer.get(start + i);
+    try {
+      return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+}
@@ -34,14 +34,13 @@ import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
 import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.io.csv.CsvFileImportMethod;
-import io.github.msdk.io.mztab.MzTabFileImportMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -99,10 +98,13 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
       switch (fileExtension.toUpperCase()) {
         default:
         case "CSV":
-          method = new CsvFileImportMethod(fileName, dataStore);
+          method = new TextFeatureTableImportMethod(fileName, dataStore, TextTableFormat.CSV);
           break;
         case "MZTAB":
-          method = new MzTabFileImportMethod(fileName, dataStore);
+          method = new TextFeatureTableImportMethod(fileName, dataStore, TextTableFormat.MZTAB);
+          break;
+        case "MZFT":
+          method = new BinaryFeatureTableImportMethod(fileName, dataStore);
           break;
       }
       final MSDKMethod<?> finalMethod = method;
@@ -136,6 +138,8 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
         project.addFeatureTable(featureTable);
       });
 
+      TaskMetrics.of(newTask).recordInput(fileName);
+
       tasks.add(newTask);
 
     }
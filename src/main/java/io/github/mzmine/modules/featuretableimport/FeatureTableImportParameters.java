@@ -38,8 +38,10 @@ import javafx.stage.FileChooser.ExtensionFilter;
 public class FeatureTableImportParameters extends ParameterSet {
 
   private static final ExtensionFilter filters[] =
-      new ExtensionFilter[] {new ExtensionFilter("All feature table files", "*.csv", "*.mzTab"),
+      new ExtensionFilter[] {
+          new ExtensionFilter("All feature table files", "*.csv", "*.mzTab", "*.mzft"),
           new ExtensionFilter("CSV files", "*.csv"), new ExtensionFilter("mzTab files", "*.mzTab"),
+          new ExtensionFilter("Binary feature table files", "*.mzft"),
           new ExtensionFilter("All files", "*.*")};
 
   public static final FileNamesParameter fileNames =
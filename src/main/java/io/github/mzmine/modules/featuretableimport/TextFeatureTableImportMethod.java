@@ -0,0 +1,625 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.featuretableimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Parallel import of feature tables in text formats (CSV or mzTab). The file is memory-mapped and
+ * split into chunks at line boundaries. The chunks are parsed in parallel into primitive arrays,
+ * one per column, then the rows of each chunk are created in parallel and finally added to the
+ * feature table in the order of the file.
+ */
+class TextFeatureTableImportMethod implements MSDKMethod<FeatureTable> {
+
+  private static final int CHUNK_SIZE = 8 << 20; // 8 MB
+  private static final int SCAN_WINDOW_SIZE = 64 << 20; // 64 MB
+  private static final int INITIAL_CHUNK_ROWS = 1024;
+
+  private static final Pattern MZTAB_ABUNDANCE =
+      Pattern.compile("smallmolecule_abundance_assay\\[(\\d+)\\]");
+  private static final Pattern MZTAB_ASSAY_COLUMN = Pattern.compile("opt_assay\\[(\\d+)\\]_(.+)");
+  private static final String MZTAB_GLOBAL_COLUMN = "opt_global_";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull File file;
+  private final @Nonnull DataPointStore dataStore;
+  private final @Nonnull TextTableFormat format;
+
+  private final AtomicLong parsedBytes = new AtomicLong();
+  private volatile long totalBytes;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  /**
+   * Type of the values of an imported column
+   */
+  private enum ValueType {
+    INTEGER, FLOAT, DOUBLE, RT, STRING, ANNOTATION_ID, ANNOTATION_DESCRIPTION;
+
+    boolean isNumeric() {
+      return (this == INTEGER) || (this == FLOAT) || (this == DOUBLE) || (this == RT);
+    }
+  }
+
+  /**
+   * Field of the text file imported into a feature table column
+   */
+  private static class ImportedColumn {
+    private final int field;
+    private final @Nonnull ValueType type;
+    private final @Nonnull FeatureTableColumn<Object> column;
+
+    private ImportedColumn(int field, @Nonnull ValueType type,
+        @Nonnull FeatureTableColumn<Object> column) {
+      this.field = field;
+      this.type = type;
+      this.column = column;
+    }
+  }
+
+  /**
+   * Values of the lines of one chunk, stored by column. Numeric values are kept as doubles, with
+   * NaN for missing values.
+   */
+  private static class ParsedChunk {
+    private int rowCount;
+    private double numbers[][];
+    private String strings[][];
+  }
+
+  TextFeatureTableImportMethod(@Nonnull File file, @Nonnull DataPointStore dataStore,
+      @Nonnull TextTableFormat format) {
+    this.file = file;
+    this.dataStore = dataStore;
+    this.format = format;
+  }
+
+  @Override
+  public FeatureTable execute() throws MSDKException {
+    logger.info("Started " + format + " import of " + file);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      totalBytes = channel.size();
+      final FeatureTable featureTable =
+          MSDKObjectBuilder.getFeatureTable(file.getName(), dataStore);
+
+      // Read the column names (and the metadata of mzTab files) from the beginning of the file
+      final ByteBuffer preamble =
+          channel.map(MapMode.READ_ONLY, 0, Math.min(totalBytes, Integer.MAX_VALUE));
+      final byte separator =
+          format == TextTableFormat.MZTAB ? (byte) '\t' : findSeparator(preamble);
+      final DelimitedLineReader header = new DelimitedLineReader(preamble, separator);
+      final List<ImportedColumn> columns;
+      if (format == TextTableFormat.MZTAB) {
+        final Map<String, String> metadata = new HashMap<>();
+        boolean headerFound = false;
+        while (!headerFound && header.nextLine()) {
+          if (header.equals(0, "MTD") && !header.isEmpty(1) && !header.isEmpty(2))
+            metadata.put(header.getString(1), header.getString(2));
+          headerFound = header.equals(0, "SMH");
+        }
+        if (!headerFound) {
+          logger.warn("No small molecule section found in " + file);
+          result = featureTable;
+          return result;
+        }
+        columns = createMzTabColumns(header, metadata, featureTable);
+      } else {
+        if (!header.nextLine()) {
+          result = featureTable;
+          return result;
+        }
+        columns = createCsvColumns(header, featureTable);
+      }
+      final long dataStart = header.getPosition();
+
+      // Parse the chunks in parallel
+      final long bounds[] =
+          splitLines(channel, dataStart, totalBytes, format == TextTableFormat.CSV);
+      final ParsedChunk chunks[];
+      try {
+        chunks = MZmineCore.getComputePool()
+            .invoke(() -> IntStream.range(0, bounds.length - 1).parallel()
+                .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1], separator, columns))
+                .toArray(ParsedChunk[]::new));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      if (canceled)
+        return null;
+
+      // Create the rows in parallel and add them in the order of the file
+      final int offsets[] = new int[chunks.length];
+      for (int i = 1; i < chunks.length; i++)
+        offsets[i] = offsets[i - 1] + chunks[i - 1].rowCount;
+      final List<List<FeatureTableRow>> rows = MZmineCore.getComputePool()
+          .invoke(() -> IntStream.range(0, chunks.length).parallel()
+              .mapToObj(i -> createRows(featureTable, chunks[i], offsets[i], columns))
+              .collect(Collectors.toList()));
+      int rowCount = 0;
+      for (List<FeatureTableRow> chunkRows : rows) {
+        for (FeatureTableRow row : chunkRows)
+          featureTable.addRow(row);
+        rowCount += chunkRows.size();
+      }
+
+      logger.info("Finished " + format + " import of " + file + ", " + rowCount + " rows");
+      result = featureTable;
+      return result;
+
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+  }
+
+  /**
+   * @return The most frequent of comma, semicolon and tab in the first line
+   */
+  private static byte findSeparator(ByteBuffer buffer) {
+    final byte candidates[] = {',', ';', '\t'};
+    final int counts[] = new int[candidates.length];
+    boolean inQuotes = false;
+    for (int i = buffer.position(); i < buffer.limit(); i++) {
+      final byte b = buffer.get(i);
+      if (b == '"')
+        inQuotes = !inQuotes;
+      if (inQuotes)
+        continue;
+      if (b == '\n')
+        break;
+      for (int c = 0; c < candidates.length; c++) {
+        if (b == candidates[c])
+          counts[c]++;
+      }
+    }
+    int best = 0;
+    for (int c = 1; c < candidates.length; c++) {
+      if (counts[c] > counts[best])
+        best = c;
+    }
+    return candidates[best];
+  }
+
+  /**
+   * Maps the columns of a CSV file. Columns named like a {@link ColumnName} are common columns,
+   * columns named "sample name" + " " + column name are sample columns, all other columns are
+   * imported as text.
+   */
+  private List<ImportedColumn> createCsvColumns(DelimitedLineReader header,
+      FeatureTable featureTable) {
+    final Map<String, Sample> samples = new HashMap<>();
+    final Map<String, FeatureTableColumn<Object>> created = new HashMap<>();
+    final List<ImportedColumn> columns = new ArrayList<>();
+    for (int field = 0; field < header.getFieldCount(); field++) {
+      final String name = header.getString(field);
+      if (name == null)
+        continue;
+
+      ColumnName columnName = null;
+      String sampleName = null;
+      for (ColumnName candidate : ColumnName.values()) {
+        if (name.equals(candidate.getName())) {
+          columnName = candidate;
+          sampleName = null;
+          break;
+        }
+        final String suffix = " " + candidate.getName();
+        if (name.endsWith(suffix) && ((columnName == null)
+            || (candidate.getName().length() > columnName.getName().length()))) {
+          columnName = candidate;
+          sampleName = name.substring(0, name.length() - suffix.length());
+        }
+      }
+      final Sample sample =
+          sampleName != null ? samples.computeIfAbsent(sampleName, MSDKObjectBuilder::getSample)
+              : null;
+      addColumn(columns, created, featureTable, field, columnName, name, sample,
+          columnName != null ? getValueType(columnName) : ValueType.STRING);
+    }
+    return columns;
+  }
+
+  /**
+   * Maps the columns of the small molecule section of an mzTab file. The assays are imported as
+   * samples, named by the location of their MS run.
+   */
+  private List<ImportedColumn> createMzTabColumns(DelimitedLineReader header,
+      Map<String, String> metadata, FeatureTable featureTable) {
+    final Map<String, Sample> samples = new HashMap<>();
+    final Map<String, FeatureTableColumn<Object>> created = new HashMap<>();
+    final List<ImportedColumn> columns = new ArrayList<>();
+    for (int field = 1; field < header.getFieldCount(); field++) {
+      final String name = header.getString(field);
+      if (name == null)
+        continue;
+
+      final Matcher abundance = MZTAB_ABUNDANCE.matcher(name);
+      final Matcher assayColumn = MZTAB_ASSAY_COLUMN.matcher(name);
+      switch (name) {
+        case "identifier":
+          addColumn(columns, created, featureTable, field, ColumnName.IONANNOTATION, name, null,
+              ValueType.ANNOTATION_ID);
+          break;
+        case "description":
+          addColumn(columns, created, featureTable, field, ColumnName.IONANNOTATION, name, null,
+              ValueType.ANNOTATION_DESCRIPTION);
+          break;
+        case "exp_mass_to_charge":
+          addColumn(columns, created, featureTable, field, ColumnName.MZ, name, null,
+              ValueType.DOUBLE);
+          break;
+        case "retention_time":
+          addColumn(columns, created, featureTable, field, ColumnName.RT, name, null,
+              ValueType.RT);
+          break;
+        case "charge":
+          addColumn(columns, created, featureTable, field, ColumnName.CHARGE, name, null,
+              ValueType.INTEGER);
+          break;
+        default:
+          if (abundance.matches()) {
+            final Sample sample = getAssaySample(abundance.group(1), metadata, samples);
+            addColumn(columns, created, featureTable, field, ColumnName.AREA, name, sample,
+                getValueType(ColumnName.AREA));
+          } else if (assayColumn.matches()) {
+            final Sample sample = getAssaySample(assayColumn.group(1), metadata, samples);
+            final ColumnName columnName = findColumnName(assayColumn.group(2));
+            addColumn(columns, created, featureTable, field, columnName, assayColumn.group(2),
+                sample, columnName != null ? getValueType(columnName) : ValueType.STRING);
+          } else if (name.startsWith(MZTAB_GLOBAL_COLUMN)) {
+            final String globalName = name.substring(MZTAB_GLOBAL_COLUMN.length());
+            final ColumnName columnName = findColumnName(globalName);
+            addColumn(columns, created, featureTable, field, columnName, globalName, null,
+                columnName != null ? getValueType(columnName) : ValueType.STRING);
+          }
+          break;
+      }
+    }
+    return columns;
+  }
+
+  private static Sample getAssaySample(String assay, Map<String, String> metadata,
+      Map<String, Sample> samples) {
+    final String msRun = metadata.get("assay[" + assay + "]-ms_run_ref");
+    final String location = msRun != null ? metadata.get(msRun + "-location") : null;
+    final String sampleName =
+        location != null ? FilenameUtils.getName(location) : "assay[" + assay + "]";
+    return samples.computeIfAbsent(sampleName, MSDKObjectBuilder::getSample);
+  }
+
+  /**
+   * Finds the column name matching the name of an optional mzTab column, ignoring case, spaces,
+   * punctuation and a "peak_" prefix (e.g. "peak_rt_start" matches "RT Start")
+   */
+  private static @Nullable ColumnName findColumnName(String name) {
+    String normalized = name.toLowerCase();
+    if (normalized.startsWith("peak_"))
+      normalized = normalized.substring("peak_".length());
+    normalized = normalized.replaceAll("[^a-z0-9]", "");
+    for (ColumnName columnName : ColumnName.values()) {
+      if (columnName.getName().toLowerCase().replaceAll("[^a-z0-9]", "").equals(normalized))
+        return columnName;
+    }
+    return null;
+  }
+
+  /**
+   * @return Type of the values of the column, or null if the column cannot be imported from text
+   */
+  private static @Nullable ValueType getValueType(ColumnName columnName) {
+    switch (columnName) {
+      case ID:
+      case GROUPID:
+      case CHARGE:
+      case NUMBEROFDATAPOINTS:
+        return ValueType.INTEGER;
+      case MZ:
+      case FWHM:
+      case TAILINGFACTOR:
+      case ASYMMETRYFACTOR:
+        return ValueType.DOUBLE;
+      case RT:
+        return ValueType.RT;
+      case IONANNOTATION:
+        return ValueType.ANNOTATION_DESCRIPTION;
+      case CHROMATOGRAM:
+        return null;
+      default:
+        return ValueType.FLOAT;
+    }
+  }
+
+  /**
+   * Adds the feature table column for a field. The ion annotation column can be filled from
+   * several fields (identifier and description), other duplicate columns are skipped.
+   */
+  @SuppressWarnings("unchecked")
+  private static void addColumn(List<ImportedColumn> columns,
+      Map<String, FeatureTableColumn<Object>> created, FeatureTable featureTable, int field,
+      @Nullable ColumnName columnName, String name, @Nullable Sample sample,
+      @Nullable ValueType type) {
+    if (type == null)
+      return;
+    final String key =
+        (sample != null ? sample.getName() : "") + "\t" + (columnName != null ? columnName : name);
+    FeatureTableColumn<Object> column = created.get(key);
+    if (column == null) {
+      if (columnName != null) {
+        column = (FeatureTableColumn<Object>) MSDKObjectBuilder.getFeatureTableColumn(columnName,
+            sample);
+      } else {
+        column = (FeatureTableColumn<Object>) MSDKObjectBuilder.getFeatureTableColumn(name,
+            String.class, sample);
+      }
+      featureTable.addColumn(column);
+      created.put(key, column);
+    } else if (columnName != ColumnName.IONANNOTATION) {
+      return;
+    }
+    columns.add(new ImportedColumn(field, type, column));
+  }
+
+  /**
+   * Splits the data into chunks of about {@link #CHUNK_SIZE} bytes at line boundaries. If fields
+   * can be quoted, the data is scanned sequentially to skip line breaks within quotes, otherwise
+   * only the ends of the lines at the chunk boundaries are searched.
+   * 
+   * @return Start positions of the chunks, followed by the end of the data
+   */
+  private static long[] splitLines(FileChannel channel, long start, long end, boolean quoted)
+      throws IOException {
+    final List<Long> bounds = new ArrayList<>();
+    bounds.add(start);
+    long next = start + CHUNK_SIZE;
+    if (quoted) {
+      boolean inQuotes = false;
+      for (long window = start; (window < end) && (next < end); window += SCAN_WINDOW_SIZE) {
+        final int length = (int) Math.min(SCAN_WINDOW_SIZE, end - window);
+        final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, window, length);
+        for (int i = 0; i < length; i++) {
+          final byte b = buffer.get(i);
+          if (b == '"') {
+            inQuotes = !inQuotes;
+          } else if ((b == '\n') && !inQuotes && (window + i + 1 >= next)
+              && (window + i + 1 < end)) {
+            bounds.add(window + i + 1);
+            next = window + i + 1 + CHUNK_SIZE;
+          }
+        }
+      }
+    } else {
+      while (next < end) {
+        final long lineEnd = findLineEnd(channel, next, end);
+        if (lineEnd >= end)
+          break;
+        bounds.add(lineEnd);
+        next = lineEnd + CHUNK_SIZE;
+      }
+    }
+    bounds.add(end);
+
+    final long result[] = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = bounds.get(i);
+    return result;
+  }
+
+  /**
+   * @return Position after the next line break, or the end of the data
+   */
+  private static long findLineEnd(FileChannel channel, long position, long end)
+      throws IOException {
+    final int windowSize = 1 << 16;
+    for (long window = position; window < end; window += windowSize) {
+      final int length = (int) Math.min(windowSize, end - window);
+      final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, window, length);
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(i) == '\n')
+          return window + i + 1;
+      }
+    }
+    return end;
+  }
+
+  private ParsedChunk parseChunk(FileChannel channel, long start, long end, byte separator,
+      List<ImportedColumn> columns) {
+    final ByteBuffer buffer;
+    try {
+      buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    final DelimitedLineReader reader = new DelimitedLineReader(buffer, separator);
+    final boolean mzTab = format == TextTableFormat.MZTAB;
+
+    final ParsedChunk chunk = new ParsedChunk();
+    chunk.numbers = new double[columns.size()][];
+    chunk.strings = new String[columns.size()][];
+    int capacity = INITIAL_CHUNK_ROWS;
+    for (int c = 0; c < columns.size(); c++) {
+      if (columns.get(c).type.isNumeric())
+        chunk.numbers[c] = new double[capacity];
+      else
+        chunk.strings[c] = new String[capacity];
+    }
+
+    int rows = 0;
+    while (!canceled && reader.nextLine()) {
+      if (mzTab ? !reader.equals(0, "SML") : (reader.getFieldCount() == 1) && reader.isEmpty(0))
+        continue;
+
+      if (rows == capacity) {
+        capacity *= 2;
+        for (int c = 0; c < columns.size(); c++) {
+          if (chunk.numbers[c] != null)
+            chunk.numbers[c] = Arrays.copyOf(chunk.numbers[c], capacity);
+          else
+            chunk.strings[c] = Arrays.copyOf(chunk.strings[c], capacity);
+        }
+      }
+
+      for (int c = 0; c < columns.size(); c++) {
+        final int field = columns.get(c).field;
+        if (mzTab && reader.equals(field, "null")) {
+          if (chunk.numbers[c] != null)
+            chunk.numbers[c][rows] = Double.NaN;
+          continue;
+        }
+        if (chunk.numbers[c] != null) {
+          // mzTab lists several retention times separated by "|"
+          chunk.numbers[c][rows] = mzTab ? reader.getDouble(field, '|') : reader.getDouble(field);
+        } else {
+          chunk.strings[c][rows] = reader.getString(field);
+        }
+      }
+      rows++;
+    }
+    chunk.rowCount = rows;
+    parsedBytes.addAndGet(end - start);
+    return chunk;
+  }
+
+  private List<FeatureTableRow> createRows(FeatureTable featureTable, ParsedChunk chunk,
+      int offset, List<ImportedColumn> columns) {
+    int idColumn = -1;
+    for (int c = 0; c < columns.size(); c++) {
+      final FeatureTableColumn<Object> column = columns.get(c).column;
+      if (column.getName().equals(ColumnName.ID.getName()) && (column.getSample() == null))
+        idColumn = c;
+    }
+
+    final List<FeatureTableRow> rows = new ArrayList<>(chunk.rowCount);
+    for (int r = 0; r < chunk.rowCount; r++) {
+      final double id = idColumn >= 0 ? chunk.numbers[idColumn][r] : Double.NaN;
+      final FeatureTableRow row = MSDKObjectBuilder.getFeatureTableRow(featureTable,
+          Double.isNaN(id) ? offset + r + 1 : (int) id);
+
+      IonAnnotation annotation = null;
+      FeatureTableColumn<Object> annotationColumn = null;
+      for (int c = 0; c < columns.size(); c++) {
+        final ImportedColumn column = columns.get(c);
+        if (chunk.numbers[c] != null) {
+          final double value = chunk.numbers[c][r];
+          if (Double.isNaN(value))
+            continue;
+          switch (column.type) {
+            case INTEGER:
+              row.setData(column.column, (int) value);
+              break;
+            case FLOAT:
+              row.setData(column.column, (float) value);
+              break;
+            case RT:
+              row.setData(column.column,
+                  MSDKObjectBuilder.getChromatographyInfo1D(SeparationType.UNKNOWN, (float) value));
+              break;
+            default:
+              row.setData(column.column, value);
+              break;
+          }
+          continue;
+        }
+
+        final String value = chunk.strings[c][r];
+        if (value == null)
+          continue;
+        if (column.type == ValueType.STRING) {
+          row.setData(column.column, value);
+          continue;
+        }
+        if (annotation == null)
+          annotation = MSDKObjectBuilder.getIonAnnotation();
+        annotationColumn = column.column;
+        if (column.type == ValueType.ANNOTATION_ID)
+          annotation.setAnnotationId(value);
+        else
+          annotation.setDescription(value);
+      }
+      if (annotation != null) {
+        final List<IonAnnotation> annotations = new ArrayList<>();
+        annotations.add(annotation);
+        row.setData(annotationColumn, annotations);
+      }
+      rows.add(row);
+    }
+
+    // Release the parsed values early
+    chunk.numbers = null;
+    chunk.strings = null;
+    return rows;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalBytes == 0)
+      return null;
+    return (float) parsedBytes.get() / totalBytes;
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
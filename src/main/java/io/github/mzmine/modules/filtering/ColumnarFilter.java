@@ -0,0 +1,193 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.filtering;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Selection of the rows of a feature table, kept as a bit mask. Each filter criterion is evaluated
+ * in one pass over the rows which are still selected, typically on values which were extracted
+ * from a feature table column into a primitive array beforehand, see
+ * {@link #getValues(List, FeatureTableColumn)}. Large tables are processed in parallel.
+ */
+public class ColumnarFilter {
+
+  /**
+   * Minimum number of rows for parallel processing
+   */
+  public static final int PARALLEL_THRESHOLD = 10000;
+
+  private final int size;
+  private final long mask[];
+
+  /**
+   * Creates a selection of the given number of rows, with all rows selected
+   */
+  public ColumnarFilter(int size) {
+    this.size = size;
+    this.mask = new long[(size + 63) / 64];
+    for (int w = 0; w < mask.length; w++)
+      mask[w] = -1L;
+    if (size % 64 != 0)
+      mask[mask.length - 1] = (1L << (size % 64)) - 1;
+  }
+
+  /**
+   * Keeps the selected rows for which the criterion holds. The criterion is called with the row
+   * index, possibly from several threads at the same time.
+   */
+  public void retain(@Nonnull IntPredicate criterion) {
+    MZmineCore.getComputePool().run(() -> wordStream(mask.length).forEach(w -> {
+      long word = mask[w];
+      long bits = word;
+      while (bits != 0) {
+        final int bit = Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        if (!criterion.test(w * 64 + bit))
+          word &= ~(1L << bit);
+      }
+      mask[w] = word;
+    }));
+  }
+
+  /**
+   * Keeps the selected rows whose value lies within the range. Missing values (NaN) are outside of
+   * any range.
+   */
+  public void retainRange(@Nonnull double values[], @Nonnull Range<Double> range) {
+    final double min = range.hasLowerBound() ? range.lowerEndpoint() : Double.NEGATIVE_INFINITY;
+    final double max = range.hasUpperBound() ? range.upperEndpoint() : Double.POSITIVE_INFINITY;
+    retain(i -> values[i] >= min && values[i] <= max);
+  }
+
+  /**
+   * Keeps the selected rows whose value is at least the given minimum
+   */
+  public void retainAtLeast(@Nonnull int values[], int min) {
+    retain(i -> values[i] >= min);
+  }
+
+  /**
+   * Keeps the rows which are selected in both this and the other selection
+   */
+  public void retainAll(@Nonnull ColumnarFilter other) {
+    for (int w = 0; w < mask.length; w++)
+      mask[w] &= other.mask[w];
+  }
+
+  /**
+   * Keeps the rows which are also selected in at least one of the other selections
+   */
+  public void retainAny(@Nonnull Collection<ColumnarFilter> others) {
+    for (int w = 0; w < mask.length; w++) {
+      long any = 0;
+      for (ColumnarFilter other : others)
+        any |= other.mask[w];
+      mask[w] &= any;
+    }
+  }
+
+  /**
+   * Adds copies of the selected rows to the target table, in the original order. The copies are
+   * created by the given function, which is called with the row index, possibly from several
+   * threads at the same time.
+   */
+  public void addSelectedRows(@Nonnull FeatureTable targetTable,
+      @Nonnull IntFunction<FeatureTableRow> copyFunction) {
+    final int selected[] = new int[getSelectedCount()];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      if (isSelected(i))
+        selected[n++] = i;
+    }
+    final FeatureTableRow newRows[] = new FeatureTableRow[selected.length];
+    final IntStream stream = IntStream.range(0, selected.length);
+    MZmineCore.getComputePool()
+        .run(() -> (selected.length >= PARALLEL_THRESHOLD ? stream.parallel() : stream)
+            .forEach(i -> newRows[i] = copyFunction.apply(selected[i])));
+    for (FeatureTableRow newRow : newRows)
+      targetTable.addRow(newRow);
+  }
+
+  public boolean isSelected(int index) {
+    return (mask[index >>> 6] & (1L << (index & 63))) != 0;
+  }
+
+  public int getSelectedCount() {
+    int count = 0;
+    for (long word : mask)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private IntStream wordStream(int words) {
+    final IntStream stream = IntStream.range(0, words);
+    return size >= PARALLEL_THRESHOLD ? stream.parallel() : stream;
+  }
+
+  /**
+   * Extracts the values of a numeric or retention time column into an array, in parallel for
+   * large tables. Retention times are extracted in seconds, missing values as NaN.
+   */
+  public static @Nonnull double[] getValues(@Nonnull List<FeatureTableRow> rows,
+      @Nullable FeatureTableColumn<?> column) {
+    final double values[] = new double[rows.size()];
+    if (column == null) {
+      for (int i = 0; i < values.length; i++)
+        values[i] = Double.NaN;
+      return values;
+    }
+    final IntStream stream = IntStream.range(0, values.length);
+    MZmineCore.getComputePool()
+        .run(() -> (values.length >= PARALLEL_THRESHOLD ? stream.parallel() : stream)
+            .forEach(i -> values[i] = toDouble(rows.get(i).getData(column))));
+    return values;
+  }
+
+  private static double toDouble(Object value) {
+    if (value instanceof Number)
+      return ((Number) value).doubleValue();
+    if (value instanceof ChromatographyInfo) {
+      Float rt = ((ChromatographyInfo) value).getRetentionTime();
+      if (rt != null)
+        return rt;
+    }
+    return Double.NaN;
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.filtering.featurefilter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.mzmine.modules.filtering.ColumnarFilter;
+import io.github.mzmine.util.FeatureTableUtils;
+
+/**
+ * Feature filter which evaluates the criteria on whole columns. For each sample, the values of the
+ * filtered columns are extracted into primitive arrays once, and each enabled criterion removes
+ * the failing features from a bit mask of the rows. The new table contains the features which
+ * passed all criteria, and the rows which still have at least one feature.
+ */
+class ColumnarFeatureFilterMethod implements MSDKMethod<FeatureTable> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull DataPointStore dataStore;
+  private final @Nonnull Map<ColumnName, Range<Double>> criteria;
+  private final @Nonnull String nameSuffix;
+
+  private volatile int processedSamples, totalSamples;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  /**
+   * @param criteria Permissible value ranges of the filtered columns
+   */
+  ColumnarFeatureFilterMethod(@Nonnull FeatureTable featureTable,
+      @Nonnull DataPointStore dataStore, @Nonnull Map<ColumnName, Range<Double>> criteria,
+      @Nonnull String nameSuffix) {
+    this.featureTable = featureTable;
+    this.dataStore = dataStore;
+    this.criteria = criteria;
+    this.nameSuffix = nameSuffix;
+  }
+
+  @Override
+  public FeatureTable execute() {
+    logger.info("Started feature filter on " + featureTable.getName());
+
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final List<Sample> samples = featureTable.getSamples();
+    totalSamples = samples.size();
+
+    // Features which passed all criteria, for each sample
+    final Map<Sample, ColumnarFilter> passedFeatures = new IdentityHashMap<>();
+    for (Sample sample : samples) {
+      if (canceled)
+        return null;
+      final ColumnarFilter filter = new ColumnarFilter(rows.size());
+      for (Map.Entry<ColumnName, Range<Double>> criterion : criteria.entrySet()) {
+        final double values[] =
+            ColumnarFilter.getValues(rows, featureTable.getColumn(criterion.getKey(), sample));
+        filter.retainRange(values, criterion.getValue());
+      }
+      passedFeatures.put(sample, filter);
+      processedSamples++;
+    }
+
+    // Keep the rows which still have a feature
+    final ColumnarFilter anyPassed = new ColumnarFilter(rows.size());
+    anyPassed.retainAny(passedFeatures.values());
+
+    result =
+        FeatureTableUtils.copyColumns(featureTable, featureTable.getName() + nameSuffix, dataStore);
+    anyPassed.addSelectedRows(result, i -> FeatureTableUtils.copyRow(rows.get(i), result,
+        sample -> passedFeatures.containsKey(sample) && passedFeatures.get(sample).isSelected(i)));
+
+    logger.info("Finished feature filter on " + featureTable.getName() + ", kept "
+        + result.getRows().size() + " of " + rows.size() + " rows");
+    return result;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalSamples == 0)
+      return null;
+    return (float) processedSamples / totalSamples;
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    this.canceled = true;
+  }
+
+}
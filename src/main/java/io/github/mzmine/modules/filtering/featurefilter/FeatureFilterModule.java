@@ -19,6 +19,8 @@
 package io.github.mzmine.modules.filtering.featurefilter;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
@@ -29,14 +31,15 @@ import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
 import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.ColumnName;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.features.filtering.FeatureFilterMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -130,6 +133,25 @@ public class FeatureFilterModule implements MZmineProcessingModule {
       return;
     }
 
+    // Permissible ranges of the filtered columns
+    final Map<ColumnName, Range<Double>> criteria = new LinkedHashMap<>();
+    if (filterByDuration)
+      criteria.put(ColumnName.DURATION, durationRange);
+    if (filterByArea)
+      criteria.put(ColumnName.AREA, areaRange);
+    if (filterByHeight)
+      criteria.put(ColumnName.HEIGHT, heightRange);
+    if (filterByDataPoints)
+      criteria.put(ColumnName.NUMBEROFDATAPOINTS,
+          Range.closed(dataPointsRange.lowerEndpoint().doubleValue(),
+              dataPointsRange.upperEndpoint().doubleValue()));
+    if (filterByFWHM)
+      criteria.put(ColumnName.FWHM, fwhmRange);
+    if (filterByTailingFactor)
+      criteria.put(ColumnName.TAILINGFACTOR, tailingFactorRange);
+    if (filterByAsymmetryFactor)
+      criteria.put(ColumnName.ASYMMETRYFACTOR, asymmetryFactorRange);
+
     // Add a task for each feature table
     for (FeatureTable featureTable : featureTables.getMatchingFeatureTables()) {
 
@@ -137,10 +159,8 @@ public class FeatureFilterModule implements MZmineProcessingModule {
       DataPointStore dataStore = DataPointStoreFactory.getMemoryDataStore();
 
       // New feature filter task
-      FeatureFilterMethod method = new FeatureFilterMethod(featureTable, dataStore,
-          filterByDuration, filterByArea, filterByHeight, filterByDataPoints, filterByFWHM,
-          filterByTailingFactor, filterByAsymmetryFactor, durationRange, areaRange, heightRange,
-          dataPointsRange, fwhmRange, tailingFactorRange, asymmetryFactorRange, nameSuffix);
+      ColumnarFeatureFilterMethod method = new ColumnarFeatureFilterMethod(featureTable, dataStore,
+          criteria, nameSuffix != null ? nameSuffix : "");
 
       MSDKTask newTask =
           new MSDKTask("Filtering features in tables", featureTable.getName(), method);
@@ -156,6 +176,8 @@ public class FeatureFilterModule implements MZmineProcessingModule {
         }
       });
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
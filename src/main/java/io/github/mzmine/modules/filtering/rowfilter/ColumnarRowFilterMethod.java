@@ -0,0 +1,285 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.filtering.rowfilter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.modules.filtering.ColumnarFilter;
+import io.github.mzmine.util.FeatureTableUtils;
+import io.github.mzmine.util.LongIntHashMap;
+
+/**
+ * Row filter which evaluates the criteria on whole columns. The values of the filtered columns are
+ * extracted into primitive arrays once, and each enabled criterion removes the failing rows from a
+ * bit mask. Duplicate rows are removed last, see {@link DuplicateRowFilter}. The new table is
+ * built from the remaining rows.
+ */
+class ColumnarRowFilterMethod implements MSDKMethod<FeatureTable> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull DataPointStore dataStore;
+  private final @Nonnull String nameSuffix;
+  private final @Nullable Range<Double> mzRange, rtRange, durationRange;
+  private final @Nullable Integer minCount, minIsotopes;
+  private final @Nullable String ionAnnotation;
+  private final boolean requireAnnotation;
+  private final @Nullable DuplicateRowFilter duplicateFilter;
+  private final boolean duplicateRequireSameID;
+
+  private volatile int processedCriteria, totalCriteria;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  /**
+   * Criteria which are null are not applied.
+   * 
+   * @param rtRange Range of retention times, in minutes
+   * @param durationRange Range of durations, in seconds
+   * @param minCount Minimum number of features in a row
+   * @param minIsotopes Minimum number of rows in the isotope pattern of a row
+   * @param ionAnnotation Text which must be contained in one of the ion annotations of a row
+   * @param requireAnnotation If true, rows without ion annotation are removed
+   * @param duplicateMzTolerance m/z tolerance of duplicate rows, null to keep duplicates
+   * @param duplicateRtTolerance RT tolerance of duplicate rows, null to keep duplicates
+   * @param duplicateRequireSameID If true, duplicate rows must have the same ion annotations
+   */
+  ColumnarRowFilterMethod(@Nonnull FeatureTable featureTable, @Nonnull DataPointStore dataStore,
+      @Nonnull String nameSuffix, @Nullable Range<Double> mzRange, @Nullable Range<Double> rtRange,
+      @Nullable Range<Double> durationRange, @Nullable Integer minCount,
+      @Nullable Integer minIsotopes, @Nullable String ionAnnotation, boolean requireAnnotation,
+      @Nullable MaximumMzTolerance duplicateMzTolerance,
+      @Nullable RTTolerance duplicateRtTolerance, boolean duplicateRequireSameID) {
+    this.featureTable = featureTable;
+    this.dataStore = dataStore;
+    this.nameSuffix = nameSuffix;
+    this.mzRange = mzRange;
+    this.rtRange = rtRange;
+    this.durationRange = durationRange;
+    this.minCount = minCount;
+    this.minIsotopes = minIsotopes;
+    this.ionAnnotation = ionAnnotation;
+    this.requireAnnotation = requireAnnotation;
+    if ((duplicateMzTolerance != null) && (duplicateRtTolerance != null))
+      this.duplicateFilter = new DuplicateRowFilter(duplicateMzTolerance, duplicateRtTolerance);
+    else
+      this.duplicateFilter = null;
+    this.duplicateRequireSameID = duplicateRequireSameID;
+  }
+
+  @Override
+  public FeatureTable execute() {
+    logger.info("Started row filter on " + featureTable.getName());
+
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final ColumnarFilter filter = new ColumnarFilter(rows.size());
+    totalCriteria = 8;
+
+    if (mzRange != null) {
+      final double mzValues[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.MZ, null));
+      filter.retainRange(mzValues, mzRange);
+    }
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (rtRange != null) {
+      final double rtValues[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.RT, null));
+      for (int i = 0; i < rtValues.length; i++)
+        rtValues[i] /= 60.0;
+      filter.retainRange(rtValues, rtRange);
+    }
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (durationRange != null) {
+      final double durations[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.DURATION, null));
+      filter.retainRange(durations, durationRange);
+    }
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (minCount != null)
+      filter.retainAtLeast(getFeatureCounts(rows), minCount);
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (minIsotopes != null)
+      filter.retainAtLeast(getIsotopeCounts(rows), minIsotopes);
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (requireAnnotation || ((ionAnnotation != null) && (!ionAnnotation.isEmpty()))) {
+      final FeatureTableColumn<List<IonAnnotation>> annotationColumn =
+          featureTable.getColumn(ColumnName.IONANNOTATION, null);
+      filter.retain(i -> matchesAnnotation(
+          annotationColumn != null ? rows.get(i).getData(annotationColumn) : null));
+    }
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    if (duplicateFilter != null) {
+      final double mzValues[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.MZ, null));
+      final double rtValues[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.RT, null));
+      final double heights[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.HEIGHT, null));
+      duplicateFilter.removeDuplicates(filter, mzValues, rtValues, heights,
+          duplicateRequireSameID ? getAnnotationIds(rows) : null);
+    }
+    processedCriteria++;
+    if (canceled)
+      return null;
+
+    result =
+        FeatureTableUtils.copyColumns(featureTable, featureTable.getName() + nameSuffix, dataStore);
+    filter.addSelectedRows(result, i -> FeatureTableUtils.copyRow(rows.get(i), result));
+    processedCriteria++;
+
+    logger.info("Finished row filter on " + featureTable.getName() + ", kept "
+        + result.getRows().size() + " of " + rows.size() + " rows");
+    return result;
+  }
+
+  /**
+   * @return The number of features (samples with an m/z value) of each row
+   */
+  private int[] getFeatureCounts(List<FeatureTableRow> rows) {
+    final int counts[] = new int[rows.size()];
+    for (Sample sample : featureTable.getSamples()) {
+      final double mzValues[] =
+          ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.MZ, sample));
+      for (int i = 0; i < counts.length; i++) {
+        if (!Double.isNaN(mzValues[i]))
+          counts[i]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * @return The number of rows in the isotope pattern of each row. Rows of a pattern refer to the
+   *         representative row by their group ID.
+   */
+  private int[] getIsotopeCounts(List<FeatureTableRow> rows) {
+    final double groupIds[] =
+        ColumnarFilter.getValues(rows, featureTable.getColumn(ColumnName.GROUPID, null));
+    final long patternIds[] = new long[rows.size()];
+    for (int i = 0; i < patternIds.length; i++)
+      patternIds[i] = Double.isNaN(groupIds[i]) ? rows.get(i).getId() : (long) groupIds[i];
+    final LongIntHashMap patternSizes = new LongIntHashMap(rows.size(), 0);
+    for (long patternId : patternIds)
+      patternSizes.put(patternId, patternSizes.get(patternId) + 1);
+    final int counts[] = new int[rows.size()];
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = patternSizes.get(patternIds[i]);
+    return counts;
+  }
+
+  /**
+   * @return The IDs (or descriptions) of the ion annotations of each row, null for rows without
+   *         annotation
+   */
+  private Set<?>[] getAnnotationIds(List<FeatureTableRow> rows) {
+    final FeatureTableColumn<List<IonAnnotation>> annotationColumn =
+        featureTable.getColumn(ColumnName.IONANNOTATION, null);
+    final Set<?> ids[] = new Set<?>[rows.size()];
+    if (annotationColumn == null)
+      return ids;
+    for (int i = 0; i < ids.length; i++) {
+      final List<IonAnnotation> annotations = rows.get(i).getData(annotationColumn);
+      if ((annotations == null) || annotations.isEmpty())
+        continue;
+      final Set<String> rowIds = new HashSet<>();
+      for (IonAnnotation annotation : annotations) {
+        rowIds.add(annotation.getAnnotationId() != null ? annotation.getAnnotationId()
+            : annotation.getDescription());
+      }
+      ids[i] = rowIds;
+    }
+    return ids;
+  }
+
+  private boolean matchesAnnotation(@Nullable List<IonAnnotation> annotations) {
+    if ((annotations == null) || annotations.isEmpty())
+      return false;
+    if ((ionAnnotation == null) || ionAnnotation.isEmpty())
+      return true;
+    for (IonAnnotation annotation : annotations) {
+      if ((annotation.getDescription() != null)
+          && annotation.getDescription().contains(ionAnnotation))
+        return true;
+      if ((annotation.getAnnotationId() != null)
+          && annotation.getAnnotationId().contains(ionAnnotation))
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalCriteria == 0)
+      return null;
+    return (float) processedCriteria / totalCriteria;
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    this.canceled = true;
+  }
+
+}
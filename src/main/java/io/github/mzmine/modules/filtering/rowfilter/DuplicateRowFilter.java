@@ -0,0 +1,148 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.filtering.rowfilter;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.modules.filtering.ColumnarFilter;
+import io.github.mzmine.util.LongIntHashMap;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Finds duplicate rows, i.e. rows with m/z and RT values within the given tolerances. Of each set
+ * of duplicates, the most intense row is kept.
+ * 
+ * The m/z and RT values are quantized into buckets at least as wide as the tolerances, so rows
+ * within the tolerances are always in the same or in neighbouring buckets. The kept rows of each
+ * bucket are chained from a hash map of bucket keys, and every row is only compared with the kept
+ * rows of the 3 x 3 neighbouring buckets.
+ */
+class DuplicateRowFilter {
+
+  // Smallest bucket sizes, to keep the bucket indexes in range for zero tolerances
+  private static final double MIN_MZ_BUCKET = 0.000001, MIN_RT_BUCKET = 0.001;
+
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+
+  DuplicateRowFilter(@Nonnull MaximumMzTolerance mzTolerance, @Nonnull RTTolerance rtTolerance) {
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+  }
+
+  /**
+   * Removes the duplicate rows from the given filter. Only the rows selected by the filter are
+   * considered.
+   * 
+   * @param mzValues m/z value of each row
+   * @param rtValues RT value of each row, in seconds
+   * @param heights Intensity of each row, used to choose the kept row of a set of duplicates
+   * @param identities If not null, two rows are only duplicates if their identities (e.g. the IDs
+   *        of their ion annotations) are equal. Rows without identity match any row.
+   */
+  void removeDuplicates(@Nonnull ColumnarFilter filter, @Nonnull double mzValues[],
+      @Nonnull double rtValues[], @Nonnull double heights[], @Nullable Set<?> identities[]) {
+
+    // Bucket sizes, wide enough for the tolerance at the highest m/z and RT values
+    double maxMz = 0, maxRt = 0;
+    for (int i = 0; i < filter.size(); i++) {
+      if (!filter.isSelected(i))
+        continue;
+      if (mzValues[i] > maxMz)
+        maxMz = mzValues[i];
+      if (rtValues[i] > maxRt)
+        maxRt = rtValues[i];
+    }
+    final double mzBucket = Math.max(MIN_MZ_BUCKET, getMzDelta(maxMz));
+    final double rtBucket = Math.max(MIN_RT_BUCKET, getRtDelta(maxRt));
+
+    // Most intense rows first, rows without m/z or RT cannot be compared and are kept
+    final int order[] = IntStream.range(0, filter.size()).filter(filter::isSelected)
+        .filter(i -> !Double.isNaN(mzValues[i]) && !Double.isNaN(rtValues[i])).boxed()
+        .sorted((i1, i2) -> Double.compare(getHeight(heights, i2), getHeight(heights, i1)))
+        .mapToInt(Integer::intValue).toArray();
+
+    // First kept row of each bucket, further kept rows are chained in nextKept
+    final LongIntHashMap firstKept = new LongIntHashMap(order.length, -1);
+    final int nextKept[] = new int[filter.size()];
+    Arrays.fill(nextKept, -1);
+    final boolean duplicate[] = new boolean[filter.size()];
+
+    for (int row : order) {
+      final long mzIndex = (long) Math.floor(mzValues[row] / mzBucket);
+      final long rtIndex = (long) Math.floor(rtValues[row] / rtBucket);
+
+      search: for (long m = mzIndex - 1; m <= mzIndex + 1; m++) {
+        for (long r = rtIndex - 1; r <= rtIndex + 1; r++) {
+          for (int kept = firstKept.get(getKey(m, r)); kept >= 0; kept = nextKept[kept]) {
+            if (isDuplicate(row, kept, mzValues, rtValues, identities)) {
+              duplicate[row] = true;
+              break search;
+            }
+          }
+        }
+      }
+
+      if (!duplicate[row]) {
+        final long key = getKey(mzIndex, rtIndex);
+        nextKept[row] = firstKept.get(key);
+        firstKept.put(key, row);
+      }
+    }
+
+    filter.retain(i -> !duplicate[i]);
+  }
+
+  private boolean isDuplicate(int row, int kept, double mzValues[], double rtValues[],
+      @Nullable Set<?> identities[]) {
+    // Compare the keys of colliding buckets as well
+    if (Math.abs(mzValues[row] - mzValues[kept]) > getMzDelta(mzValues[kept]))
+      return false;
+    if (Math.abs(rtValues[row] - rtValues[kept]) > getRtDelta(rtValues[kept]))
+      return false;
+    if ((identities != null) && (identities[row] != null) && (identities[kept] != null))
+      return identities[row].equals(identities[kept]);
+    return true;
+  }
+
+  private double getMzDelta(double mz) {
+    return MzToleranceUtils.getMzDelta(mzTolerance, mz);
+  }
+
+  private double getRtDelta(double rt) {
+    return rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+        : rt * rtTolerance.getTolerance() / 100.0;
+  }
+
+  private static double getHeight(double heights[], int row) {
+    return Double.isNaN(heights[row]) ? Double.NEGATIVE_INFINITY : heights[row];
+  }
+
+  private static long getKey(long mzIndex, long rtIndex) {
+    return mzIndex * 0x100000001B3L + rtIndex;
+  }
+
+}
@@ -30,7 +30,6 @@ import com.google.common.collect.Range;
 import io.github.msdk.datamodel.datastore.DataPointStore;
 import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.features.rowfilter.RowFilterMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.modules.MZmineProcessingModule;
@@ -38,6 +37,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -100,7 +100,7 @@ public class RowFilterModule implements MZmineProcessingModule {
         parameters.getParameter(RowFilterParameters.rtRange).getEmbeddedParameter().getValue();
     final Range<Double> durationRange = parameters.getParameter(RowFilterParameters.durationRange)
         .getEmbeddedParameter().getValue();
-    Double minCount =
+    final Double minCount =
         parameters.getParameter(RowFilterParameters.minCount).getEmbeddedParameter().getValue();
     final Integer minIsotopes =
         parameters.getParameter(RowFilterParameters.minIsotopes).getEmbeddedParameter().getValue();
@@ -144,19 +144,19 @@ public class RowFilterModule implements MZmineProcessingModule {
       DataPointStore dataStore = DataPointStoreFactory.getMemoryDataStore();
 
       // Handle < 1 values for minCount
-      if (minCount == null)
-        minCount = 0d;
-      if (minCount < 1)
-        minCount = featureTable.getSamples().size() * minCount;
+      double tableMinCount = (minCount == null) ? 0d : minCount;
+      if (tableMinCount < 1)
+        tableMinCount = featureTable.getSamples().size() * tableMinCount;
       // Round value down to nearest hole number
-      int intMinCount = (int) (long) (double) minCount;
+      int intMinCount = (int) (long) tableMinCount;
 
       // New row filter method
-      RowFilterMethod method = new RowFilterMethod(featureTable, dataStore, nameSuffix, filterByMz,
-          filterByRt, filterByDuration, filterByCount, filterByIsotopes, filterByIonAnnotation,
-          requireAnnotation, mzRange, rtRange, durationRange, intMinCount, minIsotopes,
-          ionAnnotation, removeDuplicates, duplicateMzTolerance, duplicateRtTolerance,
-          duplicateRequireSameID);
+      ColumnarRowFilterMethod method = new ColumnarRowFilterMethod(featureTable, dataStore,
+          nameSuffix, filterByMz ? mzRange : null, filterByRt ? rtRange : null,
+          filterByDuration ? durationRange : null, filterByCount ? intMinCount : null,
+          filterByIsotopes ? minIsotopes : null, filterByIonAnnotation ? ionAnnotation : null,
+          requireAnnotation, removeDuplicates ? duplicateMzTolerance : null,
+          removeDuplicates ? duplicateRtTolerance : null, duplicateRequireSameID);
 
       MSDKTask newTask =
           new MSDKTask("Row filtering features in table", featureTable.getName(), method);
@@ -172,6 +172,8 @@ public class RowFilterModule implements MZmineProcessingModule {
         }
       });
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.gapfilling.peakfinder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.FeatureTableUtils;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Gap filling method which processes the samples of a feature table in parallel. The missing
+ * features of each sample are collected as m/z and RT windows and sorted by RT. The MS1 scans of
+ * the sample are then swept once in RT order, and each scan is only matched against the windows
+ * which overlap its RT. Each scan is therefore read once per sample instead of once per missing
+ * feature.
+ */
+class ParallelGapFillingMethod implements MSDKMethod<FeatureTable> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull DataPointStore dataStore;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+  private final double intensityTolerance;
+  private final @Nonnull String nameSuffix;
+
+  private final AtomicInteger processedScans = new AtomicInteger();
+  private volatile int totalScans;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  /**
+   * Missing feature of one row in one sample, and the data points found for it
+   */
+  private static class Gap {
+    private final FeatureTableRow row;
+    private final double mzMin, mzMax;
+    private final float rtMin, rtMax;
+
+    // Best data point of each scan within the m/z and RT window, while sweeping the scans
+    private List<ChromatographyInfo> rtList = new ArrayList<>();
+    private List<Double> mzList = new ArrayList<>();
+    private List<Float> intensityList = new ArrayList<>();
+
+    // Data points of the feature, after trimming
+    private ChromatographyInfo rtValues[];
+    private double mzValues[];
+    private float intensityValues[];
+    private int apex;
+
+    private Gap(FeatureTableRow row, double mzMin, double mzMax, float rtMin, float rtMax) {
+      this.row = row;
+      this.mzMin = mzMin;
+      this.mzMax = mzMax;
+      this.rtMin = rtMin;
+      this.rtMax = rtMax;
+    }
+
+    /**
+     * Keeps the data points around the most intense one, as long as they follow the expected /\
+     * shape within the intensity tolerance
+     * 
+     * @return True if a feature was found
+     */
+    private boolean trim(double intensityTolerance) {
+      final int size = intensityList.size();
+      if (size > 0) {
+        int maxIndex = 0;
+        for (int i = 1; i < size; i++) {
+          if (intensityList.get(i) > intensityList.get(maxIndex))
+            maxIndex = i;
+        }
+        int start = maxIndex;
+        while ((start > 0) && (intensityList.get(start - 1) <= intensityList.get(start)
+            * (1 + intensityTolerance)))
+          start--;
+        int end = maxIndex;
+        while ((end < size - 1)
+            && (intensityList.get(end + 1) <= intensityList.get(end) * (1 + intensityTolerance)))
+          end++;
+
+        final int numOfDataPoints = end - start + 1;
+        rtValues = new ChromatographyInfo[numOfDataPoints];
+        mzValues = new double[numOfDataPoints];
+        intensityValues = new float[numOfDataPoints];
+        for (int i = 0; i < numOfDataPoints; i++) {
+          rtValues[i] = rtList.get(start + i);
+          mzValues[i] = mzList.get(start + i);
+          intensityValues[i] = intensityList.get(start + i);
+        }
+        apex = maxIndex - start;
+      }
+      rtList = null;
+      mzList = null;
+      intensityList = null;
+      return size > 0;
+    }
+  }
+
+  ParallelGapFillingMethod(@Nonnull FeatureTable featureTable, @Nonnull DataPointStore dataStore,
+      @Nonnull MaximumMzTolerance mzTolerance, @Nonnull RTTolerance rtTolerance,
+      double intensityTolerance, @Nonnull String nameSuffix) {
+    this.featureTable = featureTable;
+    this.dataStore = dataStore;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+    this.intensityTolerance = intensityTolerance;
+    this.nameSuffix = nameSuffix;
+  }
+
+  @Override
+  public FeatureTable execute() {
+    logger.info("Started gap filling " + featureTable.getName());
+
+    final List<Sample> samples = featureTable.getSamples();
+    int scans = 0;
+    for (Sample sample : samples) {
+      RawDataFile rawDataFile = sample.getRawDataFile();
+      if (rawDataFile != null)
+        scans += rawDataFile.getScans().size();
+    }
+    totalScans = scans;
+
+    // Find the gaps of each sample and search them in the raw data, in parallel
+    final List<List<Gap>> filledGaps = new ArrayList<>();
+    for (int i = 0; i < samples.size(); i++)
+      filledGaps.add(null);
+    final List<Integer> sampleIndexes = new ArrayList<>();
+    for (int i = 0; i < samples.size(); i++)
+      sampleIndexes.add(i);
+    MZmineCore.getComputePool().run(() -> sampleIndexes.parallelStream().forEach(i -> {
+      final List<Gap> gaps = fillGaps(samples.get(i));
+      synchronized (filledGaps) {
+        filledGaps.set(i, gaps);
+      }
+    }));
+    if (canceled)
+      return null;
+
+    // Copy the feature table and add the filled features
+    result =
+        FeatureTableUtils.copyColumns(featureTable, featureTable.getName() + nameSuffix, dataStore);
+    final Map<FeatureTableRow, FeatureTableRow> newRows = new IdentityHashMap<>();
+    for (FeatureTableRow row : featureTable.getRows())
+      newRows.put(row, FeatureTableUtils.copyRow(row, result));
+    int filledFeatures = 0;
+    for (int i = 0; i < samples.size(); i++) {
+      for (Gap gap : filledGaps.get(i)) {
+        writeFeature(gap, samples.get(i), newRows.get(gap.row));
+        filledFeatures++;
+      }
+    }
+    for (FeatureTableRow row : featureTable.getRows())
+      result.addRow(newRows.get(row));
+
+    logger.info("Finished gap filling " + featureTable.getName() + ", filled " + filledFeatures
+        + " features");
+    return result;
+  }
+
+  /**
+   * Collects the missing features of a sample and searches them in its raw data file
+   * 
+   * @return The gaps where a feature was found
+   */
+  private List<Gap> fillGaps(Sample sample) {
+    final List<Gap> gaps = new ArrayList<>();
+    final RawDataFile rawDataFile = sample.getRawDataFile();
+    if (rawDataFile == null)
+      return gaps;
+
+    final FeatureTableColumn<Double> mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+    final FeatureTableColumn<ChromatographyInfo> rtColumn =
+        featureTable.getColumn(ColumnName.RT, null);
+    final FeatureTableColumn<Double> sampleMzColumn = featureTable.getColumn(ColumnName.MZ, sample);
+    if ((mzColumn == null) || (rtColumn == null))
+      return gaps;
+
+    for (FeatureTableRow row : featureTable.getRows()) {
+      if ((sampleMzColumn != null) && (row.getData(sampleMzColumn) != null))
+        continue;
+      final Double mz = row.getData(mzColumn);
+      final ChromatographyInfo rt = row.getData(rtColumn);
+      if ((mz == null) || (rt == null) || (rt.getRetentionTime() == null))
+        continue;
+      final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, mz);
+      final float rtValue = rt.getRetentionTime();
+      final float rtDelta = (float) (rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+          : rtValue * rtTolerance.getTolerance() / 100.0);
+      gaps.add(new Gap(row, mz - mzDelta, mz + mzDelta, rtValue - rtDelta, rtValue + rtDelta));
+    }
+    gaps.sort(Comparator.comparingDouble(gap -> gap.rtMin));
+
+    // MS1 scans in RT order
+    final List<MsScan> scans = new ArrayList<>();
+    for (MsScan scan : rawDataFile.getScans()) {
+      final Integer msLevel = scan.getMsFunction().getMsLevel();
+      if ((msLevel != null) && (msLevel != 1))
+        continue;
+      if ((scan.getChromatographyInfo() == null)
+          || (scan.getChromatographyInfo().getRetentionTime() == null))
+        continue;
+      scans.add(scan);
+    }
+    scans.sort(Comparator.comparingDouble(scan -> scan.getChromatographyInfo().getRetentionTime()));
+    processedScans.addAndGet(rawDataFile.getScans().size() - scans.size());
+
+    // Sweep the scans once, keeping the gaps whose RT window contains the current scan
+    final List<Gap> activeGaps = new ArrayList<>();
+    int nextGap = 0;
+    for (MsScan scan : scans) {
+      if (canceled)
+        return gaps;
+      processedScans.incrementAndGet();
+
+      final float rt = scan.getChromatographyInfo().getRetentionTime();
+      while ((nextGap < gaps.size()) && (gaps.get(nextGap).rtMin <= rt)) {
+        activeGaps.add(gaps.get(nextGap));
+        nextGap++;
+      }
+      for (Iterator<Gap> i = activeGaps.iterator(); i.hasNext();) {
+        if (i.next().rtMax < rt)
+          i.remove();
+      }
+      if (activeGaps.isEmpty())
+        continue;
+
+      final double mzValues[] = scan.getMzValues();
+      final float intensityValues[] = scan.getIntensityValues();
+      final int numOfDataPoints = scan.getNumberOfDataPoints();
+
+      for (Gap gap : activeGaps) {
+        int bestIndex = -1;
+        for (int j = lowerBound(mzValues, numOfDataPoints, gap.mzMin); j < numOfDataPoints
+            && mzValues[j] <= gap.mzMax; j++) {
+          if ((bestIndex < 0) || (intensityValues[j] > intensityValues[bestIndex]))
+            bestIndex = j;
+        }
+        if (bestIndex < 0)
+          continue;
+        gap.rtList.add(scan.getChromatographyInfo());
+        gap.mzList.add(mzValues[bestIndex]);
+        gap.intensityList.add(intensityValues[bestIndex]);
+      }
+    }
+
+    // Keep only the gaps where a feature was found
+    gaps.removeIf(gap -> !gap.trim(intensityTolerance));
+    return gaps;
+  }
+
+  /**
+   * @return Index of the first value which is greater or equal to the given value
+   */
+  private static int lowerBound(double values[], int size, double value) {
+    int low = 0, high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] < value)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * Adds the feature found for a gap to the row
+   */
+  private void writeFeature(Gap gap, Sample sample, FeatureTableRow row) {
+    final int numOfDataPoints = gap.intensityValues.length;
+    double weightedMz = 0, totalIntensity = 0, area = 0;
+    for (int i = 0; i < numOfDataPoints; i++) {
+      weightedMz += gap.mzValues[i] * gap.intensityValues[i];
+      totalIntensity += gap.intensityValues[i];
+      if (i > 0) {
+        final float rtDiff =
+            gap.rtValues[i].getRetentionTime() - gap.rtValues[i - 1].getRetentionTime();
+        area += rtDiff * (gap.intensityValues[i] + gap.intensityValues[i - 1]) / 2.0;
+      }
+    }
+    final double mz = totalIntensity > 0 ? weightedMz / totalIntensity : gap.mzValues[gap.apex];
+
+    final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(dataStore, row.getId(),
+        ChromatogramType.XIC, SeparationType.UNKNOWN);
+    chromatogram.setDataPoints(gap.rtValues, gap.mzValues, gap.intensityValues, numOfDataPoints);
+    chromatogram.setMz(mz);
+
+    setData(row, result.getColumn(ColumnName.MZ, sample), mz);
+    setData(row, result.getColumn(ColumnName.RT, sample), gap.rtValues[gap.apex]);
+    setData(row, result.getColumn(ColumnName.RTSTART, sample), gap.rtValues[0].getRetentionTime());
+    setData(row, result.getColumn(ColumnName.RTEND, sample),
+        gap.rtValues[numOfDataPoints - 1].getRetentionTime());
+    setData(row, result.getColumn(ColumnName.HEIGHT, sample), gap.intensityValues[gap.apex]);
+    setData(row, result.getColumn(ColumnName.AREA, sample), (float) area);
+    setData(row, result.getColumn(ColumnName.NUMBEROFDATAPOINTS, sample), numOfDataPoints);
+    setData(row, result.getColumn(ColumnName.CHROMATOGRAM, sample), chromatogram);
+  }
+
+  private static <T> void setData(FeatureTableRow row, @Nullable FeatureTableColumn<T> column,
+      T value) {
+    if (column != null)
+      row.setData(column, value);
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalScans == 0)
+      return null;
+    return Math.min(1f, (float) processedScans.get() / totalScans);
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    this.canceled = true;
+  }
+
+}
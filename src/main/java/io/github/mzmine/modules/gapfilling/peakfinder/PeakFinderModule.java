@@ -28,7 +28,6 @@ import org.slf4j.LoggerFactory;
 import io.github.msdk.datamodel.datastore.DataPointStore;
 import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.features.gapfilling.GapFillingMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.modules.MZmineProcessingModule;
@@ -36,6 +35,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -95,9 +95,9 @@ public class PeakFinderModule implements MZmineProcessingModule {
       if (isIntensityTolSet == null || !isIntensityTolSet)
         intensityTolerance = Double.MAX_VALUE;
 
-      // New feature filter task
-      GapFillingMethod method = new GapFillingMethod(featureTable, dataStore, mzTolerance,
-          rtTolerance, intensityTolerance, nameSuffix);
+      // New gap filling task, which processes the samples of the table in parallel
+      ParallelGapFillingMethod method = new ParallelGapFillingMethod(featureTable, dataStore,
+          mzTolerance, rtTolerance, intensityTolerance, nameSuffix != null ? nameSuffix : "");
 
       MSDKTask newTask = new MSDKTask("Gap filling feature table", featureTable.getName(), method);
 
@@ -112,6 +112,8 @@ public class PeakFinderModule implements MZmineProcessingModule {
         }
       });
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
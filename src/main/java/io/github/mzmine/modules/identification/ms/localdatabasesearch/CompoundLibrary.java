@@ -0,0 +1,233 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.localdatabasesearch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.ionannotations.IonType;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.msdk.util.IonTypeUtil;
+import io.github.mzmine.util.SoftReferenceCache;
+
+/**
+ * Compound library parsed from the annotation text of the local database search. The compounds are
+ * kept in parallel arrays sorted by m/z and RT, so the compounds matching a feature are found by a
+ * binary search. The ion annotations (including their CDK formulas) are only created for matching
+ * compounds.
+ * 
+ * Parsed libraries are cached, so searching several feature tables (or repeating the search) with
+ * the same annotation text does not parse it again.
+ */
+public class CompoundLibrary {
+
+  private static final Logger logger = LoggerFactory.getLogger(CompoundLibrary.class);
+
+  private static final int CACHE_SIZE = 4;
+
+  private static final SoftReferenceCache<Map.Entry<String, String>, CompoundLibrary> cache =
+      new SoftReferenceCache<>(CACHE_SIZE);
+
+  private final double mzValues[];
+  private final float rtValues[];
+  private final String ids[], names[], formulas[], adducts[];
+
+  private final Map<String, IonType> ionTypes = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the parsed library of the given annotation text, from the cache if possible
+   * 
+   * @param annotations Annotation text, one compound per line: id, m/z, retention time (min),
+   *        compound name and optionally formula and adduct. Lines not starting with a number are
+   *        ignored.
+   * @param separator Regular expression separating the fields
+   */
+  public static @Nonnull CompoundLibrary getLibrary(@Nonnull String annotations,
+      @Nonnull String separator) {
+    final Map.Entry<String, String> key = new SimpleImmutableEntry<>(separator, annotations);
+    final CompoundLibrary cachedLibrary = cache.get(key);
+    if (cachedLibrary != null)
+      return cachedLibrary;
+    // Parsing the same text twice concurrently is harmless
+    final CompoundLibrary library = parse(annotations, separator);
+    cache.put(key, library);
+    return library;
+  }
+
+  private static CompoundLibrary parse(String annotations, String separator) {
+    final Pattern separatorPattern = Pattern.compile(separator);
+    final List<String[]> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new StringReader(annotations))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // Only process lines which start with an integer
+        if (line.isEmpty() || Character.digit(line.charAt(0), 10) < 0)
+          continue;
+        final String lineArray[] = separatorPattern.split(line);
+        if (lineArray.length < 4) {
+          logger.warn("Skipping incomplete annotation line: " + line);
+          continue;
+        }
+        lines.add(lineArray);
+      }
+    } catch (IOException e) {
+      // Cannot happen when reading a string
+      throw new IllegalStateException(e);
+    }
+    return new CompoundLibrary(lines);
+  }
+
+  private CompoundLibrary(List<String[]> lines) {
+    final int size = lines.size();
+    final double parsedMz[] = new double[size];
+    final float parsedRt[] = new float[size];
+    int valid = 0;
+    for (int i = 0; i < size; i++) {
+      final String lineArray[] = lines.get(i);
+      try {
+        parsedMz[i] = Double.parseDouble(lineArray[1].trim());
+        parsedRt[i] = Float.parseFloat(lineArray[2].trim()) * 60;
+        valid++;
+      } catch (NumberFormatException e) {
+        logger.warn("Skipping annotation with invalid m/z or RT: " + String.join(",", lineArray));
+        parsedMz[i] = Double.NaN;
+      }
+    }
+
+    // Sort the compounds by m/z and RT
+    final Integer order[] = new Integer[size];
+    for (int i = 0; i < size; i++)
+      order[i] = i;
+    Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> parsedMz[i])
+        .thenComparingDouble(i -> parsedRt[i]));
+
+    mzValues = new double[valid];
+    rtValues = new float[valid];
+    ids = new String[valid];
+    names = new String[valid];
+    formulas = new String[valid];
+    adducts = new String[valid];
+    for (int i = 0; i < valid; i++) {
+      // Invalid lines have NaN m/z, which is sorted last
+      final String lineArray[] = lines.get(order[i]);
+      mzValues[i] = parsedMz[order[i]];
+      rtValues[i] = parsedRt[order[i]];
+      ids[i] = lineArray[0];
+      names[i] = lineArray[3];
+      formulas[i] = getOptionalField(lineArray, 4);
+      adducts[i] = getOptionalField(lineArray, 5);
+    }
+  }
+
+  private static @Nullable String getOptionalField(String lineArray[], int index) {
+    if (lineArray.length <= index || lineArray[index].isEmpty())
+      return null;
+    return lineArray[index];
+  }
+
+  /**
+   * @return Number of compounds in the library
+   */
+  public int size() {
+    return mzValues.length;
+  }
+
+  /**
+   * Finds the compounds within the given m/z and RT windows
+   * 
+   * @param mzDelta Maximum m/z difference
+   * @param rt Retention time in seconds, or null to match any retention time
+   * @param rtDelta Maximum retention time difference in seconds
+   * @return Indexes of the matching compounds, in the order of increasing m/z
+   */
+  public @Nonnull int[] search(double mz, double mzDelta, @Nullable Float rt, float rtDelta) {
+    int low = 0, high = mzValues.length;
+    final double minMz = mz - mzDelta;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzValues[mid] < minMz)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    int matches[] = new int[4];
+    int count = 0;
+    final double maxMz = mz + mzDelta;
+    for (int i = low; i < mzValues.length && mzValues[i] <= maxMz; i++) {
+      if ((rt != null) && !(Math.abs(rtValues[i] - rt) <= rtDelta))
+        continue;
+      if (count == matches.length)
+        matches = Arrays.copyOf(matches, count * 2);
+      matches[count++] = i;
+    }
+    return Arrays.copyOf(matches, count);
+  }
+
+  public @Nonnull String getId(int index) {
+    return ids[index];
+  }
+
+  /**
+   * Creates a new ion annotation of the compound with the given index
+   */
+  public @Nonnull IonAnnotation createAnnotation(int index) {
+    final IonAnnotation ion = MSDKObjectBuilder.getIonAnnotation();
+    ion.setAnnotationId(ids[index]);
+    ion.setExpectedMz(mzValues[index]);
+    ion.setDescription(names[index]);
+    ion.setChromatographyInfo(
+        MSDKObjectBuilder.getChromatographyInfo1D(SeparationType.LC, rtValues[index]));
+
+    // Expected adduct format: [M+2H]2+
+    if (adducts[index] != null)
+      ion.setIonType(ionTypes.computeIfAbsent(adducts[index], IonTypeUtil::createIonType));
+
+    if (formulas[index] != null) {
+      ion.setFormula(MolecularFormulaManipulator.getMolecularFormula(formulas[index],
+          DefaultChemObjectBuilder.getInstance()));
+    }
+    return ion;
+  }
+
+  @Override
+  public String toString() {
+    return "Compound library (" + size() + " compounds)";
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.localdatabasesearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Annotates the rows of feature tables with the compounds of a {@link CompoundLibrary}. Each row
+ * is matched by a range query on the m/z sorted library, so the search time grows linearly with
+ * the number of rows and only logarithmically with the size of the library. The rows of all tables
+ * are split into chunks which are searched in parallel against the shared library.
+ */
+class IndexedLocalDatabaseSearchMethod implements MSDKMethod<List<FeatureTable>> {
+
+  private static final int CHUNK_SIZE = 1000;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull List<FeatureTable> featureTables;
+  private final @Nonnull CompoundLibrary library;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+
+  private final AtomicInteger processedRows = new AtomicInteger();
+  private final AtomicInteger annotatedRows = new AtomicInteger();
+  private volatile int totalRows;
+  private volatile boolean canceled;
+  private List<FeatureTable> result;
+
+  IndexedLocalDatabaseSearchMethod(@Nonnull List<FeatureTable> featureTables,
+      @Nonnull CompoundLibrary library, @Nonnull MaximumMzTolerance mzTolerance,
+      @Nonnull RTTolerance rtTolerance) {
+    this.featureTables = featureTables;
+    this.library = library;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+  }
+
+  /**
+   * Consecutive rows of one feature table
+   */
+  private static class Chunk {
+    private final List<FeatureTableRow> rows;
+    private final @Nullable FeatureTableColumn<Double> mzColumn;
+    private final @Nullable FeatureTableColumn<ChromatographyInfo> rtColumn;
+    private final @Nonnull FeatureTableColumn<List<IonAnnotation>> annotationColumn;
+
+    private Chunk(List<FeatureTableRow> rows, @Nullable FeatureTableColumn<Double> mzColumn,
+        @Nullable FeatureTableColumn<ChromatographyInfo> rtColumn,
+        @Nonnull FeatureTableColumn<List<IonAnnotation>> annotationColumn) {
+      this.rows = rows;
+      this.mzColumn = mzColumn;
+      this.rtColumn = rtColumn;
+      this.annotationColumn = annotationColumn;
+    }
+  }
+
+  @Override
+  public List<FeatureTable> execute() {
+    logger.info("Started local database search of " + featureTables.size() + " feature tables in "
+        + library);
+
+    // Prepare the columns sequentially, the chunks only modify their own rows
+    final List<Chunk> chunks = new ArrayList<>();
+    int rowCount = 0;
+    for (FeatureTable featureTable : featureTables) {
+      final FeatureTableColumn<Double> mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+      final FeatureTableColumn<ChromatographyInfo> rtColumn =
+          featureTable.getColumn(ColumnName.RT, null);
+      FeatureTableColumn<List<IonAnnotation>> annotationColumn =
+          featureTable.getColumn(ColumnName.IONANNOTATION, null);
+      if (annotationColumn == null) {
+        annotationColumn = MSDKObjectBuilder.getFeatureTableColumn(ColumnName.IONANNOTATION, null);
+        featureTable.addColumn(annotationColumn);
+      }
+
+      final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+      for (int from = 0; from < rows.size(); from += CHUNK_SIZE) {
+        final int to = Math.min(from + CHUNK_SIZE, rows.size());
+        chunks.add(new Chunk(rows.subList(from, to), mzColumn, rtColumn, annotationColumn));
+      }
+      rowCount += rows.size();
+    }
+    totalRows = rowCount;
+
+    MZmineCore.getComputePool().run(() -> chunks.parallelStream().forEach(this::searchChunk));
+    if (canceled)
+      return null;
+
+    logger.info("Finished local database search, annotated " + annotatedRows.get() + " of "
+        + totalRows + " rows");
+    result = featureTables;
+    return result;
+  }
+
+  private void searchChunk(Chunk chunk) {
+    for (FeatureTableRow row : chunk.rows) {
+      if (canceled)
+        return;
+
+      final Double mz = chunk.mzColumn != null ? row.getData(chunk.mzColumn) : null;
+      if (mz != null) {
+        final ChromatographyInfo chromatographyInfo =
+            chunk.rtColumn != null ? row.getData(chunk.rtColumn) : null;
+        final Float rt = chromatographyInfo != null ? chromatographyInfo.getRetentionTime() : null;
+        final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, mz);
+        final float rtDelta = (float) (rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+            : (rt != null ? rt : 0f) * rtTolerance.getTolerance() / 100.0);
+
+        final int matches[] = library.search(mz, mzDelta, rt, rtDelta);
+        if ((matches.length > 0) && addAnnotations(row, chunk.annotationColumn, matches))
+          annotatedRows.incrementAndGet();
+      }
+      processedRows.incrementAndGet();
+    }
+  }
+
+  /**
+   * Adds the annotations of the matching compounds to the row, replacing empty annotations and
+   * skipping compounds which are already annotated
+   * 
+   * @return True if any annotation was added
+   */
+  private boolean addAnnotations(FeatureTableRow row,
+      FeatureTableColumn<List<IonAnnotation>> annotationColumn, int matches[]) {
+    final List<IonAnnotation> annotations = new ArrayList<>();
+    final List<IonAnnotation> oldAnnotations = row.getData(annotationColumn);
+    if (oldAnnotations != null) {
+      for (IonAnnotation annotation : oldAnnotations) {
+        if ((annotation.getAnnotationId() != null) || (annotation.getDescription() != null))
+          annotations.add(annotation);
+      }
+    }
+
+    boolean added = false;
+    search: for (int match : matches) {
+      for (IonAnnotation annotation : annotations) {
+        if (library.getId(match).equals(annotation.getAnnotationId()))
+          continue search;
+      }
+      annotations.add(library.createAnnotation(match));
+      added = true;
+    }
+    if (added)
+      row.setData(annotationColumn, annotations);
+    return added;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalRows == 0)
+      return null;
+    return (float) processedRows.get() / totalRows;
+  }
+
+  @Override
+  @Nullable
+  public List<FeatureTable> getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
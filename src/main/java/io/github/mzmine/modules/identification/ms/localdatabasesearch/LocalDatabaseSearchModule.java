@@ -21,23 +21,13 @@ package io.github.mzmine.modules.identification.ms.localdatabasesearch;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Scanner;
 
 import javax.annotation.Nonnull;
 
-import org.openscience.cdk.DefaultChemObjectBuilder;
-import org.openscience.cdk.interfaces.IMolecularFormula;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
-import io.github.msdk.datamodel.ionannotations.IonAnnotation;
-import io.github.msdk.datamodel.ionannotations.IonType;
-import io.github.msdk.datamodel.rawdata.SeparationType;
-import io.github.msdk.id.localdatabasesearch.LocalDatabaseSearchMethod;
-import io.github.msdk.util.IonTypeUtil;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.modules.MZmineProcessingModule;
@@ -45,6 +35,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -92,70 +83,20 @@ public class LocalDatabaseSearchModule implements MZmineProcessingModule {
       return;
     }
 
-    // Convert the input annotations into ionAnnotations
-    List<IonAnnotation> ionAnnotations = new ArrayList<IonAnnotation>();
-    Scanner scanner = new Scanner(annotations);
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      if (line != null) {
-
-        // Only process lines which start with an integer
-        char firstChar = line.charAt(0);
-        if (Character.digit(firstChar, 10) >= 0) {
-          String[] lineArray = line.split(separator);
-
-          String annotationId = lineArray[0];
-          Double mz = Double.parseDouble(lineArray[1]);
-          Float rt = Float.parseFloat(lineArray[2]) * 60;
-          String name = lineArray[3];
-
-          // If formula column is present then add chemical structure
-          IMolecularFormula formula = null;
-          if (lineArray.length > 4) {
-            String formulaString = lineArray[4];
-            if (formulaString != null && !formulaString.equals(""))
-              formula = MolecularFormulaManipulator.getMolecularFormula(formulaString,
-                  DefaultChemObjectBuilder.getInstance());
-          }
-
-          // If adduct column is present then add ion type
-          IonType ionType = null;
-
-          if (lineArray.length > 5) {
-            // Expected string format: [M+2H]2+
-            String adductString = lineArray[5];
-            if (adductString != null && !adductString.equals(""))
-              ionType = IonTypeUtil.createIonType(adductString);
-          }
-
-          IonAnnotation ion = MSDKObjectBuilder.getIonAnnotation();
-          ion.setAnnotationId(annotationId);
-          ion.setExpectedMz(mz);
-          ion.setDescription(name);
-          ion.setChromatographyInfo(
-              MSDKObjectBuilder.getChromatographyInfo1D(SeparationType.LC, (float) rt));
-          if (ionType != null)
-            ion.setIonType(ionType);
-          if (formula != null)
-            ion.setFormula(formula);
-          ionAnnotations.add(ion);
-
-        }
-
-      }
-    }
-    scanner.close();
+    // Parse the annotations, or reuse the library parsed in a previous run
+    final CompoundLibrary library = CompoundLibrary.getLibrary(annotations, separator);
 
-    // Run LocalDatabaseSearchMethod
-    MSDKTask newTask = null;
-    for (FeatureTable featureTable : featureTables.getMatchingFeatureTables()) {
-      LocalDatabaseSearchMethod method =
-          new LocalDatabaseSearchMethod(featureTable, ionAnnotations, mzTolerance, rtTolerance);
+    // Search all feature tables in a single task, sharing the library
+    final List<FeatureTable> tables = new ArrayList<>(featureTables.getMatchingFeatureTables());
+    IndexedLocalDatabaseSearchMethod method =
+        new IndexedLocalDatabaseSearchMethod(tables, library, mzTolerance, rtTolerance);
 
-      newTask = new MSDKTask("Importing feature table file", featureTable.getName(), method);
+    MSDKTask newTask = new MSDKTask("Local database search",
+        tables.size() == 1 ? tables.get(0).getName() : tables.size() + " feature tables", method);
 
-      tasks.add(newTask);
-    }
+    TaskMetrics.of(newTask).recordInput(tables);
+
+    tasks.add(newTask);
 
   }
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * MS/MS spectrum as a sparse vector of m/z bins. Only the {@link #MAX_PEAKS} most intense peaks
+ * are kept. The peaks are weighted by the square root of their intensity, the peaks within the
+ * same bin are summed and the vector is normalized to unit length, so the cosine similarity of two
+ * spectra is the dot product of their vectors, see {@link SpectralSimilarityScorer}.
+ */
+public class BinnedSpectrum {
+
+  /**
+   * Maximum number of peaks kept of each spectrum
+   */
+  public static final int MAX_PEAKS = 100;
+
+  private final double precursorMz;
+  private final int bins[];
+  private final float weights[];
+
+  private BinnedSpectrum(double precursorMz, int bins[], float weights[]) {
+    this.precursorMz = precursorMz;
+    this.bins = bins;
+    this.weights = weights;
+  }
+
+  /**
+   * @param size Number of data points to use
+   * @param binWidth Width of the m/z bins
+   * @return Binned spectrum, or null if the spectrum has no peaks with positive intensity
+   */
+  public static @Nullable BinnedSpectrum create(double precursorMz, @Nonnull double mzValues[],
+      @Nonnull float intensityValues[], int size, double binWidth) {
+
+    // Select the most intense peaks, sorting by intensity (positive float bits sort like floats)
+    long peaks[] = new long[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (intensityValues[i] > 0f)
+        peaks[count++] = ((long) Float.floatToIntBits(intensityValues[i]) << 32) | i;
+    }
+    if (count == 0)
+      return null;
+    int first = 0;
+    if (count > MAX_PEAKS) {
+      Arrays.sort(peaks, 0, count);
+      first = count - MAX_PEAKS;
+    }
+
+    // Sort the selected peaks by bin
+    final long binned[] = new long[count - first];
+    for (int i = first; i < count; i++) {
+      final int index = (int) peaks[i];
+      final long bin = (long) Math.floor(mzValues[index] / binWidth);
+      binned[i - first] = (bin << 32) | index;
+    }
+    Arrays.sort(binned);
+
+    // Sum the peaks of the same bin and normalize
+    final int bins[] = new int[binned.length];
+    final float weights[] = new float[binned.length];
+    int n = 0;
+    double norm = 0;
+    for (long peak : binned) {
+      final int bin = (int) (peak >> 32);
+      final float weight = (float) Math.sqrt(intensityValues[(int) peak]);
+      if (n > 0 && bins[n - 1] == bin) {
+        weights[n - 1] += weight;
+      } else {
+        bins[n] = bin;
+        weights[n] = weight;
+        n++;
+      }
+    }
+    for (int i = 0; i < n; i++)
+      norm += (double) weights[i] * weights[i];
+    final float scale = (float) (1.0 / Math.sqrt(norm));
+    for (int i = 0; i < n; i++)
+      weights[i] *= scale;
+
+    return new BinnedSpectrum(precursorMz, Arrays.copyOf(bins, n), Arrays.copyOf(weights, n));
+  }
+
+  public double getPrecursorMz() {
+    return precursorMz;
+  }
+
+  /**
+   * @return Bin indexes of the peaks, in increasing order
+   */
+  public @Nonnull int[] getBins() {
+    return bins;
+  }
+
+  /**
+   * @return Weights of the peaks, the vector has unit length
+   */
+  public @Nonnull float[] getWeights() {
+    return weights;
+  }
+
+  public int getNumberOfPeaks() {
+    return bins.length;
+  }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.ionannotations.IonType;
+import io.github.msdk.util.IonTypeUtil;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.SoftReferenceCache;
+
+/**
+ * MS/MS spectral library loaded from MGF or MSP files. The library spectra are sorted by precursor
+ * m/z, so the candidates of a query are found by a binary search. The peaks of all spectra are
+ * stored as {@link BinnedSpectrum} vectors in flat arrays, which keeps the library compact (about 8
+ * bytes per peak) and the scoring cache friendly.
+ * 
+ * Loaded libraries are cached, so repeated searches with the same library files do not parse them
+ * again.
+ */
+public class SpectralLibrary {
+
+  private static final Logger logger = LoggerFactory.getLogger(SpectralLibrary.class);
+
+  private static final int CACHE_SIZE = 2;
+
+  private static final Pattern PEAK_FIELD_SEPARATOR = Pattern.compile("[\\s,]+");
+
+  private static final SoftReferenceCache<String, SpectralLibrary> cache =
+      new SoftReferenceCache<>(CACHE_SIZE);
+
+  private final double binWidth;
+  private final double precursorMz[];
+  private final int peakOffsets[];
+  private final int peakBins[];
+  private final float peakWeights[];
+  private final String ids[], names[], formulas[], adducts[];
+
+  private final Map<String, IonType> ionTypes = new ConcurrentHashMap<>();
+
+  /**
+   * Library spectra parsed from one file, in file order
+   */
+  private static class ParsedEntries {
+    private final List<BinnedSpectrum> spectra = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>(), names = new ArrayList<>(),
+        formulas = new ArrayList<>(), adducts = new ArrayList<>();
+  }
+
+  /**
+   * Fields of the library spectrum being parsed
+   */
+  private static class Entry {
+    private String id, name, formula, adduct;
+    private double precursorMz = Double.NaN;
+    private double mzValues[] = new double[64];
+    private float intensityValues[] = new float[64];
+    private int size;
+
+    private void addPeak(double mz, float intensity) {
+      if (size == mzValues.length) {
+        mzValues = Arrays.copyOf(mzValues, size * 2);
+        intensityValues = Arrays.copyOf(intensityValues, size * 2);
+      }
+      mzValues[size] = mz;
+      intensityValues[size] = intensity;
+      size++;
+    }
+
+    private void clear() {
+      id = name = formula = adduct = null;
+      precursorMz = Double.NaN;
+      size = 0;
+    }
+  }
+
+  /**
+   * Returns the library of the given files, from the cache if possible. The files are parsed in
+   * parallel.
+   * 
+   * @param files MGF (.mgf) or MSP (.msp, or any other extension) files
+   * @param binWidth Width of the m/z bins of the peak vectors
+   * @throws IOException If a file cannot be read
+   */
+  public static @Nonnull SpectralLibrary getLibrary(@Nonnull List<File> files, double binWidth)
+      throws IOException {
+    final StringBuilder keyBuilder = new StringBuilder(String.valueOf(binWidth));
+    for (File file : files) {
+      keyBuilder.append('\n').append(file.getAbsolutePath()).append('\t')
+          .append(file.lastModified()).append('\t').append(file.length());
+    }
+    final String key = keyBuilder.toString();
+    final SpectralLibrary cachedLibrary = cache.get(key);
+    if (cachedLibrary != null)
+      return cachedLibrary;
+
+    // Parsing the same files twice concurrently is harmless
+    final List<ParsedEntries> parsed;
+    try {
+      parsed = MZmineCore.getComputePool().invoke(() -> files.parallelStream().map(file -> {
+        try {
+          return parse(file, binWidth);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }).collect(Collectors.toList()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    final SpectralLibrary library = new SpectralLibrary(parsed, binWidth);
+    logger.info("Loaded " + library + " from " + files.size() + " files");
+    cache.put(key, library);
+    return library;
+  }
+
+  private static ParsedEntries parse(File file, double binWidth) throws IOException {
+    final boolean mgf = "mgf".equalsIgnoreCase(FilenameUtils.getExtension(file.getName()));
+    final String prefix = FilenameUtils.removeExtension(file.getName()) + ":";
+    final ParsedEntries entries = new ParsedEntries();
+    final Entry entry = new Entry();
+    boolean inEntry = false;
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (mgf) {
+          if (line.equalsIgnoreCase("BEGIN IONS")) {
+            entry.clear();
+            inEntry = true;
+          } else if (line.equalsIgnoreCase("END IONS")) {
+            addEntry(entries, entry, prefix, binWidth);
+            inEntry = false;
+          } else if (inEntry && !line.isEmpty()) {
+            if (Character.isDigit(line.charAt(0)))
+              parsePeaks(line, entry);
+            else
+              parseField(line, line.indexOf('='), entry);
+          }
+        } else {
+          // MSP entries end with an empty line or at the next name
+          if (line.isEmpty()) {
+            if (inEntry)
+              addEntry(entries, entry, prefix, binWidth);
+            entry.clear();
+            inEntry = false;
+          } else if (Character.isDigit(line.charAt(0))) {
+            parsePeaks(line, entry);
+          } else {
+            final int colon = line.indexOf(':');
+            final boolean nameField =
+                (colon > 0) && line.substring(0, colon).trim().equalsIgnoreCase("NAME");
+            if (inEntry && nameField) {
+              addEntry(entries, entry, prefix, binWidth);
+              entry.clear();
+            }
+            parseField(line, colon, entry);
+            inEntry = true;
+          }
+        }
+      }
+      if (inEntry && !mgf)
+        addEntry(entries, entry, prefix, binWidth);
+    }
+    logger.debug("Parsed " + entries.spectra.size() + " library spectra from " + file);
+    return entries;
+  }
+
+  private static void parseField(String line, int separator, Entry entry) {
+    if (separator <= 0)
+      return;
+    final String key = line.substring(0, separator).trim().toUpperCase(Locale.ROOT);
+    final String value = line.substring(separator + 1).trim();
+    if (value.isEmpty())
+      return;
+    switch (key) {
+      case "NAME":
+      case "COMPOUND_NAME":
+        entry.name = value;
+        break;
+      case "TITLE":
+        if (entry.name == null)
+          entry.name = value;
+        break;
+      case "SPECTRUMID":
+      case "DB#":
+      case "ID":
+      case "ACCESSION":
+        entry.id = value;
+        break;
+      case "FORMULA":
+        entry.formula = value;
+        break;
+      case "ADDUCT":
+      case "PRECURSOR_TYPE":
+      case "PRECURSORTYPE":
+        entry.adduct = value;
+        break;
+      case "PEPMASS":
+      case "PRECURSORMZ":
+      case "PRECURSOR_MZ":
+        try {
+          // PEPMASS may be followed by the precursor intensity
+          entry.precursorMz = Double.parseDouble(value.split("\\s+")[0]);
+        } catch (NumberFormatException e) {
+          logger.debug("Invalid precursor m/z: " + line);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Parses a line with one or more peaks, e.g. "123.45 1000", "123.45\t1000 "annotation"" or
+   * "123.45 1000; 234.56 2000;"
+   */
+  private static void parsePeaks(String line, Entry entry) {
+    for (String peak : line.split(";")) {
+      final String fields[] = PEAK_FIELD_SEPARATOR.split(peak.trim());
+      if (fields.length < 2)
+        continue;
+      try {
+        entry.addPeak(Double.parseDouble(fields[0]), Float.parseFloat(fields[1]));
+      } catch (NumberFormatException e) {
+        // Not a peak, e.g. a field starting with a digit
+      }
+    }
+  }
+
+  private static void addEntry(ParsedEntries entries, Entry entry, String idPrefix,
+      double binWidth) {
+    if (Double.isNaN(entry.precursorMz))
+      return;
+    final BinnedSpectrum spectrum = BinnedSpectrum.create(entry.precursorMz, entry.mzValues,
+        entry.intensityValues, entry.size, binWidth);
+    if (spectrum == null)
+      return;
+    entries.spectra.add(spectrum);
+    entries.ids.add(entry.id != null ? entry.id : idPrefix + (entries.spectra.size()));
+    entries.names.add(entry.name != null ? entry.name : entries.ids.get(entries.ids.size() - 1));
+    entries.formulas.add(entry.formula);
+    entries.adducts.add(entry.adduct);
+  }
+
+  private SpectralLibrary(List<ParsedEntries> parsed, double binWidth) {
+    this.binWidth = binWidth;
+
+    // Sort the spectra of all files by precursor m/z
+    final List<long[]> order = new ArrayList<>();
+    for (int f = 0; f < parsed.size(); f++) {
+      for (int i = 0; i < parsed.get(f).spectra.size(); i++)
+        order.add(new long[] {f, i});
+    }
+    order.sort(Comparator.comparingDouble(
+        fi -> parsed.get((int) fi[0]).spectra.get((int) fi[1]).getPrecursorMz()));
+
+    final int size = order.size();
+    precursorMz = new double[size];
+    peakOffsets = new int[size + 1];
+    ids = new String[size];
+    names = new String[size];
+    formulas = new String[size];
+    adducts = new String[size];
+    int peaks = 0;
+    for (int i = 0; i < size; i++) {
+      final ParsedEntries entries = parsed.get((int) order.get(i)[0]);
+      final int index = (int) order.get(i)[1];
+      final BinnedSpectrum spectrum = entries.spectra.get(index);
+      precursorMz[i] = spectrum.getPrecursorMz();
+      peakOffsets[i] = peaks;
+      peaks += spectrum.getNumberOfPeaks();
+      ids[i] = entries.ids.get(index);
+      names[i] = entries.names.get(index);
+      formulas[i] = entries.formulas.get(index);
+      adducts[i] = entries.adducts.get(index);
+    }
+    peakOffsets[size] = peaks;
+
+    peakBins = new int[peaks];
+    peakWeights = new float[peaks];
+    for (int i = 0; i < size; i++) {
+      final BinnedSpectrum spectrum =
+          parsed.get((int) order.get(i)[0]).spectra.get((int) order.get(i)[1]);
+      System.arraycopy(spectrum.getBins(), 0, peakBins, peakOffsets[i],
+          spectrum.getNumberOfPeaks());
+      System.arraycopy(spectrum.getWeights(), 0, peakWeights, peakOffsets[i],
+          spectrum.getNumberOfPeaks());
+    }
+  }
+
+  /**
+   * @return Number of spectra in the library
+   */
+  public int size() {
+    return precursorMz.length;
+  }
+
+  public double getBinWidth() {
+    return binWidth;
+  }
+
+  /**
+   * Scores the library spectra with a precursor m/z within the given range against the query and
+   * offers the matches to the hits
+   * 
+   * @param modified If true, the modified cosine similarity is calculated
+   * @param minScore Minimum similarity of a match
+   * @param minMatchedPeaks Minimum number of matched peaks of a match
+   */
+  public void search(@Nonnull BinnedSpectrum query, double minPrecursorMz, double maxPrecursorMz,
+      boolean modified, double minScore, int minMatchedPeaks,
+      @Nonnull SpectralSimilarityScorer scorer, @Nonnull TopHits hits) {
+    int i = Arrays.binarySearch(precursorMz, minPrecursorMz);
+    if (i < 0)
+      i = -i - 1;
+    // Equal precursor m/z values may precede the found index
+    while (i > 0 && precursorMz[i - 1] >= minPrecursorMz)
+      i--;
+
+    final int queryBins[] = query.getBins();
+    final float queryWeights[] = query.getWeights();
+    for (; i < precursorMz.length && precursorMz[i] <= maxPrecursorMz; i++) {
+      final int shift =
+          modified ? (int) Math.round((precursorMz[i] - query.getPrecursorMz()) / binWidth) : 0;
+      final double score = scorer.score(queryBins, queryWeights, 0, queryBins.length, peakBins,
+          peakWeights, peakOffsets[i], peakOffsets[i + 1], shift);
+      if (score >= minScore && scorer.getMatchedPeaks() >= minMatchedPeaks)
+        hits.offer(i, score, scorer.getMatchedPeaks());
+    }
+  }
+
+  public @Nonnull String getId(int index) {
+    return ids[index];
+  }
+
+  public @Nonnull String getName(int index) {
+    return names[index];
+  }
+
+  public double getPrecursorMz(int index) {
+    return precursorMz[index];
+  }
+
+  /**
+   * Creates a new ion annotation of the library spectrum with the given index. The description
+   * contains the name of the compound and the similarity.
+   */
+  public @Nonnull IonAnnotation createAnnotation(int index, double score, int matchedPeaks) {
+    final IonAnnotation ion = MSDKObjectBuilder.getIonAnnotation();
+    ion.setAnnotationId(ids[index]);
+    ion.setExpectedMz(precursorMz[index]);
+    ion.setDescription(String.format(Locale.ROOT, "%s (MS/MS score %.3f, %d matched peaks)",
+        names[index], score, matchedPeaks));
+
+    if (adducts[index] != null) {
+      try {
+        ion.setIonType(ionTypes.computeIfAbsent(adducts[index], IonTypeUtil::createIonType));
+      } catch (RuntimeException e) {
+        logger.debug("Cannot parse adduct " + adducts[index] + " of " + ids[index]);
+      }
+    }
+
+    if (formulas[index] != null) {
+      ion.setFormula(MolecularFormulaManipulator.getMolecularFormula(formulas[index],
+          DefaultChemObjectBuilder.getInstance()));
+    }
+    return ion;
+  }
+
+  @Override
+  public String toString() {
+    return "Spectral library (" + size() + " spectra, " + peakBins.length + " peaks)";
+  }
+
+}
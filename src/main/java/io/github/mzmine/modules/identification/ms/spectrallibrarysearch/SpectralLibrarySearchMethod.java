@@ -0,0 +1,374 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Annotates the rows of feature tables by searching their MS/MS scans in a
+ * {@link SpectralLibrary}. The MS/MS scans of the raw data files of the samples of each table are
+ * linked to the row with the closest m/z within the m/z and RT tolerances. The rows are searched in
+ * parallel, each row keeps the best matches of all its scans in a {@link TopHits} heap.
+ */
+class SpectralLibrarySearchMethod implements MSDKMethod<List<FeatureTable>> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull List<FeatureTable> featureTables;
+  private final @Nonnull List<RawDataFile> rawDataFiles;
+  private final @Nonnull List<File> libraryFiles;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+  private final @Nonnull SpectralSimilarity similarity;
+  private final double maxPrecursorDifference, binWidth, minScore;
+  private final int minMatchedPeaks, maxHits;
+
+  private final ThreadLocal<SpectralSimilarityScorer> scorers =
+      ThreadLocal.withInitial(SpectralSimilarityScorer::new);
+
+  private final AtomicInteger processedQueries = new AtomicInteger();
+  private final AtomicInteger annotatedRows = new AtomicInteger();
+  private volatile int totalQueries;
+  private volatile boolean canceled;
+  private List<FeatureTable> result;
+
+  /**
+   * Rows of a feature table and the queries linked to them
+   */
+  private static class TableQueries {
+    private final List<FeatureTableRow> rows;
+    private final List<List<Query>> rowQueries;
+
+    private TableQueries(List<FeatureTableRow> rows, List<List<Query>> rowQueries) {
+      this.rows = rows;
+      this.rowQueries = rowQueries;
+    }
+  }
+
+  /**
+   * MS/MS scan used as a query
+   */
+  private static class Query {
+    private final float rt;
+    private final BinnedSpectrum spectrum;
+
+    private Query(float rt, BinnedSpectrum spectrum) {
+      this.rt = rt;
+      this.spectrum = spectrum;
+    }
+  }
+
+  SpectralLibrarySearchMethod(@Nonnull List<FeatureTable> featureTables,
+      @Nonnull List<RawDataFile> rawDataFiles, @Nonnull List<File> libraryFiles,
+      @Nonnull MaximumMzTolerance mzTolerance, @Nonnull RTTolerance rtTolerance,
+      @Nonnull SpectralSimilarity similarity, double maxPrecursorDifference, double binWidth,
+      double minScore, int minMatchedPeaks, int maxHits) {
+    this.featureTables = featureTables;
+    this.rawDataFiles = rawDataFiles;
+    this.libraryFiles = libraryFiles;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+    this.similarity = similarity;
+    this.maxPrecursorDifference = maxPrecursorDifference;
+    this.binWidth = binWidth;
+    this.minScore = minScore;
+    this.minMatchedPeaks = minMatchedPeaks;
+    this.maxHits = maxHits;
+  }
+
+  @Override
+  public List<FeatureTable> execute() throws MSDKException {
+    logger.info("Started spectral library search of " + featureTables.size() + " feature tables");
+
+    final SpectralLibrary library;
+    try {
+      library = SpectralLibrary.getLibrary(libraryFiles, binWidth);
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+    if (canceled)
+      return null;
+
+    // Extract the MS/MS scans of all files in parallel
+    final List<List<Query>> fileQueries = MZmineCore.getComputePool().invoke(() -> rawDataFiles
+        .parallelStream().map(this::extractQueries).collect(Collectors.toList()));
+    if (canceled)
+      return null;
+
+    // Link the queries of all tables before searching, so the total progress is known
+    final List<TableQueries> tableQueries = new ArrayList<>();
+    int linked = 0;
+    for (FeatureTable featureTable : featureTables) {
+      final List<Query> queries = new ArrayList<>();
+      for (int i = 0; i < rawDataFiles.size(); i++) {
+        if (isSampleFile(featureTable, rawDataFiles.get(i)))
+          queries.addAll(fileQueries.get(i));
+      }
+      if (queries.isEmpty()) {
+        logger.warn("None of the selected raw data files belongs to feature table "
+            + featureTable.getName());
+      }
+      final TableQueries table = linkQueries(featureTable, queries);
+      tableQueries.add(table);
+      if (table == null)
+        continue;
+      for (List<Query> list : table.rowQueries)
+        linked += list != null ? list.size() : 0;
+    }
+    totalQueries = linked;
+
+    for (int i = 0; i < featureTables.size(); i++) {
+      if (tableQueries.get(i) != null)
+        search(featureTables.get(i), tableQueries.get(i), library);
+      if (canceled)
+        return null;
+    }
+
+    logger.info("Finished spectral library search, annotated " + annotatedRows.get() + " rows");
+    result = featureTables;
+    return result;
+  }
+
+  private List<Query> extractQueries(RawDataFile rawDataFile) {
+    final List<Query> queries = new ArrayList<>();
+    for (MsScan scan : rawDataFile.getScans()) {
+      if (canceled)
+        break;
+      final Integer msLevel = scan.getMsFunction().getMsLevel();
+      if ((msLevel == null) || (msLevel != 2))
+        continue;
+      Double precursorMz = null;
+      for (IsolationInfo isolation : scan.getIsolations()) {
+        precursorMz = isolation.getPrecursorMz();
+        if (precursorMz != null)
+          break;
+      }
+      if (precursorMz == null)
+        continue;
+      final BinnedSpectrum spectrum = BinnedSpectrum.create(precursorMz, scan.getMzValues(),
+          scan.getIntensityValues(), scan.getNumberOfDataPoints(), binWidth);
+      if (spectrum == null)
+        continue;
+      final ChromatographyInfo chromatographyInfo = scan.getChromatographyInfo();
+      final Float rt =
+          chromatographyInfo != null ? chromatographyInfo.getRetentionTime() : null;
+      queries.add(new Query(rt != null ? rt : Float.NaN, spectrum));
+    }
+    return queries;
+  }
+
+  /**
+   * @return True if the raw data file belongs to a sample of the feature table. Samples which are
+   *         not linked to a raw data file are matched by name.
+   */
+  private static boolean isSampleFile(FeatureTable featureTable, RawDataFile rawDataFile) {
+    for (Sample sample : featureTable.getSamples()) {
+      final RawDataFile sampleFile = sample.getRawDataFile();
+      if (sampleFile != null ? sampleFile == rawDataFile
+          : rawDataFile.getName().equals(sample.getName()))
+        return true;
+    }
+    return false;
+  }
+
+  private void search(FeatureTable featureTable, TableQueries tableQueries,
+      SpectralLibrary library) {
+    final List<FeatureTableRow> rows = tableQueries.rows;
+    final List<List<Query>> rowQueries = tableQueries.rowQueries;
+    FeatureTableColumn<List<IonAnnotation>> annotationColumn =
+        featureTable.getColumn(ColumnName.IONANNOTATION, null);
+    if (annotationColumn == null) {
+      annotationColumn = MSDKObjectBuilder.getFeatureTableColumn(ColumnName.IONANNOTATION, null);
+      featureTable.addColumn(annotationColumn);
+    }
+
+    final FeatureTableColumn<List<IonAnnotation>> column = annotationColumn;
+    final boolean modified = (similarity == SpectralSimilarity.MODIFIED_COSINE);
+    MZmineCore.getComputePool().run(() -> IntStream.range(0, rows.size()).parallel()
+        .filter(i -> rowQueries.get(i) != null).forEach(i -> {
+          if (canceled)
+            return;
+          final TopHits hits = new TopHits(maxHits);
+          final SpectralSimilarityScorer scorer = scorers.get();
+          for (Query query : rowQueries.get(i)) {
+            final double precursorMz = query.spectrum.getPrecursorMz();
+            final double window = modified ? maxPrecursorDifference
+                : MzToleranceUtils.getMzDelta(mzTolerance, precursorMz);
+            library.search(query.spectrum, precursorMz - window, precursorMz + window, modified,
+                minScore, minMatchedPeaks, scorer, hits);
+            processedQueries.incrementAndGet();
+          }
+          if ((hits.size() > 0) && addAnnotations(rows.get(i), column, hits, library))
+            annotatedRows.incrementAndGet();
+        }));
+  }
+
+  /**
+   * Links each query to the row with the closest m/z
+   * 
+   * @return The rows and their queries by row index (null for rows without queries), or null if the
+   *         table has no m/z column
+   */
+  private @Nullable TableQueries linkQueries(FeatureTable featureTable, List<Query> queries) {
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final FeatureTableColumn<Double> mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+    final FeatureTableColumn<ChromatographyInfo> rtColumn =
+        featureTable.getColumn(ColumnName.RT, null);
+    if (mzColumn == null) {
+      logger.warn("Feature table " + featureTable.getName() + " has no m/z column");
+      return null;
+    }
+
+    final double rowMz[] = new double[rows.size()];
+    final float rowRt[] = new float[rows.size()];
+    final List<Integer> indexed = new ArrayList<>(rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      final Double mz = rows.get(i).getData(mzColumn);
+      final ChromatographyInfo chromatographyInfo =
+          rtColumn != null ? rows.get(i).getData(rtColumn) : null;
+      rowMz[i] = mz != null ? mz : Double.NaN;
+      rowRt[i] = (chromatographyInfo != null) && (chromatographyInfo.getRetentionTime() != null)
+          ? chromatographyInfo.getRetentionTime() : Float.NaN;
+      if (mz != null)
+        indexed.add(i);
+    }
+    indexed.sort(Comparator.comparingDouble(i -> rowMz[i]));
+    final double sortedMz[] = new double[indexed.size()];
+    for (int i = 0; i < sortedMz.length; i++)
+      sortedMz[i] = rowMz[indexed.get(i)];
+
+    final List<List<Query>> rowQueries = new ArrayList<>(rows.size());
+    for (int i = 0; i < rows.size(); i++)
+      rowQueries.add(null);
+    for (Query query : queries) {
+      final double precursorMz = query.spectrum.getPrecursorMz();
+      final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, precursorMz);
+      int best = -1;
+      double bestDistance = Double.MAX_VALUE;
+      int i = Arrays.binarySearch(sortedMz, precursorMz - mzDelta);
+      for (i = (i < 0) ? -i - 1 : i; i < sortedMz.length
+          && sortedMz[i] <= precursorMz + mzDelta; i++) {
+        final int row = indexed.get(i);
+        if (!Float.isNaN(rowRt[row]) && !Float.isNaN(query.rt)) {
+          final double rtDelta = rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+              : rowRt[row] * rtTolerance.getTolerance() / 100.0;
+          if (Math.abs(query.rt - rowRt[row]) > rtDelta)
+            continue;
+        }
+        final double distance = Math.abs(rowMz[row] - precursorMz);
+        if (distance < bestDistance) {
+          best = row;
+          bestDistance = distance;
+        }
+      }
+      if (best >= 0) {
+        if (rowQueries.get(best) == null)
+          rowQueries.set(best, new ArrayList<>());
+        rowQueries.get(best).add(query);
+      }
+    }
+    return new TableQueries(rows, rowQueries);
+  }
+
+  /**
+   * Adds the annotations of the library matches to the row, in the order of decreasing score,
+   * replacing empty annotations and skipping library spectra which are already annotated
+   * 
+   * @return True if any annotation was added
+   */
+  private boolean addAnnotations(FeatureTableRow row,
+      FeatureTableColumn<List<IonAnnotation>> annotationColumn, TopHits hits,
+      SpectralLibrary library) {
+    final List<IonAnnotation> annotations = new ArrayList<>();
+    final List<IonAnnotation> oldAnnotations = row.getData(annotationColumn);
+    if (oldAnnotations != null) {
+      for (IonAnnotation annotation : oldAnnotations) {
+        if ((annotation.getAnnotationId() != null) || (annotation.getDescription() != null))
+          annotations.add(annotation);
+      }
+    }
+
+    boolean added = false;
+    search: for (int position : hits.getOrder()) {
+      final int index = hits.getIndex(position);
+      for (IonAnnotation annotation : annotations) {
+        if (library.getId(index).equals(annotation.getAnnotationId()))
+          continue search;
+      }
+      annotations.add(library.createAnnotation(index, hits.getScore(position),
+          hits.getMatchedPeaks(position)));
+      added = true;
+    }
+    if (added)
+      row.setData(annotationColumn, annotations);
+    return added;
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalQueries == 0)
+      return null;
+    return (float) processedQueries.get() / totalQueries;
+  }
+
+  @Override
+  @Nullable
+  public List<FeatureTable> getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.DataSizeUtils;
+import javafx.concurrent.Task;
+
+/**
+ * Spectral library search module
+ */
+public class SpectralLibrarySearchModule implements MZmineProcessingModule {
+
+  private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private static final String MODULE_NAME = "Spectral library search";
+  private static final String MODULE_DESCRIPTION =
+      "This module annotates feature table rows by searching their MS/MS scans in MGF or MSP spectral libraries.";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task<?>> tasks) {
+
+    final FeatureTablesSelection featureTables =
+        parameters.getParameter(SpectralLibrarySearchParameters.featureTables).getValue();
+    final RawDataFilesSelection rawDataFiles =
+        parameters.getParameter(SpectralLibrarySearchParameters.rawDataFiles).getValue();
+    final List<File> libraryFiles =
+        parameters.getParameter(SpectralLibrarySearchParameters.libraryFiles).getValue();
+    final MaximumMzTolerance mzTolerance =
+        parameters.getParameter(SpectralLibrarySearchParameters.mzTolerance).getValue();
+    final RTTolerance rtTolerance =
+        parameters.getParameter(SpectralLibrarySearchParameters.rtTolerance).getValue();
+    final SpectralSimilarity similarity =
+        parameters.getParameter(SpectralLibrarySearchParameters.similarity).getValue();
+    final Double maxPrecursorDifference = parameters
+        .getParameter(SpectralLibrarySearchParameters.maxPrecursorDifference).getValue();
+    final Double binWidth =
+        parameters.getParameter(SpectralLibrarySearchParameters.binWidth).getValue();
+    final Double minScore =
+        parameters.getParameter(SpectralLibrarySearchParameters.minScore).getValue();
+    final Integer minMatchedPeaks =
+        parameters.getParameter(SpectralLibrarySearchParameters.minMatchedPeaks).getValue();
+    final Integer maxHits =
+        parameters.getParameter(SpectralLibrarySearchParameters.maxHits).getValue();
+
+    if (featureTables == null || featureTables.getMatchingFeatureTables().isEmpty()) {
+      logger.warn("Spectral library search module started with no feature tables selected");
+      return;
+    }
+    if (rawDataFiles == null || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+      logger.warn("Spectral library search module started with no raw data files selected");
+      return;
+    }
+    if (libraryFiles == null || libraryFiles.isEmpty()) {
+      logger.warn("Spectral library search module started with no library files selected");
+      return;
+    }
+
+    // Search all feature tables in a single task, sharing the library and the MS/MS scans
+    final List<FeatureTable> tables = new ArrayList<>(featureTables.getMatchingFeatureTables());
+    final List<RawDataFile> files = new ArrayList<>(rawDataFiles.getMatchingRawDataFiles());
+    SpectralLibrarySearchMethod method = new SpectralLibrarySearchMethod(tables, files,
+        new ArrayList<>(libraryFiles), mzTolerance, rtTolerance, similarity,
+        maxPrecursorDifference, binWidth, minScore, minMatchedPeaks, Math.max(1, maxHits));
+
+    MSDKTask newTask = new MSDKTask("Spectral library search",
+        tables.size() == 1 ? tables.get(0).getName() : tables.size() + " feature tables", method);
+
+    TaskMetrics.of(newTask).recordInput(tables);
+    TaskMetrics.of(newTask).recordInput(files);
+    TaskMetrics.of(newTask).recordInput(libraryFiles);
+    // The binned MS/MS scans are much smaller than the raw scans, the library is about the size
+    // of its files
+    TaskMetrics.of(newTask).setEstimatedFootprint(() -> DataSizeUtils.estimateSize(libraryFiles)
+        + DataSizeUtils.estimateHeapSize(tables));
+
+    tasks.add(newTask);
+
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return SpectralLibrarySearchParameters.class;
+  }
+
+}
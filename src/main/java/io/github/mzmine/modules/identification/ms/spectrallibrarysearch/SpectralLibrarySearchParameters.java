@@ -0,0 +1,105 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.util.Arrays;
+
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTToleranceParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class SpectralLibrarySearchParameters extends ParameterSet {
+
+  public static final FeatureTablesParameter featureTables = new FeatureTablesParameter();
+
+  public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
+
+  private static final ExtensionFilter filters[] =
+      new ExtensionFilter[] {new ExtensionFilter("All supported files", "*.mgf", "*.msp"),
+          new ExtensionFilter("MGF files", "*.mgf"), new ExtensionFilter("MSP files", "*.msp")};
+
+  public static final FileNamesParameter libraryFiles = new FileNamesParameter("Library files",
+      "MS/MS spectral libraries in MGF or MSP format. Library spectra without precursor m/z are skipped.",
+      "Library", ParameterValidator.createNonEmptyValidator(), Arrays.asList(filters));
+
+  public static final MZToleranceParameter mzTolerance = new MZToleranceParameter(
+      "Precursor m/z tolerance",
+      "Maximum allowed difference between the precursor m/z of an MS/MS scan and the m/z of a feature table row or the precursor m/z of a library spectrum.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new MaximumMzTolerance(0.01, 10.0));
+
+  public static final RTToleranceParameter rtTolerance = new RTToleranceParameter("RT tolerance",
+      "Maximum allowed retention time difference between an MS/MS scan and a feature table row.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new RTTolerance(10, true));
+
+  public static final ComboParameter<SpectralSimilarity> similarity = new ComboParameter<>(
+      "Similarity",
+      "The cosine similarity compares library spectra with the same precursor m/z. The modified cosine similarity also matches fragments shifted by the precursor m/z difference, so it finds analogs of the library compounds within the maximum precursor m/z difference.",
+      "Algorithm Parameters", Arrays.asList(SpectralSimilarity.values()),
+      SpectralSimilarity.COSINE);
+
+  public static final DoubleParameter maxPrecursorDifference = new DoubleParameter(
+      "Maximum precursor m/z difference",
+      "Maximum precursor m/z difference of analogs found by the modified cosine similarity. The search time grows with this window.",
+      "Algorithm Parameters", MZmineCore.getConfiguration().getMZFormat(),
+      ParameterValidator.createNonEmptyValidator(), 50.0);
+
+  public static final DoubleParameter binWidth = new DoubleParameter("Fragment m/z bin width",
+      "Width of the m/z bins used to compare the fragment peaks.", "Algorithm Parameters",
+      MZmineCore.getConfiguration().getMZFormat(), (value, messages) -> {
+        if ((value == null) || (value <= 0)) {
+          messages.add("Bin width must be positive");
+          return false;
+        }
+        return true;
+      }, 0.02);
+
+  public static final DoubleParameter minScore = new DoubleParameter("Minimum score",
+      "Minimum similarity (0 to 1) of a library match.", "Algorithm Parameters", null,
+      ParameterValidator.createNonEmptyValidator(), 0.7);
+
+  public static final IntegerParameter minMatchedPeaks = new IntegerParameter(
+      "Minimum matched peaks", "Minimum number of matched fragment peaks of a library match.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(), 6);
+
+  public static final IntegerParameter maxHits = new IntegerParameter("Hits per row",
+      "Maximum number of library matches added to the annotations of each feature table row.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(), 3);
+
+  /**
+   * Create the parameter set.
+   */
+  public SpectralLibrarySearchParameters() {
+    super(featureTables, rawDataFiles, libraryFiles, mzTolerance, rtTolerance, similarity,
+        maxPrecursorDifference, binWidth, minScore, minMatchedPeaks, maxHits);
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Cosine and modified cosine similarity of {@link BinnedSpectrum}s. Both spectra are given as
+ * ranges of bin and weight arrays, so the peaks of a library can be stored in flat arrays.
+ * 
+ * The cosine similarity is the dot product of the vectors, calculated by a single merge of the
+ * sorted bins. The modified cosine similarity also matches peaks shifted by the precursor m/z
+ * difference of the spectra. Each peak is matched at most once, the pairs are assigned greedily in
+ * the order of decreasing product.
+ * 
+ * A scorer keeps scratch buffers and is not thread-safe, each thread needs its own instance.
+ */
+public class SpectralSimilarityScorer {
+
+  private final long pairs[] = new long[2 * BinnedSpectrum.MAX_PEAKS];
+  private final boolean usedA[] = new boolean[BinnedSpectrum.MAX_PEAKS];
+  private final boolean usedB[] = new boolean[BinnedSpectrum.MAX_PEAKS];
+  private int matchedPeaks;
+
+  /**
+   * Calculates the similarity of spectra a and b
+   * 
+   * @param shift Bin shift of the fragments of b containing the precursor m/z difference, i.e.
+   *        (precursor m/z of b - precursor m/z of a) / bin width, rounded. With 0, the cosine
+   *        similarity is calculated.
+   * @return Similarity between 0 and 1, see {@link #getMatchedPeaks()} for the number of matched
+   *         peaks
+   */
+  public double score(@Nonnull int aBins[], @Nonnull float aWeights[], int aFrom, int aTo,
+      @Nonnull int bBins[], @Nonnull float bWeights[], int bFrom, int bTo, int shift) {
+    if (shift == 0)
+      return cosine(aBins, aWeights, aFrom, aTo, bBins, bWeights, bFrom, bTo);
+
+    // Collect the unshifted and shifted pairs, keyed by product (positive float bits sort like
+    // floats) and peak indexes
+    int count = collectPairs(aBins, aWeights, aFrom, aTo, bBins, bWeights, bFrom, bTo, 0, 0);
+    count = collectPairs(aBins, aWeights, aFrom, aTo, bBins, bWeights, bFrom, bTo, shift, count);
+    Arrays.sort(pairs, 0, count);
+
+    double score = 0;
+    matchedPeaks = 0;
+    for (int i = count - 1; i >= 0; i--) {
+      final int a = (int) (pairs[i] >>> 16) & 0xffff;
+      final int b = (int) pairs[i] & 0xffff;
+      if (usedA[a] || usedB[b])
+        continue;
+      usedA[a] = true;
+      usedB[b] = true;
+      score += Float.intBitsToFloat((int) (pairs[i] >>> 32));
+      matchedPeaks++;
+    }
+    Arrays.fill(usedA, 0, aTo - aFrom, false);
+    Arrays.fill(usedB, 0, bTo - bFrom, false);
+    return Math.min(score, 1.0);
+  }
+
+  /**
+   * @return Number of matched peaks of the last calculated similarity
+   */
+  public int getMatchedPeaks() {
+    return matchedPeaks;
+  }
+
+  private double cosine(int aBins[], float aWeights[], int aFrom, int aTo, int bBins[],
+      float bWeights[], int bFrom, int bTo) {
+    double score = 0;
+    int matched = 0;
+    int a = aFrom, b = bFrom;
+    while (a < aTo && b < bTo) {
+      if (aBins[a] < bBins[b]) {
+        a++;
+      } else if (aBins[a] > bBins[b]) {
+        b++;
+      } else {
+        score += aWeights[a++] * bWeights[b++];
+        matched++;
+      }
+    }
+    matchedPeaks = matched;
+    return Math.min(score, 1.0);
+  }
+
+  private int collectPairs(int aBins[], float aWeights[], int aFrom, int aTo, int bBins[],
+      float bWeights[], int bFrom, int bTo, int shift, int count) {
+    int a = aFrom, b = bFrom;
+    while (a < aTo && b < bTo) {
+      final long target = (long) aBins[a] + shift;
+      if (target < bBins[b]) {
+        a++;
+      } else if (target > bBins[b]) {
+        b++;
+      } else {
+        final float product = aWeights[a] * bWeights[b];
+        pairs[count++] = ((long) Float.floatToIntBits(product) << 32) | ((a - aFrom) << 16)
+            | (b - bFrom);
+        a++;
+        b++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.identification.ms.spectrallibrarysearch;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The best matches of a query: a bounded min-heap of library spectrum indexes by score. Each
+ * library spectrum is kept once, with its best score, so several spectra of the same query (e.g.
+ * the MS/MS scans of a feature) can be offered to the same hits.
+ */
+public class TopHits {
+
+  private final int indexes[];
+  private final double scores[];
+  private final int matchedPeaks[];
+  private int size;
+
+  public TopHits(int capacity) {
+    indexes = new int[capacity];
+    scores = new double[capacity];
+    matchedPeaks = new int[capacity];
+  }
+
+  public void offer(int index, double score, int matched) {
+    // Keep the best score of a library spectrum which is already contained
+    for (int i = 0; i < size; i++) {
+      if (indexes[i] == index) {
+        if (score > scores[i]) {
+          scores[i] = score;
+          matchedPeaks[i] = matched;
+          siftDown(i);
+        }
+        return;
+      }
+    }
+    if (size < indexes.length) {
+      set(size, index, score, matched);
+      siftUp(size++);
+    } else if (score > scores[0]) {
+      set(0, index, score, matched);
+      siftDown(0);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return Positions of the hits in the order of decreasing score, for use with
+   *         {@link #getIndex(int)}, {@link #getScore(int)} and {@link #getMatchedPeaks(int)}
+   */
+  public @Nonnull int[] getOrder() {
+    final Integer order[] = new Integer[size];
+    for (int i = 0; i < size; i++)
+      order[i] = i;
+    Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+    return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+  }
+
+  public int getIndex(int position) {
+    return indexes[position];
+  }
+
+  public double getScore(int position) {
+    return scores[position];
+  }
+
+  public int getMatchedPeaks(int position) {
+    return matchedPeaks[position];
+  }
+
+  private void set(int position, int index, double score, int matched) {
+    indexes[position] = index;
+    scores[position] = score;
+    matchedPeaks[position] = matched;
+  }
+
+  private void siftUp(int position) {
+    while (position > 0) {
+      final int parent = (position - 1) / 2;
+      if (scores[parent] <= scores[position])
+        return;
+      swap(parent, position);
+      position = parent;
+    }
+  }
+
+  private void siftDown(int position) {
+    while (true) {
+      final int left = 2 * position + 1, right = left + 1;
+      int smallest = position;
+      if (left < size && scores[left] < scores[smallest])
+        smallest = left;
+      if (right < size && scores[right] < scores[smallest])
+        smallest = right;
+      if (smallest == position)
+        return;
+      swap(smallest, position);
+      position = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    final int index = indexes[a], matched = matchedPeaks[a];
+    final double score = scores[a];
+    set(a, indexes[b], scores[b], matchedPeaks[b]);
+    set(b, index, score, matched);
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.binaryexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+
+/**
+ * Writes a feature table in the {@link FeatureTableBinaryFormat}, one row group at a time
+ */
+public class BinaryFeatureTableExportMethod implements MSDKMethod<File> {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull File exportFile;
+
+  private volatile int processedRows, totalRows;
+  private volatile boolean canceled;
+  private File result;
+
+  public BinaryFeatureTableExportMethod(@Nonnull FeatureTable featureTable,
+      @Nonnull File exportFile) {
+    this.featureTable = featureTable;
+    this.exportFile = exportFile;
+  }
+
+  @Override
+  public File execute() throws MSDKException {
+    logger.info("Started binary export of " + featureTable.getName() + " to " + exportFile);
+
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final List<Sample> samples = featureTable.getSamples();
+    totalRows = rows.size();
+
+    // Column types are given by the first value of each column, empty columns are not stored
+    final List<FeatureTableColumn<?>> columns = new ArrayList<>();
+    final List<Byte> types = new ArrayList<>();
+    for (FeatureTableColumn<?> column : featureTable.getColumns()) {
+      for (FeatureTableRow row : rows) {
+        final Object value = row.getData(column);
+        if (value == null)
+          continue;
+        final Byte type = FeatureTableBinaryFormat.getType(value);
+        if (type != null) {
+          columns.add(column);
+          types.add(type);
+        }
+        break;
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(exportFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+      writeHeader(channel, samples, columns, types);
+
+      final int groupSize = FeatureTableBinaryFormat.ROW_GROUP_SIZE;
+      for (int from = 0; from < rows.size(); from += groupSize) {
+        if (canceled)
+          return null;
+        final List<FeatureTableRow> group =
+            rows.subList(from, Math.min(from + groupSize, rows.size()));
+        writeInt(channel, group.size());
+        for (int i = 0; i < columns.size(); i++)
+          writeFully(channel, formatColumn(group, columns.get(i), types.get(i)));
+        processedRows += group.size();
+      }
+
+      // End of row groups
+      writeInt(channel, 0);
+
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+
+    logger.info("Finished binary export of " + featureTable.getName() + " to " + exportFile);
+    result = exportFile;
+    return result;
+  }
+
+  private void writeHeader(FileChannel channel, List<Sample> samples,
+      List<FeatureTableColumn<?>> columns, List<Byte> types) throws IOException {
+    int size = 8 + FeatureTableBinaryFormat.getStringSize(featureTable.getName()) + 4 + 4;
+    for (Sample sample : samples)
+      size += FeatureTableBinaryFormat.getStringSize(sample.getName());
+    for (FeatureTableColumn<?> column : columns)
+      size += FeatureTableBinaryFormat.getStringSize(column.getName()) + 4 + 1;
+
+    final ByteBuffer header = FeatureTableBinaryFormat.allocate(size);
+    FeatureTableBinaryFormat.putMagic(header);
+    FeatureTableBinaryFormat.putString(header, featureTable.getName());
+    header.putInt(samples.size());
+    for (Sample sample : samples)
+      FeatureTableBinaryFormat.putString(header, sample.getName());
+    header.putInt(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      final FeatureTableColumn<?> column = columns.get(i);
+      FeatureTableBinaryFormat.putString(header, column.getName());
+      header.putInt(column.getSample() != null ? samples.indexOf(column.getSample()) : -1);
+      header.put(types.get(i));
+    }
+    header.flip();
+    writeFully(channel, header);
+  }
+
+  private ByteBuffer formatColumn(List<FeatureTableRow> group, FeatureTableColumn<?> column,
+      byte type) {
+    final int rowCount = group.size();
+    final Object values[] = new Object[rowCount];
+    for (int i = 0; i < rowCount; i++)
+      values[i] = FeatureTableBinaryFormat.toStoredValue(group.get(i).getData(column), type);
+
+    final byte nullBitmap[] = new byte[(rowCount + 7) / 8];
+    for (int i = 0; i < rowCount; i++) {
+      if (values[i] != null)
+        nullBitmap[i / 8] |= 1 << (i % 8);
+    }
+
+    if (type == FeatureTableBinaryFormat.TYPE_STRING) {
+      final byte strings[][] = new byte[rowCount][];
+      int length = 0;
+      for (int i = 0; i < rowCount; i++) {
+        strings[i] = values[i] != null ? values[i].toString().getBytes(StandardCharsets.UTF_8)
+            : new byte[0];
+        length += strings[i].length;
+      }
+      final ByteBuffer buffer =
+          FeatureTableBinaryFormat.allocate(nullBitmap.length + (rowCount + 1) * 4 + length);
+      buffer.put(nullBitmap);
+      int offset = 0;
+      buffer.putInt(offset);
+      for (byte string[] : strings) {
+        offset += string.length;
+        buffer.putInt(offset);
+      }
+      for (byte string[] : strings)
+        buffer.put(string);
+      buffer.flip();
+      return buffer;
+    }
+
+    final int valueSize = type == FeatureTableBinaryFormat.TYPE_FLOAT64 ? 8 : 4;
+    final ByteBuffer buffer =
+        FeatureTableBinaryFormat.allocate(nullBitmap.length + rowCount * valueSize);
+    buffer.put(nullBitmap);
+    for (Object value : values) {
+      final Number number = (Number) value;
+      switch (type) {
+        case FeatureTableBinaryFormat.TYPE_INT32:
+          buffer.putInt(number != null ? number.intValue() : 0);
+          break;
+        case FeatureTableBinaryFormat.TYPE_FLOAT32:
+          buffer.putFloat(number != null ? number.floatValue() : Float.NaN);
+          break;
+        default:
+          buffer.putDouble(number != null ? number.doubleValue() : Double.NaN);
+          break;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void writeInt(FileChannel channel, int value) throws IOException {
+    final ByteBuffer buffer = FeatureTableBinaryFormat.allocate(4).putInt(value);
+    buffer.flip();
+    writeFully(channel, buffer);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalRows == 0)
+      return null;
+    return (float) processedRows / totalRows;
+  }
+
+  @Override
+  @Nullable
+  public File getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
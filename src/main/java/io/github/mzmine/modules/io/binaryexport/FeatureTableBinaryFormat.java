@@ -0,0 +1,172 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.binaryexport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+
+/**
+ * Columnar binary format of feature tables. All numbers are little-endian, so the column blocks
+ * can be read directly into typed arrays (e.g. numpy.frombuffer or readBin in R).
+ * 
+ * <pre>
+ * header:     "MZFT", int32 version, string table name,
+ *             int32 sample count, sample count x string sample name,
+ *             int32 column count, column count x (string name, int32 sample index or -1, int8 type)
+ * row groups: int32 row count (0 ends the file), then for each column:
+ *             null bitmap of ceil(row count / 8) bytes (bit i of byte i / 8 set = value present),
+ *             INT32 / FLOAT32: row count x 4 bytes, FLOAT64: row count x 8 bytes,
+ *             STRING: int32 byte offsets[row count + 1], followed by the UTF-8 bytes
+ * string:     int32 byte length, UTF-8 bytes
+ * </pre>
+ * 
+ * Per-sample values are stored as wide columns referring to their sample. Retention times are
+ * stored in seconds, ion annotations as strings of "id TAB description" lines.
+ */
+public class FeatureTableBinaryFormat {
+
+  public static final String EXTENSION = "mzft";
+
+  public static final int VERSION = 1;
+
+  /**
+   * Number of rows per row group. Only one row group is held in memory while writing or reading.
+   */
+  public static final int ROW_GROUP_SIZE = 10000;
+
+  public static final byte TYPE_INT32 = 1, TYPE_FLOAT32 = 2, TYPE_FLOAT64 = 3, TYPE_STRING = 4;
+
+  private static final byte MAGIC[] = "MZFT".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * @return The column type used to store the given value, or null if the value is not stored
+   *         (e.g. chromatograms)
+   */
+  public static @Nullable Byte getType(@Nonnull Object value) {
+    if (value instanceof Integer)
+      return TYPE_INT32;
+    if ((value instanceof Float) || (value instanceof ChromatographyInfo))
+      return TYPE_FLOAT32;
+    if (value instanceof Double)
+      return TYPE_FLOAT64;
+    if ((value instanceof String) || (value instanceof List))
+      return TYPE_STRING;
+    return null;
+  }
+
+  /**
+   * @return The given value converted to the stored representation of the given type
+   */
+  public static @Nullable Object toStoredValue(@Nullable Object value, byte type) {
+    if (value == null)
+      return null;
+    if (value instanceof ChromatographyInfo)
+      return ((ChromatographyInfo) value).getRetentionTime();
+    if ((type == TYPE_STRING) && (value instanceof List)) {
+      final StringBuilder text = new StringBuilder();
+      for (Object item : (List<?>) value) {
+        if (text.length() > 0)
+          text.append('\n');
+        if (item instanceof IonAnnotation) {
+          final IonAnnotation annotation = (IonAnnotation) item;
+          text.append(annotation.getAnnotationId() != null ? annotation.getAnnotationId() : "");
+          text.append('\t');
+          text.append(annotation.getDescription() != null ? annotation.getDescription() : "");
+        } else {
+          text.append(item);
+        }
+      }
+      return text.toString();
+    }
+    if (type == TYPE_STRING)
+      return value.toString();
+    if ((type == TYPE_INT32) || (type == TYPE_FLOAT32) || (type == TYPE_FLOAT64))
+      return (value instanceof Number) ? value : null;
+    return null;
+  }
+
+  /**
+   * @return Little-endian buffer for writing, of given capacity
+   */
+  public static @Nonnull ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Reads exactly the given number of bytes from the channel into a little-endian buffer
+   */
+  public static @Nonnull ByteBuffer read(@Nonnull ReadableByteChannel channel, int length)
+      throws IOException {
+    final ByteBuffer buffer = allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0)
+        throw new EOFException("Unexpected end of feature table file");
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  public static int getStringSize(@Nonnull String value) {
+    return 4 + value.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  public static void putString(@Nonnull ByteBuffer buffer, @Nonnull String value) {
+    final byte bytes[] = value.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  public static @Nonnull String readString(@Nonnull ReadableByteChannel channel)
+      throws IOException {
+    final int length = read(channel, 4).getInt();
+    final ByteBuffer bytes = read(channel, length);
+    return new String(bytes.array(), 0, length, StandardCharsets.UTF_8);
+  }
+
+  public static void putMagic(@Nonnull ByteBuffer buffer) {
+    buffer.put(MAGIC);
+    buffer.putInt(VERSION);
+  }
+
+  /**
+   * Reads and checks the file signature and version
+   */
+  public static void readMagic(@Nonnull ReadableByteChannel channel) throws IOException {
+    final ByteBuffer magic = read(channel, MAGIC.length + 4);
+    for (byte b : MAGIC) {
+      if (magic.get() != b)
+        throw new IOException("Not a binary feature table file");
+    }
+    final int version = magic.getInt();
+    if (version != VERSION)
+      throw new IOException("Unsupported binary feature table version " + version);
+  }
+
+}
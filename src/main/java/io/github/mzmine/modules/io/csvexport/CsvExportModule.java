@@ -31,7 +31,6 @@ import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
-import io.github.msdk.io.csv.CsvFileExportMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
@@ -39,6 +38,8 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureTableColumnsS
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.FileCompression;
 import javafx.concurrent.Task;
 
 /**
@@ -80,6 +81,10 @@ public class CsvExportModule implements MZmineProcessingModule {
         parameters.getParameter(CsvExportParameters.exportAllIds).getValue();
     final FeatureTableColumnsSelection tableColumns =
         parameters.getParameter(CsvExportParameters.tableColumns).getValue();
+    FileCompression compression =
+        parameters.getParameter(CsvExportParameters.compression).getValue();
+    if (compression == null)
+      compression = FileCompression.NONE;
 
     if (featureTables == null || featureTables.getMatchingFeatureTables().isEmpty()) {
       MZmineGUI
@@ -112,14 +117,17 @@ public class CsvExportModule implements MZmineProcessingModule {
       // Multi-CSV export: substitute pattern in name
       String newFilename = exportFilePattern.getPath().replaceAll(Pattern.quote(namePattern),
           featureTable.getName());
-      File exportFileCSV = new File(newFilename);
+      File exportFileCSV = compression.getFile(new File(newFilename));
 
-      // New feature filter task
-      CsvFileExportMethod method = new CsvFileExportMethod(featureTable, exportFileCSV, separator,
-          itemSeparator, exportAllIds, columns);
+      // New feature table export task. The tasks of several tables run concurrently.
+      CsvFeatureTableExportMethod method = new CsvFeatureTableExportMethod(featureTable,
+          exportFileCSV, separator, itemSeparator, exportAllIds != null && exportAllIds, columns,
+          compression);
 
       MSDKTask newTask = new MSDKTask("Exporting feature table", featureTable.getName(), method);
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
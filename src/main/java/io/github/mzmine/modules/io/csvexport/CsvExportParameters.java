@@ -23,10 +23,12 @@ import java.util.Arrays;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTableColumnsParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.util.FileCompression;
 import javafx.stage.FileChooser.ExtensionFilter;
 
 public class CsvExportParameters extends ParameterSet {
@@ -53,11 +55,16 @@ public class CsvExportParameters extends ParameterSet {
           "If checked, all possible identifications of a feature will be exported.",
           "Algorithm Parameters", false);
 
+  public static final ComboParameter<FileCompression> compression = new ComboParameter<>(
+      "Compression", "Compression of the exported file. Compressed files get the extension .gz.",
+      "Algorithm Parameters", Arrays.asList(FileCompression.values()), FileCompression.NONE);
+
   public static final FeatureTableColumnsParameter tableColumns =
       new FeatureTableColumnsParameter();
 
   public CsvExportParameters() {
-    super(featureTables, exportFileCSV, separator, itemSeparator, exportAllIds, tableColumns);
+    super(featureTables, exportFileCSV, separator, itemSeparator, exportAllIds, compression,
+        tableColumns);
   }
 
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.csvexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.FileCompression;
+
+/**
+ * Streaming CSV export of a feature table. The rows are formatted in parallel chunks, using number
+ * formats local to each thread, and the formatted chunks are written in order. Only a limited
+ * window of formatted chunks is kept in memory.
+ */
+class CsvFeatureTableExportMethod implements MSDKMethod<File> {
+
+  private static final int CHUNK_SIZE = 1000;
+  private static final int CHUNKS_PER_PROCESSOR = 4;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull File exportFile;
+  private final @Nonnull String separator, itemSeparator;
+  private final boolean exportAllIds;
+  private final @Nonnull List<FeatureTableColumn<?>> columns;
+  private final @Nonnull FileCompression compression;
+
+  private final ThreadLocal<NumberFormat> mzFormat, rtFormat, intensityFormat;
+
+  private volatile int processedRows, totalRows;
+  private volatile boolean canceled;
+  private File result;
+
+  CsvFeatureTableExportMethod(@Nonnull FeatureTable featureTable, @Nonnull File exportFile,
+      @Nonnull String separator, @Nonnull String itemSeparator, boolean exportAllIds,
+      @Nonnull List<FeatureTableColumn<?>> columns, @Nonnull FileCompression compression) {
+    this.featureTable = featureTable;
+    this.exportFile = exportFile;
+    this.separator = separator;
+    this.itemSeparator = itemSeparator;
+    this.exportAllIds = exportAllIds;
+    this.columns = columns;
+    this.compression = compression;
+
+    // DecimalFormat is not thread-safe, each thread formats with its own copy
+    final NumberFormat mzTemplate =
+        (NumberFormat) MZmineCore.getConfiguration().getMZFormat().clone();
+    final NumberFormat rtTemplate =
+        (NumberFormat) MZmineCore.getConfiguration().getRTFormat().clone();
+    final NumberFormat intensityTemplate =
+        (NumberFormat) MZmineCore.getConfiguration().getIntensityFormat().clone();
+    this.mzFormat = ThreadLocal.withInitial(() -> (NumberFormat) mzTemplate.clone());
+    this.rtFormat = ThreadLocal.withInitial(() -> (NumberFormat) rtTemplate.clone());
+    this.intensityFormat = ThreadLocal.withInitial(() -> (NumberFormat) intensityTemplate.clone());
+  }
+
+  @Override
+  public File execute() throws MSDKException {
+    logger.info("Started CSV export of " + featureTable.getName() + " to " + exportFile);
+
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    totalRows = rows.size();
+
+    // Number format of each column, null for unformatted columns
+    final List<ThreadLocal<NumberFormat>> formats = new ArrayList<>();
+    for (FeatureTableColumn<?> column : columns)
+      formats.add(getFormat(column.getName()));
+
+    final int chunks = (rows.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final int window = MZmineCore.getComputePool().getParallelism() * CHUNKS_PER_PROCESSOR;
+
+    try (OutputStream out = compression.openOutputStream(exportFile)) {
+      out.write(formatHeader().getBytes(StandardCharsets.UTF_8));
+
+      for (int first = 0; first < chunks; first += window) {
+        if (canceled)
+          return null;
+        final int firstChunk = first;
+        final byte formatted[][] = MZmineCore.getComputePool().invoke(() -> IntStream
+            .range(firstChunk, Math.min(firstChunk + window, chunks)).parallel().mapToObj(chunk -> {
+              final int from = chunk * CHUNK_SIZE, to = Math.min(from + CHUNK_SIZE, rows.size());
+              return formatRows(rows.subList(from, to), formats);
+            }).toArray(byte[][]::new));
+        for (byte chunk[] : formatted)
+          out.write(chunk);
+        processedRows = Math.min((first + formatted.length) * CHUNK_SIZE, rows.size());
+      }
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+
+    logger.info("Finished CSV export of " + featureTable.getName() + " to " + exportFile);
+    result = exportFile;
+    return result;
+  }
+
+  private String formatHeader() {
+    final StringBuilder header = new StringBuilder();
+    for (int i = 0; i < columns.size(); i++) {
+      final FeatureTableColumn<?> column = columns.get(i);
+      final Sample sample = column.getSample();
+      if (i > 0)
+        header.append(separator);
+      header.append(escape(sample != null ? sample.getName() + " " + column.getName()
+          : column.getName()));
+    }
+    return header.append('\n').toString();
+  }
+
+  private byte[] formatRows(List<FeatureTableRow> rows,
+      List<ThreadLocal<NumberFormat>> formats) {
+    final StringBuilder text = new StringBuilder(rows.size() * columns.size() * 12);
+    for (FeatureTableRow row : rows) {
+      if (canceled)
+        break;
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0)
+          text.append(separator);
+        final ThreadLocal<NumberFormat> format = formats.get(i);
+        text.append(escape(formatValue(row.getData(columns.get(i)),
+            format != null ? format.get() : null)));
+      }
+      text.append('\n');
+    }
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String formatValue(@Nullable Object value, @Nullable NumberFormat format) {
+    if (value == null)
+      return "";
+    if (value instanceof ChromatographyInfo) {
+      final Float rt = ((ChromatographyInfo) value).getRetentionTime();
+      return rt == null ? "" : rtFormat.get().format(rt);
+    }
+    if ((value instanceof Number) && (format != null))
+      return format.format(value);
+    if (value instanceof List) {
+      final StringBuilder items = new StringBuilder();
+      for (Object item : (List<?>) value) {
+        final String itemText = formatItem(item);
+        if (itemText.isEmpty())
+          continue;
+        if (items.length() > 0)
+          items.append(itemSeparator);
+        items.append(itemText);
+        if (!exportAllIds)
+          break;
+      }
+      return items.toString();
+    }
+    if (value instanceof Chromatogram)
+      return "";
+    return value.toString();
+  }
+
+  private static String formatItem(@Nullable Object item) {
+    if (item == null)
+      return "";
+    if (item instanceof IonAnnotation) {
+      final IonAnnotation annotation = (IonAnnotation) item;
+      if (annotation.getDescription() != null)
+        return annotation.getDescription();
+      return annotation.getAnnotationId() != null ? annotation.getAnnotationId() : "";
+    }
+    return item.toString();
+  }
+
+  private @Nullable ThreadLocal<NumberFormat> getFormat(String columnName) {
+    if (columnName.equals(ColumnName.MZ.getName()))
+      return mzFormat;
+    if (columnName.equals(ColumnName.RTSTART.getName())
+        || columnName.equals(ColumnName.RTEND.getName()))
+      return rtFormat;
+    if (columnName.equals(ColumnName.AREA.getName())
+        || columnName.equals(ColumnName.HEIGHT.getName()))
+      return intensityFormat;
+    return null;
+  }
+
+  private String escape(String value) {
+    if (!value.contains(separator) && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+        && value.indexOf('\r') < 0)
+      return value;
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalRows == 0)
+      return null;
+    return (float) processedRows / totalRows;
+  }
+
+  @Override
+  @Nullable
+  public File getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Rows of a feature table indexed by m/z, for linking MS/MS spectra to the row with the closest
+ * m/z within the m/z and RT tolerances. The index is immutable and can be queried concurrently.
+ */
+class FeatureRowIndex {
+
+  private final @Nonnull List<FeatureTableRow> rows;
+  private final int rowOrder[];
+  private final double sortedMz[];
+  private final double rowMz[];
+  private final float rowRt[];
+
+  private FeatureRowIndex(@Nonnull List<FeatureTableRow> rows, int rowOrder[], double sortedMz[],
+      double rowMz[], float rowRt[]) {
+    this.rows = rows;
+    this.rowOrder = rowOrder;
+    this.sortedMz = sortedMz;
+    this.rowMz = rowMz;
+    this.rowRt = rowRt;
+  }
+
+  /**
+   * @return Index of the rows of the feature table, or null if the table has no m/z column
+   */
+  static @Nullable FeatureRowIndex create(@Nonnull FeatureTable featureTable) {
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final FeatureTableColumn<Double> mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+    final FeatureTableColumn<ChromatographyInfo> rtColumn =
+        featureTable.getColumn(ColumnName.RT, null);
+    if (mzColumn == null)
+      return null;
+
+    final List<Integer> indexed = new ArrayList<>(rows.size());
+    final double rowMz[] = new double[rows.size()];
+    final float rowRt[] = new float[rows.size()];
+    for (int i = 0; i < rows.size(); i++) {
+      final Double mz = rows.get(i).getData(mzColumn);
+      final ChromatographyInfo chromatographyInfo =
+          rtColumn != null ? rows.get(i).getData(rtColumn) : null;
+      rowMz[i] = mz != null ? mz : Double.NaN;
+      rowRt[i] = (chromatographyInfo != null) && (chromatographyInfo.getRetentionTime() != null)
+          ? chromatographyInfo.getRetentionTime() : Float.NaN;
+      if (mz != null)
+        indexed.add(i);
+    }
+    indexed.sort(Comparator.comparingDouble(i -> rowMz[i]));
+    final int rowOrder[] = new int[indexed.size()];
+    final double sortedMz[] = new double[indexed.size()];
+    for (int i = 0; i < rowOrder.length; i++) {
+      rowOrder[i] = indexed.get(i);
+      sortedMz[i] = rowMz[rowOrder[i]];
+    }
+    return new FeatureRowIndex(rows, rowOrder, sortedMz, rowMz, rowRt);
+  }
+
+  int getNumberOfRows() {
+    return rows.size();
+  }
+
+  @Nonnull
+  FeatureTableRow getRow(int index) {
+    return rows.get(index);
+  }
+
+  /**
+   * @param rt Retention time of the spectrum, or NaN to match rows at any RT
+   * @return Index of the row with the closest m/z within the tolerances, or -1 if there is none
+   */
+  int findRow(double precursorMz, float rt, @Nonnull MaximumMzTolerance mzTolerance,
+      @Nonnull RTTolerance rtTolerance) {
+    final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, precursorMz);
+    int best = -1;
+    double bestDistance = Double.MAX_VALUE;
+    int i = Arrays.binarySearch(sortedMz, precursorMz - mzDelta);
+    for (i = (i < 0) ? -i - 1 : i; i < sortedMz.length
+        && sortedMz[i] <= precursorMz + mzDelta; i++) {
+      final int row = rowOrder[i];
+      if (!Float.isNaN(rowRt[row]) && !Float.isNaN(rt)) {
+        final double rtDelta = rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+            : rowRt[row] * rtTolerance.getTolerance() / 100.0;
+        if (Math.abs(rt - rowRt[row]) > rtDelta)
+          continue;
+      }
+      final double distance = Math.abs(rowMz[row] - precursorMz);
+      if (distance < bestDistance) {
+        best = row;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+}
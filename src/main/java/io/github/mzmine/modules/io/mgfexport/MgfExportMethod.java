@@ -0,0 +1,291 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.FileCompression;
+
+/**
+ * Exports MS/MS scans into an MGF file. Without a feature table, all MS/MS scans of the raw data
+ * files are exported. With a feature table, each MS/MS scan is linked to the closest row within
+ * the m/z and RT tolerances, and the scans are exported row by row. The raw data files are
+ * processed in parallel and the output is written in blocks, so the complete MGF text is never
+ * held in memory.
+ */
+class MgfExportMethod implements MSDKMethod<File> {
+
+  static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull List<RawDataFile> rawDataFiles;
+  private final @Nullable FeatureTable featureTable;
+  private final @Nonnull File exportFile;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+  private final @Nonnull MgfMergeMode mergeMode;
+
+  private final AtomicInteger processedScans = new AtomicInteger();
+  private volatile int totalScans;
+  private volatile boolean canceled;
+  private File result;
+
+  /**
+   * @param featureTable Feature table whose rows the scans are linked to, or null to export all
+   *        MS/MS scans
+   */
+  MgfExportMethod(@Nonnull List<RawDataFile> rawDataFiles, @Nullable FeatureTable featureTable,
+      @Nonnull File exportFile, @Nonnull MaximumMzTolerance mzTolerance,
+      @Nonnull RTTolerance rtTolerance, @Nonnull MgfMergeMode mergeMode) {
+    this.rawDataFiles = rawDataFiles;
+    this.featureTable = featureTable;
+    this.exportFile = exportFile;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+    this.mergeMode = mergeMode;
+  }
+
+  @Override
+  public File execute() throws MSDKException {
+    int scanCount = 0;
+    for (RawDataFile rawDataFile : rawDataFiles)
+      scanCount += rawDataFile.getScans().size();
+    totalScans = scanCount;
+
+    logger.info("Started MGF export of " + rawDataFiles.size() + " raw data files to "
+        + exportFile);
+
+    int exported;
+    try (OutputStream out = FileCompression.NONE.openOutputStream(exportFile)) {
+      if (featureTable != null)
+        exported = exportRows(featureTable, out);
+      else
+        exported = exportScans(out);
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+    if (canceled)
+      return null;
+
+    logger.info("Finished MGF export, " + exported + " spectra written to " + exportFile);
+    result = exportFile;
+    return result;
+  }
+
+  /**
+   * Exports all MS/MS scans, file by file. The files are read in parallel, but written in the
+   * order of the list.
+   * 
+   * @return Number of exported spectra
+   */
+  private int exportScans(OutputStream out) throws IOException {
+    final StringBuilder text = new StringBuilder();
+    int exported = 0;
+
+    // A single file without merging is streamed scan by scan
+    if ((rawDataFiles.size() == 1) && (mergeMode == MgfMergeMode.NONE)) {
+      final RawDataFile rawDataFile = rawDataFiles.get(0);
+      for (MsScan scan : rawDataFile.getScans()) {
+        if (canceled)
+          return exported;
+        final MgfSpectrum spectrum = MgfSpectrum.extract(scan, getBaseName(rawDataFile));
+        if (spectrum != null) {
+          spectrum.format(text, null);
+          exported++;
+          if (text.length() >= WRITE_BUFFER_SIZE)
+            write(text, out);
+        }
+        processedScans.incrementAndGet();
+      }
+      write(text, out);
+      return exported;
+    }
+
+    final List<List<MgfSpectrum>> fileSpectra = MZmineCore.getComputePool().invoke(
+        () -> rawDataFiles.parallelStream().map(this::extractScans).collect(Collectors.toList()));
+    if (canceled)
+      return exported;
+
+    for (List<MgfSpectrum> spectra : fileSpectra) {
+      List<List<MgfSpectrum>> groups;
+      if (mergeMode == MgfMergeMode.NONE) {
+        groups = Arrays.asList(spectra);
+      } else {
+        groups = MgfSpectrum.groupByPrecursor(spectra, mzTolerance, rtTolerance);
+        groups.sort(Comparator.comparingDouble(group -> group.get(0).getRt()));
+      }
+      for (List<MgfSpectrum> group : groups) {
+        if (canceled)
+          return exported;
+        for (MgfSpectrum spectrum : MgfSpectrum.combine(group, mergeMode, mzTolerance)) {
+          spectrum.format(text, null);
+          exported++;
+        }
+        if (text.length() >= WRITE_BUFFER_SIZE)
+          write(text, out);
+      }
+    }
+    write(text, out);
+    return exported;
+  }
+
+  private List<MgfSpectrum> extractScans(RawDataFile rawDataFile) {
+    final String fileName = getBaseName(rawDataFile);
+    final List<MgfSpectrum> spectra = new ArrayList<>();
+    for (MsScan scan : rawDataFile.getScans()) {
+      if (canceled)
+        break;
+      final MgfSpectrum spectrum = MgfSpectrum.extract(scan, fileName);
+      if (spectrum != null)
+        spectra.add(spectrum);
+      processedScans.incrementAndGet();
+    }
+    return spectra;
+  }
+
+  /**
+   * Exports the MS/MS scans linked to the rows of the feature table, in the order of the rows
+   * 
+   * @return Number of exported spectra
+   */
+  private int exportRows(FeatureTable featureTable, OutputStream out) throws IOException {
+    final FeatureRowIndex rowIndex = FeatureRowIndex.create(featureTable);
+    if (rowIndex == null) {
+      logger.warn("Feature table " + featureTable.getName() + " has no m/z column");
+      return 0;
+    }
+
+    // Link the scans of each file to the rows in parallel, the results are combined in file order
+    final List<Map<Integer, List<MgfSpectrum>>> fileSpectra =
+        MZmineCore.getComputePool().invoke(() -> rawDataFiles.parallelStream()
+            .map(rawDataFile -> linkScans(rawDataFile, rowIndex))
+            .collect(Collectors.toList()));
+    if (canceled)
+      return 0;
+
+    final StringBuilder text = new StringBuilder();
+    int exported = 0;
+    for (int i = 0; i < rowIndex.getNumberOfRows(); i++) {
+      if (canceled)
+        return exported;
+      final List<MgfSpectrum> group = new ArrayList<>();
+      for (Map<Integer, List<MgfSpectrum>> spectra : fileSpectra) {
+        final List<MgfSpectrum> rowSpectra = spectra.get(i);
+        if (rowSpectra != null)
+          group.addAll(rowSpectra);
+      }
+      if (group.isEmpty())
+        continue;
+
+      // The merged spectrum takes the precursor of the most intense scan
+      if (mergeMode != MgfMergeMode.NONE)
+        group.sort(Comparator.comparingDouble(spectrum -> -spectrum.getTotalIntensity()));
+      final Integer rowId = rowIndex.getRow(i).getId();
+      for (MgfSpectrum spectrum : MgfSpectrum.combine(group, mergeMode, mzTolerance)) {
+        spectrum.format(text, rowId);
+        exported++;
+      }
+      if (text.length() >= WRITE_BUFFER_SIZE)
+        write(text, out);
+    }
+    write(text, out);
+    return exported;
+  }
+
+  /**
+   * Links each MS/MS scan of the file to the row with the closest m/z within the m/z and RT
+   * tolerances
+   * 
+   * @return Spectra by row index
+   */
+  private Map<Integer, List<MgfSpectrum>> linkScans(RawDataFile rawDataFile,
+      FeatureRowIndex rowIndex) {
+    final String fileName = getBaseName(rawDataFile);
+    final Map<Integer, List<MgfSpectrum>> spectra = new HashMap<>();
+    for (MsScan scan : rawDataFile.getScans()) {
+      if (canceled)
+        break;
+      processedScans.incrementAndGet();
+      final MgfSpectrum spectrum = MgfSpectrum.extract(scan, fileName);
+      if (spectrum == null)
+        continue;
+      final int row = rowIndex.findRow(spectrum.getPrecursorMz(), spectrum.getRt(), mzTolerance,
+          rtTolerance);
+      if (row >= 0)
+        spectra.computeIfAbsent(row, key -> new ArrayList<>()).add(spectrum);
+    }
+    return spectra;
+  }
+
+  static String getBaseName(RawDataFile rawDataFile) {
+    return FilenameUtils.removeExtension(rawDataFile.getName());
+  }
+
+  static void write(StringBuilder text, OutputStream out) throws IOException {
+    out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    text.setLength(0);
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalScans == 0)
+      return null;
+    return (float) processedScans.get() / totalScans;
+  }
+
+  @Override
+  @Nullable
+  public File getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.DataSizeUtils;
+import javafx.concurrent.Task;
+
+/**
+ * MGF export module
+ */
+public class MgfExportModule implements MZmineProcessingModule {
+
+  private Logger logger = LoggerFactory.getLogger(this.getClass());
+  private String namePattern = "{}";
+
+  private static final String MODULE_NAME = "MGF export";
+  private static final String MODULE_DESCRIPTION =
+      "This module exports MS/MS scans of raw data files or feature table rows into MGF";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task<?>> tasks) {
+
+    MgfExportSource source = parameters.getParameter(MgfExportParameters.source).getValue();
+    final RawDataFilesSelection rawDataFiles =
+        parameters.getParameter(MgfExportParameters.rawDataFiles).getValue();
+    final FeatureTablesSelection featureTables =
+        parameters.getParameter(MgfExportParameters.featureTables).getValue();
+    final MaximumMzTolerance mzTolerance =
+        parameters.getParameter(MgfExportParameters.mzTolerance).getValue();
+    final RTTolerance rtTolerance =
+        parameters.getParameter(MgfExportParameters.rtTolerance).getValue();
+    MgfMergeMode mergeMode = parameters.getParameter(MgfExportParameters.mergeMode).getValue();
+    final File fileName = parameters.getParameter(MgfExportParameters.fileName).getValue();
+
+    // Default values
+    if (source == null)
+      source = MgfExportSource.ALL_SCANS;
+    if (mergeMode == null)
+      mergeMode = MgfMergeMode.NONE;
+
+    if (rawDataFiles == null || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+      logger.warn("MGF export module started with no raw data files selected");
+      return;
+    }
+
+    if ((source == MgfExportSource.FEATURE_ROWS)
+        && (featureTables == null || featureTables.getMatchingFeatureTables().isEmpty())) {
+      logger.warn("MGF export module started with no feature table selected");
+      return;
+    }
+
+    if (fileName == null) {
+      MZmineGUI.displayMessage("The path and name of the MGF output file cannot be empty.");
+      logger.warn("The path and name of the MGF output file cannot be empty.");
+      return;
+    }
+
+    final List<RawDataFile> files = rawDataFiles.getMatchingRawDataFiles();
+    final String filePattern;
+
+    switch (source) {
+
+      case FEATURE_ROWS:
+        // Add a task for each feature table, each task reads the raw data files in parallel
+        final List<FeatureTable> tables = featureTables.getMatchingFeatureTables();
+        filePattern = getFilePattern(fileName, tables.size());
+        for (FeatureTable featureTable : tables) {
+          final File exportFile = new File(
+              filePattern.replaceAll(Pattern.quote(namePattern), featureTable.getName()));
+          MgfExportMethod method = new MgfExportMethod(files, featureTable, exportFile,
+              mzTolerance, rtTolerance, mergeMode);
+          MSDKTask newTask = new MSDKTask("MGF export", featureTable.getName(), method);
+
+          TaskMetrics.of(newTask).recordInput(featureTable);
+          TaskMetrics.of(newTask).recordInput(files);
+          TaskMetrics.of(newTask).setEstimatedFootprint(() -> DataSizeUtils
+              .estimateMsMsScanSize(files) + DataSizeUtils.estimateHeapSize(featureTable));
+
+          tasks.add(newTask);
+        }
+        break;
+
+      default:
+        // Add a task for each raw data file, the tasks run concurrently
+        filePattern = getFilePattern(fileName, files.size());
+        for (RawDataFile rawDataFile : files) {
+          final String baseName = FilenameUtils.removeExtension(rawDataFile.getName());
+          final File exportFile =
+              new File(filePattern.replaceAll(Pattern.quote(namePattern), baseName));
+          MgfExportMethod method = new MgfExportMethod(Collections.singletonList(rawDataFile),
+              null, exportFile, mzTolerance, rtTolerance, mergeMode);
+          MSDKTask newTask = new MSDKTask("MGF export", rawDataFile.getName(), method);
+
+          TaskMetrics.of(newTask).recordInput(rawDataFile);
+          // Without merging the scans are streamed, otherwise they are kept in memory
+          if (mergeMode != MgfMergeMode.NONE)
+            TaskMetrics.of(newTask)
+                .setEstimatedFootprint(() -> DataSizeUtils.estimateMsMsScanSize(rawDataFile));
+
+          tasks.add(newTask);
+        }
+        break;
+    }
+
+  }
+
+  /**
+   * Several files exported without the name pattern must not overwrite each other
+   */
+  private String getFilePattern(File fileName, int outputCount) {
+    String filePattern = fileName.getPath();
+    if ((outputCount > 1) && (!filePattern.contains(namePattern))) {
+      final String extension = FilenameUtils.getExtension(filePattern);
+      filePattern = FilenameUtils.removeExtension(filePattern) + "_" + namePattern
+          + (extension.isEmpty() ? "" : "." + extension);
+    }
+    return filePattern;
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return MgfExportParameters.class;
+  }
+}
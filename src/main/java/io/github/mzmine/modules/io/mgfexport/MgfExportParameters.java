@@ -0,0 +1,73 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.util.Arrays;
+
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTToleranceParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class MgfExportParameters extends ParameterSet {
+
+  public static final ComboParameter<MgfExportSource> source = new ComboParameter<>("Export",
+      "Export all MS/MS scans of the raw data files (one MGF file per raw data file), or only the MS/MS scans matching the rows of the feature tables (one MGF file per feature table).",
+      "", Arrays.asList(MgfExportSource.values()), MgfExportSource.ALL_SCANS);
+
+  public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
+
+  public static final FeatureTablesParameter featureTables = new FeatureTablesParameter();
+
+  public static final MZToleranceParameter mzTolerance = new MZToleranceParameter("m/z tolerance",
+      "Maximum allowed difference between the precursor m/z of an MS/MS scan and the m/z of a feature table row or another precursor.\n"
+          + "The same tolerance is used for merging fragment peaks.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new MaximumMzTolerance(0.01, 10.0));
+
+  public static final RTToleranceParameter rtTolerance = new RTToleranceParameter("RT tolerance",
+      "Maximum allowed retention time difference between an MS/MS scan and a feature table row or another scan of the same precursor.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new RTTolerance(10, true));
+
+  public static final ComboParameter<MgfMergeMode> mergeMode = new ComboParameter<>(
+      "MS/MS scans of the same precursor",
+      "Scans of the same precursor (or of the same feature table row) can be exported as they are, reduced to the most intense scan, or merged into one spectrum.",
+      "Algorithm Parameters", Arrays.asList(MgfMergeMode.values()), MgfMergeMode.NONE);
+
+  public static final FileNameParameter fileName = new FileNameParameter("File name",
+      "Path and name of the exported MGF file. If the file already exists, it will be overwritten.\n"
+          + "Use pattern \"{}\" in the file name to substitute with the raw data file or feature table name.\n"
+          + "I.e. \"123_{}_456.mgf\" would become \"123_SourceName_456.mgf\".\n"
+          + "If several files are exported without the pattern, their names are appended to the file name.",
+      "Output", ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.SAVE,
+      Arrays.asList(new ExtensionFilter("MGF file", "*.mgf")));
+
+  public MgfExportParameters() {
+    super(source, rawDataFiles, featureTables, mzTolerance, rtTolerance, mergeMode, fileName);
+  }
+
+}
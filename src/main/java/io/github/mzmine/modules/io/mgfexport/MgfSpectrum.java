@@ -0,0 +1,321 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * MS/MS spectrum extracted for the MGF export, detached from its scan
+ */
+class MgfSpectrum {
+
+  private static final DecimalFormatSymbols FORMAT_SYMBOLS =
+      DecimalFormatSymbols.getInstance(Locale.ROOT);
+
+  private static final ThreadLocal<NumberFormat> mzFormat =
+      ThreadLocal.withInitial(() -> new DecimalFormat("0.#####", FORMAT_SYMBOLS));
+  private static final ThreadLocal<NumberFormat> intensityFormat =
+      ThreadLocal.withInitial(() -> new DecimalFormat("0.##", FORMAT_SYMBOLS));
+
+  private final @Nonnull String fileName;
+  private final @Nonnull String title;
+  private final @Nonnull String scanNumbers;
+  private final double precursorMz;
+  private final @Nullable Integer charge;
+  private final float rt;
+  private final double mzValues[];
+  private final float intensityValues[];
+  private final double totalIntensity;
+
+  private MgfSpectrum(@Nonnull String fileName, @Nonnull String title, @Nonnull String scanNumbers,
+      double precursorMz, @Nullable Integer charge, float rt, double mzValues[],
+      float intensityValues[]) {
+    this.fileName = fileName;
+    this.title = title;
+    this.scanNumbers = scanNumbers;
+    this.precursorMz = precursorMz;
+    this.charge = charge;
+    this.rt = rt;
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+    double total = 0;
+    for (float intensity : intensityValues)
+      total += intensity;
+    this.totalIntensity = total;
+  }
+
+  /**
+   * @return The spectrum of the given scan, or null if the scan is not an MS/MS scan with a
+   *         precursor m/z
+   */
+  static @Nullable MgfSpectrum extract(@Nonnull MsScan scan, @Nonnull String fileName) {
+    final Integer msLevel = scan.getMsFunction().getMsLevel();
+    if ((msLevel == null) || (msLevel != 2))
+      return null;
+    IsolationInfo precursor = null;
+    for (IsolationInfo isolation : scan.getIsolations()) {
+      if (isolation.getPrecursorMz() != null) {
+        precursor = isolation;
+        break;
+      }
+    }
+    if (precursor == null)
+      return null;
+
+    final ChromatographyInfo chromatographyInfo = scan.getChromatographyInfo();
+    final float rt = (chromatographyInfo != null) && (chromatographyInfo.getRetentionTime() != null)
+        ? chromatographyInfo.getRetentionTime() : Float.NaN;
+    final int size = scan.getNumberOfDataPoints();
+    final String scanNumber = String.valueOf(scan.getScanNumber());
+    return new MgfSpectrum(fileName, fileName + " scan " + scanNumber, scanNumber,
+        precursor.getPrecursorMz(), precursor.getPrecursorCharge(), rt,
+        Arrays.copyOf(scan.getMzValues(), size), Arrays.copyOf(scan.getIntensityValues(), size));
+  }
+
+  double getPrecursorMz() {
+    return precursorMz;
+  }
+
+  float getRt() {
+    return rt;
+  }
+
+  double getTotalIntensity() {
+    return totalIntensity;
+  }
+
+  double[] getMzValues() {
+    return mzValues;
+  }
+
+  float[] getIntensityValues() {
+    return intensityValues;
+  }
+
+  /**
+   * Groups spectra of the same precursor, i.e. with precursor m/z and RT within the tolerances of
+   * the most intense spectrum of the group. Each group starts with its most intense spectrum.
+   */
+  static @Nonnull List<List<MgfSpectrum>> groupByPrecursor(@Nonnull List<MgfSpectrum> spectra,
+      @Nonnull MaximumMzTolerance mzTolerance, @Nonnull RTTolerance rtTolerance) {
+    final MgfSpectrum byMz[] = spectra.toArray(new MgfSpectrum[0]);
+    Arrays.sort(byMz, Comparator.comparingDouble(MgfSpectrum::getPrecursorMz));
+    final double precursorMzValues[] = new double[byMz.length];
+    for (int i = 0; i < byMz.length; i++)
+      precursorMzValues[i] = byMz[i].precursorMz;
+
+    final Integer byIntensity[] = new Integer[byMz.length];
+    for (int i = 0; i < byMz.length; i++)
+      byIntensity[i] = i;
+    Arrays.sort(byIntensity, Comparator.comparingDouble(i -> -byMz[i].totalIntensity));
+
+    final boolean assigned[] = new boolean[byMz.length];
+    final List<List<MgfSpectrum>> groups = new ArrayList<>();
+    for (int seed : byIntensity) {
+      if (assigned[seed])
+        continue;
+      final MgfSpectrum seedSpectrum = byMz[seed];
+      final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, seedSpectrum.precursorMz);
+      final double rtDelta = rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+          : seedSpectrum.rt * rtTolerance.getTolerance() / 100.0;
+
+      final List<MgfSpectrum> group = new ArrayList<>();
+      group.add(seedSpectrum);
+      assigned[seed] = true;
+      int i = Arrays.binarySearch(precursorMzValues, seedSpectrum.precursorMz - mzDelta);
+      for (i = (i < 0) ? -i - 1 : i; i < byMz.length
+          && precursorMzValues[i] <= seedSpectrum.precursorMz + mzDelta; i++) {
+        if (assigned[i] || (Math.abs(byMz[i].rt - seedSpectrum.rt) > rtDelta))
+          continue;
+        group.add(byMz[i]);
+        assigned[i] = true;
+      }
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  /**
+   * Reduces a group of spectra of the same precursor according to the merge mode. The first
+   * spectrum of the group is the most intense one.
+   * 
+   * @param mzTolerance Tolerance for merging the fragment peaks
+   */
+  static @Nonnull List<MgfSpectrum> combine(@Nonnull List<MgfSpectrum> group,
+      @Nonnull MgfMergeMode mergeMode, @Nonnull MaximumMzTolerance mzTolerance) {
+    if (group.size() < 2)
+      return group;
+    switch (mergeMode) {
+      case MOST_INTENSE:
+        MgfSpectrum mostIntense = group.get(0);
+        for (MgfSpectrum spectrum : group) {
+          if (spectrum.totalIntensity > mostIntense.totalIntensity)
+            mostIntense = spectrum;
+        }
+        return Arrays.asList(mostIntense);
+      case MERGE:
+        return Arrays.asList(merge(group, mzTolerance, 1));
+      default:
+        return group;
+    }
+  }
+
+  /**
+   * Builds the consensus spectrum of a cluster of similar spectra. The peaks are merged like in
+   * {@link MgfMergeMode#MERGE}, but only the peaks found in the given fraction of the spectra are
+   * kept. The first spectrum of the cluster is the most intense one, its precursor is used.
+   * 
+   * @param minPeakFraction Minimum fraction (0 to 1) of the spectra containing a peak
+   * @param clusterId ID of the cluster, used as the scan number of the consensus spectrum
+   */
+  static @Nonnull MgfSpectrum consensus(@Nonnull List<MgfSpectrum> cluster,
+      @Nonnull MaximumMzTolerance mzTolerance, double minPeakFraction, int clusterId) {
+    final int minPeakCount = Math.max(1, (int) Math.ceil(minPeakFraction * cluster.size()));
+    final MgfSpectrum merged = merge(cluster, mzTolerance, minPeakCount);
+    final MgfSpectrum first = cluster.get(0);
+    final String title = "consensus of " + cluster.size() + " scans, most intense " + first.title;
+    return new MgfSpectrum(first.fileName, title, String.valueOf(clusterId), merged.precursorMz,
+        merged.charge, merged.rt, merged.mzValues, merged.intensityValues);
+  }
+
+  /**
+   * Merges the peaks of all spectra. Peaks within the m/z tolerance of the lowest m/z of a merged
+   * peak are combined into it, with the summed intensity, at the intensity-weighted mean m/z. The
+   * width of a merged peak is thus limited by the tolerance, closely spaced peaks do not chain.
+   * 
+   * @param minPeakCount Minimum number of spectra with a peak combined into a merged peak
+   */
+  private static MgfSpectrum merge(List<MgfSpectrum> group, MaximumMzTolerance mzTolerance,
+      int minPeakCount) {
+    int size = 0;
+    for (MgfSpectrum spectrum : group)
+      size += spectrum.mzValues.length;
+    final double allMz[] = new double[size];
+    final float allIntensities[] = new float[size];
+    final int allSpectra[] = new int[size];
+    int offset = 0;
+    for (int s = 0; s < group.size(); s++) {
+      final MgfSpectrum spectrum = group.get(s);
+      System.arraycopy(spectrum.mzValues, 0, allMz, offset, spectrum.mzValues.length);
+      System.arraycopy(spectrum.intensityValues, 0, allIntensities, offset,
+          spectrum.intensityValues.length);
+      Arrays.fill(allSpectra, offset, offset + spectrum.mzValues.length, s);
+      offset += spectrum.mzValues.length;
+    }
+    final Integer order[] = new Integer[size];
+    for (int i = 0; i < size; i++)
+      order[i] = i;
+    Arrays.sort(order, Comparator.comparingDouble(i -> allMz[i]));
+
+    final double mergedMz[] = new double[size];
+    final float mergedIntensities[] = new float[size];
+    int merged = 0;
+    double weightedMz = 0, intensity = 0, startMz = Double.NaN, delta = 0;
+
+    // Number of distinct spectra in the current merged peak; a spectrum is counted once per merged
+    // peak, even if several of its peaks fall into it
+    int count = 0, peakNumber = 0;
+    final int lastPeakOfSpectrum[] = new int[group.size()];
+    Arrays.fill(lastPeakOfSpectrum, -1);
+    for (int index : order) {
+      if (allIntensities[index] <= 0)
+        continue;
+      final double mz = allMz[index];
+      if ((intensity > 0) && (mz - startMz > delta)) {
+        if (count >= minPeakCount) {
+          mergedMz[merged] = weightedMz / intensity;
+          mergedIntensities[merged++] = (float) intensity;
+        }
+        weightedMz = 0;
+        intensity = 0;
+        count = 0;
+        peakNumber++;
+      }
+      if (intensity == 0) {
+        startMz = mz;
+        delta = MzToleranceUtils.getMzDelta(mzTolerance, mz);
+      }
+      weightedMz += mz * allIntensities[index];
+      intensity += allIntensities[index];
+      if (lastPeakOfSpectrum[allSpectra[index]] != peakNumber) {
+        lastPeakOfSpectrum[allSpectra[index]] = peakNumber;
+        count++;
+      }
+    }
+    if ((intensity > 0) && (count >= minPeakCount)) {
+      mergedMz[merged] = weightedMz / intensity;
+      mergedIntensities[merged++] = (float) intensity;
+    }
+
+    final MgfSpectrum first = group.get(0);
+    final StringBuilder scanNumbers = new StringBuilder();
+    for (MgfSpectrum spectrum : group) {
+      if (scanNumbers.length() > 0)
+        scanNumbers.append(',');
+      scanNumbers.append(spectrum.scanNumbers);
+    }
+    return new MgfSpectrum(first.fileName, first.fileName + " scan " + scanNumbers,
+        scanNumbers.toString(), first.precursorMz, first.charge, first.rt,
+        Arrays.copyOf(mergedMz, merged), Arrays.copyOf(mergedIntensities, merged));
+  }
+
+  /**
+   * Appends the spectrum in MGF format
+   * 
+   * @param featureId ID of the feature table row of the spectrum, or null
+   */
+  void format(@Nonnull StringBuilder text, @Nullable Integer featureId) {
+    final NumberFormat mzFormatter = mzFormat.get();
+    final NumberFormat intensityFormatter = intensityFormat.get();
+    text.append("BEGIN IONS\n");
+    if (featureId != null)
+      text.append("FEATURE_ID=").append(featureId).append('\n');
+    text.append("TITLE=").append(title).append('\n');
+    text.append("PEPMASS=").append(mzFormatter.format(precursorMz)).append('\n');
+    if ((charge != null) && (charge != 0))
+      text.append("CHARGE=").append(Math.abs(charge)).append(charge > 0 ? "+" : "-").append('\n');
+    if (!Float.isNaN(rt))
+      text.append("RTINSECONDS=").append(rt).append('\n');
+    text.append("SCANS=").append(featureId != null ? featureId.toString() : scanNumbers)
+        .append('\n');
+    for (int i = 0; i < mzValues.length; i++) {
+      text.append(mzFormatter.format(mzValues[i])).append(' ')
+          .append(intensityFormatter.format(intensityValues[i])).append('\n');
+    }
+    text.append("END IONS\n\n");
+  }
+
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.identification.ms.spectrallibrarysearch.BinnedSpectrum;
+import io.github.mzmine.modules.identification.ms.spectrallibrarysearch.SpectralSimilarityScorer;
+import io.github.mzmine.util.FileCompression;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Clusters the MS/MS scans of all raw data files and exports one consensus spectrum per cluster
+ * into an MGF file. The scans are clustered greedily in the order of decreasing total intensity:
+ * each scan joins the most similar cluster whose first (most intense) scan has the same precursor
+ * m/z and RT within the tolerances, or starts a new cluster. To avoid comparing all pairs of scans,
+ * the clusters are indexed by their precursor m/z bucket and their most intense fragment bins, and
+ * a scan is only compared with the clusters sharing one of its most intense fragment bins.
+ * 
+ * The scans are binned while they are extracted and only their binned peaks are kept for the
+ * clustering. The full spectra are extracted again for the consensus of the exported clusters.
+ */
+class MsMsClusteringMethod implements MSDKMethod<File> {
+
+  /**
+   * Number of the most intense fragment bins of a cluster which are indexed
+   */
+  private static final int INDEXED_PEAKS = 5;
+
+  /**
+   * Number of the most intense fragment bins of a scan which are looked up in the index
+   */
+  private static final int QUERY_PEAKS = 10;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull List<RawDataFile> rawDataFiles;
+  private final @Nullable FeatureTable featureTable;
+  private final @Nonnull File exportFile;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+  private final double binWidth, minSimilarity, minPeakFraction;
+  private final int minClusterSize;
+
+  private final AtomicInteger processedItems = new AtomicInteger();
+  private volatile int totalItems;
+  private volatile boolean canceled;
+  private File result;
+
+  /**
+   * MS/MS scan with its binned peaks
+   */
+  private static class ClusteredScan {
+    private final MsScan scan;
+    private final String fileName;
+    private final double precursorMz;
+    private final float rt;
+    private final double totalIntensity;
+    private final BinnedSpectrum binned;
+
+    private ClusteredScan(MsScan scan, String fileName, MgfSpectrum spectrum,
+        BinnedSpectrum binned) {
+      this.scan = scan;
+      this.fileName = fileName;
+      this.precursorMz = spectrum.getPrecursorMz();
+      this.rt = spectrum.getRt();
+      this.totalIntensity = spectrum.getTotalIntensity();
+      this.binned = binned;
+    }
+  }
+
+  /**
+   * Cluster of similar scans, represented by its first (most intense) scan
+   */
+  private static class Cluster {
+    private final int first;
+    private final List<Integer> members = new ArrayList<>();
+    private int lastQuery = -1;
+
+    private Cluster(int first) {
+      this.first = first;
+      members.add(first);
+    }
+  }
+
+  /**
+   * @param featureTable Feature table whose rows the consensus spectra are linked to, or null
+   */
+  MsMsClusteringMethod(@Nonnull List<RawDataFile> rawDataFiles,
+      @Nullable FeatureTable featureTable, @Nonnull File exportFile,
+      @Nonnull MaximumMzTolerance mzTolerance, @Nonnull RTTolerance rtTolerance, double binWidth,
+      double minSimilarity, double minPeakFraction, int minClusterSize) {
+    this.rawDataFiles = rawDataFiles;
+    this.featureTable = featureTable;
+    this.exportFile = exportFile;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+    this.binWidth = binWidth;
+    this.minSimilarity = minSimilarity;
+    this.minPeakFraction = minPeakFraction;
+    this.minClusterSize = minClusterSize;
+  }
+
+  @Override
+  public File execute() throws MSDKException {
+    int scanCount = 0;
+    for (RawDataFile rawDataFile : rawDataFiles)
+      scanCount += rawDataFile.getScans().size();
+    totalItems = scanCount;
+
+    logger.info("Started MS/MS clustering of " + rawDataFiles.size() + " raw data files");
+
+    // Extract and bin the MS/MS scans of all files in parallel
+    final List<List<ClusteredScan>> fileScans = MZmineCore.getComputePool().invoke(
+        () -> rawDataFiles.parallelStream().map(this::extractScans).collect(Collectors.toList()));
+    final List<ClusteredScan> scans = new ArrayList<>();
+    for (List<ClusteredScan> list : fileScans)
+      scans.addAll(list);
+    if (canceled)
+      return null;
+    totalItems = scanCount + scans.size();
+
+    final List<Cluster> clusters = cluster(scans);
+    if (canceled)
+      return null;
+
+    // Build the consensus spectra in parallel, in the order of RT
+    final List<Cluster> exported = new ArrayList<>();
+    for (Cluster cluster : clusters) {
+      if (cluster.members.size() >= minClusterSize)
+        exported.add(cluster);
+    }
+    exported.sort(Comparator.comparingDouble(cluster -> scans.get(cluster.first).rt));
+    final List<MgfSpectrum> consensusSpectra = MZmineCore.getComputePool()
+        .invoke(() -> IntStream.range(0, exported.size()).parallel().mapToObj(i -> {
+          final List<MgfSpectrum> members = new ArrayList<>(exported.get(i).members.size());
+          for (int member : exported.get(i).members) {
+            final ClusteredScan scan = scans.get(member);
+            members.add(MgfSpectrum.extract(scan.scan, scan.fileName));
+          }
+          return MgfSpectrum.consensus(members, mzTolerance, minPeakFraction, i + 1);
+        }).collect(Collectors.toList()));
+    if (canceled)
+      return null;
+
+    try (OutputStream out = FileCompression.NONE.openOutputStream(exportFile)) {
+      write(consensusSpectra, out);
+    } catch (IOException e) {
+      throw new MSDKException(e);
+    }
+    if (canceled)
+      return null;
+
+    logger.info("Finished MS/MS clustering, " + scans.size() + " scans in " + clusters.size()
+        + " clusters, " + consensusSpectra.size() + " consensus spectra written to "
+        + exportFile);
+    result = exportFile;
+    return result;
+  }
+
+  /**
+   * @return The MS/MS scans of the raw data file with their binned peaks. Scans without peaks are
+   *         skipped, they cannot be clustered.
+   */
+  private List<ClusteredScan> extractScans(RawDataFile rawDataFile) {
+    final String fileName = MgfExportMethod.getBaseName(rawDataFile);
+    final List<ClusteredScan> scans = new ArrayList<>();
+    for (MsScan scan : rawDataFile.getScans()) {
+      if (canceled)
+        break;
+      processedItems.incrementAndGet();
+      final MgfSpectrum spectrum = MgfSpectrum.extract(scan, fileName);
+      if (spectrum == null)
+        continue;
+      final BinnedSpectrum binned = BinnedSpectrum.create(spectrum.getPrecursorMz(),
+          spectrum.getMzValues(), spectrum.getIntensityValues(), spectrum.getMzValues().length,
+          binWidth);
+      if (binned != null)
+        scans.add(new ClusteredScan(scan, fileName, spectrum, binned));
+    }
+    return scans;
+  }
+
+  /**
+   * Clusters the scans in the order of decreasing total intensity
+   */
+  private List<Cluster> cluster(List<ClusteredScan> scans) {
+    final Integer order[] = new Integer[scans.size()];
+    for (int i = 0; i < order.length; i++)
+      order[i] = i;
+    Arrays.sort(order, Comparator.comparingDouble(i -> -scans.get(i).totalIntensity));
+
+    // The precursor m/z buckets are as wide as the largest m/z tolerance, so the first scan of a
+    // matching cluster is always in the same or a neighboring bucket
+    double maxPrecursorMz = 0;
+    for (ClusteredScan scan : scans)
+      maxPrecursorMz = Math.max(maxPrecursorMz, scan.precursorMz);
+    final double bucketWidth =
+        Math.max(0.001, MzToleranceUtils.getMzDelta(mzTolerance, maxPrecursorMz));
+
+    final SpectralSimilarityScorer scorer = new SpectralSimilarityScorer();
+    final Map<Long, List<Cluster>> index = new HashMap<>();
+    final List<Cluster> clusters = new ArrayList<>();
+    for (int query : order) {
+      if (canceled)
+        return clusters;
+      processedItems.incrementAndGet();
+      final ClusteredScan queryScan = scans.get(query);
+      final BinnedSpectrum spectrum = queryScan.binned;
+      final long bucket = (long) Math.floor(queryScan.precursorMz / bucketWidth);
+
+      Cluster best = null;
+      double bestScore = minSimilarity;
+      for (int bin : getTopBins(spectrum, QUERY_PEAKS)) {
+        for (long neighbor = bucket - 1; neighbor <= bucket + 1; neighbor++) {
+          final List<Cluster> candidates = index.get(getKey(neighbor, bin));
+          if (candidates == null)
+            continue;
+          for (Cluster cluster : candidates) {
+            if (cluster.lastQuery == query)
+              continue;
+            cluster.lastQuery = query;
+            if (!isSamePrecursor(scans.get(cluster.first), queryScan))
+              continue;
+            final BinnedSpectrum first = scans.get(cluster.first).binned;
+            final double score = scorer.score(first.getBins(), first.getWeights(), 0,
+                first.getNumberOfPeaks(), spectrum.getBins(), spectrum.getWeights(), 0,
+                spectrum.getNumberOfPeaks(), 0);
+            if (score >= bestScore) {
+              best = cluster;
+              bestScore = score;
+            }
+          }
+        }
+      }
+
+      if (best != null) {
+        best.members.add(query);
+        continue;
+      }
+      final Cluster cluster = new Cluster(query);
+      clusters.add(cluster);
+      for (int bin : getTopBins(spectrum, INDEXED_PEAKS))
+        index.computeIfAbsent(getKey(bucket, bin), key -> new ArrayList<>()).add(cluster);
+    }
+    return clusters;
+  }
+
+  /**
+   * @return True if the precursor m/z and RT of the scan are within the tolerances of the first
+   *         scan of a cluster
+   */
+  private boolean isSamePrecursor(ClusteredScan first, ClusteredScan scan) {
+    final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, first.precursorMz);
+    if (Math.abs(scan.precursorMz - first.precursorMz) > mzDelta)
+      return false;
+    if (Float.isNaN(first.rt) || Float.isNaN(scan.rt))
+      return true;
+    final double rtDelta = rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+        : first.rt * rtTolerance.getTolerance() / 100.0;
+    return Math.abs(scan.rt - first.rt) <= rtDelta;
+  }
+
+  private static long getKey(long bucket, int bin) {
+    return (bucket << 32) | (bin & 0xffffffffL);
+  }
+
+  /**
+   * @return Bins of the most intense peaks of the spectrum
+   */
+  private static int[] getTopBins(BinnedSpectrum spectrum, int count) {
+    final int bins[] = spectrum.getBins();
+    final float weights[] = spectrum.getWeights();
+    if (bins.length <= count)
+      return bins;
+    // Sort by weight (positive float bits sort like floats)
+    final long peaks[] = new long[bins.length];
+    for (int i = 0; i < bins.length; i++)
+      peaks[i] = ((long) Float.floatToIntBits(weights[i]) << 32) | i;
+    Arrays.sort(peaks);
+    final int topBins[] = new int[count];
+    for (int i = 0; i < count; i++)
+      topBins[i] = bins[(int) peaks[peaks.length - 1 - i]];
+    return topBins;
+  }
+
+  /**
+   * Writes the consensus spectra, linked to the closest feature table row if a feature table is
+   * given
+   */
+  private void write(List<MgfSpectrum> consensusSpectra, OutputStream out) throws IOException {
+    FeatureRowIndex rowIndex = null;
+    if (featureTable != null) {
+      rowIndex = FeatureRowIndex.create(featureTable);
+      if (rowIndex == null)
+        logger.warn("Feature table " + featureTable.getName() + " has no m/z column");
+    }
+
+    final StringBuilder text = new StringBuilder();
+    for (MgfSpectrum spectrum : consensusSpectra) {
+      if (canceled)
+        return;
+      Integer rowId = null;
+      if (rowIndex != null) {
+        final int row = rowIndex.findRow(spectrum.getPrecursorMz(), spectrum.getRt(), mzTolerance,
+            rtTolerance);
+        if (row >= 0)
+          rowId = rowIndex.getRow(row).getId();
+      }
+      spectrum.format(text, rowId);
+      if (text.length() >= MgfExportMethod.WRITE_BUFFER_SIZE)
+        MgfExportMethod.write(text, out);
+    }
+    MgfExportMethod.write(text, out);
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalItems == 0)
+      return null;
+    return (float) processedItems.get() / totalItems;
+  }
+
+  @Override
+  @Nullable
+  public File getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.DataSizeUtils;
+import javafx.concurrent.Task;
+
+/**
+ * MS/MS clustering module
+ */
+public class MsMsClusteringModule implements MZmineProcessingModule {
+
+  private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private static final String MODULE_NAME = "MS/MS clustering";
+  private static final String MODULE_DESCRIPTION =
+      "This module clusters similar MS/MS scans of all raw data files and exports one consensus spectrum per cluster into MGF";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task<?>> tasks) {
+
+    final RawDataFilesSelection rawDataFiles =
+        parameters.getParameter(MsMsClusteringParameters.rawDataFiles).getValue();
+    final Boolean linkRows =
+        parameters.getParameter(MsMsClusteringParameters.featureTable).getValue();
+    final FeatureTablesSelection featureTables = parameters
+        .getParameter(MsMsClusteringParameters.featureTable).getEmbeddedParameter().getValue();
+    final MaximumMzTolerance mzTolerance =
+        parameters.getParameter(MsMsClusteringParameters.mzTolerance).getValue();
+    final RTTolerance rtTolerance =
+        parameters.getParameter(MsMsClusteringParameters.rtTolerance).getValue();
+    final Double binWidth = parameters.getParameter(MsMsClusteringParameters.binWidth).getValue();
+    final Double minSimilarity =
+        parameters.getParameter(MsMsClusteringParameters.minSimilarity).getValue();
+    final Double minPeakFraction =
+        parameters.getParameter(MsMsClusteringParameters.minPeakFraction).getValue();
+    final Integer minClusterSize =
+        parameters.getParameter(MsMsClusteringParameters.minClusterSize).getValue();
+    final File fileName = parameters.getParameter(MsMsClusteringParameters.fileName).getValue();
+
+    if (rawDataFiles == null || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+      logger.warn("MS/MS clustering module started with no raw data files selected");
+      return;
+    }
+
+    FeatureTable featureTable = null;
+    if ((linkRows != null) && linkRows) {
+      final List<FeatureTable> tables =
+          featureTables != null ? featureTables.getMatchingFeatureTables() : null;
+      if (tables == null || tables.size() != 1) {
+        MZmineGUI.displayMessage("Select a single feature table to link the clusters to.");
+        logger.warn("MS/MS clustering module started without a single feature table selected");
+        return;
+      }
+      featureTable = tables.get(0);
+    }
+
+    if (fileName == null) {
+      MZmineGUI.displayMessage("The path and name of the MGF output file cannot be empty.");
+      logger.warn("The path and name of the MGF output file cannot be empty.");
+      return;
+    }
+
+    // Cluster the scans of all files in a single task
+    final List<RawDataFile> files = new ArrayList<>(rawDataFiles.getMatchingRawDataFiles());
+    MsMsClusteringMethod method = new MsMsClusteringMethod(files, featureTable, fileName,
+        mzTolerance, rtTolerance, binWidth, minSimilarity, minPeakFraction,
+        Math.max(1, minClusterSize));
+    MSDKTask newTask = new MSDKTask("MS/MS clustering",
+        files.size() == 1 ? files.get(0).getName() : files.size() + " raw data files", method);
+
+    TaskMetrics.of(newTask).recordInput(files);
+    TaskMetrics.of(newTask).recordInput(featureTable);
+    final FeatureTable table = featureTable;
+    TaskMetrics.of(newTask).setEstimatedFootprint(() -> DataSizeUtils.estimateMsMsScanSize(files)
+        + DataSizeUtils.estimateHeapSize(table));
+
+    tasks.add(newTask);
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return MsMsClusteringParameters.class;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.mgfexport;
+
+import java.util.Arrays;
+
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTToleranceParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class MsMsClusteringParameters extends ParameterSet {
+
+  public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
+
+  public static final OptionalParameter<FeatureTablesParameter> featureTable =
+      new OptionalParameter<FeatureTablesParameter>(new FeatureTablesParameter());
+
+  public static final MZToleranceParameter mzTolerance = new MZToleranceParameter("m/z tolerance",
+      "Maximum allowed difference between the precursor m/z of the MS/MS scans of a cluster, or of a consensus spectrum and a feature table row.\n"
+          + "The same tolerance is used for merging fragment peaks.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new MaximumMzTolerance(0.01, 10.0));
+
+  public static final RTToleranceParameter rtTolerance = new RTToleranceParameter("RT tolerance",
+      "Maximum allowed retention time difference between the MS/MS scans of a cluster, or of a consensus spectrum and a feature table row.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(),
+      new RTTolerance(10, true));
+
+  public static final DoubleParameter binWidth = new DoubleParameter("Fragment m/z bin width",
+      "Width of the m/z bins used to compare the fragment peaks.", "Algorithm Parameters",
+      MZmineCore.getConfiguration().getMZFormat(), (value, messages) -> {
+        if ((value == null) || (value <= 0)) {
+          messages.add("Bin width must be positive");
+          return false;
+        }
+        return true;
+      }, 0.02);
+
+  public static final DoubleParameter minSimilarity = new DoubleParameter("Minimum similarity",
+      "Minimum cosine similarity (0 to 1) between an MS/MS scan and the most intense scan of its cluster.",
+      "Algorithm Parameters", null, ParameterValidator.createNonEmptyValidator(), 0.7);
+
+  public static final PercentParameter minPeakFraction = new PercentParameter(
+      "Minimum peak frequency",
+      "Fragment peaks found in less than this fraction of the scans of a cluster are removed from its consensus spectrum.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(), 0.25);
+
+  public static final IntegerParameter minClusterSize = new IntegerParameter(
+      "Minimum cluster size",
+      "Clusters with less MS/MS scans are not exported. Use 1 to export all clusters including single scans.",
+      "Algorithm Parameters", ParameterValidator.createNonEmptyValidator(), 1);
+
+  public static final FileNameParameter fileName = new FileNameParameter("File name",
+      "Path and name of the exported MGF file. If the file already exists, it will be overwritten.",
+      "Output", ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.SAVE,
+      Arrays.asList(new ExtensionFilter("MGF file", "*.mgf")));
+
+  public MsMsClusteringParameters() {
+    super(rawDataFiles, featureTable, mzTolerance, rtTolerance, binWidth, minSimilarity,
+        minPeakFraction, minClusterSize, fileName);
+  }
+
+}
@@ -35,6 +35,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -99,6 +100,8 @@ public class MzTabExportModule implements MZmineProcessingModule {
 
       MSDKTask newTask = new MSDKTask("Exporting feature table", featureTable.getName(), method);
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
@@ -28,15 +28,14 @@ import org.slf4j.LoggerFactory;
 import io.github.msdk.datamodel.datastore.DataPointStore;
 import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
-import io.github.msdk.features.isotopegrouper.IsotopeGrouperMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.modules.MZmineProcessingModule;
-import io.github.mzmine.modules.filtering.featurefilter.FeatureFilterParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -65,7 +64,7 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
       @Nonnull Collection<Task<?>> tasks) {
 
     final FeatureTablesSelection featureTables =
-        parameters.getParameter(FeatureFilterParameters.featureTables).getValue();
+        parameters.getParameter(IsotopeGrouperParameters.featureTables).getValue();
 
     final MaximumMzTolerance mzTolerance =
         parameters.getParameter(IsotopeGrouperParameters.mzTolerance).getValue();
@@ -76,9 +75,8 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
     final Integer maximumCharge =
         parameters.getParameter(IsotopeGrouperParameters.maximumCharge).getValue();
 
-    // final RepresentativeIsotope representativeIsotope = parameters
-    // .getParameter(IsotopeGrouperParameters.representativeIsotope)
-    // .getValue();
+    final RepresentativeIsotope representativeIsotope =
+        parameters.getParameter(IsotopeGrouperParameters.representativeIsotope).getValue();
 
     final Boolean monotonicShape =
         parameters.getParameter(IsotopeGrouperParameters.monotonicShape).getValue();
@@ -106,8 +104,12 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
         featureTableName += nameSuffix;
 
       // New isotope grouper method
-      IsotopeGrouperMethod method = new IsotopeGrouperMethod(featureTable, dataStore, mzTolerance,
-          rtTolerance, maximumCharge, monotonicShape, featureTableName);
+      ParallelIsotopeGrouperMethod method =
+          new ParallelIsotopeGrouperMethod(featureTable, dataStore, mzTolerance, rtTolerance,
+              maximumCharge != null ? maximumCharge : 1,
+              representativeIsotope != null ? representativeIsotope
+                  : RepresentativeIsotope.MOST_INTENSE,
+              monotonicShape != null && monotonicShape, featureTableName);
 
       MSDKTask newTask =
           new MSDKTask("Isotope grouping features in table", featureTable.getName(), method);
@@ -123,6 +125,8 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
         }
       });
 
+      TaskMetrics.of(newTask).recordInput(featureTable);
+
       // Add the task to the queue
       tasks.add(newTask);
 
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.isotopes.isotopegrouper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.FeatureTableUtils;
+import io.github.mzmine.util.MzToleranceUtils;
+
+/**
+ * Isotope grouper which detects isotope patterns using an m/z-sorted index of the rows. For each
+ * row and charge, the expected isotope m/z values are looked up by binary search. The search for
+ * candidate patterns only reads the table, so it runs in parallel on RT windows of the rows. The
+ * patterns are then assigned in the order of decreasing height, so each row belongs to at most one
+ * pattern.
+ * 
+ * The isotopes of a pattern follow their representative row in the resulting table and refer to it
+ * by their group ID.
+ */
+class ParallelIsotopeGrouperMethod implements MSDKMethod<FeatureTable> {
+
+  /**
+   * Distance between the isotopes of a pattern, i.e. the mass difference of 13C and 12C
+   */
+  static final double ISOTOPE_DISTANCE = 1.0033;
+
+  /**
+   * Number of RT windows per available processor
+   */
+  private static final int WINDOWS_PER_PROCESSOR = 4;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull FeatureTable featureTable;
+  private final @Nonnull DataPointStore dataStore;
+  private final @Nonnull MaximumMzTolerance mzTolerance;
+  private final @Nonnull RTTolerance rtTolerance;
+  private final int maximumCharge;
+  private final @Nonnull RepresentativeIsotope representativeIsotope;
+  private final boolean monotonicShape;
+  private final @Nonnull String featureTableName;
+
+  private final AtomicInteger processedRows = new AtomicInteger();
+  private volatile int totalRows;
+  private volatile boolean canceled;
+  private FeatureTable result;
+
+  // Row data, indexed by the position of the row in the table
+  private FeatureTableRow rows[];
+  private double mzValues[];
+  private float rtValues[], heights[];
+
+  // Row indexes sorted by m/z, and the sorted m/z values for the binary search
+  private int mzOrder[];
+  private double sortedMzValues[];
+
+  /**
+   * Best isotope pattern found for a row. The isotopes above and below the m/z of the row are kept
+   * in the order of their distance from the row.
+   */
+  private static class Pattern {
+    private final int charge;
+    private final int higherIsotopes[], lowerIsotopes[];
+
+    private Pattern(int charge, int higherIsotopes[], int lowerIsotopes[]) {
+      this.charge = charge;
+      this.higherIsotopes = higherIsotopes;
+      this.lowerIsotopes = lowerIsotopes;
+    }
+
+    private int size() {
+      return 1 + higherIsotopes.length + lowerIsotopes.length;
+    }
+  }
+
+  ParallelIsotopeGrouperMethod(@Nonnull FeatureTable featureTable,
+      @Nonnull DataPointStore dataStore, @Nonnull MaximumMzTolerance mzTolerance,
+      @Nonnull RTTolerance rtTolerance, int maximumCharge,
+      @Nonnull RepresentativeIsotope representativeIsotope, boolean monotonicShape,
+      @Nonnull String featureTableName) {
+    this.featureTable = featureTable;
+    this.dataStore = dataStore;
+    this.mzTolerance = mzTolerance;
+    this.rtTolerance = rtTolerance;
+    this.maximumCharge = maximumCharge;
+    this.representativeIsotope = representativeIsotope;
+    this.monotonicShape = monotonicShape;
+    this.featureTableName = featureTableName;
+  }
+
+  @Override
+  public FeatureTable execute() {
+    logger.info("Started isotope grouping " + featureTable.getName());
+
+    readRows();
+    totalRows = rows.length;
+
+    // Find the best pattern of each row, in parallel on RT windows
+    final Pattern patterns[] = new Pattern[rows.length];
+    final Integer rtOrder[] = new Integer[rows.length];
+    for (int i = 0; i < rows.length; i++)
+      rtOrder[i] = i;
+    Arrays.sort(rtOrder, Comparator.comparingDouble(i -> rtValues[i]));
+    final int windowsPerPool = MZmineCore.getComputePool().getParallelism() * WINDOWS_PER_PROCESSOR;
+    final int numOfWindows = Math.max(1, Math.min(rows.length, windowsPerPool));
+    final List<int[]> windows = new ArrayList<>();
+    for (int w = 0; w < numOfWindows; w++) {
+      final int start = (int) ((long) rows.length * w / numOfWindows);
+      final int end = (int) ((long) rows.length * (w + 1) / numOfWindows);
+      windows.add(new int[] {start, end});
+    }
+    MZmineCore.getComputePool().run(() -> windows.parallelStream().forEach(window -> {
+      for (int i = window[0]; i < window[1]; i++) {
+        if (canceled)
+          return;
+        patterns[rtOrder[i]] = findPattern(rtOrder[i]);
+        processedRows.incrementAndGet();
+      }
+    }));
+    if (canceled)
+      return null;
+
+    // Assign the patterns in the order of decreasing height. Isotopes which already belong to a
+    // more intense pattern end the pattern.
+    final Integer heightOrder[] = new Integer[rows.length];
+    for (int i = 0; i < rows.length; i++)
+      heightOrder[i] = i;
+    Arrays.sort(heightOrder, Comparator.comparingDouble(i -> -heights[i]));
+    final boolean assigned[] = new boolean[rows.length];
+    final List<int[]> groups = new ArrayList<>();
+    final List<Integer> groupCharges = new ArrayList<>();
+    for (int row : heightOrder) {
+      if (assigned[row] || patterns[row] == null)
+        continue;
+      final List<Integer> members = new ArrayList<>();
+      members.add(row);
+      for (int isotope : patterns[row].higherIsotopes) {
+        if (assigned[isotope])
+          break;
+        members.add(isotope);
+      }
+      for (int isotope : patterns[row].lowerIsotopes) {
+        if (assigned[isotope])
+          break;
+        members.add(isotope);
+      }
+      if (members.size() < 2)
+        continue;
+      final int group[] = new int[members.size()];
+      for (int i = 0; i < group.length; i++) {
+        group[i] = members.get(i);
+        assigned[group[i]] = true;
+      }
+      groups.add(group);
+      groupCharges.add(patterns[row].charge);
+    }
+
+    writeResult(groups, groupCharges);
+
+    logger.info("Finished isotope grouping " + featureTable.getName() + ", found " + groups.size()
+        + " isotope patterns");
+    return result;
+  }
+
+  private void readRows() {
+    final List<FeatureTableRow> tableRows = featureTable.getRows();
+    final FeatureTableColumn<Double> mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+    final FeatureTableColumn<ChromatographyInfo> rtColumn =
+        featureTable.getColumn(ColumnName.RT, null);
+    final FeatureTableColumn<Float> heightColumn = featureTable.getColumn(ColumnName.HEIGHT, null);
+    final List<FeatureTableColumn<Float>> sampleHeightColumns = new ArrayList<>();
+    for (Sample sample : featureTable.getSamples()) {
+      FeatureTableColumn<Float> column = featureTable.getColumn(ColumnName.HEIGHT, sample);
+      if (column != null)
+        sampleHeightColumns.add(column);
+    }
+
+    rows = tableRows.toArray(new FeatureTableRow[tableRows.size()]);
+    mzValues = new double[rows.length];
+    rtValues = new float[rows.length];
+    heights = new float[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      final Double mz = mzColumn != null ? rows[i].getData(mzColumn) : null;
+      final ChromatographyInfo rt = rtColumn != null ? rows[i].getData(rtColumn) : null;
+      mzValues[i] = mz != null ? mz : Double.NaN;
+      rtValues[i] = (rt != null) && (rt.getRetentionTime() != null) ? rt.getRetentionTime()
+          : Float.NaN;
+
+      // Use the height of the row, or the maximum height of its features
+      Float height = heightColumn != null ? rows[i].getData(heightColumn) : null;
+      if (height == null) {
+        for (FeatureTableColumn<Float> column : sampleHeightColumns) {
+          Float sampleHeight = rows[i].getData(column);
+          if ((sampleHeight != null) && ((height == null) || (sampleHeight > height)))
+            height = sampleHeight;
+        }
+      }
+      heights[i] = height != null ? height : 0f;
+    }
+
+    // Rows without m/z are sorted last and never found by the binary search
+    final Integer order[] = new Integer[rows.length];
+    for (int i = 0; i < rows.length; i++)
+      order[i] = i;
+    Arrays.sort(order, Comparator.comparingDouble(i -> mzValues[i]));
+    mzOrder = new int[rows.length];
+    sortedMzValues = new double[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      mzOrder[i] = order[i];
+      sortedMzValues[i] = mzValues[order[i]];
+    }
+  }
+
+  /**
+   * @return The pattern with the most isotopes over all charges, or null if no isotope was found
+   */
+  private @Nullable Pattern findPattern(int row) {
+    if (Double.isNaN(mzValues[row]) || Float.isNaN(rtValues[row]))
+      return null;
+    Pattern bestPattern = null;
+    for (int charge = 1; charge <= maximumCharge; charge++) {
+      final int higherIsotopes[] = findIsotopes(row, charge, 1);
+      final int lowerIsotopes[] = findIsotopes(row, charge, -1);
+      final Pattern pattern = new Pattern(charge, higherIsotopes, lowerIsotopes);
+      if ((pattern.size() > 1) && ((bestPattern == null) || (pattern.size() > bestPattern.size())))
+        bestPattern = pattern;
+    }
+    return bestPattern;
+  }
+
+  /**
+   * Follows the isotopes of a row in one direction of m/z, until the next isotope is missing
+   */
+  private int[] findIsotopes(int row, int charge, int direction) {
+    final List<Integer> isotopes = new ArrayList<>();
+    final float rtDelta = (float) (rtTolerance.isAbsolute() ? rtTolerance.getTolerance()
+        : rtValues[row] * rtTolerance.getTolerance() / 100.0);
+    int previous = row;
+    for (int n = 1;; n++) {
+      final double expectedMz = mzValues[row] + direction * n * ISOTOPE_DISTANCE / charge;
+      final double mzDelta = MzToleranceUtils.getMzDelta(mzTolerance, expectedMz);
+
+      // Closest candidate within the m/z and RT tolerances
+      int bestCandidate = -1;
+      for (int i = lowerBound(expectedMz - mzDelta); (i < sortedMzValues.length)
+          && (sortedMzValues[i] <= expectedMz + mzDelta); i++) {
+        final int candidate = mzOrder[i];
+        if (!(Math.abs(rtValues[candidate] - rtValues[row]) <= rtDelta))
+          continue;
+        if (monotonicShape && (heights[candidate] >= heights[previous]))
+          continue;
+        if ((bestCandidate < 0) || (Math.abs(mzValues[candidate] - expectedMz) < Math
+            .abs(mzValues[bestCandidate] - expectedMz)))
+          bestCandidate = candidate;
+      }
+      if (bestCandidate < 0)
+        break;
+      isotopes.add(bestCandidate);
+      previous = bestCandidate;
+    }
+    final int result[] = new int[isotopes.size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = isotopes.get(i);
+    return result;
+  }
+
+  /**
+   * @return Index of the first sorted m/z value which is greater or equal to the given value
+   */
+  private int lowerBound(double mz) {
+    int low = 0, high = sortedMzValues.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedMzValues[mid] < mz)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * Writes the rows into the new feature table. The representative row of each pattern is followed
+   * by the other isotopes, which get the ID of the representative row as their group ID.
+   */
+  private void writeResult(List<int[]> groups, List<Integer> groupCharges) {
+    result = FeatureTableUtils.copyColumns(featureTable, featureTableName, dataStore);
+    FeatureTableColumn<Integer> groupColumn = result.getColumn(ColumnName.GROUPID, null);
+    if (groupColumn == null) {
+      groupColumn = MSDKObjectBuilder.getFeatureTableColumn(ColumnName.GROUPID, null);
+      result.addColumn(groupColumn);
+    }
+    FeatureTableColumn<Integer> chargeColumn = result.getColumn(ColumnName.CHARGE, null);
+    if (chargeColumn == null) {
+      chargeColumn = MSDKObjectBuilder.getFeatureTableColumn(ColumnName.CHARGE, null);
+      result.addColumn(chargeColumn);
+    }
+
+    // Group of each representative row, and the rows which are written with their representative
+    final int groupOf[] = new int[rows.length];
+    final boolean isotope[] = new boolean[rows.length];
+    Arrays.fill(groupOf, -1);
+    for (int g = 0; g < groups.size(); g++) {
+      final int group[] = groups.get(g);
+      int representative = group[0];
+      for (int member : group) {
+        switch (representativeIsotope) {
+          case LOWEST_MZ:
+            if (mzValues[member] < mzValues[representative])
+              representative = member;
+            break;
+          case MOST_INTENSE:
+          default:
+            if (heights[member] > heights[representative])
+              representative = member;
+            break;
+        }
+      }
+      groupOf[representative] = g;
+      for (int member : group) {
+        if (member != representative)
+          isotope[member] = true;
+      }
+    }
+
+    for (int i = 0; i < rows.length; i++) {
+      if (isotope[i])
+        continue;
+      final FeatureTableRow newRow = FeatureTableUtils.copyRow(rows[i], result);
+      result.addRow(newRow);
+      if (groupOf[i] < 0)
+        continue;
+
+      // Add the other isotopes of the pattern in the order of m/z
+      final int group[] = groups.get(groupOf[i]);
+      final Integer charge = groupCharges.get(groupOf[i]);
+      newRow.setData(chargeColumn, charge);
+      final Integer members[] = new Integer[group.length];
+      for (int m = 0; m < group.length; m++)
+        members[m] = group[m];
+      Arrays.sort(members, Comparator.comparingDouble(m -> mzValues[m]));
+      for (int member : members) {
+        if (member == i)
+          continue;
+        final FeatureTableRow isotopeRow = FeatureTableUtils.copyRow(rows[member], result);
+        isotopeRow.setData(groupColumn, rows[i].getId());
+        isotopeRow.setData(chargeColumn, charge);
+        result.addRow(isotopeRow);
+      }
+    }
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalRows == 0)
+      return null;
+    return Math.min(1f, (float) processedRows.get() / totalRows);
+  }
+
+  @Override
+  @Nullable
+  public FeatureTable getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    this.canceled = true;
+  }
+
+}
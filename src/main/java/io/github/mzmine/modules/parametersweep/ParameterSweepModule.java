@@ -0,0 +1,129 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import javafx.concurrent.Task;
+
+/**
+ * Parameter sweep module. Runs the chromatogram builder and the join aligner over a grid of noise
+ * levels, minimum peak heights, m/z tolerances and RT tolerances in parallel, and reports the
+ * feature counts and alignment statistics of each combination.
+ */
+public class ParameterSweepModule implements MZmineProcessingModule {
+
+  private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  static final String MODULE_NAME = "Parameter sweep";
+  private static final String MODULE_DESCRIPTION =
+      "This module runs the chromatogram builder and the join aligner with all combinations of the given parameter ranges and reports the results.";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task<?>> tasks) {
+
+    final RawDataFilesSelection rawDataFiles =
+        parameters.getParameter(ParameterSweepParameters.rawDataFiles).getValue();
+    final List<Double> noiseLevels =
+        getGrid(parameters.getParameter(ParameterSweepParameters.noiseLevelRange).getValue(),
+            parameters.getParameter(ParameterSweepParameters.noiseLevelSteps).getValue());
+    final List<Double> minHeights =
+        getGrid(parameters.getParameter(ParameterSweepParameters.minHeightRange).getValue(),
+            parameters.getParameter(ParameterSweepParameters.minHeightSteps).getValue());
+    final List<Double> mzTolerances =
+        getGrid(parameters.getParameter(ParameterSweepParameters.mzTolerancePpmRange).getValue(),
+            parameters.getParameter(ParameterSweepParameters.mzToleranceSteps).getValue());
+    final List<Double> rtTolerances =
+        getGrid(parameters.getParameter(ParameterSweepParameters.rtToleranceRange).getValue(),
+            parameters.getParameter(ParameterSweepParameters.rtToleranceSteps).getValue());
+    final Double minDuration =
+        parameters.getParameter(ParameterSweepParameters.minDuration).getValue();
+    final Double mzToleranceAbsolute =
+        parameters.getParameter(ParameterSweepParameters.mzToleranceAbsolute).getValue();
+    final File reportFile = parameters.getParameter(ParameterSweepParameters.reportFile).getValue();
+
+    if (rawDataFiles == null || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+      logger.warn("Parameter sweep module started with no raw data files selected");
+      return;
+    }
+    if (reportFile == null) {
+      logger.warn("Parameter sweep module started with no report file");
+      return;
+    }
+
+    final List<RawDataFile> files = new ArrayList<>(rawDataFiles.getMatchingRawDataFiles());
+    final ParameterSweepRun run = new ParameterSweepRun(files, noiseLevels, minHeights,
+        mzTolerances, rtTolerances, minDuration != null ? minDuration : 0.0,
+        mzToleranceAbsolute != null ? mzToleranceAbsolute : 0.0, reportFile);
+    logger.info("Starting parameter sweep of " + run.getNumberOfCombinations()
+        + " combinations over " + files.size() + " raw data files");
+
+    run.createTasks(tasks);
+  }
+
+  /**
+   * @return The given number of evenly spaced values within the range, or the lower endpoint if
+   *         the number of steps is less than 2
+   */
+  static @Nonnull List<Double> getGrid(Range<Double> range, Integer steps) {
+    final List<Double> values = new ArrayList<>();
+    if (range == null)
+      return values;
+    if (steps == null || steps < 2 || range.lowerEndpoint().equals(range.upperEndpoint())) {
+      values.add(range.lowerEndpoint());
+      return values;
+    }
+    final double stepSize = (range.upperEndpoint() - range.lowerEndpoint()) / (steps - 1);
+    for (int i = 0; i < steps; i++)
+      values.add(range.lowerEndpoint() + i * stepSize);
+    return values;
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return ParameterSweepParameters.class;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.util.Arrays;
+
+import com.google.common.collect.Range;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+public class ParameterSweepParameters extends ParameterSet {
+
+  public static final RawDataFilesParameter rawDataFiles = new RawDataFilesParameter();
+
+  public static final DoubleRangeParameter noiseLevelRange = new DoubleRangeParameter(
+      "Noise level range", "Range of the chromatogram builder noise levels to test",
+      "Chromatogram builder", MZmineCore.getConfiguration().getIntensityFormat(),
+      ParameterValidator.createNonEmptyValidator(), Range.closed(1000.0, 10000.0));
+
+  public static final IntegerParameter noiseLevelSteps = new IntegerParameter("Noise level steps",
+      "Number of evenly spaced noise levels to test within the range", "Chromatogram builder",
+      ParameterValidator.createNonEmptyValidator(), 3);
+
+  public static final DoubleRangeParameter minHeightRange = new DoubleRangeParameter(
+      "Min peak height range", "Range of the chromatogram builder minimum peak heights to test",
+      "Chromatogram builder", MZmineCore.getConfiguration().getIntensityFormat(),
+      ParameterValidator.createNonEmptyValidator(), Range.closed(5000.0, 50000.0));
+
+  public static final IntegerParameter minHeightSteps = new IntegerParameter(
+      "Min peak height steps",
+      "Number of evenly spaced minimum peak heights to test within the range",
+      "Chromatogram builder", ParameterValidator.createNonEmptyValidator(), 3);
+
+  public static final DoubleParameter minDuration = new DoubleParameter("Min peak duration",
+      "Minimum time span over which the same ion must be observed in order to be recognized as a peaks.",
+      "Chromatogram builder", MZmineCore.getConfiguration().getRTFormat(),
+      ParameterValidator.createNonEmptyValidator(), 5d);
+
+  public static final DoubleParameter mzToleranceAbsolute = new DoubleParameter(
+      "Absolute m/z tolerance",
+      "Absolute part of the m/z tolerance (in m/z), used by both the chromatogram builder and the aligner.\n"
+          + "The tolerance range is calculated using maximum of the absolute and relative tolerances.",
+      "m/z and RT tolerances", MZmineCore.getConfiguration().getMZFormat(),
+      ParameterValidator.createNonEmptyValidator(), 0.001);
+
+  public static final DoubleRangeParameter mzTolerancePpmRange =
+      new DoubleRangeParameter("m/z tolerance range (ppm)",
+          "Range of the relative m/z tolerances to test, used by both the chromatogram builder and the aligner",
+          "m/z and RT tolerances", ParameterValidator.createNonEmptyValidator(),
+          Range.closed(5.0, 15.0));
+
+  public static final IntegerParameter mzToleranceSteps = new IntegerParameter(
+      "m/z tolerance steps", "Number of evenly spaced m/z tolerances to test within the range",
+      "m/z and RT tolerances", ParameterValidator.createNonEmptyValidator(), 3);
+
+  public static final DoubleRangeParameter rtToleranceRange = new DoubleRangeParameter(
+      "RT tolerance range", "Range of the (absolute) aligner retention time tolerances to test",
+      "m/z and RT tolerances", MZmineCore.getConfiguration().getRTFormat(),
+      ParameterValidator.createNonEmptyValidator(), Range.closed(5.0, 20.0));
+
+  public static final IntegerParameter rtToleranceSteps = new IntegerParameter(
+      "RT tolerance steps", "Number of evenly spaced RT tolerances to test within the range",
+      "m/z and RT tolerances", ParameterValidator.createNonEmptyValidator(), 3);
+
+  public static final FileNameParameter reportFile = new FileNameParameter("Report file",
+      "CSV file for the feature counts and alignment statistics of each parameter combination",
+      "Output", ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.SAVE,
+      Arrays.asList(new ExtensionFilter("CSV file", "*.csv")));
+
+  /**
+   * Create the parameter set.
+   */
+  public ParameterSweepParameters() {
+    super(rawDataFiles, noiseLevelRange, noiseLevelSteps, minHeightRange, minHeightSteps,
+        minDuration, mzToleranceAbsolute, mzTolerancePpmRange, mzToleranceSteps, rtToleranceRange,
+        rtToleranceSteps, reportFile);
+  }
+
+}
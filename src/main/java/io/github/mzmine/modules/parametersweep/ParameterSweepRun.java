@@ -0,0 +1,327 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.parametersweep;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.features.joinaligner.JoinAlignerMethod;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.alignment.joinaligner.JoinAlignerModule;
+import io.github.mzmine.modules.alignment.joinaligner.JoinAlignerParameters;
+import io.github.mzmine.modules.featuredetection.chromatogrambuilder.ChromatogramBuilderModule;
+import io.github.mzmine.modules.featuredetection.chromatogrambuilder.ChromatogramBuilderParameters;
+import io.github.mzmine.modules.featuredetection.chromatogrambuilder.ChromatogramBuilderTask;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.ResultCacheKey;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import javafx.concurrent.Task;
+
+/**
+ * One run of the parameter sweep. The chromatogram builder runs once for each combination of noise
+ * level, minimum height and m/z tolerance and each raw data file. Once all files of a combination
+ * are processed, their feature tables are aligned once for each RT tolerance. The results are only
+ * used for the report and are not added to the project.
+ * 
+ * Finished tasks are counted when the task itself completes (see {@link Task#done()}) rather than
+ * through JavaFX worker state events, so the report is also written when no JavaFX application
+ * thread is running. The results are handled while holding the lock of this run.
+ */
+class ParameterSweepRun {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull List<RawDataFile> rawDataFiles;
+  private final @Nonnull List<Double> rtTolerances;
+  private final double minDuration, mzToleranceAbsolute;
+  private final @Nonnull File reportFile;
+
+  private final List<Combination> combinations = new ArrayList<>();
+  private final List<String[]> reportLines = new ArrayList<>();
+  private int runningTasks;
+
+  /**
+   * Chromatogram builder settings and the resulting feature tables, one per raw data file
+   */
+  private class Combination {
+    private final double noiseLevel, minHeight, mzTolerancePpm;
+    private final Map<RawDataFile, FeatureTable> featureTables = new LinkedHashMap<>();
+    private int pendingFiles = rawDataFiles.size();
+    private int pendingAlignments;
+
+    private Combination(double noiseLevel, double minHeight, double mzTolerancePpm) {
+      this.noiseLevel = noiseLevel;
+      this.minHeight = minHeight;
+      this.mzTolerancePpm = mzTolerancePpm;
+    }
+
+    private MaximumMzTolerance getMzTolerance() {
+      return new MaximumMzTolerance(mzToleranceAbsolute, mzTolerancePpm);
+    }
+  }
+
+  ParameterSweepRun(@Nonnull List<RawDataFile> rawDataFiles, @Nonnull List<Double> noiseLevels,
+      @Nonnull List<Double> minHeights, @Nonnull List<Double> mzTolerancesPpm,
+      @Nonnull List<Double> rtTolerances, double minDuration, double mzToleranceAbsolute,
+      @Nonnull File reportFile) {
+    this.rawDataFiles = rawDataFiles;
+    this.rtTolerances = rtTolerances;
+    this.minDuration = minDuration;
+    this.mzToleranceAbsolute = mzToleranceAbsolute;
+    this.reportFile = reportFile;
+
+    for (Double noiseLevel : noiseLevels)
+      for (Double minHeight : minHeights)
+        for (Double mzTolerancePpm : mzTolerancesPpm)
+          combinations.add(new Combination(noiseLevel, minHeight, mzTolerancePpm));
+  }
+
+  int getNumberOfCombinations() {
+    return combinations.size() * (rawDataFiles.size() > 1 ? rtTolerances.size() : 1);
+  }
+
+  /**
+   * Creates the chromatogram builder tasks. The tasks of each raw data file are queued next to each
+   * other, so all combinations of one file run while its data is loaded and cached.
+   */
+  void createTasks(@Nonnull Collection<Task<?>> tasks) {
+    for (RawDataFile rawDataFile : rawDataFiles) {
+      for (Combination combination : combinations) {
+
+        final ChromatogramBuilderTask newTask = new ChromatogramBuilderTask(
+            "Parameter sweep: chromatogram builder", describe(combination, rawDataFile),
+            rawDataFile, DataPointStoreFactory.getMemoryDataStore(), combination.getMzTolerance(),
+            combination.noiseLevel, minDuration, combination.minHeight, "") {
+          @Override
+          protected void done() {
+            super.done();
+            taskDone(() -> builderFinished(combination, rawDataFile,
+                isCancelled() ? null : getResult()));
+          }
+        };
+        taskStarted();
+
+        // Combinations which were built before (also by the chromatogram builder module itself)
+        // are taken from the result cache
+        newTask.setResultCacheKey(new ResultCacheKey(ChromatogramBuilderModule.class,
+            getBuilderParameters(combination, rawDataFile), rawDataFile));
+
+        TaskMetrics.of(newTask).recordInput(rawDataFile);
+        tasks.add(newTask);
+      }
+    }
+  }
+
+  private ParameterSet getBuilderParameters(Combination combination, RawDataFile rawDataFile) {
+    final ParameterSet parameters = new ChromatogramBuilderParameters();
+    final List<RawDataFile> selectedFiles = new ArrayList<>();
+    selectedFiles.add(rawDataFile);
+    parameters.getParameter(ChromatogramBuilderParameters.rawDataFiles)
+        .setValue(new RawDataFilesSelection(selectedFiles));
+    parameters.getParameter(ChromatogramBuilderParameters.mzTolerance)
+        .setValue(combination.getMzTolerance());
+    parameters.getParameter(ChromatogramBuilderParameters.noiseLevel)
+        .setValue(combination.noiseLevel);
+    parameters.getParameter(ChromatogramBuilderParameters.minDuration).setValue(minDuration);
+    parameters.getParameter(ChromatogramBuilderParameters.minHeight)
+        .setValue(combination.minHeight);
+    parameters.getParameter(ChromatogramBuilderParameters.nameSuffix).setValue("");
+    return parameters;
+  }
+
+  /**
+   * Counts a created task, must be called before the task is submitted
+   */
+  private synchronized void taskStarted() {
+    runningTasks++;
+  }
+
+  /**
+   * Handles the result of a finished, failed or cancelled task. Called on the thread which
+   * completed the task. The report is written after the last task.
+   */
+  private synchronized void taskDone(Runnable action) {
+    try {
+      action.run();
+    } catch (Exception e) {
+      logger.error("Error processing a parameter sweep result", e);
+    }
+    runningTasks--;
+    if (runningTasks == 0)
+      writeReport();
+  }
+
+  private void builderFinished(Combination combination, RawDataFile rawDataFile,
+      FeatureTable featureTable) {
+    if (featureTable != null)
+      combination.featureTables.put(rawDataFile, featureTable);
+    combination.pendingFiles--;
+    if (combination.pendingFiles > 0)
+      return;
+
+    // A single feature table cannot be aligned
+    final List<FeatureTable> featureTables = new ArrayList<>(combination.featureTables.values());
+    if (rawDataFiles.size() < 2) {
+      addReportLine(combination, null, null);
+      combination.featureTables.clear();
+      return;
+    }
+    if (featureTables.size() < 2) {
+      for (Double rtTolerance : rtTolerances)
+        addReportLine(combination, rtTolerance, null);
+      combination.featureTables.clear();
+      return;
+    }
+
+    // Use the configured join aligner weights and requirements, only the tolerances are varied
+    final ParameterSet alignerParameters =
+        MZmineCore.getConfiguration().getModuleParameters(JoinAlignerModule.class);
+    final Integer mzWeight =
+        alignerParameters.getParameter(JoinAlignerParameters.mzWeight).getValue();
+    final Integer rtWeight =
+        alignerParameters.getParameter(JoinAlignerParameters.rtWeight).getValue();
+    final Boolean requireSameAnnotation =
+        alignerParameters.getParameter(JoinAlignerParameters.requireSameAnnotation).getValue();
+    final Boolean requireSameCharge =
+        alignerParameters.getParameter(JoinAlignerParameters.requireSameCharge).getValue();
+
+    final List<Task<?>> alignerTasks = new ArrayList<>();
+    for (Double rtTolerance : rtTolerances) {
+      final JoinAlignerMethod method = new JoinAlignerMethod(featureTables,
+          DataPointStoreFactory.getMemoryDataStore(), combination.getMzTolerance(),
+          new RTTolerance(rtTolerance, true), mzWeight != null ? mzWeight : 1,
+          rtWeight != null ? rtWeight : 1, requireSameCharge != null && requireSameCharge,
+          requireSameAnnotation != null && requireSameAnnotation, "Parameter sweep");
+      final MSDKTask newTask = new MSDKTask("Parameter sweep: aligning feature tables",
+          describe(combination, null) + ", RT tolerance " + rtTolerance, method) {
+        @Override
+        protected void done() {
+          super.done();
+          taskDone(() -> alignerFinished(combination, rtTolerance,
+              isCancelled() ? null : method.getResult()));
+        }
+      };
+      TaskMetrics.of(newTask).recordInput(featureTables);
+      combination.pendingAlignments++;
+      taskStarted();
+      alignerTasks.add(newTask);
+    }
+    MZmineCore.submitTasks(alignerTasks, ParameterSweepModule.MODULE_NAME);
+  }
+
+  private void alignerFinished(Combination combination, Double rtTolerance,
+      FeatureTable alignedTable) {
+    addReportLine(combination, rtTolerance, alignedTable);
+
+    // The chromatogram builder results are not needed after the last alignment
+    combination.pendingAlignments--;
+    if (combination.pendingAlignments == 0)
+      combination.featureTables.clear();
+  }
+
+  private void addReportLine(Combination combination, Double rtTolerance,
+      FeatureTable alignedTable) {
+    int features = 0;
+    for (FeatureTable featureTable : combination.featureTables.values())
+      features += featureTable.getRows().size();
+    final double featuresPerFile = (double) features / rawDataFiles.size();
+
+    String alignedRows = "", rowsInAllFiles = "", filesPerRow = "";
+    if (alignedTable != null) {
+      final List<FeatureTableColumn<?>> mzColumns = new ArrayList<>();
+      for (Sample sample : alignedTable.getSamples()) {
+        FeatureTableColumn<?> mzColumn = alignedTable.getColumn(ColumnName.MZ, sample);
+        if (mzColumn != null)
+          mzColumns.add(mzColumn);
+      }
+      int completeRows = 0;
+      long detections = 0;
+      for (FeatureTableRow row : alignedTable.getRows()) {
+        int rowDetections = 0;
+        for (FeatureTableColumn<?> mzColumn : mzColumns) {
+          if (row.getData(mzColumn) != null)
+            rowDetections++;
+        }
+        if (rowDetections == rawDataFiles.size())
+          completeRows++;
+        detections += rowDetections;
+      }
+      final int rows = alignedTable.getRows().size();
+      alignedRows = String.valueOf(rows);
+      rowsInAllFiles = String.valueOf(completeRows);
+      filesPerRow = rows > 0 ? String.format(Locale.ROOT, "%.2f", (double) detections / rows) : "0";
+    }
+
+    reportLines.add(new String[] {String.valueOf(combination.noiseLevel),
+        String.valueOf(combination.minHeight), String.valueOf(combination.mzTolerancePpm),
+        rtTolerance != null ? String.valueOf(rtTolerance) : "", String.valueOf(features),
+        String.format(Locale.ROOT, "%.1f", featuresPerFile), alignedRows, rowsInAllFiles,
+        filesPerRow});
+  }
+
+  private void writeReport() {
+    try (PrintWriter writer = new PrintWriter(new FileWriter(reportFile))) {
+      writer.println("Noise level,Min peak height,m/z tolerance (ppm),RT tolerance,Features,"
+          + "Features per file,Aligned rows,Rows in all files,Files per row");
+      for (String[] line : reportLines)
+        writer.println(String.join(",", line));
+    } catch (IOException e) {
+      final String msg =
+          "Error writing parameter sweep report " + reportFile + ": " + e.getMessage();
+      logger.error(msg, e);
+      MZmineGUI.displayMessage(msg);
+      return;
+    }
+    logger.info("Parameter sweep of " + reportLines.size()
+        + " combinations finished, report written to " + reportFile);
+    MZmineGUI.setStatusBarMessage("Parameter sweep report written to " + reportFile);
+  }
+
+  private static String describe(Combination combination, RawDataFile rawDataFile) {
+    return (rawDataFile != null ? rawDataFile.getName() + ": " : "") + "noise "
+        + combination.noiseLevel + ", min height " + combination.minHeight + ", m/z tolerance "
+        + combination.mzTolerancePpm + " ppm";
+  }
+
+}
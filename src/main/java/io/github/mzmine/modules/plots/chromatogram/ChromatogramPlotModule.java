@@ -19,9 +19,10 @@
 package io.github.mzmine.modules.plots.chromatogram;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.annotation.Nonnull;
 
@@ -35,6 +36,7 @@ import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.rawdata.xic.MSDKXICMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
@@ -43,6 +45,7 @@ import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
+import javafx.stage.WindowEvent;
 
 /**
  * Chromatogram plot
@@ -54,8 +57,6 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
   private static final @Nonnull String MODULE_NAME = "TIC/XIC visualizer";
   private static final @Nonnull String MODULE_DESCRIPTION = "TIC/XIC visualizer."; // TODO
 
-  private static final ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(4);
-
   @Override
   public @Nonnull String getName() {
     return MODULE_NAME;
@@ -88,30 +89,37 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
       MZmineGUI.addWindow(node, "Chromatogram");
       ChromatogramPlotWindowController controller = loader.getController();
 
+      final List<List<Object>> slots = new ArrayList<>();
       for (RawDataFile dataFile : dataFiles) {
 
         // Load the actual data in a separate thread to avoid blocking
         // the GUI
-        threadPool.execute(() -> {
-          try {
-            DataPointStore store = DataPointStoreFactory.getMemoryDataStore();
-            List<MsScan> scans = scanSelection.getMatchingScans(dataFile);
-            ChromatogramType chromatogramType = ChromatogramType.TIC;
-            if (plotType == ChromatogramPlotType.BASEPEAK)
-              chromatogramType = ChromatogramType.BPC;
-            MSDKXICMethod xicExtractor =
-                new MSDKXICMethod(dataFile, scans, mzRange, chromatogramType, store);
-            Chromatogram chromatogram = xicExtractor.execute();
-            String title = dataFile.getName() + " " + chromatogramType + " ["
-                + mzRange.lowerEndpoint() + "-" + mzRange.upperEndpoint() + " m/z]";
-            Platform.runLater(() -> controller.addChromatogram(chromatogram, title));
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-
+        final List<Object> slot = Arrays.asList(controller, dataFile);
+        slots.add(slot);
+        MZmineCore.getInteractiveExecutor().submit(slot, request -> {
+          DataPointStore store = DataPointStoreFactory.getMemoryDataStore();
+          List<MsScan> scans = scanSelection.getMatchingScans(dataFile);
+          ChromatogramType chromatogramType = ChromatogramType.TIC;
+          if (plotType == ChromatogramPlotType.BASEPEAK)
+            chromatogramType = ChromatogramType.BPC;
+          MSDKXICMethod xicExtractor =
+              new MSDKXICMethod(dataFile, scans, mzRange, chromatogramType, store);
+          request.onCancel(xicExtractor::cancel);
+          Chromatogram chromatogram = xicExtractor.execute();
+          if (request.isCancelled() || chromatogram == null)
+            return;
+          String title = dataFile.getName() + " " + chromatogramType + " ["
+              + mzRange.lowerEndpoint() + "-" + mzRange.upperEndpoint() + " m/z]";
+          Platform.runLater(() -> controller.addChromatogram(chromatogram, title));
         });
       }
 
+      // Stop loading the data when the window is closed
+      node.getScene().getWindow().addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> {
+        for (List<Object> slot : slots)
+          MZmineCore.getInteractiveExecutor().cancel(slot);
+      });
+
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -29,6 +29,7 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 
 import javax.annotation.Nonnull;
 
@@ -69,7 +70,6 @@ import io.github.msdk.io.mzml.MzMLFileExportMethod;
 import io.github.msdk.io.txt.TxtExportAlgorithm;
 import io.github.msdk.io.txt.TxtImportAlgorithm;
 import io.github.msdk.spectra.isotopepattern.IsotopePatternGeneratorAlgorithm;
-import io.github.msdk.spectra.splash.SplashCalculationAlgorithm;
 import io.github.msdk.util.MsScanUtil;
 import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.main.MZmineCore;
@@ -86,6 +86,8 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.util.JavaFXUtil;
 import io.github.mzmine.util.MsScanUtils;
+import io.github.mzmine.util.SpectrumFingerprint;
+import io.github.mzmine.util.SpectrumFingerprintCache;
 import io.github.mzmine.util.jfreechart.ChartNodeJFreeChart;
 import io.github.mzmine.util.jfreechart.IntelligentItemLabelGenerator;
 import io.github.mzmine.util.jfreechart.JFreeChartUtils;
@@ -99,6 +101,7 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener.Change;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -678,40 +681,68 @@ public class MsSpectrumPlotWindowController {
   }
 
   public void handleCopySpectra(Event event) {
-    StringBuilder sb = new StringBuilder();
-    for (MsSpectrumDataSet dataset : datasets) {
-      MsSpectrum spectrum = dataset.getSpectrum();
-      String spectrumString = TxtExportAlgorithm.spectrumToString(spectrum);
-      String splash = SplashCalculationAlgorithm.calculateSplash(spectrum);
-      sb.append("# ");
-      sb.append(dataset.getName());
-      sb.append("\n");
-      sb.append("# SPLASH ID: ");
-      sb.append(splash);
-      sb.append("\n");
-      sb.append(spectrumString);
-      sb.append("\n");
-    }
-    final Clipboard clipboard = Clipboard.getSystemClipboard();
-    final ClipboardContent content = new ClipboardContent();
-    content.putString(sb.toString());
-    clipboard.setContent(content);
+    copyToClipboard((copiedDatasets, fingerprints) -> {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < copiedDatasets.size(); i++) {
+        MsSpectrumDataSet dataset = copiedDatasets.get(i);
+        MsSpectrum spectrum = dataset.getSpectrum();
+        String spectrumString = TxtExportAlgorithm.spectrumToString(spectrum);
+        String splash = fingerprints.get(i).getSplash();
+        sb.append("# ");
+        sb.append(dataset.getName());
+        sb.append("\n");
+        sb.append("# SPLASH ID: ");
+        sb.append(splash);
+        sb.append("\n");
+        sb.append(spectrumString);
+        sb.append("\n");
+      }
+      return sb.toString();
+    });
   }
 
   public void handleCopySplash(Event event) {
-    StringBuilder sb = new StringBuilder();
-    for (MsSpectrumDataSet dataset : datasets) {
-      MsSpectrum spectrum = dataset.getSpectrum();
-      String splash = SplashCalculationAlgorithm.calculateSplash(spectrum);
-      sb.append(dataset.getName());
-      sb.append(" SPLASH ID: ");
-      sb.append(splash);
-      sb.append("\n");
-    }
-    final Clipboard clipboard = Clipboard.getSystemClipboard();
-    final ClipboardContent content = new ClipboardContent();
-    content.putString(sb.toString());
-    clipboard.setContent(content);
+    copyToClipboard((copiedDatasets, fingerprints) -> {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < copiedDatasets.size(); i++) {
+        MsSpectrumDataSet dataset = copiedDatasets.get(i);
+        String splash = fingerprints.get(i).getSplash();
+        sb.append(dataset.getName());
+        sb.append(" SPLASH ID: ");
+        sb.append(splash);
+        sb.append("\n");
+      }
+      return sb.toString();
+    });
+  }
+
+  /**
+   * Builds the text from the data sets and their fingerprints in a background task, and puts it to
+   * the clipboard when done. The fingerprints are usually cached already because the tooltips use
+   * them, but the missing ones may take a while to calculate.
+   */
+  private void copyToClipboard(
+      BiFunction<List<MsSpectrumDataSet>, List<SpectrumFingerprint>, String> textBuilder) {
+    final List<MsSpectrumDataSet> copiedDatasets = new ArrayList<>(datasets);
+    final List<MsSpectrum> spectra = new ArrayList<>();
+    for (MsSpectrumDataSet dataset : copiedDatasets)
+      spectra.add(dataset.getSpectrum());
+
+    final Task<String> copyTask = new Task<String>() {
+      @Override
+      protected String call() {
+        return textBuilder.apply(copiedDatasets, SpectrumFingerprintCache.getAll(spectra));
+      }
+    };
+    copyTask.setOnSucceeded(e -> {
+      final Clipboard clipboard = Clipboard.getSystemClipboard();
+      final ClipboardContent content = new ClipboardContent();
+      content.putString(copyTask.getValue());
+      clipboard.setContent(content);
+    });
+    copyTask.setOnFailed(
+        e -> MZmineGUI.displayMessage("Unable to copy: " + copyTask.getException().getMessage()));
+    MZmineCore.getInteractiveExecutor().submit(copyTask, request -> copyTask.run());
   }
 
   public void handleExportMzML(Event event) {
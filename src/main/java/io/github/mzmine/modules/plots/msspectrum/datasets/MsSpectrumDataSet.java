@@ -19,7 +19,6 @@
 package io.github.mzmine.modules.plots.msspectrum.datasets;
 
 import java.text.NumberFormat;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import org.jfree.data.xy.AbstractXYDataset;
 import org.jfree.data.xy.XYDataset;
@@ -29,11 +28,12 @@ import com.google.common.collect.Range;
 import io.github.msdk.datamodel.msspectra.MsSpectrum;
 import io.github.msdk.datamodel.msspectra.MsSpectrumType;
 import io.github.msdk.datamodel.rawdata.MsScan;
-import io.github.msdk.spectra.splash.SplashCalculationAlgorithm;
 import io.github.msdk.util.MsSpectrumUtil;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.plots.msspectrum.MsSpectrumPlotDataSet;
 import io.github.mzmine.util.MsScanUtils;
+import io.github.mzmine.util.SpectrumFingerprint;
+import io.github.mzmine.util.SpectrumFingerprintCache;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
@@ -55,9 +55,7 @@ public class MsSpectrumDataSet extends AbstractXYDataset implements MsSpectrumPl
 
   private static final long serialVersionUID = -3188441074323131747L;
 
-  private static final ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(1);
-
-  private MsSpectrum spectrum;
+  private volatile MsSpectrum spectrum;
   private double mzValues[];
   private float intensityValues[];
   private float topIndensity = 0f;
@@ -91,38 +89,59 @@ public class MsSpectrumDataSet extends AbstractXYDataset implements MsSpectrumPl
 
   }
 
+  /**
+   * Sets a new spectrum. The data is loaded in the background, superseding the loading of a
+   * previously set spectrum which has not finished yet. The new spectrum is returned by
+   * {@link #getSpectrum()} immediately, so that browsing through the scans does not wait for the
+   * data.
+   */
   public void setSpectrum(MsSpectrum spectrum, String datasetName) {
 
+    this.spectrum = spectrum;
+
     // Load the actual data in a separate thread to avoid blocking the GUI
-    threadPool.execute(() -> {
+    MZmineCore.getInteractiveExecutor().submit(this, request -> {
+      final double newMzValues[] = spectrum.getMzValues();
+      final float newIntensityValues[] = spectrum.getIntensityValues();
+      synchronized (this) {
+        // Checked while holding the lock, so a superseded request never overwrites a newer one
+        if (request.isCancelled())
+          return;
+        updateSpectrum(spectrum, datasetName, newMzValues, newIntensityValues);
+      }
+      // Prepare the description shown in the tooltips
+      SpectrumFingerprintCache.get(spectrum);
+    });
+
+  }
 
-      // Turn notify to off, to avoid redrawing the plot after each
-      // property change
-      setNotify(false);
+  private void updateSpectrum(MsSpectrum spectrum, String datasetName, double newMzValues[],
+      float newIntensityValues[]) {
 
-      // Remember if the current intensity scale was modified
-      boolean modifiedIntensityScale = (getIntensityScale() != this.topIndensity);
+    // Turn notify to off, to avoid redrawing the plot after each
+    // property change
+    setNotify(false);
 
-      this.spectrum = spectrum;
-      this.mzValues = spectrum.getMzValues();
-      this.intensityValues = spectrum.getIntensityValues();
-      this.numOfDataPoints = spectrum.getNumberOfDataPoints();
-      this.topIndensity = MsSpectrumUtil.getMaxIntensity(intensityValues, numOfDataPoints);
+    // Remember if the current intensity scale was modified
+    boolean modifiedIntensityScale = (getIntensityScale() != this.topIndensity);
 
-      // If the intensity scale was not modified by the user, set the new
-      // scale to max intensity
-      if (!modifiedIntensityScale)
-        setIntensityScale((double) topIndensity);
+    this.mzValues = newMzValues;
+    this.intensityValues = newIntensityValues;
+    this.numOfDataPoints = spectrum.getNumberOfDataPoints();
+    this.topIndensity = MsSpectrumUtil.getMaxIntensity(intensityValues, numOfDataPoints);
 
-      setName(datasetName);
-      renderingType.get();
-      setRenderingType(spectrum.getSpectrumType());
+    // If the intensity scale was not modified by the user, set the new
+    // scale to max intensity
+    if (!modifiedIntensityScale)
+      setIntensityScale((double) topIndensity);
 
-      // Finally, update the GUI
-      Platform.runLater(() -> {
-        setNotify(true);
-      });
+    setName(datasetName);
+    renderingType.get();
+    setRenderingType(spectrum.getSpectrumType());
 
+    // Finally, update the GUI
+    Platform.runLater(() -> {
+      setNotify(true);
     });
 
   }
@@ -155,9 +174,19 @@ public class MsSpectrumDataSet extends AbstractXYDataset implements MsSpectrumPl
     sb.append("Base peak intensity: ");
     sb.append(intensityFormat.format(topIndensity));
     sb.append("\n");
+
+    // The fingerprint is calculated in the background, the description is updated on next request
+    SpectrumFingerprint fingerprint = SpectrumFingerprintCache.getIfCalculated(spectrum);
+    if (fingerprint != null) {
+      sb.append("Base peak m/z: ");
+      sb.append(mzFormat.format(fingerprint.getBasePeakMz()));
+      sb.append("\n");
+      sb.append("Total intensity: ");
+      sb.append(intensityFormat.format(fingerprint.getTotalIntensity()));
+      sb.append("\n");
+    }
     sb.append("SPLASH ID: ");
-    String splash = SplashCalculationAlgorithm.calculateSplash(spectrum);
-    sb.append(splash);
+    sb.append(fingerprint != null ? fingerprint.getSplash() : "calculating...");
 
     return sb.toString();
   }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.projectio;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.mzmine.modules.io.binaryexport.FeatureTableBinaryFormat;
+import io.github.mzmine.util.ChromatogramUtils;
+import javafx.stage.FileChooser.ExtensionFilter;
+
+/**
+ * Layout of the MZmine project archive. The archive is a zip file containing
+ * 
+ * <ul>
+ * <li>{@value #PROJECT_ENTRY} - the list of raw data files and feature tables and the audit log,
+ * including the parameters of each processing step</li>
+ * <li>{@value #RAW_DATA_FOLDER}*.mzML - the raw data files, loaded lazily on first access</li>
+ * <li>{@value #FEATURE_TABLE_FOLDER}*.mzft - the feature tables, in the
+ * {@link FeatureTableBinaryFormat}</li>
+ * <li>{@value #FEATURE_TABLE_FOLDER}*{@value #CHROMATOGRAMS_EXTENSION} - the chromatograms of the
+ * features, which the binary format does not contain: for each chromatogram its int32 row index and
+ * sample index, followed by the chromatogram, see {@link ChromatogramUtils}. A row index of -1
+ * ends the list.</li>
+ * </ul>
+ * 
+ * The project file also links the samples of each feature table to their raw data files. Projects
+ * of format version 1 contain the feature tables in the mzTab format, without chromatograms and
+ * sample links.
+ */
+class ProjectArchive {
+
+  static final String EXTENSION = "mzmine3";
+
+  static final List<ExtensionFilter> EXTENSION_FILTERS =
+      Arrays.asList(new ExtensionFilter("MZmine 3 project", "*." + EXTENSION));
+
+  static final String FORMAT_VERSION = "2";
+
+  static final String PROJECT_ENTRY = "project.xml";
+  static final String RAW_DATA_FOLDER = "rawdata/";
+  static final String FEATURE_TABLE_FOLDER = "featuretables/";
+  static final String CHROMATOGRAMS_EXTENSION = ".chromatograms";
+
+  static final String PROJECT_ELEMENT = "project";
+  static final String VERSION_ATTRIBUTE = "version";
+  static final String RAW_DATA_FILE_ELEMENT = "rawdatafile";
+  static final String FEATURE_TABLE_ELEMENT = "featuretable";
+  static final String SAMPLE_ELEMENT = "sample";
+  static final String AUDIT_LOG_ELEMENT = "auditlog";
+  static final String AUDIT_LOG_ENTRY_ELEMENT = "entry";
+  static final String PARAMETERS_ELEMENT = "parameters";
+  static final String NAME_ATTRIBUTE = "name";
+  static final String ENTRY_ATTRIBUTE = "entry";
+  static final String MODULE_ATTRIBUTE = "module";
+  static final String CHROMATOGRAMS_ATTRIBUTE = "chromatograms";
+  static final String RAW_DATA_FILE_ATTRIBUTE = "rawdatafile";
+
+}
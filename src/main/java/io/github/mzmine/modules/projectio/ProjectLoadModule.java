@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.projectio;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.MZmineGUIProject;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import javafx.concurrent.Task;
+
+/**
+ * Project load module. The loaded project replaces the current project.
+ */
+public class ProjectLoadModule implements MZmineProcessingModule {
+
+  private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private static final String MODULE_NAME = "Open project";
+  private static final String MODULE_DESCRIPTION =
+      "This module opens a project file and replaces the current project.";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task<?>> tasks) {
+
+    final File projectFile = parameters.getParameter(ProjectLoadParameters.projectFile).getValue();
+    if ((projectFile == null) || (!projectFile.canRead())) {
+      MZmineGUI.displayMessage("Cannot read file " + projectFile);
+      logger.warn("Cannot read file " + projectFile);
+      return;
+    }
+
+    // The new project is filled on the task thread, before it is shown in the GUI
+    final boolean guiMode = MZmineGUI.getMainWindowController() != null;
+    final MZmineProject newProject = guiMode ? new MZmineGUIProject() : new MZmineProject();
+
+    ProjectLoadTask newTask = new ProjectLoadTask(newProject, projectFile);
+    newTask.setOnSucceeded(e -> {
+      if (newTask.getValue() == null)
+        return;
+      if (newProject instanceof MZmineGUIProject)
+        MZmineGUI.activateProject((MZmineGUIProject) newProject);
+      else
+        MZmineCore.setCurrentProject(newProject);
+    });
+
+    TaskMetrics.of(newTask).recordInput(projectFile);
+
+    // Add the task to the queue
+    tasks.add(newTask);
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return ProjectLoadParameters.class;
+  }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.projectio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nonnull;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.mztab.MzTabFileImportMethod;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.featuretableimport.BinaryFeatureTableImportMethod;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.LazyRawDataFile;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.util.ChromatogramUtils;
+import javafx.concurrent.Task;
+
+/**
+ * Reads a project archive, see {@link ProjectArchive}, into the given (empty) project. The feature
+ * tables (including their chromatograms and the links of their samples to the raw data files) and
+ * the audit log are read immediately, the raw data files are only loaded on first access, see
+ * {@link LazyRawDataFile}.
+ */
+class ProjectLoadTask extends Task<MZmineProject> implements MZmineTask {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull MZmineProject project;
+  private final @Nonnull File projectFile;
+  private final String title, message;
+
+  private volatile int totalItems = 1, loadedItems;
+  private volatile MSDKMethod<?> currentMethod;
+
+  ProjectLoadTask(@Nonnull MZmineProject project, @Nonnull File projectFile) {
+    this.project = project;
+    this.projectFile = projectFile;
+    this.title = "Opening project";
+    this.message = projectFile.getName();
+    refreshStatus();
+
+    setOnCancelled(event -> {
+      MSDKMethod<?> method = currentMethod;
+      if (method != null)
+        method.cancel();
+    });
+  }
+
+  @Override
+  public void refreshStatus() {
+
+    // Progress
+    double finishedPercent = loadedItems;
+    final MSDKMethod<?> method = currentMethod;
+    if (method != null) {
+      final Float methodPercent = method.getFinishedPercentage();
+      if (methodPercent != null)
+        finishedPercent += methodPercent;
+    }
+    updateProgress(Math.min(finishedPercent / totalItems, 1.0), 1.0);
+
+    // Title and message
+    updateTitle(title);
+    updateMessage(message);
+  }
+
+  @Override
+  protected MZmineProject call() throws Exception {
+    try (ZipFile zipFile = new ZipFile(projectFile)) {
+
+      ZipEntry projectEntry = zipFile.getEntry(ProjectArchive.PROJECT_ENTRY);
+      if (projectEntry == null)
+        throw new IllegalArgumentException(projectFile + " is not an MZmine project file");
+      Document projectXML;
+      try (InputStream is = zipFile.getInputStream(projectEntry)) {
+        projectXML = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+      }
+      Element projectElement = projectXML.getDocumentElement();
+      NodeList rawDataElements =
+          projectElement.getElementsByTagName(ProjectArchive.RAW_DATA_FILE_ELEMENT);
+      NodeList featureTableElements =
+          projectElement.getElementsByTagName(ProjectArchive.FEATURE_TABLE_ELEMENT);
+      NodeList auditLogElements =
+          projectElement.getElementsByTagName(ProjectArchive.AUDIT_LOG_ENTRY_ELEMENT);
+      totalItems = featureTableElements.getLength() + 1;
+
+      // Raw data files, by their position in the project file (null if missing)
+      final List<RawDataFile> rawDataFiles = new ArrayList<>();
+      for (int i = 0; i < rawDataElements.getLength(); i++) {
+        rawDataFiles.add(null);
+        Element rawDataElement = (Element) rawDataElements.item(i);
+        String name = rawDataElement.getAttribute(ProjectArchive.NAME_ATTRIBUTE);
+        String entryName = rawDataElement.getAttribute(ProjectArchive.ENTRY_ATTRIBUTE);
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+          logger.warn("Raw data file " + name + " is missing in project " + projectFile);
+          continue;
+        }
+        RawDataFile rawDataFile =
+            LazyRawDataFile.create(name, projectFile, entryName, entry.getSize());
+        rawDataFiles.set(i, rawDataFile);
+        project.addFile(rawDataFile);
+      }
+
+      // Feature tables
+      for (int i = 0; i < featureTableElements.getLength(); i++) {
+        if (isCancelled())
+          return null;
+        Element tableElement = (Element) featureTableElements.item(i);
+        String name = tableElement.getAttribute(ProjectArchive.NAME_ATTRIBUTE);
+        String entryName = tableElement.getAttribute(ProjectArchive.ENTRY_ATTRIBUTE);
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+          logger.warn("Feature table " + name + " is missing in project " + projectFile);
+          continue;
+        }
+        final DataPointStore dataStore = DataPointStoreFactory.getTmpFileDataStore();
+        final boolean mzTab = entryName.endsWith(".mzTab");
+        File tmpFile = File.createTempFile("mzmine", mzTab ? ".mzTab" : ".mzft");
+        try {
+          try (InputStream is = zipFile.getInputStream(entry)) {
+            Files.copy(is, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+          // Projects of format version 1 contain mzTab files
+          MSDKMethod<FeatureTable> method = mzTab ? new MzTabFileImportMethod(tmpFile, dataStore)
+              : new BinaryFeatureTableImportMethod(tmpFile, dataStore);
+          currentMethod = method;
+          FeatureTable featureTable = method.execute();
+          currentMethod = null;
+          if (featureTable != null) {
+            featureTable.setName(name);
+            linkSamples(featureTable, tableElement, rawDataFiles);
+            readChromatograms(featureTable, zipFile,
+                tableElement.getAttribute(ProjectArchive.CHROMATOGRAMS_ATTRIBUTE), dataStore);
+            project.addFeatureTable(featureTable);
+          }
+        } finally {
+          tmpFile.delete();
+        }
+        loadedItems++;
+      }
+
+      // Audit log
+      for (int i = 0; i < auditLogElements.getLength(); i++) {
+        Element entryElement = (Element) auditLogElements.item(i);
+        String className = entryElement.getAttribute(ProjectArchive.MODULE_ATTRIBUTE);
+        try {
+          @SuppressWarnings("unchecked")
+          Class<? extends MZmineModule> moduleClass =
+              (Class<? extends MZmineModule>) Class.forName(className);
+          MZmineModule module = MZmineCore.getModuleInstance(moduleClass);
+          if (module == null)
+            continue;
+          ParameterSet parameters = module.getParameterSetClass().newInstance();
+          NodeList paramElements =
+              entryElement.getElementsByTagName(ProjectArchive.PARAMETERS_ELEMENT);
+          if (paramElements.getLength() > 0)
+            parameters.loadValuesFromXML((Element) paramElements.item(0));
+          project.logProcessingStep(
+              new AuditLogEntry(module, parameters, Collections.emptyList()));
+        } catch (ClassNotFoundException e) {
+          logger.warn("Skipping audit log entry of unknown module " + className);
+        }
+      }
+      loadedItems++;
+
+      project.setProjectFile(projectFile);
+      logger.info("Opened project " + projectFile);
+
+    } catch (Throwable e) {
+      final String msg = "Error opening project " + projectFile + ": " + e.getMessage();
+      logger.error(msg, e);
+      MZmineGUI.displayMessage(msg);
+      return null;
+    }
+
+    return project;
+  }
+
+  /**
+   * Links the samples of the feature table to their raw data files, as listed in the project file
+   */
+  private static void linkSamples(FeatureTable featureTable, Element tableElement,
+      List<RawDataFile> rawDataFiles) {
+    final List<Sample> samples = featureTable.getSamples();
+    final NodeList sampleElements =
+        tableElement.getElementsByTagName(ProjectArchive.SAMPLE_ELEMENT);
+    for (int i = 0; (i < sampleElements.getLength()) && (i < samples.size()); i++) {
+      final String fileIndex = ((Element) sampleElements.item(i))
+          .getAttribute(ProjectArchive.RAW_DATA_FILE_ATTRIBUTE);
+      if (fileIndex.isEmpty())
+        continue;
+      final int index = Integer.parseInt(fileIndex);
+      if ((index >= 0) && (index < rawDataFiles.size()) && (rawDataFiles.get(index) != null))
+        samples.get(i).setRawDataFile(rawDataFiles.get(index));
+    }
+  }
+
+  /**
+   * Adds the chromatograms of the features to the feature table, see {@link ProjectArchive}
+   */
+  private void readChromatograms(FeatureTable featureTable, ZipFile zipFile, String entryName,
+      DataPointStore dataStore) throws IOException {
+    if (entryName.isEmpty())
+      return;
+    final ZipEntry entry = zipFile.getEntry(entryName);
+    if (entry == null) {
+      logger.warn("Chromatograms of feature table " + featureTable.getName()
+          + " are missing in project " + projectFile);
+      return;
+    }
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final List<Sample> samples = featureTable.getSamples();
+    final List<FeatureTableColumn<Chromatogram>> columns = new ArrayList<>();
+    for (Sample sample : samples)
+      columns.add(featureTable.getColumn(ColumnName.CHROMATOGRAM, sample));
+
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(zipFile.getInputStream(entry)))) {
+      while (true) {
+        final int row = in.readInt();
+        if (row < 0)
+          break;
+        final int sampleIndex = in.readInt();
+        final Chromatogram chromatogram = ChromatogramUtils.readChromatogram(in, dataStore);
+        if (columns.get(sampleIndex) == null) {
+          final FeatureTableColumn<Chromatogram> column = MSDKObjectBuilder
+              .getFeatureTableColumn(ColumnName.CHROMATOGRAM, samples.get(sampleIndex));
+          featureTable.addColumn(column);
+          columns.set(sampleIndex, column);
+        }
+        rows.get(row).setData(columns.get(sampleIndex), chromatogram);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.projectio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.mzml.MzMLFileExportMethod;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.io.binaryexport.BinaryFeatureTableExportMethod;
+import io.github.mzmine.modules.io.binaryexport.FeatureTableBinaryFormat;
+import io.github.mzmine.project.LazyRawDataFile;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.util.ChromatogramUtils;
+import javafx.concurrent.Task;
+
+/**
+ * Writes the project into a project archive, see {@link ProjectArchive}. The archive is first
+ * written into a temporary file, which replaces the target file once it is complete.
+ */
+class ProjectSaveTask extends Task<Object> implements MZmineTask {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull MZmineProject project;
+  private final @Nonnull File projectFile;
+  private final String title, message;
+
+  private final List<RawDataFile> rawDataFiles;
+  private final List<FeatureTable> featureTables;
+  private final List<AuditLogEntry> auditLog;
+
+  private final int totalItems;
+  private volatile int savedItems;
+  private volatile MSDKMethod<?> currentMethod;
+
+  ProjectSaveTask(@Nonnull MZmineProject project, @Nonnull File projectFile) {
+    this.project = project;
+    this.projectFile = projectFile;
+    this.title = "Saving project";
+    this.message = projectFile.getName();
+    this.rawDataFiles = project.getRawDataFiles();
+    this.featureTables = project.getFeatureTables();
+    this.auditLog = project.getAuditLog();
+    this.totalItems = rawDataFiles.size() + featureTables.size() + 1;
+    refreshStatus();
+
+    setOnCancelled(event -> {
+      MSDKMethod<?> method = currentMethod;
+      if (method != null)
+        method.cancel();
+    });
+  }
+
+  @Override
+  public void refreshStatus() {
+
+    // Progress
+    double finishedPercent = savedItems;
+    final MSDKMethod<?> method = currentMethod;
+    if (method != null) {
+      final Float methodPercent = method.getFinishedPercentage();
+      if (methodPercent != null)
+        finishedPercent += methodPercent;
+    }
+    updateProgress(Math.min(finishedPercent / totalItems, 1.0), 1.0);
+
+    // Title and message
+    updateTitle(title);
+    updateMessage(message);
+  }
+
+  @Override
+  protected Object call() throws Exception {
+    final File tmpArchive =
+        new File(projectFile.getAbsoluteFile().getParentFile(), projectFile.getName() + ".tmp");
+    final Map<LazyRawDataFile, String> relocatedFiles = new HashMap<>();
+
+    try {
+      final Document projectXML =
+          DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      final Element projectElement = projectXML.createElement(ProjectArchive.PROJECT_ELEMENT);
+      projectElement.setAttribute(ProjectArchive.VERSION_ATTRIBUTE, ProjectArchive.FORMAT_VERSION);
+      projectXML.appendChild(projectElement);
+
+      try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tmpArchive))) {
+
+        // Raw data files
+        for (int i = 0; i < rawDataFiles.size(); i++) {
+          if (isCancelled())
+            return null;
+          final RawDataFile rawDataFile = rawDataFiles.get(i);
+          final String entryName = ProjectArchive.RAW_DATA_FOLDER + i + ".mzML";
+
+          // Files which were not loaded since the project was opened are copied directly from the
+          // original archive, without loading them
+          final LazyRawDataFile lazyFile = LazyRawDataFile.getHandler(rawDataFile);
+          if ((lazyFile != null) && (!lazyFile.isLoaded())) {
+            copyArchiveEntry(lazyFile.getArchiveFile(), lazyFile.getEntryName(), zos, entryName);
+            relocatedFiles.put(lazyFile, entryName);
+          } else {
+            final File tmpFile = File.createTempFile("mzmine", ".mzML");
+            try {
+              runMethod(new MzMLFileExportMethod(rawDataFile, tmpFile));
+              writeArchiveEntry(tmpFile, zos, entryName);
+            } finally {
+              tmpFile.delete();
+            }
+          }
+
+          Element rawDataElement = projectXML.createElement(ProjectArchive.RAW_DATA_FILE_ELEMENT);
+          rawDataElement.setAttribute(ProjectArchive.NAME_ATTRIBUTE, rawDataFile.getName());
+          rawDataElement.setAttribute(ProjectArchive.ENTRY_ATTRIBUTE, entryName);
+          projectElement.appendChild(rawDataElement);
+          savedItems++;
+        }
+
+        // Feature tables
+        for (int i = 0; i < featureTables.size(); i++) {
+          if (isCancelled())
+            return null;
+          final FeatureTable featureTable = featureTables.get(i);
+          final String entryName =
+              ProjectArchive.FEATURE_TABLE_FOLDER + i + "." + FeatureTableBinaryFormat.EXTENSION;
+          final File tmpFile =
+              File.createTempFile("mzmine", "." + FeatureTableBinaryFormat.EXTENSION);
+          try {
+            runMethod(new BinaryFeatureTableExportMethod(featureTable, tmpFile));
+            writeArchiveEntry(tmpFile, zos, entryName);
+          } finally {
+            tmpFile.delete();
+          }
+          final String chromatogramsEntryName =
+              ProjectArchive.FEATURE_TABLE_FOLDER + i + ProjectArchive.CHROMATOGRAMS_EXTENSION;
+          writeChromatograms(featureTable, zos, chromatogramsEntryName);
+
+          Element tableElement = projectXML.createElement(ProjectArchive.FEATURE_TABLE_ELEMENT);
+          tableElement.setAttribute(ProjectArchive.NAME_ATTRIBUTE, featureTable.getName());
+          tableElement.setAttribute(ProjectArchive.ENTRY_ATTRIBUTE, entryName);
+          tableElement.setAttribute(ProjectArchive.CHROMATOGRAMS_ATTRIBUTE,
+              chromatogramsEntryName);
+          projectElement.appendChild(tableElement);
+
+          // Samples in the order of the table, with the index of their raw data file
+          for (Sample sample : featureTable.getSamples()) {
+            Element sampleElement = projectXML.createElement(ProjectArchive.SAMPLE_ELEMENT);
+            sampleElement.setAttribute(ProjectArchive.NAME_ATTRIBUTE, sample.getName());
+            final int fileIndex = indexOf(rawDataFiles, sample.getRawDataFile());
+            if (fileIndex >= 0) {
+              sampleElement.setAttribute(ProjectArchive.RAW_DATA_FILE_ATTRIBUTE,
+                  String.valueOf(fileIndex));
+            }
+            tableElement.appendChild(sampleElement);
+          }
+          savedItems++;
+        }
+
+        // Audit log
+        Element auditLogElement = projectXML.createElement(ProjectArchive.AUDIT_LOG_ELEMENT);
+        projectElement.appendChild(auditLogElement);
+        for (AuditLogEntry logEntry : auditLog) {
+          Element entryElement = projectXML.createElement(ProjectArchive.AUDIT_LOG_ENTRY_ELEMENT);
+          entryElement.setAttribute(ProjectArchive.MODULE_ATTRIBUTE,
+              logEntry.getModule().getClass().getName());
+          auditLogElement.appendChild(entryElement);
+          Element paramElement = projectXML.createElement(ProjectArchive.PARAMETERS_ELEMENT);
+          entryElement.appendChild(paramElement);
+          logEntry.getParameterSet().saveValuesToXML(paramElement);
+        }
+
+        zos.putNextEntry(new ZipEntry(ProjectArchive.PROJECT_ENTRY));
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        transformer.transform(new DOMSource(projectXML), new StreamResult(zos));
+        zos.closeEntry();
+        savedItems++;
+      }
+
+      Files.move(tmpArchive.toPath(), projectFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+      // The copied raw data files are now loaded from the new archive
+      for (Map.Entry<LazyRawDataFile, String> relocated : relocatedFiles.entrySet())
+        relocated.getKey().relocate(projectFile, relocated.getValue());
+
+      project.setProjectFile(projectFile);
+      logger.info("Saved project to " + projectFile);
+
+    } catch (Throwable e) {
+      final String msg = "Error saving project to " + projectFile + ": " + e.getMessage();
+      logger.error(msg, e);
+      MZmineGUI.displayMessage(msg);
+    } finally {
+      // Left over if the task was cancelled or failed before the archive was moved
+      tmpArchive.delete();
+    }
+
+    return null;
+  }
+
+  private void runMethod(MSDKMethod<?> method) throws Exception {
+    currentMethod = method;
+    try {
+      method.execute();
+    } finally {
+      currentMethod = null;
+    }
+  }
+
+  /**
+   * Writes the chromatograms of the features, see {@link ProjectArchive}
+   */
+  private static void writeChromatograms(FeatureTable featureTable, ZipOutputStream zos,
+      String entryName) throws IOException {
+    final List<FeatureTableRow> rows = new ArrayList<>(featureTable.getRows());
+    final List<Sample> samples = featureTable.getSamples();
+    zos.putNextEntry(new ZipEntry(entryName));
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(zos));
+    for (int s = 0; s < samples.size(); s++) {
+      final FeatureTableColumn<Chromatogram> column =
+          featureTable.getColumn(ColumnName.CHROMATOGRAM, samples.get(s));
+      if (column == null)
+        continue;
+      for (int r = 0; r < rows.size(); r++) {
+        final Chromatogram chromatogram = rows.get(r).getData(column);
+        if (chromatogram == null)
+          continue;
+        out.writeInt(r);
+        out.writeInt(s);
+        ChromatogramUtils.writeChromatogram(out, chromatogram);
+      }
+    }
+    out.writeInt(-1);
+    // The zip stream stays open for the next entries
+    out.flush();
+    zos.closeEntry();
+  }
+
+  /**
+   * @return The index of the raw data file in the list (compared by identity), or -1
+   */
+  private static int indexOf(List<RawDataFile> rawDataFiles, RawDataFile rawDataFile) {
+    if (rawDataFile == null)
+      return -1;
+    for (int i = 0; i < rawDataFiles.size(); i++) {
+      if (rawDataFiles.get(i) == rawDataFile)
+        return i;
+    }
+    return -1;
+  }
+
+  private static void writeArchiveEntry(File file, ZipOutputStream zos, String entryName)
+      throws IOException {
+    zos.putNextEntry(new ZipEntry(entryName));
+    Files.copy(file.toPath(), zos);
+    zos.closeEntry();
+  }
+
+  private static void copyArchiveEntry(File archive, String sourceEntryName, ZipOutputStream zos,
+      String entryName) throws IOException {
+    try (ZipFile zipFile = new ZipFile(archive)) {
+      ZipEntry sourceEntry = zipFile.getEntry(sourceEntryName);
+      if (sourceEntry == null)
+        throw new IOException("Entry " + sourceEntryName + " not found in " + archive);
+      zos.putNextEntry(new ZipEntry(entryName));
+      try (InputStream is = zipFile.getInputStream(sourceEntry)) {
+        copy(is, zos);
+      }
+      zos.closeEntry();
+    }
+  }
+
+  private static void copy(InputStream is, OutputStream os) throws IOException {
+    final byte buffer[] = new byte[65536];
+    int len;
+    while ((len = is.read(buffer)) > 0)
+      os.write(buffer, 0, len);
+  }
+
+}
@@ -37,6 +37,8 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.ResultCacheKey;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -89,11 +91,18 @@ public class RecursiveCentroidingModule implements MZmineProcessingModule {
 
       // Add the feature table to the project
       newTask.setOnSucceeded(e -> {
-        RawDataFile newRawFile = method.getResult();
+        RawDataFile newRawFile = (RawDataFile) newTask.getValue();
+        if (newRawFile == null)
+          return;
         newRawFile.setName(newName);
         project.addFile(newRawFile);
       });
 
+      TaskMetrics.of(newTask).recordInput(rawDataFile);
+
+      // Reuse the result of an identical earlier run, if available in the result cache
+      newTask.setResultCacheKey(new ResultCacheKey(getClass(), parameters, rawDataFile));
+
       // Add the task to the queue
       tasks.add(newTask);
 
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.rawdata.mzmlexport;
+
+/**
+ * MS-Numpress encoders for mzML binary data arrays (Teleman et al., Mol Cell Proteomics 2014).
+ * Only encoding is implemented, as MZmine reads mzML files through MSDK.
+ */
+class MSNumpress {
+
+  /**
+   * @return Optimal fixed point for {@link #encodeLinear(double[], int, byte[], double)}, which
+   *         keeps the largest value and extrapolation error within 31 bits
+   */
+  static double optimalLinearFixedPoint(double data[], int dataSize) {
+    if (dataSize == 0)
+      return 0;
+    if (dataSize == 1)
+      return Math.floor(0x7FFFFFFFL / data[0]);
+    double maxDouble = Math.max(data[0], data[1]);
+    for (int i = 2; i < dataSize; i++) {
+      final double extrapol = data[i - 1] + (data[i - 1] - data[i - 2]);
+      final double diff = data[i] - extrapol;
+      maxDouble = Math.max(maxDouble, Math.ceil(Math.abs(diff) + 1));
+    }
+    return Math.floor(0x7FFFFFFFL / maxDouble);
+  }
+
+  /**
+   * Encodes the data by linear prediction of fixed point values, storing the prediction errors as
+   * variable-length half-byte integers. The result must have room for 8 + dataSize * 5 bytes.
+   * 
+   * @return Number of bytes written to the result
+   */
+  static int encodeLinear(double data[], int dataSize, byte result[], double fixedPoint) {
+    final long ints[] = new long[3];
+    final byte halfBytes[] = new byte[10];
+    int halfByteCount = 0;
+
+    encodeFixedPoint(fixedPoint, result);
+    if (dataSize == 0)
+      return 8;
+
+    ints[1] = (long) (data[0] * fixedPoint + 0.5);
+    for (int i = 0; i < 4; i++)
+      result[8 + i] = (byte) ((ints[1] >> (i * 8)) & 0xff);
+    if (dataSize == 1)
+      return 12;
+
+    ints[2] = (long) (data[1] * fixedPoint + 0.5);
+    for (int i = 0; i < 4; i++)
+      result[12 + i] = (byte) ((ints[2] >> (i * 8)) & 0xff);
+
+    int ri = 16;
+    for (int i = 2; i < dataSize; i++) {
+      ints[0] = ints[1];
+      ints[1] = ints[2];
+      ints[2] = (long) (data[i] * fixedPoint + 0.5);
+      final long extrapol = ints[1] + (ints[1] - ints[0]);
+      final int diff = (int) (ints[2] - extrapol);
+      halfByteCount += encodeInt(diff, halfBytes, halfByteCount);
+      ri = flushHalfBytes(halfBytes, halfByteCount, result, ri);
+      halfByteCount = halfByteCount % 2;
+    }
+    if (halfByteCount == 1)
+      result[ri++] = (byte) (halfBytes[0] << 4);
+    return ri;
+  }
+
+  /**
+   * Encodes non-negative values rounded to integers as variable-length half-byte integers. The
+   * result must have room for dataSize * 5 bytes.
+   * 
+   * @return Number of bytes written to the result
+   */
+  static int encodePic(double data[], int dataSize, byte result[]) {
+    final byte halfBytes[] = new byte[10];
+    int halfByteCount = 0;
+    int ri = 0;
+    for (int i = 0; i < dataSize; i++) {
+      final int count = (int) (long) (data[i] + 0.5);
+      halfByteCount += encodeInt(count, halfBytes, halfByteCount);
+      ri = flushHalfBytes(halfBytes, halfByteCount, result, ri);
+      halfByteCount = halfByteCount % 2;
+    }
+    if (halfByteCount == 1)
+      result[ri++] = (byte) (halfBytes[0] << 4);
+    return ri;
+  }
+
+  /**
+   * @return Optimal fixed point for {@link #encodeSlof(double[], int, byte[], double)}
+   */
+  static double optimalSlofFixedPoint(double data[], int dataSize) {
+    double maxDouble = 1;
+    for (int i = 0; i < dataSize; i++)
+      maxDouble = Math.max(maxDouble, Math.log(data[i] + 1));
+    return Math.floor(0xFFFF / maxDouble);
+  }
+
+  /**
+   * Encodes the logarithms of the values as 16 bit fixed point values. The result must have room
+   * for 8 + dataSize * 2 bytes.
+   * 
+   * @return Number of bytes written to the result
+   */
+  static int encodeSlof(double data[], int dataSize, byte result[], double fixedPoint) {
+    encodeFixedPoint(fixedPoint, result);
+    int ri = 8;
+    for (int i = 0; i < dataSize; i++) {
+      final int x = (int) (Math.log(data[i] + 1) * fixedPoint + 0.5) & 0xffff;
+      result[ri++] = (byte) (x & 0xff);
+      result[ri++] = (byte) ((x >> 8) & 0xff);
+    }
+    return ri;
+  }
+
+  /**
+   * Writes complete pairs of half bytes to the result. An unpaired last half byte is moved to the
+   * start of the half byte buffer.
+   */
+  private static int flushHalfBytes(byte halfBytes[], int halfByteCount, byte result[], int ri) {
+    for (int hbi = 1; hbi < halfByteCount; hbi += 2)
+      result[ri++] = (byte) ((halfBytes[hbi - 1] << 4) | (halfBytes[hbi] & 0xf));
+    if (halfByteCount % 2 != 0)
+      halfBytes[0] = halfBytes[halfByteCount - 1];
+    return ri;
+  }
+
+  /**
+   * Encodes an int as a count half byte followed by its significant half bytes, leading zero (or,
+   * for negative values, 0xf) half bytes are omitted
+   * 
+   * @return Number of half bytes written
+   */
+  private static int encodeInt(int x, byte result[], int offset) {
+    final int mask = 0xf0000000;
+    final int init = x & mask;
+    int l;
+
+    if (init == 0) {
+      l = 8;
+      for (int i = 0; i < 8; i++) {
+        if ((x & (mask >>> (4 * i))) != 0) {
+          l = i;
+          break;
+        }
+      }
+      result[offset] = (byte) l;
+    } else if (init == mask) {
+      l = 7;
+      for (int i = 0; i < 8; i++) {
+        final int m = mask >>> (4 * i);
+        if ((x & m) != m) {
+          l = i;
+          break;
+        }
+      }
+      result[offset] = (byte) (l + 8);
+    } else {
+      l = 0;
+      result[offset] = 0;
+    }
+
+    for (int i = l; i < 8; i++)
+      result[offset + 1 + i - l] = (byte) ((x >> (4 * (i - l))) & 0xf);
+    return 1 + 8 - l;
+  }
+
+  /**
+   * Stores the fixed point as big-endian 8 byte double
+   */
+  private static void encodeFixedPoint(double fixedPoint, byte result[]) {
+    final long bits = Double.doubleToLongBits(fixedPoint);
+    for (int i = 0; i < 8; i++)
+      result[7 - i] = (byte) ((bits >> (8 * i)) & 0xff);
+  }
+
+}
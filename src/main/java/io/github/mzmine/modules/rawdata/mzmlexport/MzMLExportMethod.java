@@ -0,0 +1,399 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.rawdata.mzmlexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.FileCompression;
+import io.github.mzmine.util.SpectrumFingerprint;
+import io.github.mzmine.util.SpectrumFingerprintCache;
+
+/**
+ * Writes a raw data file to mzML 1.1. The binary data arrays can be encoded with MS-Numpress and
+ * compressed with zlib. Optionally, the SPLASH of each scan is written; the SPLASHes of all scans
+ * are calculated in parallel before the export.
+ */
+class MzMLExportMethod implements MSDKMethod<File> {
+
+  private static final String MZML_NAMESPACE = "http://psi.hupo.org/ms/mzml";
+  private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull RawDataFile rawDataFile;
+  private final @Nonnull File exportFile;
+  private final @Nonnull NumpressEncoding mzEncoding, intensityEncoding;
+  private final boolean zlib, writeSplash;
+
+  private volatile int processedScans, totalScans;
+  private volatile boolean canceled;
+  private File result;
+
+  /**
+   * Encoded binary data array
+   */
+  private static class EncodedArray {
+    private final String base64;
+    private final boolean doublePrecision;
+
+    private EncodedArray(byte data[], boolean doublePrecision) {
+      this.base64 = Base64.getEncoder().encodeToString(data);
+      this.doublePrecision = doublePrecision;
+    }
+  }
+
+  MzMLExportMethod(@Nonnull RawDataFile rawDataFile, @Nonnull File exportFile,
+      @Nonnull NumpressEncoding mzEncoding, @Nonnull NumpressEncoding intensityEncoding,
+      boolean zlib, boolean writeSplash) {
+    this.rawDataFile = rawDataFile;
+    this.exportFile = exportFile;
+    this.mzEncoding = mzEncoding;
+    this.intensityEncoding = intensityEncoding;
+    this.zlib = zlib;
+    this.writeSplash = writeSplash;
+  }
+
+  @Override
+  public File execute() throws MSDKException {
+    logger.info("Started mzML export of " + rawDataFile.getName() + " to " + exportFile);
+
+    final List<MsScan> scans = rawDataFile.getScans();
+    totalScans = scans.size();
+    final List<SpectrumFingerprint> fingerprints =
+        writeSplash ? SpectrumFingerprintCache.getAll(rawDataFile) : null;
+
+    try (OutputStream out = FileCompression.NONE.openOutputStream(exportFile)) {
+      final XMLStreamWriter writer =
+          XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement("mzML");
+      writer.writeDefaultNamespace(MZML_NAMESPACE);
+      writer.writeNamespace("xsi", XSI_NAMESPACE);
+      writer.writeAttribute("xsi:schemaLocation",
+          MZML_NAMESPACE + " http://psidev.info/files/ms/mzML/xsd/mzML1.1.0.xsd");
+      writer.writeAttribute("version", "1.1.0");
+
+      writeHeader(writer);
+
+      writer.writeStartElement("run");
+      writer.writeAttribute("id", rawDataFile.getName());
+      writer.writeAttribute("defaultInstrumentConfigurationRef", "IC1");
+      writer.writeStartElement("spectrumList");
+      writer.writeAttribute("count", String.valueOf(scans.size()));
+      writer.writeAttribute("defaultDataProcessingRef", "MZmine_export");
+
+      for (int i = 0; i < scans.size(); i++) {
+        if (canceled) {
+          writer.close();
+          return null;
+        }
+        writeSpectrum(writer, scans.get(i), i,
+            fingerprints != null ? fingerprints.get(i).getSplash() : null);
+        processedScans++;
+      }
+
+      writer.writeEndElement(); // spectrumList
+      writer.writeEndElement(); // run
+      writer.writeEndElement(); // mzML
+      writer.writeEndDocument();
+      writer.close();
+
+    } catch (IOException | XMLStreamException e) {
+      throw new MSDKException(e);
+    }
+
+    logger.info("Finished mzML export of " + rawDataFile.getName() + " to " + exportFile);
+    result = exportFile;
+    return result;
+  }
+
+  private void writeHeader(XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement("cvList");
+    writer.writeAttribute("count", "2");
+    writer.writeEmptyElement("cv");
+    writer.writeAttribute("id", "MS");
+    writer.writeAttribute("fullName", "Proteomics Standards Initiative Mass Spectrometry Ontology");
+    writer.writeAttribute("URI",
+        "https://raw.githubusercontent.com/HUPO-PSI/psi-ms-CV/master/psi-ms.obo");
+    writer.writeEmptyElement("cv");
+    writer.writeAttribute("id", "UO");
+    writer.writeAttribute("fullName", "Unit Ontology");
+    writer.writeAttribute("URI", "http://ontologies.berkeleybop.org/uo.obo");
+    writer.writeEndElement();
+
+    writer.writeStartElement("fileDescription");
+    writer.writeStartElement("fileContent");
+    writeCvParam(writer, "MS:1000579", "MS1 spectrum", "");
+    writer.writeEndElement();
+    writer.writeEndElement();
+
+    writer.writeStartElement("softwareList");
+    writer.writeAttribute("count", "1");
+    writer.writeStartElement("software");
+    writer.writeAttribute("id", "MZmine");
+    writer.writeAttribute("version", "3");
+    writeCvParam(writer, "MS:1002342", "MZmine", "");
+    writer.writeEndElement();
+    writer.writeEndElement();
+
+    writer.writeStartElement("instrumentConfigurationList");
+    writer.writeAttribute("count", "1");
+    writer.writeStartElement("instrumentConfiguration");
+    writer.writeAttribute("id", "IC1");
+    writeCvParam(writer, "MS:1000031", "instrument model", "");
+    writer.writeEndElement();
+    writer.writeEndElement();
+
+    writer.writeStartElement("dataProcessingList");
+    writer.writeAttribute("count", "1");
+    writer.writeStartElement("dataProcessing");
+    writer.writeAttribute("id", "MZmine_export");
+    writer.writeStartElement("processingMethod");
+    writer.writeAttribute("order", "0");
+    writer.writeAttribute("softwareRef", "MZmine");
+    writeCvParam(writer, "MS:1000544", "Conversion to mzML", "");
+    writer.writeEndElement();
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  private void writeSpectrum(XMLStreamWriter writer, MsScan scan, int index,
+      @Nullable String splash) throws XMLStreamException {
+    final int size = scan.getNumberOfDataPoints();
+    final Integer msLevel = scan.getMsFunction().getMsLevel();
+
+    writer.writeStartElement("spectrum");
+    writer.writeAttribute("index", String.valueOf(index));
+    writer.writeAttribute("id", "scan=" + scan.getScanNumber());
+    writer.writeAttribute("defaultArrayLength", String.valueOf(size));
+
+    writeCvParam(writer, "MS:1000511", "ms level", String.valueOf(msLevel != null ? msLevel : 1));
+    if ((msLevel == null) || (msLevel == 1))
+      writeCvParam(writer, "MS:1000579", "MS1 spectrum", "");
+    else
+      writeCvParam(writer, "MS:1000580", "MSn spectrum", "");
+    if (scan.getSpectrumType() == MsSpectrumType.CENTROIDED)
+      writeCvParam(writer, "MS:1000127", "centroid spectrum", "");
+    else if (scan.getSpectrumType() == MsSpectrumType.PROFILE)
+      writeCvParam(writer, "MS:1000128", "profile spectrum", "");
+    if (scan.getPolarity() == PolarityType.POSITIVE)
+      writeCvParam(writer, "MS:1000130", "positive scan", "");
+    else if (scan.getPolarity() == PolarityType.NEGATIVE)
+      writeCvParam(writer, "MS:1000129", "negative scan", "");
+    if (splash != null)
+      writeCvParam(writer, "MS:1002599", "splash key", splash);
+
+    writer.writeStartElement("scanList");
+    writer.writeAttribute("count", "1");
+    writeCvParam(writer, "MS:1000795", "no combination", "");
+    writer.writeStartElement("scan");
+    final ChromatographyInfo chromatographyInfo = scan.getChromatographyInfo();
+    if ((chromatographyInfo != null) && (chromatographyInfo.getRetentionTime() != null)) {
+      writeCvParam(writer, "MS:1000016", "scan start time",
+          String.valueOf(chromatographyInfo.getRetentionTime()), "UO", "UO:0000010", "second");
+    }
+    writer.writeEndElement(); // scan
+    writer.writeEndElement(); // scanList
+
+    final List<IsolationInfo> isolations = scan.getIsolations();
+    if (!isolations.isEmpty()) {
+      writer.writeStartElement("precursorList");
+      writer.writeAttribute("count", String.valueOf(isolations.size()));
+      for (IsolationInfo isolation : isolations) {
+        writer.writeStartElement("precursor");
+        if (isolation.getPrecursorMz() != null) {
+          writer.writeStartElement("selectedIonList");
+          writer.writeAttribute("count", "1");
+          writer.writeStartElement("selectedIon");
+          writeCvParam(writer, "MS:1000744", "selected ion m/z",
+              String.valueOf(isolation.getPrecursorMz()), "MS", "MS:1000040", "m/z");
+          if (isolation.getPrecursorCharge() != null) {
+            writeCvParam(writer, "MS:1000041", "charge state",
+                String.valueOf(isolation.getPrecursorCharge()));
+          }
+          writer.writeEndElement(); // selectedIon
+          writer.writeEndElement(); // selectedIonList
+        }
+        writer.writeEmptyElement("activation");
+        writer.writeEndElement(); // precursor
+      }
+      writer.writeEndElement(); // precursorList
+    }
+
+    final double mzValues[] = scan.getMzValues();
+    final float intensityValues[] = scan.getIntensityValues();
+    final double intensities[] = new double[size];
+    for (int i = 0; i < size; i++)
+      intensities[i] = intensityValues[i];
+
+    writer.writeStartElement("binaryDataArrayList");
+    writer.writeAttribute("count", "2");
+    writeBinaryDataArray(writer, encode(mzValues, size, mzEncoding, true), mzEncoding,
+        "MS:1000514", "m/z array", "MS:1000040", "m/z");
+    writeBinaryDataArray(writer, encode(intensities, size, intensityEncoding, false),
+        intensityEncoding, "MS:1000515", "intensity array", "MS:1000131",
+        "number of detector counts");
+    writer.writeEndElement(); // binaryDataArrayList
+
+    writer.writeEndElement(); // spectrum
+  }
+
+  private void writeBinaryDataArray(XMLStreamWriter writer, EncodedArray array,
+      NumpressEncoding numpress, String accession, String name, String unitAccession,
+      String unitName) throws XMLStreamException {
+    writer.writeStartElement("binaryDataArray");
+    writer.writeAttribute("encodedLength", String.valueOf(array.base64.length()));
+    if (array.doublePrecision)
+      writeCvParam(writer, "MS:1000523", "64-bit float", "");
+    else
+      writeCvParam(writer, "MS:1000521", "32-bit float", "");
+    if (numpress != NumpressEncoding.NONE)
+      writeCvParam(writer, numpress.getAccession(zlib), numpress.getTermName(zlib), "");
+    else if (zlib)
+      writeCvParam(writer, "MS:1000574", "zlib compression", "");
+    else
+      writeCvParam(writer, "MS:1000576", "no compression", "");
+    writeCvParam(writer, accession, name, "", "MS", unitAccession, unitName);
+    writer.writeStartElement("binary");
+    writer.writeCharacters(array.base64);
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  /**
+   * Encodes the values with the given numpress encoding, or as little-endian floating point
+   * numbers, and compresses the result if zlib is enabled
+   */
+  private EncodedArray encode(double values[], int size, NumpressEncoding numpress,
+      boolean doublePrecision) {
+    byte data[];
+    int length;
+    switch (numpress) {
+      case LINEAR:
+        data = new byte[8 + size * 5];
+        length = MSNumpress.encodeLinear(values, size, data,
+            MSNumpress.optimalLinearFixedPoint(values, size));
+        break;
+      case PIC:
+        data = new byte[size * 5];
+        length = MSNumpress.encodePic(values, size, data);
+        break;
+      case SLOF:
+        data = new byte[8 + size * 2];
+        length = MSNumpress.encodeSlof(values, size, data,
+            MSNumpress.optimalSlofFixedPoint(values, size));
+        break;
+      default:
+        final ByteBuffer buffer =
+            ByteBuffer.allocate(size * (doublePrecision ? 8 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < size; i++) {
+          if (doublePrecision)
+            buffer.putDouble(values[i]);
+          else
+            buffer.putFloat((float) values[i]);
+        }
+        data = buffer.array();
+        length = data.length;
+        break;
+    }
+
+    // Numpress arrays are declared as 64-bit float, as they decode to doubles
+    final boolean declaredDouble = doublePrecision || (numpress != NumpressEncoding.NONE);
+    if (!zlib)
+      return new EncodedArray(Arrays.copyOf(data, length), declaredDouble);
+
+    final Deflater deflater = new Deflater();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    byte compressed[] = new byte[Math.max(64, length / 2)];
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+      if (compressedLength == compressed.length)
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      compressedLength +=
+          deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+    deflater.end();
+    return new EncodedArray(Arrays.copyOf(compressed, compressedLength), declaredDouble);
+  }
+
+  private static void writeCvParam(XMLStreamWriter writer, String accession, String name,
+      String value) throws XMLStreamException {
+    writer.writeEmptyElement("cvParam");
+    writer.writeAttribute("cvRef", "MS");
+    writer.writeAttribute("accession", accession);
+    writer.writeAttribute("name", name);
+    writer.writeAttribute("value", value);
+  }
+
+  private static void writeCvParam(XMLStreamWriter writer, String accession, String name,
+      String value, String unitCvRef, String unitAccession, String unitName)
+      throws XMLStreamException {
+    writeCvParam(writer, accession, name, value);
+    writer.writeAttribute("unitCvRef", unitCvRef);
+    writer.writeAttribute("unitAccession", unitAccession);
+    writer.writeAttribute("unitName", unitName);
+  }
+
+  @Override
+  @Nullable
+  public Float getFinishedPercentage() {
+    if (totalScans == 0)
+      return null;
+    return (float) processedScans / totalScans;
+  }
+
+  @Override
+  @Nullable
+  public File getResult() {
+    return result;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+}
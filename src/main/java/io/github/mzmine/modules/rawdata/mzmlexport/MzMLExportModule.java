@@ -20,27 +20,32 @@ package io.github.mzmine.modules.rawdata.mzmlexport;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 
+import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.rawdata.RawDataFile;
-import io.github.msdk.io.mzml.MzMLFileExportMethod;
+import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
- * Raw data import module
+ * mzML export module
  */
 public class MzMLExportModule implements MZmineProcessingModule {
 
   private Logger logger = LoggerFactory.getLogger(this.getClass());
+  private String namePattern = "{}";
 
   private static final String MODULE_NAME = "mzML export";
   private static final String MODULE_DESCRIPTION = "This module exports raw data into mzML";
@@ -55,7 +60,6 @@ public class MzMLExportModule implements MZmineProcessingModule {
     return MODULE_DESCRIPTION;
   }
 
-  @SuppressWarnings("null")
   @Override
   public void runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
       @Nonnull Collection<Task<?>> tasks) {
@@ -63,25 +67,56 @@ public class MzMLExportModule implements MZmineProcessingModule {
     final RawDataFilesSelection rawDataFiles =
         parameters.getParameter(MzMLExportParameters.dataFiles).getValue();
     final File fileName = parameters.getParameter(MzMLExportParameters.fileName).getValue();
-
-    if (rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
-      logger.warn("Centroiding module started with no raw data files selected");
+    NumpressEncoding mzEncoding =
+        parameters.getParameter(MzMLExportParameters.mzEncoding).getValue();
+    NumpressEncoding intensityEncoding =
+        parameters.getParameter(MzMLExportParameters.intensityEncoding).getValue();
+    final Boolean zlib = parameters.getParameter(MzMLExportParameters.zlibCompression).getValue();
+    final Boolean splash = parameters.getParameter(MzMLExportParameters.splash).getValue();
+
+    if (rawDataFiles == null || rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
+      logger.warn("mzML export module started with no raw data files selected");
       return;
     }
 
-    if (rawDataFiles.getMatchingRawDataFiles().isEmpty()) {
-      logger.warn("mzML export module started with no raw data files selected");
+    if (fileName == null) {
+      MZmineGUI.displayMessage("The path and name of the mzML output file cannot be empty.");
+      logger.warn("The path and name of the mzML output file cannot be empty.");
       return;
     }
 
-    RawDataFile rawDataFile = rawDataFiles.getMatchingRawDataFiles().get(0);
+    // Default values
+    if (mzEncoding == null)
+      mzEncoding = NumpressEncoding.NONE;
+    if (intensityEncoding == null)
+      intensityEncoding = NumpressEncoding.NONE;
+
+    // Several files exported without the name pattern must not overwrite each other
+    final List<RawDataFile> files = rawDataFiles.getMatchingRawDataFiles();
+    String filePattern = fileName.getPath();
+    if ((files.size() > 1) && (!filePattern.contains(namePattern))) {
+      final String extension = FilenameUtils.getExtension(filePattern);
+      filePattern = FilenameUtils.removeExtension(filePattern) + "_" + namePattern
+          + (extension.isEmpty() ? "" : "." + extension);
+    }
+
+    // Add a task for each raw data file, the tasks run concurrently
+    for (RawDataFile rawDataFile : files) {
+
+      final String baseName = FilenameUtils.removeExtension(rawDataFile.getName());
+      final File exportFile =
+          new File(filePattern.replaceAll(Pattern.quote(namePattern), baseName));
 
-    MzMLFileExportMethod method = new MzMLFileExportMethod(rawDataFile, fileName);
+      MzMLExportMethod method = new MzMLExportMethod(rawDataFile, exportFile, mzEncoding,
+          intensityEncoding, zlib != null && zlib, splash != null && splash);
 
-    MSDKTask newTask = new MSDKTask("mzML export", rawDataFile.getName(), method);
+      MSDKTask newTask = new MSDKTask("mzML export", rawDataFile.getName(), method);
 
-    // Add the task to the queue
-    tasks.add(newTask);
+      TaskMetrics.of(newTask).recordInput(rawDataFile);
+
+      // Add the task to the queue
+      tasks.add(newTask);
+    }
 
   }
 
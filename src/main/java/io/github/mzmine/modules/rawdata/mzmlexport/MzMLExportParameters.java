@@ -18,21 +18,48 @@
 
 package io.github.mzmine.modules.rawdata.mzmlexport;
 
+import java.util.Arrays;
+
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import javafx.stage.FileChooser.ExtensionFilter;
 
 public class MzMLExportParameters extends ParameterSet {
 
   public static final RawDataFilesParameter dataFiles = new RawDataFilesParameter();
 
-  public static final FileNameParameter fileName =
-      new FileNameParameter("File name", "Final file name", "",
-          ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.SAVE);
+  public static final FileNameParameter fileName = new FileNameParameter("File name",
+      "Path and name of the exported mzML file. If the file already exists, it will be overwritten.\n"
+          + "Use pattern \"{}\" in the file name to substitute with the raw data file name.\n"
+          + "I.e. \"123_{}_456.mzML\" would become \"123_SourceFileName_456.mzML\".\n"
+          + "If several files are exported without the pattern, their names are appended to the file name.",
+      "", ParameterValidator.createNonEmptyValidator(), FileNameParameter.Type.SAVE,
+      Arrays.asList(new ExtensionFilter("mzML file", "*.mzML")));
+
+  public static final ComboParameter<NumpressEncoding> mzEncoding = new ComboParameter<>(
+      "m/z encoding",
+      "Encoding of the m/z values. Linear prediction is recommended for m/z values, it keeps a relative precision of about 1e-9.",
+      "Compression", Arrays.asList(NumpressEncoding.values()), NumpressEncoding.NONE);
+
+  public static final ComboParameter<NumpressEncoding> intensityEncoding = new ComboParameter<>(
+      "Intensity encoding",
+      "Encoding of the intensity values. Short logged float keeps a relative precision of about 1e-4, positive integer rounds the intensities to integers.",
+      "Compression", Arrays.asList(NumpressEncoding.values()), NumpressEncoding.NONE);
+
+  public static final BooleanParameter zlibCompression = new BooleanParameter("zlib compression",
+      "If checked, the binary data arrays are compressed with zlib (after the MS-Numpress encoding, if any).",
+      "Compression", true);
+
+  public static final BooleanParameter splash = new BooleanParameter("Write SPLASH",
+      "If checked, the SPLASH (spectral hash) of each scan is calculated and written to the mzML file.",
+      "Output", false);
 
   public MzMLExportParameters() {
-    super(dataFiles, fileName);
+    super(dataFiles, fileName, mzEncoding, intensityEncoding, zlibCompression, splash);
   }
 
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.rawdata.mzmlexport;
+
+/**
+ * MS-Numpress encoding of the mzML binary data arrays
+ */
+public enum NumpressEncoding {
+
+  NONE("None", null, null), //
+  LINEAR("MS-Numpress linear prediction", "MS:1002312", "MS:1002746"), //
+  PIC("MS-Numpress positive integer", "MS:1002313", "MS:1002747"), //
+  SLOF("MS-Numpress short logged float", "MS:1002314", "MS:1002748");
+
+  private final String stringValue;
+  private final String accession, zlibAccession;
+
+  NumpressEncoding(String stringValue, String accession, String zlibAccession) {
+    this.stringValue = stringValue;
+    this.accession = accession;
+    this.zlibAccession = zlibAccession;
+  }
+
+  /**
+   * @return Accession of the compression CV term, alone or followed by zlib compression. Null for
+   *         {@link #NONE}.
+   */
+  String getAccession(boolean zlib) {
+    return zlib ? zlibAccession : accession;
+  }
+
+  /**
+   * @return Name of the compression CV term
+   */
+  String getTermName(boolean zlib) {
+    final String name = stringValue + " compression";
+    return zlib ? name + " followed by zlib compression" : name;
+  }
+
+  @Override
+  public String toString() {
+    return stringValue;
+  }
+
+}
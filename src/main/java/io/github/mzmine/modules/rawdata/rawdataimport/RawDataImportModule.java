@@ -39,6 +39,7 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -116,6 +117,8 @@ public class RawDataImportModule implements MZmineProcessingModule {
 
         project.addFile(rawDataFile);
       });
+      TaskMetrics.of(newTask).recordInput(fileName);
+
       tasks.add(newTask);
 
     }
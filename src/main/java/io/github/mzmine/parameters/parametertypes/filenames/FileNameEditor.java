@@ -32,6 +32,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Control;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 
@@ -72,7 +73,13 @@ public class FileNameEditor extends BorderPane implements ParameterEditor<File>
       Window parentWindow = this.getScene().getWindow();
       File selectedFile;
 
-      if (fileNameParameter.getFileNameParameterType() == FileNameParameter.Type.OPEN)
+      if (fileNameParameter.getFileNameParameterType() == FileNameParameter.Type.DIRECTORY) {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        if (lastOpenPath != null)
+          directoryChooser.setInitialDirectory(lastOpenPath);
+        directoryChooser.setTitle("Find directory");
+        selectedFile = directoryChooser.showDialog(parentWindow);
+      } else if (fileNameParameter.getFileNameParameterType() == FileNameParameter.Type.OPEN)
         selectedFile = fileChooser.showOpenDialog(parentWindow);
       else
         selectedFile = fileChooser.showSaveDialog(parentWindow);
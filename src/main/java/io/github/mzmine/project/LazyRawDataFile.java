@@ -0,0 +1,372 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+
+/**
+ * Raw data file stored in a project archive, which is only loaded on first access. Until then,
+ * only the name of the file is kept in memory. Instances are created as dynamic proxies
+ * implementing {@link RawDataFile}, see {@link #create(String, File, String, long)}. The file is
+ * loaded by a background task which shows its progress. The JavaFX thread never waits for the
+ * task: data methods called on it start the loading and return empty data, so modules started
+ * from the GUI wait for their input files with {@link #runWhenLoaded(Collection, Runnable)}.
+ */
+public class LazyRawDataFile implements InvocationHandler {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private String name;
+  private File archiveFile;
+  private String entryName;
+  private final long archivedSize;
+
+  private volatile RawDataFile rawDataFile;
+  private Task<?> loadTask;
+
+  private LazyRawDataFile(@Nonnull String name, @Nonnull File archiveFile,
+      @Nonnull String entryName, long archivedSize) {
+    this.name = name;
+    this.archiveFile = archiveFile;
+    this.entryName = entryName;
+    this.archivedSize = archivedSize;
+  }
+
+  /**
+   * Creates a raw data file which is loaded from the given entry of the project archive on first
+   * access
+   * 
+   * @param archivedSize Uncompressed size of the archive entry in bytes
+   */
+  public static @Nonnull RawDataFile create(@Nonnull String name, @Nonnull File archiveFile,
+      @Nonnull String entryName, long archivedSize) {
+    LazyRawDataFile handler = new LazyRawDataFile(name, archiveFile, entryName, archivedSize);
+    return (RawDataFile) Proxy.newProxyInstance(RawDataFile.class.getClassLoader(),
+        new Class<?>[] {RawDataFile.class}, handler);
+  }
+
+  /**
+   * @return The handler of the given raw data file, or null if the file is not a lazy raw data file
+   */
+  public static @Nullable LazyRawDataFile getHandler(@Nonnull RawDataFile rawDataFile) {
+    if (!Proxy.isProxyClass(rawDataFile.getClass()))
+      return null;
+    InvocationHandler handler = Proxy.getInvocationHandler(rawDataFile);
+    if (handler instanceof LazyRawDataFile)
+      return (LazyRawDataFile) handler;
+    return null;
+  }
+
+  /**
+   * @return True if the data of the given raw data file are available in memory or in a data store,
+   *         i.e. accessing the file does not trigger loading from a project archive
+   */
+  public static boolean isLoaded(@Nonnull RawDataFile rawDataFile) {
+    LazyRawDataFile handler = getHandler(rawDataFile);
+    return (handler == null) || handler.isLoaded();
+  }
+
+  public boolean isLoaded() {
+    return rawDataFile != null;
+  }
+
+  public synchronized @Nonnull File getArchiveFile() {
+    return archiveFile;
+  }
+
+  public synchronized @Nonnull String getEntryName() {
+    return entryName;
+  }
+
+  public long getArchivedSize() {
+    return archivedSize;
+  }
+
+  /**
+   * Points the file to a new location, e.g. after the project archive was saved under a new name
+   */
+  public synchronized void relocate(@Nonnull File newArchiveFile, @Nonnull String newEntryName) {
+    this.archiveFile = newArchiveFile;
+    this.entryName = newEntryName;
+  }
+
+  /**
+   * Starts loading the file in a background task, unless it is loaded or being loaded already
+   * 
+   * @return The task loading the file, or null if the file is loaded
+   */
+  public synchronized @Nullable Task<?> startLoading() {
+    if (rawDataFile != null)
+      return null;
+    // Start again if the previous attempt failed
+    if ((loadTask == null) || loadTask.isDone()) {
+      loadTask = new MSDKTask("Loading raw data file", name, new LoadMethod());
+      MZmineCore.submitTasks(Collections.singletonList(loadTask), "Raw data file loading");
+    }
+    return loadTask;
+  }
+
+  /**
+   * Runs the action on the JavaFX thread once all the given raw data files are loaded, starting
+   * their background loading if needed. The action is not run if loading any of the files fails.
+   * Must be called on the JavaFX thread.
+   */
+  public static void runWhenLoaded(@Nonnull Collection<RawDataFile> rawDataFiles,
+      @Nonnull Runnable action) {
+    final List<Task<?>> loadTasks = new ArrayList<>();
+    for (RawDataFile rawDataFile : rawDataFiles) {
+      final LazyRawDataFile handler = getHandler(rawDataFile);
+      final Task<?> loadTask = handler != null ? handler.startLoading() : null;
+      if (loadTask != null)
+        loadTasks.add(loadTask);
+    }
+    final int remaining[] = {loadTasks.size()};
+    if (remaining[0] == 0) {
+      action.run();
+      return;
+    }
+    for (Task<?> loadTask : loadTasks) {
+      // The state of a task changes on the JavaFX thread, so no synchronization is needed
+      loadTask.stateProperty().addListener((observable, oldState, newState) -> {
+        if (!newState.equals(State.SUCCEEDED) && !newState.equals(State.FAILED)
+            && !newState.equals(State.CANCELLED))
+          return;
+        remaining[0]--;
+        if (remaining[0] == 0 && areLoaded(rawDataFiles))
+          action.run();
+      });
+    }
+  }
+
+  /**
+   * @return True if all the given raw data files are loaded, see {@link #isLoaded(RawDataFile)}
+   */
+  public static boolean areLoaded(@Nonnull Collection<RawDataFile> rawDataFiles) {
+    for (RawDataFile rawDataFile : rawDataFiles) {
+      if (!isLoaded(rawDataFile))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+    switch (method.getName()) {
+      case "equals":
+        if ((args != null) && (args.length == 1))
+          return proxy == args[0];
+        break;
+      case "hashCode":
+        if ((args == null) || (args.length == 0))
+          return System.identityHashCode(proxy);
+        break;
+      case "toString":
+        if ((args == null) || (args.length == 0))
+          return getName();
+        break;
+    }
+
+    if (rawDataFile == null) {
+      synchronized (this) {
+        if (rawDataFile == null) {
+          // Methods which do not need the data
+          switch (method.getName()) {
+            case "getName":
+              return name;
+            case "setName":
+              name = (String) args[0];
+              return null;
+            case "dispose":
+              return null;
+          }
+        }
+      }
+      load(method);
+      // The JavaFX thread must not wait for the file, it gets empty data until the file is loaded
+      if (rawDataFile == null)
+        return getEmptyValue(method.getReturnType());
+    }
+
+    try {
+      return method.invoke(rawDataFile, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Loads the file in the background task. Threads other than the JavaFX thread wait for the task,
+   * running it themselves if it has not been started yet, so they never wait for a free executor
+   * thread.
+   */
+  private void load(Method method) throws InterruptedException {
+    final Task<?> task = startLoading();
+    if (task == null)
+      return;
+    if (Platform.isFxApplicationThread()) {
+      logger.debug("Raw data file " + name + " is not loaded yet, " + method.getName()
+          + " returns no data");
+      return;
+    }
+    task.run();
+    try {
+      task.get();
+    } catch (ExecutionException | CancellationException e) {
+      // The file stays unloaded
+    }
+    if (rawDataFile == null)
+      throw new IllegalStateException(
+          "Cannot load raw data file " + name + " from project " + getArchiveFile());
+  }
+
+  private static @Nullable Object getEmptyValue(Class<?> type) {
+    if (type.isAssignableFrom(List.class))
+      return Collections.emptyList();
+    if (type == boolean.class)
+      return false;
+    if (type == int.class)
+      return 0;
+    if (type == long.class)
+      return 0L;
+    if (type == float.class)
+      return 0f;
+    if (type == double.class)
+      return 0.0;
+    return null;
+  }
+
+  private synchronized String getName() {
+    if (rawDataFile != null)
+      return rawDataFile.getName();
+    return name;
+  }
+
+  /**
+   * Imports the raw data file from the project archive
+   */
+  private class LoadMethod implements MSDKMethod<RawDataFile> {
+
+    private volatile RawDataFileImportMethod importMethod;
+    private volatile boolean canceled;
+    private RawDataFile result;
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+      final File archive;
+      final String entryName;
+      synchronized (LazyRawDataFile.this) {
+        archive = archiveFile;
+        entryName = LazyRawDataFile.this.entryName;
+      }
+      logger.info("Loading raw data file " + name + " from project " + archive);
+      File tmpFile = null;
+      try (ZipFile zipFile = new ZipFile(archive)) {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null)
+          throw new IOException("Entry " + entryName + " not found");
+
+        // The import methods need a file, so extract the entry first
+        String extension = FilenameUtils.getExtension(entryName);
+        tmpFile = File.createTempFile("mzmine", "." + extension);
+        try (InputStream is = zipFile.getInputStream(entry)) {
+          Files.copy(is, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (canceled)
+          return null;
+
+        importMethod =
+            new RawDataFileImportMethod(tmpFile, DataPointStoreFactory.getTmpFileDataStore());
+        RawDataFile loadedFile = importMethod.execute();
+        if (canceled)
+          return null;
+        if (loadedFile == null)
+          throw new IOException("Import of " + entryName + " returned no data");
+        synchronized (LazyRawDataFile.this) {
+          loadedFile.setName(name);
+          rawDataFile = loadedFile;
+        }
+        result = loadedFile;
+        return result;
+      } catch (IOException e) {
+        throw new MSDKException(e);
+      } finally {
+        if (tmpFile != null)
+          tmpFile.delete();
+      }
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+      final RawDataFileImportMethod method = importMethod;
+      return method != null ? method.getFinishedPercentage() : null;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+      return result;
+    }
+
+    @Override
+    public void cancel() {
+      canceled = true;
+      final RawDataFileImportMethod method = importMethod;
+      if (method != null)
+        method.cancel();
+    }
+
+  }
+
+}
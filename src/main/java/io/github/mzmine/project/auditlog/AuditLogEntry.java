@@ -42,7 +42,7 @@ public class AuditLogEntry {
     this.parameterSet = parameterSet;
 
     for (Task<?> task : tasks) {
-      AuditLogTaskRecord taskRecord = new AuditLogTaskRecord(task);
+      AuditLogTaskRecord taskRecord = new AuditLogTaskRecord(module.getName(), task);
       taskRecords.add(taskRecord);
     }
   }
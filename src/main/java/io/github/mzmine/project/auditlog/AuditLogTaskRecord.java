@@ -18,8 +18,15 @@
 
 package io.github.mzmine.project.auditlog;
 
+import java.lang.ref.WeakReference;
+import java.util.List;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Task;
@@ -30,22 +37,40 @@ import javafx.concurrent.Worker.State;
  */
 public class AuditLogTaskRecord {
 
+  private final String moduleName;
   private final String taskMessage;
   private final String taskTitle;
+  private final TaskMetrics taskMetrics;
   private State taskStatus;
+  private WeakReference<Object> output;
 
-  public AuditLogTaskRecord(@Nonnull Task<?> task) {
+  public AuditLogTaskRecord(@Nonnull String moduleName, @Nonnull Task<?> task) {
+    this.moduleName = moduleName;
     this.taskMessage = task.getMessage();
     this.taskTitle = task.getTitle();
+    this.taskMetrics = TaskMetrics.of(task);
+    this.taskStatus = task.getState();
 
     task.stateProperty().addListener(new ChangeListener<State>() {
       public void changed(ObservableValue<? extends State> ov, State oldState, State newState) {
         taskStatus = newState;
+
+        // Keep track of the resulting raw data file or feature table
+        if (newState == State.SUCCEEDED) {
+          Object value = task.getValue();
+          if ((value instanceof RawDataFile) || (value instanceof FeatureTable))
+            output = new WeakReference<>(value);
+        }
       }
     });
 
   }
 
+  @Nonnull
+  public String getModuleName() {
+    return moduleName;
+  }
+
   @Nonnull
   public String getTaskMessage() {
     return taskMessage;
@@ -60,4 +85,30 @@ public class AuditLogTaskRecord {
   public State getTaskStatus() {
     return taskStatus;
   }
+
+  /**
+   * @return Runtime metrics of the task (wall time, CPU time, memory, data volume, throughput)
+   */
+  @Nonnull
+  public TaskMetrics getTaskMetrics() {
+    return taskMetrics;
+  }
+
+  /**
+   * @return Input data of the task (raw data files, feature tables...), as long as they still exist
+   */
+  @Nonnull
+  public List<Object> getInputs() {
+    return taskMetrics.getInputs();
+  }
+
+  /**
+   * @return Raw data file or feature table created by the task, or null if the task has not
+   *         finished successfully or the result no longer exists
+   */
+  @Nullable
+  public Object getOutput() {
+    return output != null ? output.get() : null;
+  }
+
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.auditlog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+
+/**
+ * Re-runs a processing step of the audit log with new parameters, followed by those downstream
+ * steps which (directly or indirectly) used the results of the step. The provenance of each result
+ * is taken from the audit log, see {@link AuditLogTaskRecord#getInputs()} and
+ * {@link AuditLogTaskRecord#getOutput()}. Downstream steps are only re-run for the affected inputs,
+ * all other results are kept. The superseded results are removed from the project. Steps whose
+ * inputs were not recorded cannot be restricted and are skipped.
+ *
+ * The steps are run through {@link MZmineCore#runMZmineModule(Class, ParameterSet, Consumer)}, so
+ * they wait for lazily loaded raw data files and are logged in the audit log like any other run.
+ * 
+ * All methods must be called on the JavaFX application thread.
+ */
+public class IncrementalReprocessor {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull MZmineProject project;
+  private final @Nonnull AuditLogEntry changedStep;
+  private final @Nonnull ParameterSet newParameters;
+
+  // Steps to re-run, in the order of the audit log
+  private final List<AuditLogEntry> pendingSteps = new ArrayList<>();
+
+  // Superseded results and their replacements
+  private final Map<Object, Object> replacements = new IdentityHashMap<>();
+
+  private IncrementalReprocessor(@Nonnull MZmineProject project, @Nonnull AuditLogEntry step,
+      @Nonnull ParameterSet newParameters) {
+    this.project = project;
+    this.changedStep = step;
+    this.newParameters = newParameters;
+  }
+
+  /**
+   * Re-runs the given step of the project audit log with new parameters, followed by the affected
+   * downstream steps
+   */
+  public static void reprocess(@Nonnull MZmineProject project, @Nonnull AuditLogEntry step,
+      @Nonnull ParameterSet newParameters) {
+    IncrementalReprocessor reprocessor = new IncrementalReprocessor(project, step, newParameters);
+    reprocessor.findAffectedSteps();
+    reprocessor.runNextStep();
+  }
+
+  /**
+   * @return The audit log entry of the step which created the given raw data file or feature table,
+   *         or null if it is not known
+   */
+  public static @Nullable AuditLogEntry findProducingStep(@Nonnull MZmineProject project,
+      @Nonnull Object result) {
+    for (AuditLogEntry entry : project.getAuditLog()) {
+      for (AuditLogTaskRecord taskRecord : entry.getTaskRecords()) {
+        if (taskRecord.getOutput() == result)
+          return entry;
+      }
+    }
+    return null;
+  }
+
+  private void findAffectedSteps() {
+    final Set<Object> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    boolean found = false;
+    for (AuditLogEntry entry : project.getAuditLog()) {
+      if (entry == changedStep) {
+        found = true;
+      } else if (!found || !usesAny(entry.getTaskRecords(), affected)) {
+        continue;
+      }
+      pendingSteps.add(entry);
+      for (AuditLogTaskRecord taskRecord : entry.getTaskRecords()) {
+        Object output = taskRecord.getOutput();
+        if (output != null)
+          affected.add(output);
+      }
+    }
+  }
+
+  private static boolean usesAny(List<AuditLogTaskRecord> taskRecords, Set<Object> data) {
+    for (AuditLogTaskRecord taskRecord : taskRecords) {
+      for (Object input : taskRecord.getInputs()) {
+        if (data.contains(input))
+          return true;
+      }
+    }
+    return false;
+  }
+
+  private void runNextStep() {
+    if (pendingSteps.isEmpty()) {
+      logger.info("Reprocessing finished");
+      return;
+    }
+    final AuditLogEntry step = pendingSteps.remove(0);
+    final MZmineModule module = step.getModule();
+    if (!(module instanceof MZmineRunnableModule)) {
+      runNextStep();
+      return;
+    }
+
+    // Select the task records to re-run: all of them for the changed step, only those with
+    // replaced inputs for the downstream steps
+    final List<AuditLogTaskRecord> oldRecords = new ArrayList<>();
+    final List<Object> newInputs = new ArrayList<>();
+    for (AuditLogTaskRecord taskRecord : step.getTaskRecords()) {
+      if (taskRecord.getInputs().isEmpty()) {
+        skipStep(step, "its tasks did not record their input data");
+        return;
+      }
+      boolean replaced = false;
+      for (Object input : taskRecord.getInputs()) {
+        if (replacements.containsKey(input)) {
+          replaced = true;
+          break;
+        }
+      }
+      if ((step != changedStep) && (!replaced))
+        continue;
+      oldRecords.add(taskRecord);
+      for (Object input : taskRecord.getInputs()) {
+        Object newInput = replace(input);
+        if (!newInputs.contains(newInput))
+          newInputs.add(newInput);
+      }
+    }
+    if (oldRecords.isEmpty()) {
+      runNextStep();
+      return;
+    }
+
+    // Restrict the data selection of the step to the (replaced) inputs. Each data selection must
+    // be set, otherwise the step would run again on all data it originally selected.
+    final ParameterSet parameters =
+        (step == changedStep ? newParameters : step.getParameterSet()).clone();
+    final List<RawDataFile> rawDataFiles = new ArrayList<>();
+    final List<FeatureTable> featureTables = new ArrayList<>();
+    for (Object input : newInputs) {
+      if (input instanceof RawDataFile)
+        rawDataFiles.add((RawDataFile) input);
+      else if (input instanceof FeatureTable)
+        featureTables.add((FeatureTable) input);
+    }
+    boolean restricted = true;
+    for (Parameter<?> parameter : parameters) {
+      if (parameter instanceof RawDataFilesParameter) {
+        if (rawDataFiles.isEmpty())
+          restricted = false;
+        else
+          ((RawDataFilesParameter) parameter).setValue(new RawDataFilesSelection(rawDataFiles));
+      }
+      if (parameter instanceof FeatureTablesParameter) {
+        if (featureTables.isEmpty())
+          restricted = false;
+        else
+          ((FeatureTablesParameter) parameter).setValue(new FeatureTablesSelection(
+              FeatureTablesSelectionType.SPECIFIC_FEATURE_TABLES, featureTables, null));
+      }
+    }
+    if (!restricted) {
+      skipStep(step, "not all its selected inputs are known");
+      return;
+    }
+
+    logger.info("Reprocessing step " + module.getName() + " for " + newInputs.size() + " inputs");
+    @SuppressWarnings("unchecked")
+    final Class<? extends MZmineRunnableModule> moduleClass =
+        (Class<? extends MZmineRunnableModule>) module.getClass();
+    MZmineCore.runMZmineModule(moduleClass, parameters,
+        newTasks -> followTasks(oldRecords, newTasks));
+  }
+
+  private void skipStep(AuditLogEntry step, String reason) {
+    final String message = "Step " + step.getModule().getName()
+        + " cannot be restricted to the reprocessed data, as " + reason + "; skipping it";
+    logger.warn(message);
+    MZmineGUI.displayMessage(message);
+    runNextStep();
+  }
+
+  /**
+   * Continues with the next step once all tasks of the current step have finished
+   */
+  private void followTasks(List<AuditLogTaskRecord> oldRecords, List<Task<?>> newTasks) {
+    if (newTasks.isEmpty()) {
+      Platform.runLater(this::runNextStep);
+      return;
+    }
+    final int[] remainingTasks = {newTasks.size()};
+    for (Task<?> newTask : newTasks) {
+      newTask.addEventHandler(WorkerStateEvent.ANY, e -> {
+        if ((e.getEventType() != WorkerStateEvent.WORKER_STATE_SUCCEEDED)
+            && (e.getEventType() != WorkerStateEvent.WORKER_STATE_FAILED)
+            && (e.getEventType() != WorkerStateEvent.WORKER_STATE_CANCELLED))
+          return;
+        remainingTasks[0]--;
+        if (remainingTasks[0] == 0) {
+          // Continue after the modules' own event handlers have added the results to the project
+          Platform.runLater(() -> stepFinished(oldRecords, newTasks));
+        }
+      });
+    }
+  }
+
+  private void stepFinished(List<AuditLogTaskRecord> oldRecords, List<Task<?>> newTasks) {
+
+    // Match the new tasks to the old ones by their inputs
+    for (AuditLogTaskRecord oldRecord : oldRecords) {
+      final Object oldOutput = oldRecord.getOutput();
+      if (oldOutput == null)
+        continue;
+      final List<Object> expectedInputs = new ArrayList<>();
+      for (Object input : oldRecord.getInputs())
+        expectedInputs.add(replace(input));
+
+      for (Task<?> newTask : newTasks) {
+        final List<Object> inputs = TaskMetrics.of(newTask).getInputs();
+        if (!sameElements(inputs, expectedInputs))
+          continue;
+        if (newTask.getState() != Task.State.SUCCEEDED)
+          break;
+        final Object newOutput = newTask.getValue();
+        if ((newOutput == null) || (newOutput == oldOutput))
+          break;
+        replacements.put(oldOutput, newOutput);
+
+        // The old result is superseded
+        if (oldOutput instanceof RawDataFile)
+          project.removeFile((RawDataFile) oldOutput);
+        else if (oldOutput instanceof FeatureTable)
+          project.removeFeatureTable((FeatureTable) oldOutput);
+        break;
+      }
+    }
+
+    runNextStep();
+  }
+
+  private Object replace(Object data) {
+    Object replacement = replacements.get(data);
+    return replacement != null ? replacement : data;
+  }
+
+  private static boolean sameElements(List<Object> list1, List<Object> list2) {
+    if (list1.size() != list2.size())
+      return false;
+    for (Object item : list1) {
+      boolean found = false;
+      for (Object item2 : list2) {
+        if (item == item2) {
+          found = true;
+          break;
+        }
+      }
+      if (!found)
+        return false;
+    }
+    return true;
+  }
+
+}
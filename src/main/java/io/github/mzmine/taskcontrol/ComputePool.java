@@ -0,0 +1,144 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared pool for CPU-bound work, in particular the parallel parts of the processing algorithms
+ * (plot data is loaded by the {@link InteractiveExecutor}). Parallel streams started by
+ * {@link #invoke(Supplier)} or {@link #run(Runnable)} are executed by the threads of this pool
+ * instead of the JVM-wide common pool, so the number of busy cores follows the "Number of
+ * concurrently running tasks" preference.
+ * 
+ * The parallelism is limited to {@link Runtime#availableProcessors()}, which reflects the CPU
+ * limits of cgroups and containers. It can be changed at runtime: a new pool is created for
+ * subsequent work, while the computations running in the old pool finish there.
+ */
+public class ComputePool {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final AtomicInteger threadNumber = new AtomicInteger();
+
+  private volatile @Nonnull ForkJoinPool pool;
+
+  public ComputePool(int parallelism) {
+    pool = createPool(limitParallelism(parallelism));
+  }
+
+  private @Nonnull ForkJoinPool createPool(int parallelism) {
+    return new ForkJoinPool(parallelism, p -> {
+      ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+      t.setName("MZmine compute " + threadNumber.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }, null, false);
+  }
+
+  private static int limitParallelism(int parallelism) {
+    return Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+  }
+
+  public int getParallelism() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Changes the number of threads of the pool. The value is limited to the number of processors
+   * available to the JVM.
+   */
+  public synchronized void setParallelism(int parallelism) {
+    final int newParallelism = limitParallelism(parallelism);
+    final ForkJoinPool oldPool = pool;
+    if (newParallelism == oldPool.getParallelism())
+      return;
+    logger.debug("Setting the compute pool parallelism to " + newParallelism);
+    pool = createPool(newParallelism);
+    // Running computations are completed, the idle threads terminate
+    oldPool.shutdown();
+  }
+
+  /**
+   * Runs the given computation, which typically contains a parallel stream, in this pool and waits
+   * for its result. Nested calls from a pool thread run the computation directly.
+   */
+  public <T> T invoke(@Nonnull Supplier<T> computation) {
+    if (isPoolThread())
+      return computation.get();
+    return submit(p -> p.submit(computation::get)).join();
+  }
+
+  /**
+   * Runs the given computation in this pool and waits for it to finish
+   */
+  public void run(@Nonnull Runnable computation) {
+    invoke(() -> {
+      computation.run();
+      return null;
+    });
+  }
+
+  /**
+   * Runs the given work asynchronously in this pool
+   */
+  public void execute(@Nonnull Runnable work) {
+    submit(p -> {
+      p.execute(work);
+      return null;
+    });
+  }
+
+  /**
+   * @return True if the current thread belongs to the current pool. Threads of other fork/join
+   *         pools, e.g. the common pool, must not run the computations themselves.
+   */
+  private boolean isPoolThread() {
+    final Thread thread = Thread.currentThread();
+    return (thread instanceof ForkJoinWorkerThread)
+        && (((ForkJoinWorkerThread) thread).getPool() == pool);
+  }
+
+  /**
+   * Hands work to the current pool. If {@link #setParallelism(int)} replaces and shuts down the
+   * pool meanwhile, the rejected work is handed to the new pool.
+   */
+  private <T> T submit(Function<ForkJoinPool, T> submission) {
+    while (true) {
+      final ForkJoinPool currentPool = pool;
+      try {
+        return submission.apply(currentPool);
+      } catch (RejectedExecutionException e) {
+        if (currentPool == pool)
+          throw e;
+      }
+    }
+  }
+
+}
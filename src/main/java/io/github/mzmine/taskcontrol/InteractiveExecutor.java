@@ -0,0 +1,188 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor for interactive work, such as loading the data of a plot. Each request belongs to a
+ * slot (e.g. a data set of a plot), and each slot keeps only its latest request: submitting a new
+ * request cancels the queued or running request of the same slot. Therefore, quickly browsing
+ * through scans never builds up a backlog.
+ * 
+ * The requests run on dedicated threads with a higher priority than the batch tasks, so they never
+ * wait for the task executor or the compute pool to become free.
+ */
+public class InteractiveExecutor {
+
+  private static final int THREAD_KEEP_ALIVE = 30; // s
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final AtomicInteger threadNumber = new AtomicInteger();
+
+  private final ThreadPoolExecutor executor;
+
+  private final Map<Object, Request> latestRequests = new ConcurrentHashMap<>();
+
+  /**
+   * Interactive work. Long running work should check {@link Request#isCancelled()} regularly, or
+   * register a cancel action with {@link Request#onCancel(Runnable)}.
+   */
+  @FunctionalInterface
+  public interface InteractiveWork {
+    void run(@Nonnull Request request) throws Exception;
+  }
+
+  /**
+   * A submitted request. Requests are cancelled when they are superseded by a newer request of the
+   * same slot, and the running thread is interrupted.
+   */
+  public final class Request implements Runnable {
+
+    private final Object slot;
+    private final FutureTask<Void> future;
+    private Runnable cancelAction;
+
+    private Request(@Nonnull Object slot, @Nonnull InteractiveWork work) {
+      this.slot = slot;
+      this.future = new FutureTask<Void>(() -> {
+        work.run(this);
+        return null;
+      }) {
+        @Override
+        protected void done() {
+          finished();
+        }
+      };
+    }
+
+    @Override
+    public void run() {
+      future.run();
+    }
+
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    /**
+     * Registers an action which is run when the request is cancelled, e.g. to cancel an MSDK
+     * method. If the request is already cancelled, the action is run immediately.
+     */
+    public void onCancel(@Nonnull Runnable action) {
+      synchronized (this) {
+        if (!isCancelled()) {
+          cancelAction = action;
+          return;
+        }
+      }
+      action.run();
+    }
+
+    /**
+     * Cancels the request. A running request is interrupted and its cancel action is run.
+     */
+    public void cancel() {
+      if (!future.cancel(true))
+        return;
+      final Runnable action;
+      synchronized (this) {
+        action = cancelAction;
+        cancelAction = null;
+      }
+      if (action != null)
+        action.run();
+    }
+
+    private void finished() {
+      latestRequests.remove(slot, this);
+      if (isCancelled())
+        return;
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        logger.error("Error while loading data for " + slot, e.getCause());
+      } catch (InterruptedException | CancellationException e) {
+        // Superseded
+      }
+    }
+
+  }
+
+  public InteractiveExecutor(int numberOfThreads) {
+    executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, THREAD_KEEP_ALIVE,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "MZmine interactive " + threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          t.setPriority(Thread.NORM_PRIORITY + 2);
+          return t;
+        });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Submits a request for the given slot, cancelling the previous request of the slot. Slots are
+   * compared by equals(), so a list of objects, e.g. a plot window and a raw data file, can be used
+   * as a slot.
+   */
+  public @Nonnull Request submit(@Nonnull Object slot, @Nonnull InteractiveWork work) {
+    final Request request = new Request(slot, work);
+    final Request previousRequest = latestRequests.put(slot, request);
+    if (previousRequest != null)
+      previousRequest.cancel();
+    executor.execute(request);
+    return request;
+  }
+
+  /**
+   * Cancels the latest request of the given slot, e.g. when its plot window is closed
+   */
+  public void cancel(@Nonnull Object slot) {
+    final Request request = latestRequests.remove(slot);
+    if (request != null)
+      request.cancel();
+  }
+
+  /**
+   * @return The queued or running request of the given slot, or null
+   */
+  public @Nullable Request getLatestRequest(@Nonnull Object slot) {
+    return latestRequests.get(slot);
+  }
+
+}
@@ -27,12 +27,13 @@ import io.github.msdk.MSDKMethod;
 import io.github.mzmine.gui.MZmineGUI;
 import javafx.concurrent.Task;
 
-public class MSDKTask extends Task<Object> implements MZmineTask {
+public class MSDKTask extends Task<Object> implements MZmineTask, CacheableTask {
 
   private Logger logger = LoggerFactory.getLogger(this.getClass());
 
   private MSDKMethod<?> method;
   private String title, message;
+  private @Nullable ResultCacheKey resultCacheKey;
 
   public MSDKTask(String title, @Nullable String message, MSDKMethod<?> method) {
     this.title = title;
@@ -56,11 +57,33 @@ public class MSDKTask extends Task<Object> implements MZmineTask {
     updateMessage(message);
   }
 
+  @Override
+  public void setResultCacheKey(@Nullable ResultCacheKey key) {
+    this.resultCacheKey = key;
+  }
+
+  /**
+   * Returns the result of the method. If a result cache key was set, the result may come from the
+   * {@link ResultCache}, so modules which set the key must use the value of the task instead of the
+   * result of the method.
+   */
   @Override
   protected Object call() throws Exception {
     Object result = null;
+
+    // Release the key (which references the input data) once the task has run
+    final ResultCacheKey cacheKey = resultCacheKey;
+    resultCacheKey = null;
+
     try {
+      if ((cacheKey != null) && ResultCache.isEnabled()) {
+        result = ResultCache.get(cacheKey);
+        if (result != null)
+          return result;
+      }
       result = method.execute();
+      if ((cacheKey != null) && (!isCancelled()))
+        ResultCache.put(cacheKey, result);
     } catch (Throwable e) {
       final String msg = "Error executing task " + title + ": " + e.getMessage();
       logger.error(msg, e);
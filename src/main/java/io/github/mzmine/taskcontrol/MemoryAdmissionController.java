@@ -0,0 +1,218 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.concurrent.Task;
+
+/**
+ * Admits tasks to the task executor only when their estimated memory footprint (see
+ * {@link TaskMetrics#getEstimatedFootprint()}) fits into the memory budget together with the
+ * footprints of the tasks which are already running. Tasks are only handed to the executor when
+ * one of its threads is free, so they start immediately and reserve their footprint when they
+ * start running. Tasks are admitted in the order of submission, but smaller tasks which fit into
+ * the budget may overtake a task waiting for memory, at most {@link #MAX_OVERTAKES} times so the
+ * waiting task is not starved. A task which alone exceeds the budget is admitted once no other
+ * task is running, so it can never wait forever.
+ */
+public class MemoryAdmissionController {
+
+  /**
+   * Default fraction of the maximum heap size which may be reserved by running tasks
+   */
+  public static final double DEFAULT_BUDGET_FRACTION = 0.8;
+
+  /**
+   * Maximum number of tasks which may overtake a task waiting for memory
+   */
+  static final int MAX_OVERTAKES = 16;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final @Nonnull ThreadPoolExecutor executor;
+
+  /**
+   * Submitted tasks whose footprint has not been estimated yet
+   */
+  private final BlockingQueue<PendingTask> submittedTasks = new LinkedBlockingQueue<>();
+
+  /**
+   * Tasks with estimated footprint waiting for admission, in the order of submission
+   */
+  private final List<PendingTask> pendingTasks = new ArrayList<>();
+
+  private long budget = (long) (Runtime.getRuntime().maxMemory() * DEFAULT_BUDGET_FRACTION);
+  private long reservedBytes, dispatchedBytes;
+  private int runningTasks, dispatchedTasks;
+  private boolean waitingForMemory;
+
+  private static class PendingTask {
+    private final Task<?> task;
+    private final Runnable runnable;
+    private long footprint;
+    private int overtakes;
+
+    PendingTask(Task<?> task, Runnable runnable) {
+      this.task = task;
+      this.runnable = runnable;
+    }
+  }
+
+  public MemoryAdmissionController(@Nonnull ThreadPoolExecutor executor) {
+    this.executor = executor;
+    Thread estimator = new Thread(this::estimateFootprints, "Task admission");
+    estimator.setDaemon(true);
+    estimator.start();
+  }
+
+  /**
+   * Queues the runnable which executes the given task. The runnable is passed to the executor once
+   * the task is admitted.
+   */
+  public void submit(@Nonnull Task<?> task, @Nonnull Runnable runnable) {
+    submittedTasks.add(new PendingTask(task, runnable));
+  }
+
+  /**
+   * Estimates the footprints of the submitted tasks in the background, as the estimation may read
+   * the task inputs
+   */
+  private void estimateFootprints() {
+    while (true) {
+      try {
+        final PendingTask pending = submittedTasks.take();
+
+        // Cancelled tasks do not need any memory
+        if (!pending.task.isDone())
+          pending.footprint = TaskMetrics.of(pending.task).getEstimatedFootprint();
+
+        synchronized (this) {
+          pendingTasks.add(pending);
+          admit();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (Throwable e) {
+        logger.error("Error while estimating the footprint of a task", e);
+      }
+    }
+  }
+
+  /**
+   * Hands the pending tasks which fit into the memory budget to the free executor threads
+   */
+  private synchronized void admit() {
+    PendingTask waiting = null;
+    final Iterator<PendingTask> iterator = pendingTasks.iterator();
+    while (iterator.hasNext() && (runningTasks + dispatchedTasks < executor.getCorePoolSize())) {
+      final PendingTask pending = iterator.next();
+      final long footprint = Math.min(pending.footprint, budget);
+      final boolean idle = (runningTasks + dispatchedTasks == 0);
+      if (!idle && (reservedBytes + dispatchedBytes + footprint > budget)) {
+        if (waiting == null) {
+          waiting = pending;
+          if (!waitingForMemory)
+            logger.debug("Waiting for " + footprint + " bytes of the memory budget, "
+                + reservedBytes + " of " + budget + " bytes are reserved");
+        }
+        continue;
+      }
+      if (waiting != null) {
+        // Do not starve the first task waiting for memory
+        if (waiting.overtakes >= MAX_OVERTAKES)
+          break;
+        waiting.overtakes++;
+      }
+      iterator.remove();
+      dispatch(pending, footprint);
+    }
+    waitingForMemory = (waiting != null);
+  }
+
+  private void dispatch(PendingTask pending, long footprint) {
+    dispatchedTasks++;
+    dispatchedBytes += footprint;
+    executor.execute(() -> {
+      started(footprint);
+      try {
+        pending.runnable.run();
+      } finally {
+        finished(footprint);
+      }
+    });
+  }
+
+  private synchronized void started(long footprint) {
+    dispatchedTasks--;
+    dispatchedBytes -= footprint;
+    runningTasks++;
+    reservedBytes += footprint;
+  }
+
+  private synchronized void finished(long footprint) {
+    runningTasks--;
+    reservedBytes -= footprint;
+    admit();
+  }
+
+  /**
+   * Admits the pending tasks again, e.g. after the number of executor threads was changed
+   */
+  public synchronized void update() {
+    admit();
+  }
+
+  /**
+   * Sets the memory budget in bytes
+   */
+  public synchronized void setBudget(long budget) {
+    this.budget = budget;
+    admit();
+  }
+
+  public synchronized long getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return Footprint reserved by the running tasks in bytes
+   */
+  public synchronized long getReservedBytes() {
+    return reservedBytes;
+  }
+
+  /**
+   * @return Number of submitted tasks which have not been admitted yet
+   */
+  public synchronized int getPendingTaskCount() {
+    return submittedTasks.size() + pendingTasks.size();
+  }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.msdk.io.mzml.MzMLFileExportMethod;
+import io.github.mzmine.util.ChromatogramUtils;
+
+/**
+ * Persistent cache of task results (raw data files and chromatogram lists) in a local directory.
+ * Each result is stored under the hash of its {@link ResultCacheKey}; raw data files in the mzML
+ * format, chromatograms in a binary format which keeps all their data points, see
+ * {@link ChromatogramUtils#writeChromatogram(java.io.DataOutput, Chromatogram)}. Feature
+ * tables are not cached, tasks cache the chromatograms they build the table from instead. When the
+ * cache grows over its maximum size, the least recently used results are removed. The cache is
+ * disabled until a directory is configured.
+ */
+public final class ResultCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+  private static final String RAW_DATA_EXTENSION = ".mzML";
+  private static final String CHROMATOGRAMS_EXTENSION = ".chromatograms";
+  private static final String INFO_EXTENSION = ".properties";
+  private static final String NAME_PROPERTY = "name";
+
+  // Partially written results, named by the hash of their key
+  private static final String TMP_FILE_PATTERN = "[0-9a-f]{64}.*\\.tmp";
+  private static final long STALE_TMP_FILE_AGE = 60 * 60 * 1000; // ms
+
+  private static @Nullable File cacheDirectory;
+  private static long maxSize;
+
+  /**
+   * Enables the cache in the given directory, or disables it if the directory is null
+   * 
+   * @param maxSize Maximum total size of the cached results in bytes
+   */
+  public static synchronized void configure(@Nullable File directory, long maxSize) {
+    if ((directory != null) && (!directory.isDirectory()) && (!directory.mkdirs())) {
+      logger.warn("Cannot create result cache directory " + directory);
+      directory = null;
+    }
+    ResultCache.cacheDirectory = directory;
+    ResultCache.maxSize = maxSize;
+    if (directory != null)
+      evict();
+  }
+
+  public static synchronized boolean isEnabled() {
+    return cacheDirectory != null;
+  }
+
+  /**
+   * @return The cached result for the given key, or null if there is none. Chromatograms are
+   *         returned as a {@link List} of {@link Chromatogram}s.
+   */
+  public static @Nullable Object get(@Nonnull ResultCacheKey key) {
+    final File directory;
+    synchronized (ResultCache.class) {
+      directory = cacheDirectory;
+    }
+    if (directory == null)
+      return null;
+
+    final String hash = getHash(key);
+    if (hash == null)
+      return null;
+    final File infoFile = new File(directory, hash + INFO_EXTENSION);
+    if (!infoFile.exists())
+      return null;
+
+    try {
+      Properties info = new Properties();
+      try (InputStream is = new FileInputStream(infoFile)) {
+        info.load(is);
+      }
+      final String name = info.getProperty(NAME_PROPERTY);
+
+      File dataFile = new File(directory, hash + RAW_DATA_EXTENSION);
+      if (dataFile.exists()) {
+        touch(dataFile, infoFile);
+        RawDataFile rawDataFile =
+            new RawDataFileImportMethod(dataFile, DataPointStoreFactory.getTmpFileDataStore())
+                .execute();
+        if ((rawDataFile != null) && (name != null))
+          rawDataFile.setName(name);
+        logger.debug("Using cached raw data file " + name + " (" + hash + ")");
+        return rawDataFile;
+      }
+
+      dataFile = new File(directory, hash + CHROMATOGRAMS_EXTENSION);
+      if (dataFile.exists()) {
+        touch(dataFile, infoFile);
+        List<Chromatogram> chromatograms =
+            readChromatograms(dataFile, DataPointStoreFactory.getMemoryDataStore());
+        logger.debug("Using cached chromatograms " + name + " (" + hash + ")");
+        return chromatograms;
+      }
+    } catch (Exception e) {
+      logger.warn("Cannot read cached result " + hash, e);
+    }
+    return null;
+  }
+
+  /**
+   * Stores the result for the given key. Results other than raw data files and lists of
+   * chromatograms are ignored.
+   */
+  public static void put(@Nonnull ResultCacheKey key, @Nullable Object result) {
+    final File directory;
+    synchronized (ResultCache.class) {
+      directory = cacheDirectory;
+    }
+    if ((directory == null) || (result == null))
+      return;
+
+    final String hash = getHash(key);
+    if (hash == null)
+      return;
+    File tmpFile = null;
+    try {
+      final String name, extension;
+      if (result instanceof RawDataFile) {
+        RawDataFile rawDataFile = (RawDataFile) result;
+        name = rawDataFile.getName();
+        extension = RAW_DATA_EXTENSION;
+        tmpFile = File.createTempFile(hash, ".tmp", directory);
+        new MzMLFileExportMethod(rawDataFile, tmpFile).execute();
+      } else if (isChromatogramList(result)) {
+        @SuppressWarnings("unchecked")
+        List<Chromatogram> chromatograms = (List<Chromatogram>) result;
+        name = chromatograms.size() + " chromatograms";
+        extension = CHROMATOGRAMS_EXTENSION;
+        tmpFile = File.createTempFile(hash, ".tmp", directory);
+        writeChromatograms(chromatograms, tmpFile);
+      } else {
+        return;
+      }
+
+      // The info file is written last, as it marks the result as complete
+      Files.move(tmpFile.toPath(), new File(directory, hash + extension).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+      Properties info = new Properties();
+      if (name != null)
+        info.setProperty(NAME_PROPERTY, name);
+      try (OutputStream os = new FileOutputStream(new File(directory, hash + INFO_EXTENSION))) {
+        info.store(os, null);
+      }
+      logger.debug("Stored result " + name + " in the cache (" + hash + ")");
+    } catch (Exception e) {
+      logger.warn("Cannot store result " + hash + " in the cache", e);
+    } finally {
+      // Only left over if the result could not be written or moved
+      if (tmpFile != null)
+        tmpFile.delete();
+    }
+
+    synchronized (ResultCache.class) {
+      evict();
+    }
+  }
+
+  /**
+   * @return The hash of the key, or null if it cannot be computed. Cache problems must not fail the
+   *         task, which then runs without the cache.
+   */
+  private static @Nullable String getHash(ResultCacheKey key) {
+    try {
+      return key.getHash();
+    } catch (RuntimeException e) {
+      logger.warn("Cannot compute the result cache key, the result is not cached", e);
+      return null;
+    }
+  }
+
+  private static boolean isChromatogramList(Object result) {
+    if (!(result instanceof List))
+      return false;
+    for (Object item : (List<?>) result) {
+      if (!(item instanceof Chromatogram))
+        return false;
+    }
+    return true;
+  }
+
+  private static void writeChromatograms(List<Chromatogram> chromatograms, File file)
+      throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(chromatograms.size());
+      for (Chromatogram chromatogram : chromatograms)
+        ChromatogramUtils.writeChromatogram(out, chromatogram);
+    }
+  }
+
+  private static List<Chromatogram> readChromatograms(File file, DataPointStore dataStore)
+      throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      final int count = in.readInt();
+      final List<Chromatogram> chromatograms = new ArrayList<>(count);
+      for (int i = 0; i < count; i++)
+        chromatograms.add(ChromatogramUtils.readChromatogram(in, dataStore));
+      return chromatograms;
+    }
+  }
+
+  private static void touch(File... files) {
+    final long now = System.currentTimeMillis();
+    for (File file : files)
+      file.setLastModified(now);
+  }
+
+  /**
+   * Removes the least recently used results until the cache fits into its maximum size. Also
+   * removes partially written results left over by an earlier session.
+   */
+  private static void evict() {
+    if (cacheDirectory == null)
+      return;
+
+    final long staleTime = System.currentTimeMillis() - STALE_TMP_FILE_AGE;
+    final File tmpFiles[] = cacheDirectory.listFiles((dir, name) -> name.matches(TMP_FILE_PATTERN));
+    if (tmpFiles != null) {
+      for (File tmpFile : tmpFiles) {
+        if (tmpFile.lastModified() < staleTime) {
+          logger.debug("Removing stale temporary file " + tmpFile + " from the cache");
+          tmpFile.delete();
+        }
+      }
+    }
+
+    File cachedFiles[] = cacheDirectory.listFiles(
+        (dir, name) -> name.endsWith(RAW_DATA_EXTENSION) || name.endsWith(CHROMATOGRAMS_EXTENSION));
+    if (cachedFiles == null)
+      return;
+
+    long totalSize = 0;
+    for (File cachedFile : cachedFiles)
+      totalSize += cachedFile.length();
+    if (totalSize <= maxSize)
+      return;
+
+    Arrays.sort(cachedFiles, Comparator.comparingLong(File::lastModified));
+    for (File cachedFile : cachedFiles) {
+      if (totalSize <= maxSize)
+        break;
+      String fileName = cachedFile.getName();
+      String hash = fileName.substring(0, fileName.lastIndexOf('.'));
+      logger.debug("Removing result " + hash + " from the cache");
+      totalSize -= cachedFile.length();
+      new File(cacheDirectory, hash + INFO_EXTENSION).delete();
+      cachedFile.delete();
+    }
+  }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.parameters.ParameterSet;
+
+/**
+ * Key of a cached task result: a SHA-256 hash of the module class, the module parameters (as saved
+ * by {@link ParameterSet#saveValuesToXML(Element)}) and the content of the input data, including
+ * all data points of scans and chromatograms. The hash is computed on first use, typically on the
+ * thread which executes the task, and the references to the input data are released afterwards.
+ */
+public class ResultCacheKey {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResultCacheKey.class);
+
+  private final String moduleClass;
+  private final @Nullable String parameters;
+  private List<Object> inputs;
+  private String hash;
+
+  public ResultCacheKey(@Nonnull Class<? extends MZmineModule> moduleClass,
+      @Nonnull ParameterSet parameters, @Nonnull Object... inputs) {
+    this.moduleClass = moduleClass.getName();
+    this.parameters = parametersToString(parameters);
+    this.inputs = new ArrayList<>(Arrays.asList(inputs));
+  }
+
+  /**
+   * @return Hexadecimal SHA-256 hash identifying the task result
+   * @throws IllegalStateException If the parameters could not be serialized or the input data
+   *         could not be read
+   */
+  public synchronized @Nonnull String getHash() {
+    if (hash != null)
+      return hash;
+    if (parameters == null)
+      throw new IllegalStateException("The module parameters could not be serialized");
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      update(digest, moduleClass);
+      update(digest, parameters);
+      for (Object input : inputs)
+        updateInput(digest, input);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest())
+        hex.append(String.format("%02x", b));
+      hash = hex.toString();
+      inputs = null;
+      return hash;
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot compute the result cache key", e);
+    }
+  }
+
+  private static void updateInput(MessageDigest digest, @Nullable Object input) {
+    if (input == null) {
+      update(digest, "null");
+    } else if (input instanceof File) {
+      File file = (File) input;
+      update(digest, file.getAbsolutePath());
+      update(digest, file.length() + ":" + file.lastModified());
+    } else if (input instanceof RawDataFile) {
+      RawDataFile rawDataFile = (RawDataFile) input;
+      update(digest, rawDataFile.getName());
+      for (MsScan scan : rawDataFile.getScans()) {
+        ChromatographyInfo chromInfo = scan.getChromatographyInfo();
+        update(digest,
+            scan.getScanNumber() + ":" + scan.getMsFunction().getMsLevel() + ":"
+                + scan.getNumberOfDataPoints() + ":"
+                + (chromInfo == null ? "" : chromInfo.getRetentionTime()));
+        updateDataPoints(digest, scan.getMzValues(), scan.getIntensityValues(),
+            scan.getNumberOfDataPoints());
+      }
+    } else if (input instanceof FeatureTable) {
+      FeatureTable featureTable = (FeatureTable) input;
+      update(digest, featureTable.getName());
+      List<FeatureTableColumn<?>> columns = featureTable.getColumns();
+      for (FeatureTableColumn<?> column : columns)
+        update(digest, column.getName());
+      for (FeatureTableRow row : featureTable.getRows()) {
+        for (FeatureTableColumn<?> column : columns) {
+          Object value = row.getData(column);
+          if (value instanceof Chromatogram) {
+            Chromatogram chromatogram = (Chromatogram) value;
+            final int size = chromatogram.getNumberOfDataPoints();
+            update(digest, size + ":" + chromatogram.getMz());
+            final ChromatographyInfo rtValues[] = chromatogram.getRetentionTimes();
+            final StringBuilder rts = new StringBuilder();
+            for (int i = 0; i < size; i++)
+              rts.append(rtValues[i].getRetentionTime()).append(':');
+            update(digest, rts.toString());
+            updateDataPoints(digest, chromatogram.getMzValues(),
+                chromatogram.getIntensityValues(), size);
+          } else {
+            update(digest, String.valueOf(value));
+          }
+        }
+      }
+    } else if (input instanceof Collection) {
+      for (Object item : (Collection<?>) input)
+        updateInput(digest, item);
+    } else {
+      update(digest, String.valueOf(input));
+    }
+  }
+
+  private static void updateDataPoints(MessageDigest digest, double mzValues[],
+      float intensityValues[], int size) {
+    final ByteBuffer buffer = ByteBuffer.allocate(size * 12);
+    for (int i = 0; i < size; i++) {
+      buffer.putDouble(mzValues[i]);
+      buffer.putFloat(intensityValues[i]);
+    }
+    buffer.flip();
+    digest.update(buffer);
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /**
+   * @return The parameters as XML, or null if they cannot be serialized
+   */
+  private static @Nullable String parametersToString(ParameterSet parameters) {
+    try {
+      Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      Element element = document.createElement("parameters");
+      document.appendChild(element);
+      parameters.saveValuesToXML(element);
+
+      // The last browsed directories of file name parameters do not affect the result
+      NodeList lastDirectories = document.getElementsByTagName("lastdirectory");
+      for (int i = lastDirectories.getLength() - 1; i >= 0; i--) {
+        Node lastDirectory = lastDirectories.item(i);
+        lastDirectory.getParentNode().removeChild(lastDirectory);
+      }
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      StringWriter writer = new StringWriter();
+      transformer.transform(new DOMSource(document), new StreamResult(writer));
+      return writer.toString();
+    } catch (Exception e) {
+      logger.warn("Cannot serialize the module parameters for the result cache", e);
+      return null;
+    }
+  }
+
+}
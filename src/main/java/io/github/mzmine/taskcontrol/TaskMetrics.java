@@ -0,0 +1,358 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.mzmine.util.DataSizeUtils;
+import javafx.concurrent.Task;
+
+/**
+ * Runtime metrics of a single task: wall time, CPU time, allocated bytes, peak heap usage, the
+ * amount of data read and written, and the processing throughput. The thread-based metrics (CPU
+ * time and allocated bytes) are measured on the thread which executes the task only, see
+ * {@link #measure(Task)}. Work the task hands over to the shared compute pool or to parallel
+ * streams is not included, so they understate the cost of parallel modules.
+ */
+public class TaskMetrics {
+
+  private static final int HEAP_SAMPLING_PERIOD = 200; // ms
+
+  /**
+   * Default ratio of the peak memory footprint of a task to the heap size of its input. Tasks
+   * typically keep their input and create a result of comparable size.
+   */
+  public static final double FOOTPRINT_FACTOR = 2.0;
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private static final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+  private static final Map<Task<?>, TaskMetrics> taskMetrics =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final Set<TaskMetrics> runningMetrics = ConcurrentHashMap.newKeySet();
+
+  private static final ScheduledThreadPoolExecutor heapSampler =
+      new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Task metrics heap sampler");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+      });
+
+  static {
+    heapSampler.scheduleAtFixedRate(() -> {
+      if (runningMetrics.isEmpty())
+        return;
+      final long usedHeap = memoryBean.getHeapMemoryUsage().getUsed();
+      for (TaskMetrics metrics : runningMetrics)
+        metrics.updatePeakHeap(usedHeap);
+    }, HEAP_SAMPLING_PERIOD, HEAP_SAMPLING_PERIOD, TimeUnit.MILLISECONDS);
+  }
+
+  private volatile long startTime, endTime;
+  private volatile long startNanos, wallTimeNanos;
+  private volatile long startCpuNanos, cpuTimeNanos;
+  private volatile long startAllocatedBytes, allocatedBytes;
+  private volatile boolean running;
+
+  private final List<Object> inputs = new ArrayList<>();
+  private final List<WeakReference<Object>> inputReferences = new ArrayList<>();
+  private long heapInputBytes;
+  private @Nullable LongSupplier footprintEstimator;
+  private long estimatedFootprint = -1;
+
+  private final AtomicLong peakHeapBytes = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong processedItems = new AtomicLong();
+
+  /**
+   * Returns the metrics of given task. The metrics instance is created on first access and lives
+   * as long as the task itself.
+   */
+  public static @Nonnull TaskMetrics of(@Nonnull Task<?> task) {
+    return taskMetrics.computeIfAbsent(task, t -> new TaskMetrics());
+  }
+
+  /**
+   * Runs the given task on the current thread and records its metrics. The result of the task (if
+   * any) is used to estimate the written data volume and the number of processed items.
+   */
+  public void measure(@Nonnull Task<?> task) {
+
+    // Estimate the size of the input data on the executing thread (if not done before admission),
+    // not on the thread which submitted the task
+    estimateInputBytes();
+
+    started();
+    try {
+      task.run();
+    } finally {
+      finished();
+    }
+
+    if (task.isDone() && !task.isCancelled()) {
+      try {
+        recordOutput(task.get());
+      } catch (InterruptedException | ExecutionException e) {
+        // Failed tasks produce no output
+      }
+    }
+  }
+
+  private void started() {
+    startTime = System.currentTimeMillis();
+    startNanos = System.nanoTime();
+    startCpuNanos = getCurrentThreadCpuTime();
+    startAllocatedBytes = getCurrentThreadAllocatedBytes();
+    updatePeakHeap(memoryBean.getHeapMemoryUsage().getUsed());
+    running = true;
+    runningMetrics.add(this);
+  }
+
+  private void finished() {
+    runningMetrics.remove(this);
+    wallTimeNanos = System.nanoTime() - startNanos;
+    cpuTimeNanos = getCurrentThreadCpuTime() - startCpuNanos;
+    allocatedBytes = getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+    updatePeakHeap(memoryBean.getHeapMemoryUsage().getUsed());
+    endTime = System.currentTimeMillis();
+    running = false;
+  }
+
+  /**
+   * Records the input data of the task, e.g. a file, a raw data file or a feature table. The size
+   * of the input is estimated once the task starts.
+   */
+  public void recordInput(@Nullable Object input) {
+    if (input == null)
+      return;
+    synchronized (inputs) {
+      inputs.add(input);
+      addInputReference(input);
+    }
+  }
+
+  private void addInputReference(Object input) {
+    if (input instanceof Collection) {
+      for (Object item : (Collection<?>) input)
+        addInputReference(item);
+    } else if (input != null) {
+      inputReferences.add(new WeakReference<>(input));
+    }
+  }
+
+  /**
+   * @return The recorded inputs of the task (collections are flattened), as long as they are still
+   *         referenced elsewhere, e.g. by the project
+   */
+  public @Nonnull List<Object> getInputs() {
+    final List<Object> result = new ArrayList<>();
+    synchronized (inputs) {
+      for (WeakReference<Object> reference : inputReferences) {
+        Object input = reference.get();
+        if (input != null)
+          result.add(input);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Estimates the size of the recorded inputs. The estimation is only done once, later calls
+   * return the same value.
+   * 
+   * @return Estimated size of the task input in bytes
+   */
+  public long estimateInputBytes() {
+    synchronized (inputs) {
+      for (Object input : inputs) {
+        bytesRead.addAndGet(DataSizeUtils.estimateSize(input));
+        heapInputBytes += DataSizeUtils.estimateHeapSize(input);
+      }
+      inputs.clear();
+    }
+    return bytesRead.get();
+  }
+
+  /**
+   * Declares the peak memory footprint of the task, overriding the estimate based on the task
+   * input. The estimator is called once, before the task is admitted to the executor, and not on
+   * the thread which submits the task.
+   */
+  public void setEstimatedFootprint(@Nonnull LongSupplier estimator) {
+    synchronized (inputs) {
+      footprintEstimator = estimator;
+    }
+  }
+
+  /**
+   * Estimates the peak heap usage of the task. Raw data files and other files are disk-backed and
+   * mostly read scan by scan, so only the inputs held in the heap (e.g. feature tables) count, see
+   * {@link DataSizeUtils#estimateHeapSize(Object)}. Tasks which load raw data into the heap
+   * declare their footprint with {@link #setEstimatedFootprint(LongSupplier)}.
+   * 
+   * @return Declared peak memory footprint of the task, or {@link #FOOTPRINT_FACTOR} times the
+   *         heap size of the input if nothing was declared
+   */
+  public long getEstimatedFootprint() {
+    final LongSupplier estimator;
+    synchronized (inputs) {
+      if (estimatedFootprint >= 0)
+        return estimatedFootprint;
+      estimator = footprintEstimator;
+    }
+    if (estimator != null) {
+      final long bytes = estimator.getAsLong();
+      synchronized (inputs) {
+        estimatedFootprint = bytes;
+      }
+      return bytes;
+    }
+    estimateInputBytes();
+    synchronized (inputs) {
+      return (long) (heapInputBytes * FOOTPRINT_FACTOR);
+    }
+  }
+
+  /**
+   * Records the output data of the task, e.g. a raw data file or a feature table
+   */
+  public void recordOutput(@Nullable Object output) {
+    bytesWritten.addAndGet(DataSizeUtils.estimateSize(output));
+    processedItems.addAndGet(DataSizeUtils.countItems(output));
+  }
+
+  public void addProcessedItems(long items) {
+    processedItems.addAndGet(items);
+  }
+
+  private void updatePeakHeap(long usedHeap) {
+    peakHeapBytes.accumulateAndGet(usedHeap, Math::max);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * @return Start time in milliseconds since epoch, or 0 if the task has not started yet
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * @return End time in milliseconds since epoch, or 0 if the task has not finished yet
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * @return Wall clock time in milliseconds, including the time elapsed so far for running tasks
+   */
+  public long getWallTime() {
+    if (running)
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    return TimeUnit.NANOSECONDS.toMillis(wallTimeNanos);
+  }
+
+  /**
+   * @return CPU time of the executing thread in milliseconds, available after the task finished.
+   *         The CPU time of compute pool workers is not included.
+   */
+  public long getCpuTime() {
+    return TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos);
+  }
+
+  /**
+   * @return Bytes allocated by the executing thread, available after the task finished. Memory
+   *         allocated by compute pool workers is not included.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return Peak JVM heap usage observed while the task was running. The heap is shared, so this
+   *         value includes the memory used by concurrently running tasks.
+   */
+  public long getPeakHeapBytes() {
+    return peakHeapBytes.get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  public long getProcessedItems() {
+    return processedItems.get();
+  }
+
+  /**
+   * @return Number of processed items (scans, features...) per second of wall time
+   */
+  public double getItemsPerSecond() {
+    final long wallTime = getWallTime();
+    if (wallTime == 0)
+      return 0.0;
+    return processedItems.get() * 1000.0 / wallTime;
+  }
+
+  private static long getCurrentThreadCpuTime() {
+    if (!threadBean.isCurrentThreadCpuTimeSupported())
+      return 0;
+    return threadBean.getCurrentThreadCpuTime();
+  }
+
+  private static long getCurrentThreadAllocatedBytes() {
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+      return 0;
+    com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+    if (!sunThreadBean.isThreadAllocatedMemorySupported())
+      return 0;
+    return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+}
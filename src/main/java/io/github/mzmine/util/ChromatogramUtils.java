@@ -0,0 +1,99 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Chromatogram utilities
+ */
+public class ChromatogramUtils {
+
+  /**
+   * Writes the number, type, separation type and m/z of the chromatogram, followed by all its data
+   * points, see {@link #readChromatogram(DataInput, DataPointStore)}
+   */
+  public static void writeChromatogram(@Nonnull DataOutput out, @Nonnull Chromatogram chromatogram)
+      throws IOException {
+    final Integer number = chromatogram.getChromatogramNumber();
+    final Double mz = chromatogram.getMz();
+    out.writeInt(number == null ? -1 : number);
+    out.writeUTF(chromatogram.getChromatogramType().name());
+    out.writeUTF(chromatogram.getSeparationType().name());
+    out.writeBoolean(mz != null);
+    if (mz != null)
+      out.writeDouble(mz);
+
+    final int size = chromatogram.getNumberOfDataPoints();
+    final ChromatographyInfo rtValues[] = chromatogram.getRetentionTimes();
+    final double mzValues[] = chromatogram.getMzValues();
+    final float intensityValues[] = chromatogram.getIntensityValues();
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      final ChromatographyInfo rt = rtValues[i];
+      final SeparationType rtSeparationType = rt.getSeparationType();
+      out.writeUTF(rtSeparationType == null ? "" : rtSeparationType.name());
+      out.writeFloat(rt.getRetentionTime());
+      out.writeDouble(mzValues[i]);
+      out.writeFloat(intensityValues[i]);
+    }
+  }
+
+  /**
+   * Reads a chromatogram written by {@link #writeChromatogram(DataOutput, Chromatogram)}
+   */
+  public static @Nonnull Chromatogram readChromatogram(@Nonnull DataInput in,
+      @Nonnull DataPointStore dataStore) throws IOException {
+    final int number = in.readInt();
+    final ChromatogramType type = ChromatogramType.valueOf(in.readUTF());
+    final SeparationType separationType = SeparationType.valueOf(in.readUTF());
+    final Double mz = in.readBoolean() ? in.readDouble() : null;
+
+    final int size = in.readInt();
+    final ChromatographyInfo rtValues[] = new ChromatographyInfo[size];
+    final double mzValues[] = new double[size];
+    final float intensityValues[] = new float[size];
+    for (int i = 0; i < size; i++) {
+      final String rtSeparationType = in.readUTF();
+      rtValues[i] = MSDKObjectBuilder.getChromatographyInfo1D(
+          rtSeparationType.isEmpty() ? null : SeparationType.valueOf(rtSeparationType),
+          in.readFloat());
+      mzValues[i] = in.readDouble();
+      intensityValues[i] = in.readFloat();
+    }
+
+    final Chromatogram chromatogram =
+        MSDKObjectBuilder.getChromatogram(dataStore, number, type, separationType);
+    chromatogram.setDataPoints(rtValues, mzValues, intensityValues, size);
+    chromatogram.setMz(mz);
+    return chromatogram;
+  }
+
+}
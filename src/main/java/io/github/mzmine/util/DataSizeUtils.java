@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.msspectra.MsSpectrum;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.project.LazyRawDataFile;
+
+/**
+ * Utilities for estimating the in-memory size of MSDK data objects
+ */
+public class DataSizeUtils {
+
+  /**
+   * Bytes per spectrum data point (double m/z + float intensity)
+   */
+  public static final int SPECTRUM_DATA_POINT_SIZE = 8 + 4;
+
+  /**
+   * Bytes per chromatogram data point (double m/z + float RT + float intensity)
+   */
+  public static final int CHROMATOGRAM_DATA_POINT_SIZE = 8 + 4 + 4;
+
+  /**
+   * Approximate bytes per scalar feature table cell, including the boxing overhead
+   */
+  public static final int FEATURE_TABLE_CELL_SIZE = 16;
+
+  /**
+   * Approximate bytes of the metadata kept for each scan
+   */
+  public static final int SCAN_OVERHEAD = 256;
+
+  /**
+   * Estimates the number of bytes occupied by the data of a given object. Supports files, raw data
+   * files, spectra, chromatograms, feature tables and collections of these. Returns 0 for unknown
+   * objects.
+   */
+  public static long estimateSize(@Nullable Object data) {
+    if (data == null)
+      return 0;
+    if (data instanceof File)
+      return ((File) data).length();
+    if (data instanceof RawDataFile)
+      return estimateRawDataFileSize((RawDataFile) data);
+    if (data instanceof FeatureTable)
+      return estimateFeatureTableSize((FeatureTable) data);
+    if (data instanceof MsSpectrum) {
+      int dataPoints = ((MsSpectrum) data).getNumberOfDataPoints();
+      return (long) dataPoints * SPECTRUM_DATA_POINT_SIZE;
+    }
+    if (data instanceof Chromatogram) {
+      int dataPoints = ((Chromatogram) data).getNumberOfDataPoints();
+      return (long) dataPoints * CHROMATOGRAM_DATA_POINT_SIZE;
+    }
+    if (data instanceof Collection) {
+      long size = 0;
+      for (Object item : (Collection<?>) data)
+        size += estimateSize(item);
+      return size;
+    }
+    return 0;
+  }
+
+  /**
+   * Estimates the number of heap bytes occupied by the data of a given object. Unlike
+   * {@link #estimateSize(Object)}, files and raw data files count as 0, because their data points
+   * are kept on disk (in the original file or in a temporary data store) and read on demand.
+   */
+  public static long estimateHeapSize(@Nullable Object data) {
+    if ((data == null) || (data instanceof File) || (data instanceof RawDataFile))
+      return 0;
+    if (data instanceof Collection) {
+      long size = 0;
+      for (Object item : (Collection<?>) data)
+        size += estimateHeapSize(item);
+      return size;
+    }
+    return estimateSize(data);
+  }
+
+  /**
+   * Estimates the number of bytes of the MS/MS scans of the raw data files, see
+   * {@link #estimateMsMsScanSize(RawDataFile)}
+   */
+  public static long estimateMsMsScanSize(@Nonnull Collection<RawDataFile> rawDataFiles) {
+    long size = 0;
+    for (RawDataFile rawDataFile : rawDataFiles)
+      size += estimateMsMsScanSize(rawDataFile);
+    return size;
+  }
+
+  /**
+   * Estimates the number of bytes of the MS/MS scans of a raw data file, i.e. the heap used by
+   * tasks which load all MS/MS spectra into memory
+   */
+  public static long estimateMsMsScanSize(@Nonnull RawDataFile rawDataFile) {
+    // Do not load raw data files just to estimate their MS/MS scans
+    LazyRawDataFile lazyFile = LazyRawDataFile.getHandler(rawDataFile);
+    if ((lazyFile != null) && (!lazyFile.isLoaded()))
+      return lazyFile.getArchivedSize();
+
+    long size = 0;
+    for (MsScan scan : rawDataFile.getScans()) {
+      final Integer msLevel = scan.getMsFunction().getMsLevel();
+      if ((msLevel == null) || (msLevel < 2))
+        continue;
+      size += SCAN_OVERHEAD + (long) scan.getNumberOfDataPoints() * SPECTRUM_DATA_POINT_SIZE;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of items (scans, feature table rows or collection elements) contained in a
+   * given object, or 0 for unknown objects.
+   */
+  public static long countItems(@Nullable Object data) {
+    if (data == null)
+      return 0;
+    if (data instanceof RawDataFile) {
+      // Do not load raw data files just to count their scans
+      if (!LazyRawDataFile.isLoaded((RawDataFile) data))
+        return 0;
+      return ((RawDataFile) data).getScans().size();
+    }
+    if (data instanceof FeatureTable)
+      return ((FeatureTable) data).getRows().size();
+    if (data instanceof Collection)
+      return ((Collection<?>) data).size();
+    return 0;
+  }
+
+  public static long estimateRawDataFileSize(RawDataFile rawDataFile) {
+    // Raw data files which have not been loaded from a project archive yet are estimated by the
+    // size of their archive entry
+    LazyRawDataFile lazyFile = LazyRawDataFile.getHandler(rawDataFile);
+    if ((lazyFile != null) && (!lazyFile.isLoaded()))
+      return lazyFile.getArchivedSize();
+
+    long size = 0;
+    for (MsScan scan : rawDataFile.getScans()) {
+      int dataPoints = scan.getNumberOfDataPoints();
+      size += SCAN_OVERHEAD + (long) dataPoints * SPECTRUM_DATA_POINT_SIZE;
+    }
+    return size;
+  }
+
+  public static long estimateFeatureTableSize(FeatureTable featureTable) {
+    long size = 0;
+    for (FeatureTableRow row : featureTable.getRows()) {
+      for (FeatureTableColumn<?> column : featureTable.getColumns()) {
+        Object value = row.getData(column);
+        if (value == null)
+          continue;
+        if (value instanceof Chromatogram)
+          size += estimateSize(value);
+        else
+          size += FEATURE_TABLE_CELL_SIZE;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Formats a number of bytes as a human-readable string (e.g. 12.3 MB)
+   */
+  public static String formatBytes(long bytes) {
+    if (bytes < 1024)
+      return bytes + " B";
+    final String units = "KMGTPE";
+    int exp = (int) (Math.log(bytes) / Math.log(1024));
+    exp = Math.min(exp, units.length());
+    return String.format("%.1f %sB", bytes / Math.pow(1024, exp), units.charAt(exp - 1));
+  }
+
+}
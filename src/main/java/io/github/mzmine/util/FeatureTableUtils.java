@@ -0,0 +1,82 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+
+/**
+ * Feature table utilities
+ */
+public class FeatureTableUtils {
+
+  /**
+   * Creates a new, empty feature table with the same columns as a given table
+   */
+  public static @Nonnull FeatureTable copyColumns(@Nonnull FeatureTable featureTable,
+      @Nonnull String name, @Nonnull DataPointStore dataStore) {
+    final FeatureTable newTable = MSDKObjectBuilder.getFeatureTable(name, dataStore);
+    for (FeatureTableColumn<?> column : featureTable.getColumns())
+      newTable.addColumn(column);
+    return newTable;
+  }
+
+  /**
+   * Creates a copy of a given row for the target table. The copy has the same ID and data, but is
+   * not added to the table yet.
+   */
+  public static @Nonnull FeatureTableRow copyRow(@Nonnull FeatureTableRow row,
+      @Nonnull FeatureTable targetTable) {
+    final FeatureTableRow newRow = MSDKObjectBuilder.getFeatureTableRow(targetTable, row.getId());
+    for (FeatureTableColumn<?> column : row.getFeatureTable().getColumns())
+      copyData(row, newRow, column);
+    return newRow;
+  }
+
+  /**
+   * Creates a copy of a given row for the target table, including only the features of the given
+   * samples. The copy has the same ID and data, but is not added to the table yet.
+   */
+  public static @Nonnull FeatureTableRow copyRow(@Nonnull FeatureTableRow row,
+      @Nonnull FeatureTable targetTable, @Nonnull Predicate<Sample> includeSample) {
+    final FeatureTableRow newRow = MSDKObjectBuilder.getFeatureTableRow(targetTable, row.getId());
+    for (FeatureTableColumn<?> column : row.getFeatureTable().getColumns()) {
+      final Sample sample = column.getSample();
+      if ((sample == null) || includeSample.test(sample))
+        copyData(row, newRow, column);
+    }
+    return newRow;
+  }
+
+  private static <T> void copyData(FeatureTableRow source, FeatureTableRow target,
+      FeatureTableColumn<T> column) {
+    final T value = source.getData(column);
+    if (value != null)
+      target.setData(column, value);
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compression of exported files
+ */
+public enum FileCompression {
+
+  NONE("None", ""), //
+  GZIP("gzip", ".gz");
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final String stringValue;
+  private final String extension;
+
+  FileCompression(String stringValue, String extension) {
+    this.stringValue = stringValue;
+    this.extension = extension;
+  }
+
+  /**
+   * @return File name extension of the compressed files, e.g. ".gz"
+   */
+  public @Nonnull String getExtension() {
+    return extension;
+  }
+
+  /**
+   * @return The given file with the extension of this compression appended, unless already present
+   */
+  public @Nonnull File getFile(@Nonnull File file) {
+    if (extension.isEmpty() || file.getName().toLowerCase().endsWith(extension))
+      return file;
+    return new File(file.getPath() + extension);
+  }
+
+  /**
+   * Opens a buffered stream writing to the channel of the given file, compressing the data. The
+   * file is created or overwritten.
+   */
+  public @Nonnull OutputStream openOutputStream(@Nonnull File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    final OutputStream channelStream = Channels.newOutputStream(channel);
+    switch (this) {
+      case GZIP:
+        return new GZIPOutputStream(channelStream, BUFFER_SIZE);
+      default:
+        return new BufferedOutputStream(channelStream, BUFFER_SIZE);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return stringValue;
+  }
+
+}
@@ -30,6 +30,11 @@ import java.net.URLConnection;
  */
 public class InetUtils {
 
+  /**
+   * Connect and read timeout, so that requests on hosts without network access fail quickly
+   */
+  public static final int TIMEOUT = 5000; // ms
+
   /**
    * Opens a connection to the given URL (typically HTTP) and retrieves the data from server. Data
    * is assumed to be in UTF-8 encoding.
@@ -37,6 +42,8 @@ public class InetUtils {
   public static String retrieveData(URL url) throws IOException {
 
     URLConnection connection = url.openConnection();
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
     connection.setRequestProperty("User-agent", "MZmine 3");
     InputStream is = connection.getInputStream();
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to primitive int values, avoiding the boxing
+ * overhead of a HashMap&lt;Long, Integer&gt; on large data sets
+ */
+public class LongIntHashMap {
+
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private final int missingValue;
+
+  private long keys[];
+  private int values[];
+  private boolean used[];
+  private int size;
+
+  /**
+   * @param expectedSize Expected number of keys
+   * @param missingValue Value returned by {@link #get(long)} for keys which are not in the map
+   */
+  public LongIntHashMap(int expectedSize, int missingValue) {
+    this.missingValue = missingValue;
+    allocate(Math.max(16, Integer.highestOneBit((int) (expectedSize / LOAD_FACTOR)) << 1));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    Arrays.fill(values, missingValue);
+    size = 0;
+  }
+
+  /**
+   * @return The value of the given key, or the missing value if the key is not in the map
+   */
+  public int get(long key) {
+    final int slot = findSlot(key);
+    return used[slot] ? values[slot] : missingValue;
+  }
+
+  /**
+   * Associates the given value with the given key, replacing the previous value (if any)
+   */
+  public void put(long key, int value) {
+    int slot = findSlot(key);
+    if (!used[slot]) {
+      if (size + 1 > keys.length * LOAD_FACTOR) {
+        rehash();
+        slot = findSlot(key);
+      }
+      used[slot] = true;
+      keys[slot] = key;
+      size++;
+    }
+    values[slot] = value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int findSlot(long key) {
+    final int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (used[slot] && keys[slot] != key)
+      slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  private void rehash() {
+    final long oldKeys[] = keys;
+    final int oldValues[] = values;
+    final boolean oldUsed[] = used;
+    allocate(oldKeys.length << 1);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i])
+        put(oldKeys[i], oldValues[i]);
+    }
+  }
+
+  private static int hash(long key) {
+    // Mix the bits, neighbouring keys are common
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+
+/**
+ * m/z tolerance utilities
+ */
+public class MzToleranceUtils {
+
+  /**
+   * @return The larger of the absolute and the ppm tolerance at the given m/z. Same as the half
+   *         width of {@link MaximumMzTolerance#getToleranceRange}, without creating a range.
+   */
+  public static double getMzDelta(@Nonnull MaximumMzTolerance mzTolerance, double mz) {
+    return Math.max(mzTolerance.getMzTolerance(), mz * mzTolerance.getPpmTolerance() / 1000000.0);
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Small least recently used cache, e.g. for parsed libraries. The values are held by soft
+ * references, so they are released when the memory runs low. All methods are thread safe.
+ */
+public class SoftReferenceCache<K, V> {
+
+  private final Map<K, SoftReference<V>> cache;
+
+  /**
+   * @param maxSize Number of values kept, the least recently used value is removed first
+   */
+  public SoftReferenceCache(int maxSize) {
+    cache = new LinkedHashMap<K, SoftReference<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, SoftReference<V>> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return The cached value, or null if it was never cached, removed or released
+   */
+  public synchronized @Nullable V get(@Nonnull K key) {
+    final SoftReference<V> reference = cache.get(key);
+    return reference != null ? reference.get() : null;
+  }
+
+  public synchronized void put(@Nonnull K key, @Nonnull V value) {
+    cache.put(key, new SoftReference<>(value));
+  }
+
+}
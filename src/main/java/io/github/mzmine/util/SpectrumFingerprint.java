@@ -0,0 +1,100 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.msspectra.MsSpectrum;
+import io.github.msdk.spectra.splash.SplashCalculationAlgorithm;
+
+/**
+ * SPLASH and summary statistics of a spectrum, see {@link SpectrumFingerprintCache}
+ */
+public class SpectrumFingerprint {
+
+  private final @Nonnull String splash;
+  private final int numOfDataPoints;
+  private final @Nullable Range<Double> mzRange;
+  private final double basePeakMz;
+  private final float basePeakIntensity;
+  private final double totalIntensity;
+
+  private SpectrumFingerprint(@Nonnull String splash, int numOfDataPoints,
+      @Nullable Range<Double> mzRange, double basePeakMz, float basePeakIntensity,
+      double totalIntensity) {
+    this.splash = splash;
+    this.numOfDataPoints = numOfDataPoints;
+    this.mzRange = mzRange;
+    this.basePeakMz = basePeakMz;
+    this.basePeakIntensity = basePeakIntensity;
+    this.totalIntensity = totalIntensity;
+  }
+
+  /**
+   * Calculates the fingerprint of a spectrum. Use {@link SpectrumFingerprintCache} to avoid
+   * repeated calculations.
+   */
+  public static @Nonnull SpectrumFingerprint calculate(@Nonnull MsSpectrum spectrum) {
+    final double mzValues[] = spectrum.getMzValues();
+    final float intensityValues[] = spectrum.getIntensityValues();
+    final int numOfDataPoints = spectrum.getNumberOfDataPoints();
+    int basePeak = -1;
+    double totalIntensity = 0;
+    for (int i = 0; i < numOfDataPoints; i++) {
+      totalIntensity += intensityValues[i];
+      if (basePeak < 0 || intensityValues[i] > intensityValues[basePeak])
+        basePeak = i;
+    }
+    final String splash = SplashCalculationAlgorithm.calculateSplash(spectrum);
+    return new SpectrumFingerprint(splash, numOfDataPoints, spectrum.getMzRange(),
+        basePeak >= 0 ? mzValues[basePeak] : Double.NaN,
+        basePeak >= 0 ? intensityValues[basePeak] : 0f, totalIntensity);
+  }
+
+  public @Nonnull String getSplash() {
+    return splash;
+  }
+
+  public int getNumberOfDataPoints() {
+    return numOfDataPoints;
+  }
+
+  public @Nullable Range<Double> getMzRange() {
+    return mzRange;
+  }
+
+  /**
+   * @return m/z of the most intense data point, or NaN for empty spectra
+   */
+  public double getBasePeakMz() {
+    return basePeakMz;
+  }
+
+  public float getBasePeakIntensity() {
+    return basePeakIntensity;
+  }
+
+  public double getTotalIntensity() {
+    return totalIntensity;
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with MZmine 3; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+
+import io.github.msdk.datamodel.msspectra.MsSpectrum;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Memoized {@link SpectrumFingerprint}s. Each fingerprint is calculated once, in the background,
+ * and served from the cache afterwards. The cache is keyed by the identity of the spectra and holds
+ * them weakly, so it does not keep closed plots or removed raw data files in memory.
+ */
+public class SpectrumFingerprintCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(SpectrumFingerprintCache.class);
+
+  // Weak keys are compared by identity
+  private static final ConcurrentMap<MsSpectrum, CompletableFuture<SpectrumFingerprint>> cache =
+      new MapMaker().weakKeys().makeMap();
+
+  /**
+   * Returns the fingerprint of the spectrum. The calculation is started in the compute pool if it
+   * was not requested before.
+   */
+  public static @Nonnull CompletableFuture<SpectrumFingerprint> get(
+      @Nonnull MsSpectrum spectrum) {
+    return request(spectrum, true);
+  }
+
+  /**
+   * Returns the fingerprint of the spectrum if it has been calculated already. Otherwise, the
+   * calculation is started in the background and null is returned, so this method never blocks,
+   * e.g. when creating a tooltip on the JavaFX thread.
+   */
+  public static @Nullable SpectrumFingerprint getIfCalculated(@Nonnull MsSpectrum spectrum) {
+    final CompletableFuture<SpectrumFingerprint> future = get(spectrum);
+    if (!future.isDone() || future.isCompletedExceptionally())
+      return null;
+    return future.join();
+  }
+
+  /**
+   * Returns the fingerprints of the given spectra in the same order, calculating the missing ones
+   * in parallel. Waits for the calculation to finish.
+   */
+  public static @Nonnull List<SpectrumFingerprint> getAll(
+      @Nonnull List<? extends MsSpectrum> spectra) {
+    return MZmineCore.getComputePool().invoke(() -> spectra.parallelStream()
+        .map(spectrum -> request(spectrum, false).join()).collect(Collectors.toList()));
+  }
+
+  /**
+   * Calculates the fingerprints of all scans of a raw data file in parallel, e.g. before exporting
+   * or indexing the SPLASH of each scan
+   */
+  public static @Nonnull List<SpectrumFingerprint> getAll(@Nonnull RawDataFile rawDataFile) {
+    final List<MsScan> scans = rawDataFile.getScans();
+    logger.debug(
+        "Calculating the SPLASH of " + scans.size() + " scans of " + rawDataFile.getName());
+    return getAll(scans);
+  }
+
+  /**
+   * Returns the cached or requested fingerprint, or starts its calculation: asynchronously in the
+   * compute pool, or on the current thread
+   */
+  private static CompletableFuture<SpectrumFingerprint> request(MsSpectrum spectrum,
+      boolean async) {
+    final CompletableFuture<SpectrumFingerprint> cached = cache.get(spectrum);
+    if (cached != null)
+      return cached;
+    final CompletableFuture<SpectrumFingerprint> future = new CompletableFuture<>();
+    final CompletableFuture<SpectrumFingerprint> concurrent =
+        cache.putIfAbsent(spectrum, future);
+    if (concurrent != null)
+      return concurrent;
+    if (async)
+      MZmineCore.getComputePool().execute(() -> calculate(spectrum, future));
+    else
+      calculate(spectrum, future);
+    return future;
+  }
+
+  private static void calculate(MsSpectrum spectrum,
+      CompletableFuture<SpectrumFingerprint> future) {
+    try {
+      future.complete(SpectrumFingerprint.calculate(spectrum));
+    } catch (RuntimeException e) {
+      // Do not cache failures, a later request tries again
+      logger.warn("Could not calculate the SPLASH of " + spectrum, e);
+      cache.remove(spectrum, future);
+      future.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Removes the fingerprint of a spectrum, e.g. after its data points were modified
+   */
+  public static void invalidate(@Nonnull MsSpectrum spectrum) {
+    cache.remove(spectrum);
+  }
+
+}
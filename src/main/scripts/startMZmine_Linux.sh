@@ -17,6 +17,12 @@ TMP_FILE_DIRECTORY=/tmp
 # a specific Java Virtual Machine, you may set the path to the java command of that JVM
 JAVA_COMMAND=java
 
+# Use a class data sharing archive to speed up the start of the JVM (requires Java 10 or newer).
+# The archive is created on first start from the class list mzmine.classlist, which is produced
+# by the build (mvn -Pcds package).
+# Default: false
+CLASS_DATA_SHARING=false
+
 # ********************************************
 # You don't need to modify anything below here
 # ********************************************
@@ -48,12 +54,24 @@ echo Java maximum heap size set to $HEAP_SIZE MB
 # Java specific commands
 # **********************
 
-JAVA_PARAMETERS="-showversion -classpath lib/\* -XX:+UseG1GC -Djava.io.tmpdir=$TMP_FILE_DIRECTORY -Xms256m -Xmx${HEAP_SIZE}m
+JAVA_PARAMETERS="-showversion -classpath lib/\* -XX:+UseG1GC -Djava.io.tmpdir=$TMP_FILE_DIRECTORY -Xms256m -Xmx${HEAP_SIZE}m"
 MAIN_CLASS=io.github.mzmine.main.MZmineMain
 
 # Make sure we are in the correct directory
 SCRIPTDIR=`dirname "$0"`
 cd "$SCRIPTDIR"
 
+# Create the class data sharing archive on first start
+CDS_PARAMETERS=
+if [ "$CLASS_DATA_SHARING" = "true" ] && [ -f mzmine.classlist ]; then
+  if [ ! -f mzmine.jsa ]; then
+    echo "Creating class data sharing archive..."
+    echo -Xshare:dump -XX:SharedClassListFile=mzmine.classlist -XX:SharedArchiveFile=mzmine.jsa -classpath lib/\* | xargs $JAVA_COMMAND
+  fi
+  if [ -f mzmine.jsa ]; then
+    CDS_PARAMETERS=-XX:SharedArchiveFile=mzmine.jsa
+  fi
+fi
+
 # This command starts the Java Virtual Machine
-echo "$JAVA_PARAMETERS" $MAIN_CLASS "$@" | xargs $JAVA_COMMAND
\ No newline at end of file
+echo "$JAVA_PARAMETERS" $CDS_PARAMETERS $MAIN_CLASS "$@" | xargs $JAVA_COMMAND
\ No newline at end of file